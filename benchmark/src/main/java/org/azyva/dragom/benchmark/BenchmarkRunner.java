@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmark jar.
+ * <p>
+ * Accepts the same arguments as org.openjdk.jmh.Main but always enables the GC
+ * profiler so that the allocation rate (gc.alloc.rate.norm, in bytes per
+ * operation) is reported along with the throughput of each benchmark.
+ *
+ * @author David Raymond
+ */
+public class BenchmarkRunner {
+  /**
+   * Main method.
+   *
+   * @param args Arguments.
+   * @throws CommandLineOptionException When the arguments are not valid.
+   * @throws RunnerException When running the benchmarks fails.
+   * @throws IOException When displaying the help fails.
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+    CommandLineOptions commandLineOptions;
+
+    commandLineOptions = new CommandLineOptions(args);
+
+    if (commandLineOptions.shouldHelp()) {
+      commandLineOptions.showHelp();
+      return;
+    }
+
+    if (commandLineOptions.shouldList()) {
+      new Runner(commandLineOptions).list();
+      return;
+    }
+
+    new Runner(new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build()).run();
+  }
+}
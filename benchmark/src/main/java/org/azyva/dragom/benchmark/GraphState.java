@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JMH State holding the {@link SyntheticReferenceGraph} shared by the
+ * benchmarks.
+ * <p>
+ * The size and shape of the graph are JMH parameters so that they can be
+ * overridden on the command line using -p.
+ *
+ * @author David Raymond
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+  /**
+   * Number of modules.
+   */
+  @Param({"1000", "5000"})
+  public int nbModules;
+
+  /**
+   * Number of layers, which is also the depth of the ReferencePath's.
+   */
+  @Param({"12"})
+  public int nbLayers;
+
+  /**
+   * Number of children of each non-leaf module.
+   */
+  @Param({"8"})
+  public int nbChildren;
+
+  /**
+   * SyntheticReferenceGraph.
+   */
+  public SyntheticReferenceGraph syntheticReferenceGraph;
+
+  /**
+   * Generates the SyntheticReferenceGraph.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    this.syntheticReferenceGraph = new SyntheticReferenceGraph(this.nbModules, this.nbLayers, this.nbChildren, 1234L);
+  }
+}
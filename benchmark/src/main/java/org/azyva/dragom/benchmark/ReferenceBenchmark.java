@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.azyva.dragom.reference.Reference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link Reference#hashCode}, {@link Reference#equals} and
+ * {@link Reference#equalsNoVersion}.
+ * <p>
+ * Comparisons are made between equal but distinct instances so that identity
+ * short-circuits do not hide the cost of comparing the fields.
+ *
+ * @author David Raymond
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReferenceBenchmark {
+  /**
+   * Index of the next Reference.
+   */
+  private int index;
+
+  /**
+   * Set of all Reference's, for lookups.
+   */
+  private Set<Reference> setReference;
+
+  /**
+   * Builds the Set of Reference's.
+   *
+   * @param graphState GraphState.
+   */
+  @Setup(Level.Trial)
+  public void setup(GraphState graphState) {
+    this.setReference = new HashSet<Reference>(Arrays.asList(graphState.syntheticReferenceGraph.getArrayReference()));
+  }
+
+  /**
+   * @param length Number of Reference's.
+   * @return Index of the next Reference.
+   */
+  private int nextIndex(int length) {
+    if (++this.index >= length) {
+      this.index = 0;
+    }
+
+    return this.index;
+  }
+
+  @Benchmark
+  public int referenceHashCode(GraphState graphState) {
+    Reference[] arrayReference;
+
+    arrayReference = graphState.syntheticReferenceGraph.getArrayReferenceCopy();
+
+    return arrayReference[this.nextIndex(arrayReference.length)].hashCode();
+  }
+
+  @Benchmark
+  public boolean referenceEquals(GraphState graphState) {
+    Reference[] arrayReference;
+    int index;
+
+    arrayReference = graphState.syntheticReferenceGraph.getArrayReference();
+    index = this.nextIndex(arrayReference.length);
+
+    return arrayReference[index].equals(graphState.syntheticReferenceGraph.getArrayReferenceCopy()[index]);
+  }
+
+  @Benchmark
+  public boolean referenceEqualsNoVersion(GraphState graphState) {
+    Reference[] arrayReference;
+    int index;
+
+    arrayReference = graphState.syntheticReferenceGraph.getArrayReference();
+    index = this.nextIndex(arrayReference.length);
+
+    return arrayReference[index].equalsNoVersion(graphState.syntheticReferenceGraph.getArrayReferenceCopy()[index]);
+  }
+
+  @Benchmark
+  public boolean referenceSetContains(GraphState graphState) {
+    Reference[] arrayReference;
+
+    arrayReference = graphState.syntheticReferenceGraph.getArrayReferenceCopy();
+
+    return this.setReference.contains(arrayReference[this.nextIndex(arrayReference.length)]);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+import org.azyva.dragom.reference.PersistentReferencePath;
+import org.azyva.dragom.reference.Reference;
+import org.azyva.dragom.reference.ReferencePath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link ReferencePath}.
+ * <p>
+ * findModuleVersion is measured for the leaf ModuleVersion, which is the worst
+ * case for a match, with and without a Version, and for a ModuleVersion that is
+ * not in the ReferencePath. Building a ReferencePath one Reference at a time, as
+ * is done during traversals, and copying it, as is done when a ReferencePath is
+ * retained, are also measured.
+ *
+ * @author David Raymond
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReferencePathBenchmark {
+  /**
+   * ModuleVersion which is not in any ReferencePath.
+   */
+  private static final ModuleVersion MODULE_VERSION_ABSENT = new ModuleVersion("Absent/module:D/develop");
+
+  /**
+   * Adds the visited {@link Reference}'s to a new ReferencePath, for
+   * {@link ReferencePathBenchmark#build}.
+   */
+  private static final class ReferencePathBuilder implements PersistentReferencePath.ReferenceVisitor {
+    /**
+     * ReferencePath being built.
+     */
+    private ReferencePath referencePath;
+
+    /**
+     * Constructor.
+     */
+    private ReferencePathBuilder() {
+      this.referencePath = new ReferencePath();
+    }
+
+    @Override
+    public boolean visitReference(int index, Reference reference) {
+      this.referencePath.add(reference);
+
+      return true;
+    }
+  }
+
+  /**
+   * Index of the next ReferencePath.
+   */
+  private int index;
+
+  /**
+   * @param graphState GraphState.
+   * @return Next ReferencePath.
+   */
+  private ReferencePath nextReferencePath(GraphState graphState) {
+    ReferencePath[] arrayReferencePath;
+
+    arrayReferencePath = graphState.syntheticReferenceGraph.getArrayReferencePath();
+
+    if (++this.index >= arrayReferencePath.length) {
+      this.index = 0;
+    }
+
+    return arrayReferencePath[this.index];
+  }
+
+  @Benchmark
+  public int findModuleVersionLeaf(GraphState graphState) {
+    ReferencePath referencePath;
+
+    referencePath = this.nextReferencePath(graphState);
+
+    return referencePath.findModuleVersion(referencePath.getLeafModuleVersion());
+  }
+
+  @Benchmark
+  public int findModuleVersionLeafNoVersion(GraphState graphState) {
+    ReferencePath referencePath;
+
+    referencePath = this.nextReferencePath(graphState);
+
+    return referencePath.findModuleVersion(new ModuleVersion(referencePath.getLeafModuleVersion().getNodePath()));
+  }
+
+  @Benchmark
+  public int findModuleVersionAbsent(GraphState graphState) {
+    return this.nextReferencePath(graphState).findModuleVersion(ReferencePathBenchmark.MODULE_VERSION_ABSENT);
+  }
+
+  @Benchmark
+  public ReferencePath build(GraphState graphState) {
+    ReferencePathBuilder referencePathBuilder;
+
+    referencePathBuilder = new ReferencePathBuilder();
+    this.nextReferencePath(graphState).forEachReference(referencePathBuilder);
+
+    return referencePathBuilder.referencePath;
+  }
+
+  @Benchmark
+  public ReferencePath copy(GraphState graphState) {
+    return new ReferencePath(this.nextReferencePath(graphState));
+  }
+
+  @Benchmark
+  public boolean nodePathEquals(GraphState graphState) {
+    ReferencePath referencePath;
+    NodePath nodePath;
+
+    referencePath = this.nextReferencePath(graphState);
+    nodePath = referencePath.get(0).getModuleVersion().getNodePath();
+
+    return nodePath.equals(referencePath.getLeafModuleVersion().getNodePath());
+  }
+}
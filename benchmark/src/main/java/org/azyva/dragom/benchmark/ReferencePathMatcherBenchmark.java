@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.azyva.dragom.reference.PersistentReferencePath;
+import org.azyva.dragom.reference.Reference;
+import org.azyva.dragom.reference.ReferencePath;
+import org.azyva.dragom.reference.ReferencePathMatcher;
+import org.azyva.dragom.reference.ReferencePathMatcherByElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for {@link ReferencePathMatcherByElement}.
+ * <p>
+ * Each operation applies one of the matchers of the
+ * {@link SyntheticReferenceGraph}, most of which include "**", to one of its
+ * ReferencePath's, cycling through all combinations.
+ * <p>
+ * No Model is provided to the matchers since none of the matcher literals refer
+ * to a specific artifact, which is the only case where the Model is needed.
+ *
+ * @author David Raymond
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReferencePathMatcherBenchmark {
+  /**
+   * Steps a matcher through the {@link Reference}'s of a ReferencePath, stopping
+   * when no continuation can match, for {@link #matchesIncremental}.
+   */
+  private static final class IncrementalMatcher implements PersistentReferencePath.ReferenceVisitor {
+    /**
+     * ReferencePathMatcherByElement.
+     */
+    private ReferencePathMatcherByElement referencePathMatcherByElement;
+
+    /**
+     * Current state of the matcher.
+     */
+    private Object state;
+
+    /**
+     * Number of matching prefixes.
+     */
+    private int nbMatches;
+
+    /**
+     * Constructor.
+     *
+     * @param referencePathMatcherByElement ReferencePathMatcherByElement.
+     */
+    private IncrementalMatcher(ReferencePathMatcherByElement referencePathMatcherByElement) {
+      this.referencePathMatcherByElement = referencePathMatcherByElement;
+      this.state = referencePathMatcherByElement.initialState();
+    }
+
+    @Override
+    public boolean visitReference(int index, Reference reference) {
+      this.state = this.referencePathMatcherByElement.step(this.state, reference);
+
+      if (this.referencePathMatcherByElement.isAccepting(this.state)) {
+        this.nbMatches++;
+      }
+
+      return this.referencePathMatcherByElement.canContinue(this.state);
+    }
+  }
+
+  /**
+   * Parsed matchers.
+   */
+  private ReferencePathMatcherByElement[] arrayReferencePathMatcherByElement;
+
+  /**
+   * Index of the next matcher.
+   */
+  private int indexMatcher;
+
+  /**
+   * Index of the next ReferencePath.
+   */
+  private int indexReferencePath;
+
+  /**
+   * Parses the matchers.
+   *
+   * @param graphState GraphState.
+   */
+  @Setup(Level.Trial)
+  public void setup(GraphState graphState) {
+    String[] arrayStringReferencePathMatcher;
+
+    arrayStringReferencePathMatcher = graphState.syntheticReferenceGraph.getArrayStringReferencePathMatcher();
+    this.arrayReferencePathMatcherByElement = new ReferencePathMatcherByElement[arrayStringReferencePathMatcher.length];
+
+    for (int i = 0; i < arrayStringReferencePathMatcher.length; i++) {
+      this.arrayReferencePathMatcherByElement[i] = new ReferencePathMatcherByElement(arrayStringReferencePathMatcher[i], null);
+    }
+  }
+
+  /**
+   * @return Next matcher.
+   */
+  private ReferencePathMatcherByElement nextReferencePathMatcherByElement() {
+    if (++this.indexMatcher >= this.arrayReferencePathMatcherByElement.length) {
+      this.indexMatcher = 0;
+    }
+
+    return this.arrayReferencePathMatcherByElement[this.indexMatcher];
+  }
+
+  /**
+   * Must be called after {@link #nextReferencePathMatcherByElement} so that all
+   * combinations are covered.
+   *
+   * @param graphState GraphState.
+   * @return Next ReferencePath.
+   */
+  private ReferencePath nextReferencePath(GraphState graphState) {
+    ReferencePath[] arrayReferencePath;
+
+    arrayReferencePath = graphState.syntheticReferenceGraph.getArrayReferencePath();
+
+    if ((this.indexMatcher == 0) && (++this.indexReferencePath >= arrayReferencePath.length)) {
+      this.indexReferencePath = 0;
+    }
+
+    return arrayReferencePath[this.indexReferencePath];
+  }
+
+  @Benchmark
+  public ReferencePathMatcherByElement parse(GraphState graphState) {
+    String[] arrayStringReferencePathMatcher;
+
+    arrayStringReferencePathMatcher = graphState.syntheticReferenceGraph.getArrayStringReferencePathMatcher();
+
+    if (++this.indexMatcher >= arrayStringReferencePathMatcher.length) {
+      this.indexMatcher = 0;
+    }
+
+    return new ReferencePathMatcherByElement(arrayStringReferencePathMatcher[this.indexMatcher], null);
+  }
+
+  @Benchmark
+  public boolean matches(GraphState graphState) {
+    ReferencePathMatcherByElement referencePathMatcherByElement;
+
+    referencePathMatcherByElement = this.nextReferencePathMatcherByElement();
+
+    return referencePathMatcherByElement.matches(this.nextReferencePath(graphState));
+  }
+
+  @Benchmark
+  public boolean canMatchChildren(GraphState graphState) {
+    ReferencePathMatcherByElement referencePathMatcherByElement;
+
+    referencePathMatcherByElement = this.nextReferencePathMatcherByElement();
+
+    return referencePathMatcherByElement.canMatchChildren(this.nextReferencePath(graphState));
+  }
+
+  /**
+   * Matches all the prefixes of a ReferencePath using the incremental API of
+   * {@link ReferencePathMatcher}, as is done during a traversal, stopping when
+   * no continuation can match.
+   * <p>
+   * The Reference's are visited with {@link ReferencePath#forEachReference} since
+   * indexed access to a ReferencePath is O(depth).
+   *
+   * @param graphState GraphState.
+   * @return Number of matching prefixes.
+   */
+  @Benchmark
+  public int matchesIncremental(GraphState graphState) {
+    IncrementalMatcher incrementalMatcher;
+
+    incrementalMatcher = new IncrementalMatcher(this.nextReferencePathMatcherByElement());
+    this.nextReferencePath(graphState).forEachReference(incrementalMatcher);
+
+    return incrementalMatcher.nbMatches;
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.azyva.dragom.model.ArtifactGroupId;
+import org.azyva.dragom.model.ArtifactVersion;
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+import org.azyva.dragom.model.Version;
+import org.azyva.dragom.reference.Reference;
+import org.azyva.dragom.reference.ReferencePath;
+
+/**
+ * Synthetic reference graph used by the benchmarks.
+ * <p>
+ * The graph is layered so that it is acyclic and so that every
+ * {@link ReferencePath} from a root {@link ModuleVersion} to a leaf one has a
+ * depth equal to the number of layers. {@link ModuleVersion}'s are spread evenly
+ * across layers and across a number of domains (the first node of their
+ * {@link NodePath}), and each one references a number of ModuleVersion's in the
+ * next layer, which is what is typically seen in real-world reference graphs
+ * where a few root applications depend on a large number of shared libraries.
+ * <p>
+ * Generation is deterministic for a given seed so that results are comparable
+ * between runs.
+ * <p>
+ * The graph is kept as simple arrays instead of as a ReferenceGraph since the
+ * benchmarks are about the value types and matchers, not about any particular
+ * ReferenceGraph implementation.
+ *
+ * @author David Raymond
+ */
+public class SyntheticReferenceGraph {
+  /**
+   * Number of domains.
+   */
+  private static final int NB_DOMAINS = 16;
+
+  /**
+   * Number of {@link ReferencePath}'s generated.
+   */
+  private static final int NB_REFERENCE_PATHS = 1024;
+
+  /**
+   * {@link ModuleVersion} literals, indexed by module index.
+   */
+  private String[] arrayStringModuleVersion;
+
+  /**
+   * {@link NodePath} literals, indexed by module index.
+   */
+  private String[] arrayStringNodePath;
+
+  /**
+   * {@link Version} literals, indexed by module index.
+   */
+  private String[] arrayStringVersion;
+
+  /**
+   * {@link ArtifactVersion} literals, indexed by module index.
+   */
+  private String[] arrayStringArtifactVersion;
+
+  /**
+   * {@link Reference}'s to each module, indexed by module index.
+   */
+  private Reference[] arrayReference;
+
+  /**
+   * Equal but distinct copies of the {@link Reference}'s in arrayReference.
+   */
+  private Reference[] arrayReferenceCopy;
+
+  /**
+   * Module indexes of the children of each module, indexed by module index.
+   */
+  private int[][] arrayArrayIndexChild;
+
+  /**
+   * Layer of each module, indexed by module index.
+   */
+  private int[] arrayLayer;
+
+  /**
+   * {@link ReferencePath}'s obtained by walking the graph from root modules.
+   */
+  private ReferencePath[] arrayReferencePath;
+
+  /**
+   * ReferencePathMatcherByElement literals, from the most selective to the least
+   * selective, many of which include "**".
+   */
+  private String[] arrayStringReferencePathMatcher;
+
+  /**
+   * Constructor.
+   *
+   * @param nbModules Number of modules.
+   * @param nbLayers Number of layers, which is also the depth of the
+   *   {@link ReferencePath}'s.
+   * @param nbChildren Number of children of each non-leaf module.
+   * @param seed Seed for the Random generator.
+   */
+  public SyntheticReferenceGraph(int nbModules, int nbLayers, int nbChildren, long seed) {
+    Random random;
+    int nbModulesPerLayer;
+    List<String> listStringReferencePathMatcher;
+
+    if (nbModules < nbLayers) {
+      throw new RuntimeException("The number of modules " + nbModules + " must be at least the number of layers " + nbLayers + '.');
+    }
+
+    random = new Random(seed);
+    nbModulesPerLayer = nbModules / nbLayers;
+
+    this.arrayStringModuleVersion = new String[nbModules];
+    this.arrayStringNodePath = new String[nbModules];
+    this.arrayStringVersion = new String[nbModules];
+    this.arrayStringArtifactVersion = new String[nbModules];
+    this.arrayReference = new Reference[nbModules];
+    this.arrayReferenceCopy = new Reference[nbModules];
+    this.arrayArrayIndexChild = new int[nbModules][];
+    this.arrayLayer = new int[nbModules];
+
+    for (int i = 0; i < nbModules; i++) {
+      String domain;
+      String module;
+      String stringVersion;
+      ModuleVersion moduleVersion;
+      ArtifactGroupId artifactGroupId;
+      ArtifactVersion artifactVersion;
+
+      domain = "Domain" + (i % SyntheticReferenceGraph.NB_DOMAINS);
+      module = "module-" + i;
+
+      if ((i % 3) == 0) {
+        stringVersion = "D/develop-project" + (i % 7);
+      } else {
+        stringVersion = "S/" + (i % 5) + '.' + (i % 11) + '.' + i;
+      }
+
+      this.arrayStringNodePath[i] = domain + '/' + module;
+      this.arrayStringVersion[i] = stringVersion;
+      this.arrayStringModuleVersion[i] = this.arrayStringNodePath[i] + ':' + stringVersion;
+      this.arrayLayer[i] = Math.min(i / nbModulesPerLayer, nbLayers - 1);
+
+      moduleVersion = new ModuleVersion(new NodePath(this.arrayStringNodePath[i]), new Version(stringVersion));
+      artifactGroupId = new ArtifactGroupId("org.acme." + domain.toLowerCase(), module);
+      artifactVersion = new Version(stringVersion).getCorrespondingArtifactVersion();
+      this.arrayStringArtifactVersion[i] = artifactVersion.toString();
+      this.arrayReference[i] = new Reference(moduleVersion, artifactGroupId, artifactVersion, "implData");
+      this.arrayReferenceCopy[i] = new Reference(new ModuleVersion(new NodePath(this.arrayStringNodePath[i]), new Version(stringVersion)), new ArtifactGroupId(artifactGroupId.getGroupId(), artifactGroupId.getArtifactId()), new ArtifactVersion(artifactVersion.getVersionType(), artifactVersion.getVersion()), "implData");
+    }
+
+    for (int i = 0; i < nbModules; i++) {
+      int layer;
+      int indexFirstNextLayer;
+      int nbModulesNextLayer;
+
+      layer = this.arrayLayer[i];
+
+      if (layer == (nbLayers - 1)) {
+        this.arrayArrayIndexChild[i] = new int[0];
+        continue;
+      }
+
+      indexFirstNextLayer = (layer + 1) * nbModulesPerLayer;
+      nbModulesNextLayer = (layer == (nbLayers - 2)) ? (nbModules - indexFirstNextLayer) : nbModulesPerLayer;
+      this.arrayArrayIndexChild[i] = new int[Math.min(nbChildren, nbModulesNextLayer)];
+
+      for (int j = 0; j < this.arrayArrayIndexChild[i].length; j++) {
+        this.arrayArrayIndexChild[i][j] = indexFirstNextLayer + random.nextInt(nbModulesNextLayer);
+      }
+    }
+
+    this.arrayReferencePath = new ReferencePath[SyntheticReferenceGraph.NB_REFERENCE_PATHS];
+
+    for (int i = 0; i < SyntheticReferenceGraph.NB_REFERENCE_PATHS; i++) {
+      ReferencePath referencePath;
+      int indexModule;
+
+      referencePath = new ReferencePath();
+      indexModule = random.nextInt(nbModulesPerLayer);
+      referencePath.add(this.arrayReference[indexModule]);
+
+      while (this.arrayArrayIndexChild[indexModule].length != 0) {
+        indexModule = this.arrayArrayIndexChild[indexModule][random.nextInt(this.arrayArrayIndexChild[indexModule].length)];
+        referencePath.add(this.arrayReference[indexModule]);
+      }
+
+      this.arrayReferencePath[i] = referencePath;
+    }
+
+    listStringReferencePathMatcher = new ArrayList<String>();
+    listStringReferencePathMatcher.add("/" + this.arrayStringModuleVersion[0] + "->**");
+    listStringReferencePathMatcher.add("**->/" + this.arrayStringNodePath[nbModules - 1]);
+    listStringReferencePathMatcher.add("/(Domain0/.*)->**->/(Domain1/module-1.*)->**");
+    listStringReferencePathMatcher.add("**->/(Domain2/.*)->*->**->/:(S/.*)");
+    listStringReferencePathMatcher.add("**->/(Domain[0-7]/.*)->**->/(Domain3/.*)->**");
+    listStringReferencePathMatcher.add("**->org.acme.domain4:->**");
+    listStringReferencePathMatcher.add("**");
+    this.arrayStringReferencePathMatcher = listStringReferencePathMatcher.toArray(new String[listStringReferencePathMatcher.size()]);
+  }
+
+  /**
+   * @return Number of modules.
+   */
+  public int getNbModules() {
+    return this.arrayReference.length;
+  }
+
+  /**
+   * @return {@link ModuleVersion} literals, indexed by module index.
+   */
+  public String[] getArrayStringModuleVersion() {
+    return this.arrayStringModuleVersion;
+  }
+
+  /**
+   * @return {@link NodePath} literals, indexed by module index.
+   */
+  public String[] getArrayStringNodePath() {
+    return this.arrayStringNodePath;
+  }
+
+  /**
+   * @return {@link Version} literals, indexed by module index.
+   */
+  public String[] getArrayStringVersion() {
+    return this.arrayStringVersion;
+  }
+
+  /**
+   * @return {@link ArtifactVersion} literals, indexed by module index.
+   */
+  public String[] getArrayStringArtifactVersion() {
+    return this.arrayStringArtifactVersion;
+  }
+
+  /**
+   * @return {@link Reference}'s to each module, indexed by module index.
+   */
+  public Reference[] getArrayReference() {
+    return this.arrayReference;
+  }
+
+  /**
+   * @return Equal but distinct copies of the {@link Reference}'s returned by
+   *   {@link #getArrayReference}.
+   */
+  public Reference[] getArrayReferenceCopy() {
+    return this.arrayReferenceCopy;
+  }
+
+  /**
+   * @return Module indexes of the children of each module, indexed by module
+   *   index.
+   */
+  public int[][] getArrayArrayIndexChild() {
+    return this.arrayArrayIndexChild;
+  }
+
+  /**
+   * @return {@link ReferencePath}'s obtained by walking the graph from root
+   *   modules.
+   */
+  public ReferencePath[] getArrayReferencePath() {
+    return this.arrayReferencePath;
+  }
+
+  /**
+   * @return ReferencePathMatcherByElement literals.
+   */
+  public String[] getArrayStringReferencePathMatcher() {
+    return this.arrayStringReferencePathMatcher;
+  }
+}
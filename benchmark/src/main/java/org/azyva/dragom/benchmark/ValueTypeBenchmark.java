@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.azyva.dragom.model.ArtifactVersion;
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+import org.azyva.dragom.model.Version;
+import org.azyva.dragom.model.VersionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for parsing the value types {@link NodePath}, {@link Version},
+ * {@link ArtifactVersion} and {@link ModuleVersion}.
+ * <p>
+ * For each type, parsing using the constructor is compared with parsing using
+ * valueOf which returns canonical instances from a cache. Literals are taken in
+ * turn from the {@link SyntheticReferenceGraph} so that the working set is
+ * realistic.
+ * <p>
+ * For Version, ArtifactVersion and ModuleVersion, whose constructors now use
+ * hand-written parsers, the regex-based parsing they used before is reproduced
+ * by the *Regex benchmarks as a baseline. The resulting instance is created with
+ * the constructor taking the individual fields so that only the parsing differs.
+ *
+ * @author David Raymond
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValueTypeBenchmark {
+  /**
+   * Pattern formerly used by Version for parsing a Version literal.
+   */
+  private static final Pattern patternVersionLiteral = Pattern.compile("(D|S)/([a-zA-Z0-9\\.\\-_]+(?:/[a-zA-Z0-9\\.\\-_]+)*)");
+
+  /**
+   * Pattern formerly used by ArtifactVersion for parsing an ArtifactVersion
+   * literal.
+   */
+  private static final Pattern patternArtifactVersionLiteral = Pattern.compile("([a-zA-Z0-9\\.\\-_]+?)(-SNAPSHOT)?");
+
+  /**
+   * Pattern formerly used by ModuleVersion for parsing a ModuleVersion literal.
+   */
+  private static final Pattern patternModuleVersionLiteral = Pattern.compile("([^:]+):([^:]+)");
+
+  /**
+   * Index of the next literal.
+   */
+  private int index;
+
+  /**
+   * @param length Length of the array of literals.
+   * @return Index of the next literal.
+   */
+  private int nextIndex(int length) {
+    if (++this.index >= length) {
+      this.index = 0;
+    }
+
+    return this.index;
+  }
+
+  @Benchmark
+  public NodePath nodePathConstructor(GraphState graphState) {
+    String[] arrayStringNodePath;
+
+    arrayStringNodePath = graphState.syntheticReferenceGraph.getArrayStringNodePath();
+
+    return new NodePath(arrayStringNodePath[this.nextIndex(arrayStringNodePath.length)]);
+  }
+
+  @Benchmark
+  public NodePath nodePathValueOf(GraphState graphState) {
+    String[] arrayStringNodePath;
+
+    arrayStringNodePath = graphState.syntheticReferenceGraph.getArrayStringNodePath();
+
+    return NodePath.valueOf(arrayStringNodePath[this.nextIndex(arrayStringNodePath.length)]);
+  }
+
+  @Benchmark
+  public Version versionConstructor(GraphState graphState) {
+    String[] arrayStringVersion;
+
+    arrayStringVersion = graphState.syntheticReferenceGraph.getArrayStringVersion();
+
+    return new Version(arrayStringVersion[this.nextIndex(arrayStringVersion.length)]);
+  }
+
+  @Benchmark
+  public Version versionValueOf(GraphState graphState) {
+    String[] arrayStringVersion;
+
+    arrayStringVersion = graphState.syntheticReferenceGraph.getArrayStringVersion();
+
+    return Version.valueOf(arrayStringVersion[this.nextIndex(arrayStringVersion.length)]);
+  }
+
+  @Benchmark
+  public Version versionRegex(GraphState graphState) {
+    String[] arrayStringVersion;
+
+    arrayStringVersion = graphState.syntheticReferenceGraph.getArrayStringVersion();
+
+    return ValueTypeBenchmark.parseVersionRegex(arrayStringVersion[this.nextIndex(arrayStringVersion.length)]);
+  }
+
+  @Benchmark
+  public ArtifactVersion artifactVersionConstructor(GraphState graphState) {
+    String[] arrayStringArtifactVersion;
+
+    arrayStringArtifactVersion = graphState.syntheticReferenceGraph.getArrayStringArtifactVersion();
+
+    return new ArtifactVersion(arrayStringArtifactVersion[this.nextIndex(arrayStringArtifactVersion.length)]);
+  }
+
+  @Benchmark
+  public ArtifactVersion artifactVersionValueOf(GraphState graphState) {
+    String[] arrayStringArtifactVersion;
+
+    arrayStringArtifactVersion = graphState.syntheticReferenceGraph.getArrayStringArtifactVersion();
+
+    return ArtifactVersion.valueOf(arrayStringArtifactVersion[this.nextIndex(arrayStringArtifactVersion.length)]);
+  }
+
+  @Benchmark
+  public ArtifactVersion artifactVersionRegex(GraphState graphState) {
+    String[] arrayStringArtifactVersion;
+    String stringArtifactVersion;
+    Matcher matcher;
+
+    arrayStringArtifactVersion = graphState.syntheticReferenceGraph.getArrayStringArtifactVersion();
+    stringArtifactVersion = arrayStringArtifactVersion[this.nextIndex(arrayStringArtifactVersion.length)];
+    matcher = ValueTypeBenchmark.patternArtifactVersionLiteral.matcher(stringArtifactVersion);
+
+    if (!matcher.matches()) {
+      throw new RuntimeException("Invalid ArtifactVersion literal " + stringArtifactVersion + '.');
+    }
+
+    return new ArtifactVersion((matcher.group(2) != null) ? VersionType.DYNAMIC : VersionType.STATIC, matcher.group(1));
+  }
+
+  @Benchmark
+  public ModuleVersion moduleVersionConstructor(GraphState graphState) {
+    String[] arrayStringModuleVersion;
+
+    arrayStringModuleVersion = graphState.syntheticReferenceGraph.getArrayStringModuleVersion();
+
+    return new ModuleVersion(arrayStringModuleVersion[this.nextIndex(arrayStringModuleVersion.length)]);
+  }
+
+  @Benchmark
+  public ModuleVersion moduleVersionValueOf(GraphState graphState) {
+    String[] arrayStringModuleVersion;
+
+    arrayStringModuleVersion = graphState.syntheticReferenceGraph.getArrayStringModuleVersion();
+
+    return ModuleVersion.valueOf(arrayStringModuleVersion[this.nextIndex(arrayStringModuleVersion.length)]);
+  }
+
+  @Benchmark
+  public ModuleVersion moduleVersionRegex(GraphState graphState) {
+    String[] arrayStringModuleVersion;
+    String stringModuleVersion;
+    Matcher matcher;
+
+    arrayStringModuleVersion = graphState.syntheticReferenceGraph.getArrayStringModuleVersion();
+    stringModuleVersion = arrayStringModuleVersion[this.nextIndex(arrayStringModuleVersion.length)];
+    matcher = ValueTypeBenchmark.patternModuleVersionLiteral.matcher(stringModuleVersion);
+
+    if (!matcher.matches()) {
+      throw new RuntimeException("Invalid ModuleVersion literal " + stringModuleVersion + '.');
+    }
+
+    return new ModuleVersion(new NodePath(matcher.group(1)), ValueTypeBenchmark.parseVersionRegex(matcher.group(2)));
+  }
+
+  /**
+   * Parses a Version literal as Version did before it used a hand-written parser.
+   *
+   * @param stringVersion Version literal.
+   * @return Version.
+   */
+  private static Version parseVersionRegex(String stringVersion) {
+    Matcher matcher;
+
+    matcher = ValueTypeBenchmark.patternVersionLiteral.matcher(stringVersion);
+
+    if (!matcher.matches()) {
+      throw new RuntimeException("Invalid Version literal " + stringVersion + '.');
+    }
+
+    return new Version((matcher.group(1).charAt(0) == 'D') ? VersionType.DYNAMIC : VersionType.STATIC, matcher.group(2));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.apiutil;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of canonical instances of immutable value objects, keyed by some
+ * key, generally their literal form.
+ *
+ * <p>It is safe to use concurrently.
+ *
+ * <p>The cache is bounded in a very simple way: when the maximum size is reached,
+ * the cache is cleared. This is appropriate for the value objects of Dragom since
+ * the number of distinct instances used during a tool execution is generally well
+ * below the maximum size, so that the cache is essentially never cleared. If it
+ * is, the only consequence is that new canonical instances get created.
+ *
+ * <p>Since the cache can be cleared, canonical instances obtained from it must not
+ * be compared using reference equality. Value objects must still implement
+ * equals.
+ *
+ * @param <Key> Key type.
+ * @param <Value> Value type.
+ * @author David Raymond
+ */
+public class InternCache<Key, Value> {
+  /**
+   * Map of the canonical instances.
+   */
+  private ConcurrentHashMap<Key, Value> map;
+
+  /**
+   * Maximum number of entries.
+   */
+  private int maxSize;
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize Maximum number of entries.
+   */
+  public InternCache(int maxSize) {
+    this.map = new ConcurrentHashMap<Key, Value>();
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the canonical instance associated with a key.
+   *
+   * @param key Key.
+   * @return Canonical instance. null if none.
+   */
+  public Value get(Key key) {
+    return this.map.get(key);
+  }
+
+  /**
+   * Associates a canonical instance with a key, unless one is already associated
+   * with it.
+   *
+   * @param key Key.
+   * @param value Candidate canonical instance.
+   * @return Canonical instance, which is value if no instance was already
+   *   associated with the key.
+   */
+  public Value intern(Key key, Value value) {
+    Value valueExisting;
+
+    if (this.map.size() >= this.maxSize) {
+      this.map.clear();
+    }
+
+    valueExisting = this.map.putIfAbsent(key, value);
+
+    return (valueExisting != null) ? valueExisting : value;
+  }
+
+  /**
+   * Associates a canonical instance with a key, replacing any instance already
+   * associated with it.
+   * <p>
+   * Useful when the value associated with a key is no longer valid, such as a
+   * cleared weak reference.
+   *
+   * @param key Key.
+   * @param value Canonical instance.
+   */
+  public void put(Key key, Value value) {
+    if (this.map.size() >= this.maxSize) {
+      this.map.clear();
+    }
+
+    this.map.put(key, value);
+  }
+
+  /**
+   * Clears the cache.
+   */
+  public void clear() {
+    this.map.clear();
+  }
+}
@@ -22,8 +22,8 @@ package org.azyva.dragom.model;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import org.azyva.dragom.apiutil.InternCache;
 
 /**
  * Bundles the groupId and artifactId of an artifact.
@@ -36,6 +36,10 @@ import java.util.regex.Pattern;
  * Map keys.
  * </p>
  * ArtifactGroupId supports the literal form &lt;groupId&gt;:&lt;artifactId&gt;.
+ * <p>
+ * {@link #valueOf} returns canonical instances from a bounded cache and should be
+ * preferred to the constructor when parsing literals that are likely to be
+ * repeated.
  *
  * @author David Raymond
  */
@@ -51,9 +55,21 @@ public final class ArtifactGroupId {
   private static final ResourceBundle resourceBundle = ResourceBundle.getBundle(ArtifactGroupId.class.getName() + "ResourceBundle");
 
   /**
-   * Pattern for parsing an ArtifactGroupId literal.
+   * Regex describing a valid ArtifactGroupId literal.
+   * <p>
+   * Not used for actually parsing, but included in error messages.
+   */
+  private static final String REGEX_ARTIFACT_GROUP_ID_LITERAL = "([a-zA-Z][a-zA-Z0-9\\.\\-_]*):([a-zA-Z][a-zA-Z0-9\\.\\-_]*)";
+
+  /**
+   * Maximum number of canonical instances cached by {@link #valueOf}.
    */
-  private static final Pattern patternArtifactGroupIdLiteral = Pattern.compile("([a-zA-Z][a-zA-Z0-9\\.\\-_]*):([a-zA-Z][a-zA-Z0-9\\.\\-_]*)");
+  private static final int MAX_CACHED_INSTANCES = 8192;
+
+  /**
+   * Cache of canonical instances, keyed by ArtifactGroupId literal.
+   */
+  private static final InternCache<String, ArtifactGroupId> internCache = new InternCache<String, ArtifactGroupId>(ArtifactGroupId.MAX_CACHED_INSTANCES);
 
   /**
    * GroupId.
@@ -65,6 +81,11 @@ public final class ArtifactGroupId {
    */
   private String artifactId;
 
+  /**
+   * Precomputed hash code.
+   */
+  private int hashCode;
+
   /**
    * Constructor using the individual fields.
    *
@@ -78,6 +99,7 @@ public final class ArtifactGroupId {
 
     this.groupId = groupId;
     this.artifactId = artifactId;
+    this.hashCode = this.computeHashCode();
   }
 
   /**
@@ -88,22 +110,81 @@ public final class ArtifactGroupId {
    * @param stringArtifactGroupId ArtifactGroupId literal.
    */
   public ArtifactGroupId(String stringArtifactGroupId) {
-    Matcher matcher;
+    try {
+      int indexSeparator;
 
-    matcher = ArtifactGroupId.patternArtifactGroupIdLiteral.matcher(stringArtifactGroupId);
+      indexSeparator = stringArtifactGroupId.indexOf(':');
 
-    try {
-      if (!matcher.matches()) {
-        throw new ParseException(MessageFormat.format(ArtifactGroupId.resourceBundle.getString(ArtifactGroupId.MSG_PATTERN_KEY_ARTIFACT_GROUP_ID_PARSING_ERROR), stringArtifactGroupId, ArtifactGroupId.patternArtifactGroupIdLiteral), 0);
+      if (   (indexSeparator == -1)
+          || !ArtifactGroupId.isValidId(stringArtifactGroupId, 0, indexSeparator)
+          || !ArtifactGroupId.isValidId(stringArtifactGroupId, indexSeparator + 1, stringArtifactGroupId.length())) {
+
+        throw new ParseException(MessageFormat.format(ArtifactGroupId.resourceBundle.getString(ArtifactGroupId.MSG_PATTERN_KEY_ARTIFACT_GROUP_ID_PARSING_ERROR), stringArtifactGroupId, ArtifactGroupId.REGEX_ARTIFACT_GROUP_ID_LITERAL), 0);
       }
 
-      this.groupId = matcher.group(1);
-      this.artifactId = matcher.group(2);
+      this.groupId = stringArtifactGroupId.substring(0, indexSeparator);
+      this.artifactId = stringArtifactGroupId.substring(indexSeparator + 1);
+      this.hashCode = this.computeHashCode();
     } catch (ParseException pe) {
       throw new RuntimeException(pe);
     }
   }
 
+  /**
+   * Validates a groupId or artifactId within a String.
+   * <p>
+   * A groupId or artifactId must start with a letter and can contain letters,
+   * digits, ".", "-" and "_".
+   * <p>
+   * Also used by {@link ArtifactGroupIdVersion}.
+   *
+   * @param string String.
+   * @param indexStart Start index of the id.
+   * @param indexEnd End index of the id.
+   * @return Indicates if the id is valid.
+   */
+  static boolean isValidId(String string, int indexStart, int indexEnd) {
+    char character;
+
+    if (indexStart >= indexEnd) {
+      return false;
+    }
+
+    character = string.charAt(indexStart);
+
+    if (!(((character >= 'a') && (character <= 'z')) || ((character >= 'A') && (character <= 'Z')))) {
+      return false;
+    }
+
+    for (int i = indexStart + 1; i < indexEnd; i++) {
+      if (!Version.isVersionChar(string.charAt(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the canonical ArtifactGroupId corresponding to an ArtifactGroupId literal.
+   * <p>
+   * Throws RuntimeException if parsing fails.
+   *
+   * @param stringArtifactGroupId ArtifactGroupId literal.
+   * @return ArtifactGroupId.
+   */
+  public static ArtifactGroupId valueOf(String stringArtifactGroupId) {
+    ArtifactGroupId artifactGroupId;
+
+    artifactGroupId = ArtifactGroupId.internCache.get(stringArtifactGroupId);
+
+    if (artifactGroupId == null) {
+      artifactGroupId = ArtifactGroupId.internCache.intern(stringArtifactGroupId, new ArtifactGroupId(stringArtifactGroupId));
+    }
+
+    return artifactGroupId;
+  }
+
   /**
    * Parses an ArtifactGroupId literal.
    *
@@ -114,7 +195,7 @@ public final class ArtifactGroupId {
   public static ArtifactGroupId parse(String stringArtifactGroupId)
   throws ParseException {
     try {
-      return new ArtifactGroupId(stringArtifactGroupId);
+      return ArtifactGroupId.valueOf(stringArtifactGroupId);
     } catch (RuntimeException re) {
       if (re.getCause() instanceof ParseException) {
         throw (ParseException)re.getCause();
@@ -146,8 +227,12 @@ public final class ArtifactGroupId {
     return this.groupId + ':' + this.artifactId;
   }
 
-  @Override
-  public int hashCode() {
+  /**
+   * Computes the hash code, which is then kept since instances are immutable.
+   *
+   * @return Hash code.
+   */
+  private int computeHashCode() {
     final int prime = 31;
     int result;
 
@@ -158,6 +243,11 @@ public final class ArtifactGroupId {
     return result;
   }
 
+  @Override
+  public int hashCode() {
+    return this.hashCode;
+  }
+
   @Override
   public boolean equals(Object other) {
     ArtifactGroupId artifactGroupIdOther;
@@ -172,6 +262,10 @@ public final class ArtifactGroupId {
 
     artifactGroupIdOther = (ArtifactGroupId)other;
 
+    if (this.hashCode != artifactGroupIdOther.hashCode) {
+      return false;
+    }
+
     return this.groupId.equals(artifactGroupIdOther.groupId) && this.artifactId.equals(artifactGroupIdOther.artifactId);
   }
 }
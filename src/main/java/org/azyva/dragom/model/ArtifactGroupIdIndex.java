@@ -0,0 +1,703 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.azyva.dragom.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.azyva.dragom.execcontext.WorkspaceExecContext;
+import org.azyva.dragom.model.config.NodeType;
+import org.azyva.dragom.model.plugin.ArtifactInfoPlugin;
+import org.azyva.dragom.model.plugin.FindModuleByArtifactGroupIdPlugin;
+
+/**
+ * Model-wide inverted index from {@link ArtifactGroupId} to the {@link Module}
+ * whose build produces it.
+ * <p>
+ * Without such an index, {@link Model#findModuleByArtifactGroupId} goes through
+ * {@link FindModuleByArtifactGroupIdPlugin} and probes each candidate Module
+ * with {@link ArtifactInfoPlugin#isArtifactGroupIdProduced}. This is done for
+ * every dependency encountered, most of which are not even produced by a Module
+ * of the Model. Model implementations can first consult this index and fall
+ * back to the plugins only when it does not know the ArtifactGroupId, calling
+ * {@link #addModule} for a Module found this way.
+ * <p>
+ * The index is built from {@link ArtifactInfoPlugin#getSetDefiniteArtifactGroupIdProduced}
+ * of the Module's of the Model ({@link #build}). ArtifactGroupId's which are only
+ * possibly produced are not indexed. If the same ArtifactGroupId is produced by
+ * more than one Module, the first one indexed is kept.
+ * <p>
+ * The index also maps groupId's to Module's so that the Module's producing
+ * artifacts within a groupId prefix can be obtained
+ * ({@link #getListNodePathByGroupIdPrefix}).
+ * <p>
+ * A bloom filter of the indexed ArtifactGroupId's and groupId's acts as a negative
+ * cache: when it reports that an ArtifactGroupId is not indexed
+ * ({@link #isArtifactGroupIdPossiblyIndexed} returns false), this is definite and
+ * only requires a few bit tests, which is the common case for third-party
+ * dependencies. Model implementations can use this in
+ * {@link Model#isArtifactGroupIdIncluded}, but must still apply their own rules
+ * for Module's which are not created yet (dynamically created Module's) since
+ * they cannot be indexed.
+ * <p>
+ * The index can be persisted ({@link #write}) and reloaded ({@link #load}) so that
+ * it survives across tool executions. Since the Model may change between tool
+ * executions, a signature identifying the state of the Model (such as the
+ * revision of its configuration) is persisted along with it and a persisted index
+ * whose signature does not match is ignored. Module's are referenced by
+ * {@link NodePath} and resolved when needed, so that loading an index does not
+ * require creating the Module's.
+ * <p>
+ * It is safe to use concurrently.
+ *
+ * @author David Raymond
+ */
+public final class ArtifactGroupIdIndex {
+  /**
+   * Magic number at the start of a persisted index ("DRAI").
+   */
+  private static final int MAGIC = 0x44524149;
+
+  /**
+   * Version of the persisted format.
+   */
+  public static final int FORMAT_VERSION = 1;
+
+  /**
+   * Name of the file within the workspace metadata directory.
+   */
+  public static final String INDEX_FILE_NAME = "artifact-group-id.index";
+
+  /**
+   * Number of bits in the bloom filter per expected entry. With
+   * {@link #BLOOM_FILTER_NB_HASHES} hashes, this gives a false positive rate of
+   * about 1%.
+   */
+  private static final int BLOOM_FILTER_BITS_PER_ENTRY = 10;
+
+  /**
+   * Number of hashes of the bloom filter.
+   */
+  private static final int BLOOM_FILTER_NB_HASHES = 7;
+
+  /**
+   * Bloom filter.
+   * <p>
+   * Bits are only ever set, using atomic operations, so that an entry added by one
+   * thread is never lost and is visible to all threads once added.
+   */
+  private static final class BloomFilter {
+    /**
+     * Bits.
+     */
+    private AtomicLongArray atomicLongArrayBits;
+
+    /**
+     * Number of bits.
+     */
+    private long nbBits;
+
+    /**
+     * Number of entries for which the bloom filter was sized.
+     */
+    private int capacity;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Expected number of entries.
+     */
+    private BloomFilter(int capacity) {
+      int nbLongs;
+
+      this.capacity = Math.max(capacity, 64);
+      nbLongs = (int)((((long)this.capacity * ArtifactGroupIdIndex.BLOOM_FILTER_BITS_PER_ENTRY) + 63) / 64);
+      this.atomicLongArrayBits = new AtomicLongArray(nbLongs);
+      this.nbBits = (long)nbLongs * 64;
+    }
+
+    /**
+     * Adds an entry.
+     *
+     * @param string Entry.
+     */
+    private void add(String string) {
+      long hash;
+      int hash1;
+      int hash2;
+
+      hash = BloomFilter.hash(string);
+      hash1 = (int)hash;
+      hash2 = (int)(hash >>> 32);
+
+      for (int i = 0; i < ArtifactGroupIdIndex.BLOOM_FILTER_NB_HASHES; i++) {
+        long indexBit;
+        int indexLong;
+        long mask;
+        long bits;
+
+        indexBit = ((hash1 + ((long)i * hash2)) & 0x7fffffffffffffffL) % this.nbBits;
+        indexLong = (int)(indexBit >>> 6);
+        mask = 1L << (indexBit & 63);
+
+        do {
+          bits = this.atomicLongArrayBits.get(indexLong);
+        } while (((bits & mask) == 0) && !this.atomicLongArrayBits.compareAndSet(indexLong, bits, bits | mask));
+      }
+    }
+
+    /**
+     * Verifies if an entry was possibly added.
+     *
+     * @param string Entry.
+     * @return false if the entry was definitely not added.
+     */
+    private boolean mightContain(String string) {
+      long hash;
+      int hash1;
+      int hash2;
+
+      hash = BloomFilter.hash(string);
+      hash1 = (int)hash;
+      hash2 = (int)(hash >>> 32);
+
+      for (int i = 0; i < ArtifactGroupIdIndex.BLOOM_FILTER_NB_HASHES; i++) {
+        long indexBit;
+
+        indexBit = ((hash1 + ((long)i * hash2)) & 0x7fffffffffffffffL) % this.nbBits;
+
+        if ((this.atomicLongArrayBits.get((int)(indexBit >>> 6)) & (1L << (indexBit & 63))) == 0) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of a String, which is split into the two
+     * 32-bit hashes used for double hashing.
+     *
+     * @param string String.
+     * @return Hash.
+     */
+    private static long hash(String string) {
+      long hash;
+
+      hash = 0xcbf29ce484222325L;
+
+      for (int i = 0; i < string.length(); i++) {
+        hash ^= string.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+
+      // FNV-1a mixes the low bits poorly for short strings. Finish with the
+      // MurmurHash3 fmix64 step.
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+
+      return hash;
+    }
+  }
+
+  /**
+   * Model, used to resolve NodePath's to Module's.
+   */
+  private Model model;
+
+  /**
+   * Signature of the state of the Model for which the index was built.
+   */
+  private String signature;
+
+  /**
+   * Map of ArtifactGroupId's to the NodePath of the Module producing them.
+   */
+  private ConcurrentHashMap<ArtifactGroupId, NodePath> mapArtifactGroupIdNodePath;
+
+  /**
+   * Map of groupId's to the NodePath's of the Module's producing artifacts in
+   * them. Sorted to support prefix queries.
+   */
+  private ConcurrentSkipListMap<String, Set<NodePath>> mapGroupIdSetNodePath;
+
+  /**
+   * Bloom filter of the indexed ArtifactGroupId's and groupId's. Replaced by a
+   * larger one when its capacity is exceeded.
+   */
+  private volatile BloomFilter bloomFilter;
+
+  /**
+   * Coordinates additions with the replacement of the bloom filter. Additions,
+   * which can be concurrent, hold the read lock while they update the Map's and
+   * the bloom filter. Replacing the bloom filter holds the write lock, so that
+   * no addition can reach only the replaced bloom filter. Lookups do not lock.
+   */
+  private ReadWriteLock readWriteLockBloomFilter;
+
+  /**
+   * Constructor for an empty index.
+   *
+   * @param model Model.
+   * @param signature Signature of the state of the Model. Can be null if the index
+   *   is not meant to be persisted.
+   * @param expectedSize Expected number of ArtifactGroupId's, used to size the
+   *   bloom filter.
+   */
+  public ArtifactGroupIdIndex(Model model, String signature, int expectedSize) {
+    this.model = model;
+    this.signature = signature;
+    this.mapArtifactGroupIdNodePath = new ConcurrentHashMap<ArtifactGroupId, NodePath>();
+    this.mapGroupIdSetNodePath = new ConcurrentSkipListMap<String, Set<NodePath>>();
+    this.bloomFilter = new BloomFilter(expectedSize * 2); // * 2 since groupId's are also added.
+    this.readWriteLockBloomFilter = new ReentrantReadWriteLock();
+  }
+
+  /**
+   * Builds the index by visiting all the Module's of a Model.
+   * <p>
+   * Only Module's which exist in the Model are visited. Module's which would be
+   * created dynamically are not.
+   *
+   * @param model Model.
+   * @param signature Signature of the state of the Model. Can be null if the index
+   *   is not meant to be persisted.
+   * @return ArtifactGroupIdIndex.
+   */
+  public static ArtifactGroupIdIndex build(Model model, String signature) {
+    final List<Module> listModule;
+    ArtifactGroupIdIndex artifactGroupIdIndex;
+    int expectedSize;
+
+    listModule = new ArrayList<Module>();
+
+    model.getClassificationNodeRoot().traverseNodeHierarchy(NodeType.MODULE, false, new NodeVisitor() {
+      @Override
+      public NodeVisitor.VisitControl visitNode(NodeVisitor.VisitAction visitAction, Node node) {
+        if ((visitAction == NodeVisitor.VisitAction.VISIT) && node.isNodePluginExists(ArtifactInfoPlugin.class, null)) {
+          listModule.add((Module)node);
+        }
+
+        return NodeVisitor.VisitControl.CONTINUE;
+      }
+    });
+
+    // The number of ArtifactGroupId's is not known before the plugins are queried,
+    // but there is generally a few per Module.
+    expectedSize = listModule.size() * 4;
+    artifactGroupIdIndex = new ArtifactGroupIdIndex(model, signature, expectedSize);
+
+    for (Module module: listModule) {
+      artifactGroupIdIndex.addModule(module);
+    }
+
+    return artifactGroupIdIndex;
+  }
+
+  /**
+   * Indexes the ArtifactGroupId's definitely produced by a Module.
+   * <p>
+   * Can be called after a Module is found by other means, such as when it is
+   * created dynamically.
+   *
+   * @param module Module. Must have an {@link ArtifactInfoPlugin}.
+   */
+  public void addModule(Module module) {
+    NodePath nodePath;
+    ArtifactInfoPlugin artifactInfoPlugin;
+
+    nodePath = module.getNodePath();
+    artifactInfoPlugin = module.getNodePlugin(ArtifactInfoPlugin.class, null);
+
+    for (ArtifactGroupId artifactGroupId: artifactInfoPlugin.getSetDefiniteArtifactGroupIdProduced()) {
+      this.add(artifactGroupId, nodePath);
+    }
+  }
+
+  /**
+   * Indexes an ArtifactGroupId.
+   *
+   * @param artifactGroupId ArtifactGroupId.
+   * @param nodePath NodePath of the Module producing it.
+   */
+  private void add(ArtifactGroupId artifactGroupId, NodePath nodePath) {
+    boolean indGrow;
+
+    this.readWriteLockBloomFilter.readLock().lock();
+
+    try {
+      Set<NodePath> setNodePath;
+      BloomFilter bloomFilter;
+
+      if (this.mapArtifactGroupIdNodePath.putIfAbsent(artifactGroupId, nodePath) != null) {
+        return;
+      }
+
+      setNodePath = this.mapGroupIdSetNodePath.get(artifactGroupId.getGroupId());
+
+      if (setNodePath == null) {
+        Set<NodePath> setNodePathExisting;
+
+        setNodePath = Collections.newSetFromMap(new ConcurrentHashMap<NodePath, Boolean>());
+        setNodePathExisting = this.mapGroupIdSetNodePath.putIfAbsent(artifactGroupId.getGroupId(), setNodePath);
+
+        if (setNodePathExisting != null) {
+          setNodePath = setNodePathExisting;
+        }
+      }
+
+      setNodePath.add(nodePath);
+
+      bloomFilter = this.bloomFilter;
+      bloomFilter.add(artifactGroupId.toString());
+      bloomFilter.add(artifactGroupId.getGroupId());
+
+      indGrow = (this.mapArtifactGroupIdNodePath.size() + this.mapGroupIdSetNodePath.size()) > bloomFilter.capacity;
+    } finally {
+      this.readWriteLockBloomFilter.readLock().unlock();
+    }
+
+    if (indGrow) {
+      this.growBloomFilter();
+    }
+  }
+
+  /**
+   * Replaces the bloom filter by one with twice the capacity if its capacity is
+   * exceeded.
+   * <p>
+   * The new bloom filter is populated from the Map's while holding the write lock,
+   * so that it includes all the entries added before it is published.
+   */
+  private void growBloomFilter() {
+    this.readWriteLockBloomFilter.writeLock().lock();
+
+    try {
+      BloomFilter bloomFilterNew;
+
+      // Another thread may have grown the bloom filter in the meantime.
+      if ((this.mapArtifactGroupIdNodePath.size() + this.mapGroupIdSetNodePath.size()) <= this.bloomFilter.capacity) {
+        return;
+      }
+
+      bloomFilterNew = new BloomFilter(this.bloomFilter.capacity * 2);
+
+      for (ArtifactGroupId artifactGroupId: this.mapArtifactGroupIdNodePath.keySet()) {
+        bloomFilterNew.add(artifactGroupId.toString());
+      }
+
+      for (String groupId: this.mapGroupIdSetNodePath.keySet()) {
+        bloomFilterNew.add(groupId);
+      }
+
+      this.bloomFilter = bloomFilterNew;
+    } finally {
+      this.readWriteLockBloomFilter.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Verifies if an ArtifactGroupId is possibly indexed.
+   * <p>
+   * false is definite: no indexed Module produces the ArtifactGroupId. true means
+   * the index must be consulted with {@link #getNodePath} (about 1% false
+   * positives).
+   *
+   * @param artifactGroupId ArtifactGroupId.
+   * @return See description.
+   */
+  public boolean isArtifactGroupIdPossiblyIndexed(ArtifactGroupId artifactGroupId) {
+    return this.bloomFilter.mightContain(artifactGroupId.toString());
+  }
+
+  /**
+   * Verifies if a groupId is possibly indexed. Same semantics as
+   * {@link #isArtifactGroupIdPossiblyIndexed}.
+   *
+   * @param groupId GroupId.
+   * @return See description.
+   */
+  public boolean isGroupIdPossiblyIndexed(String groupId) {
+    return this.bloomFilter.mightContain(groupId);
+  }
+
+  /**
+   * Returns the NodePath of the Module producing an ArtifactGroupId.
+   *
+   * @param artifactGroupId ArtifactGroupId.
+   * @return NodePath. null if the ArtifactGroupId is not indexed.
+   */
+  public NodePath getNodePath(ArtifactGroupId artifactGroupId) {
+    if (!this.bloomFilter.mightContain(artifactGroupId.toString())) {
+      return null;
+    }
+
+    return this.mapArtifactGroupIdNodePath.get(artifactGroupId);
+  }
+
+  /**
+   * Returns the Module producing an ArtifactGroupId.
+   * <p>
+   * If the Module no longer exists in the Model (which can happen with an index
+   * loaded from a previous tool execution), the ArtifactGroupId is removed from
+   * the index and null is returned.
+   *
+   * @param artifactGroupId ArtifactGroupId.
+   * @return Module. null if the ArtifactGroupId is not indexed, in which case the
+   *   caller needs to find the Module by other means.
+   */
+  public Module findModule(ArtifactGroupId artifactGroupId) {
+    NodePath nodePath;
+    Module module;
+
+    nodePath = this.getNodePath(artifactGroupId);
+
+    if (nodePath == null) {
+      return null;
+    }
+
+    module = this.model.getModule(nodePath);
+
+    if (module == null) {
+      this.removeNodePath(nodePath);
+    }
+
+    return module;
+  }
+
+  /**
+   * Removes all the entries of a Module which no longer exists.
+   * <p>
+   * This requires scanning the Map's, but is expected to be rare.
+   * <p>
+   * The bloom filter cannot remove entries, but a false positive for a removed
+   * entry is harmless.
+   *
+   * @param nodePath NodePath of the Module.
+   */
+  private void removeNodePath(NodePath nodePath) {
+    Iterator<Map.Entry<ArtifactGroupId, NodePath>> iteratorMapEntry;
+
+    iteratorMapEntry = this.mapArtifactGroupIdNodePath.entrySet().iterator();
+
+    while (iteratorMapEntry.hasNext()) {
+      if (iteratorMapEntry.next().getValue().equals(nodePath)) {
+        iteratorMapEntry.remove();
+      }
+    }
+
+    for (Set<NodePath> setNodePath: this.mapGroupIdSetNodePath.values()) {
+      setNodePath.remove(nodePath);
+    }
+  }
+
+  /**
+   * Returns the NodePath's of the Module's producing artifacts whose groupId
+   * starts with a given prefix.
+   *
+   * @param groupIdPrefix GroupId prefix. The empty String returns all Module's.
+   * @return List of NodePath's, without duplicates, in groupId order.
+   */
+  public List<NodePath> getListNodePathByGroupIdPrefix(String groupIdPrefix) {
+    Map<String, Set<NodePath>> mapGroupIdSetNodePath;
+    Set<NodePath> setNodePath;
+
+    if (groupIdPrefix.length() == 0) {
+      mapGroupIdSetNodePath = this.mapGroupIdSetNodePath;
+    } else {
+      // All groupId's starting with the prefix are between the prefix, inclusive,
+      // and the prefix with its last character incremented, exclusive.
+      mapGroupIdSetNodePath = this.mapGroupIdSetNodePath.subMap(groupIdPrefix, groupIdPrefix.substring(0, groupIdPrefix.length() - 1) + (char)(groupIdPrefix.charAt(groupIdPrefix.length() - 1) + 1));
+    }
+
+    setNodePath = new LinkedHashSet<NodePath>();
+
+    for (Set<NodePath> setNodePathGroupId: mapGroupIdSetNodePath.values()) {
+      setNodePath.addAll(setNodePathGroupId);
+    }
+
+    return new ArrayList<NodePath>(setNodePath);
+  }
+
+  /**
+   * @return Signature of the state of the Model for which the index was built.
+   */
+  public String getSignature() {
+    return this.signature;
+  }
+
+  /**
+   * @return Number of indexed ArtifactGroupId's.
+   */
+  public int size() {
+    return this.mapArtifactGroupIdNodePath.size();
+  }
+
+  /**
+   * Returns the Path of the persisted index within the workspace metadata
+   * directory.
+   *
+   * @param workspaceExecContext WorkspaceExecContext.
+   * @return Path.
+   */
+  public static Path getPathIndex(WorkspaceExecContext workspaceExecContext) {
+    return workspaceExecContext.getPathMetadataDir().resolve(ArtifactGroupIdIndex.INDEX_FILE_NAME);
+  }
+
+  /**
+   * Persists the index.
+   * <p>
+   * The index is first written to a temporary file which then replaces the index
+   * file atomically, so that a concurrent or interrupted run never sees a partial
+   * index.
+   * <p>
+   * Only the ArtifactGroupId's and the NodePath's of their Module's are persisted.
+   * The groupId Map and the bloom filter are rebuilt when loaded.
+   *
+   * @param pathIndex Path of the index.
+   */
+  public void write(Path pathIndex) {
+    Path pathTemp;
+
+    if (this.signature == null) {
+      throw new RuntimeException("An ArtifactGroupIdIndex without signature cannot be persisted.");
+    }
+
+    try {
+      Files.createDirectories(pathIndex.toAbsolutePath().getParent());
+
+      // A unique temporary file so that concurrent tool executions do not write to
+      // the same one.
+      pathTemp = Files.createTempFile(pathIndex.toAbsolutePath().getParent(), pathIndex.getFileName().toString(), ".tmp");
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
+    try {
+      try (OutputStream outputStream = Files.newOutputStream(pathTemp)) {
+        DataOutputStream dataOutputStream;
+        List<Map.Entry<ArtifactGroupId, NodePath>> listMapEntry;
+
+        dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        // The Map can be modified concurrently, so the count must be taken from a
+        // copy.
+        listMapEntry = new ArrayList<Map.Entry<ArtifactGroupId, NodePath>>(this.mapArtifactGroupIdNodePath.entrySet());
+
+        dataOutputStream.writeInt(ArtifactGroupIdIndex.MAGIC);
+        dataOutputStream.writeInt(ArtifactGroupIdIndex.FORMAT_VERSION);
+        dataOutputStream.writeUTF(this.signature);
+        dataOutputStream.writeInt(listMapEntry.size());
+
+        for (Map.Entry<ArtifactGroupId, NodePath> mapEntry: listMapEntry) {
+          dataOutputStream.writeUTF(mapEntry.getKey().toString());
+          dataOutputStream.writeUTF(mapEntry.getValue().toString());
+        }
+
+        dataOutputStream.flush();
+      }
+
+      Files.move(pathTemp, pathIndex, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      try {
+        Files.deleteIfExists(pathTemp);
+      } catch (IOException ioe2) {
+        ioe.addSuppressed(ioe2);
+      }
+
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  /**
+   * Loads a persisted index if it exists and its signature matches.
+   *
+   * @param model Model.
+   * @param signature Signature of the current state of the Model.
+   * @param pathIndex Path of the index.
+   * @return ArtifactGroupIdIndex. null if there is no persisted index or if its
+   *   signature does not match, in which case the caller should {@link #build}
+   *   one.
+   */
+  public static ArtifactGroupIdIndex load(Model model, String signature, Path pathIndex) {
+    if (!Files.exists(pathIndex)) {
+      return null;
+    }
+
+    try (InputStream inputStream = Files.newInputStream(pathIndex)) {
+      DataInputStream dataInputStream;
+      int nbEntries;
+      ArtifactGroupIdIndex artifactGroupIdIndex;
+
+      dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+
+      if (dataInputStream.readInt() != ArtifactGroupIdIndex.MAGIC) {
+        throw new RuntimeException("Not an ArtifactGroupIdIndex: " + pathIndex + '.');
+      }
+
+      if (dataInputStream.readInt() != ArtifactGroupIdIndex.FORMAT_VERSION) {
+        // A format from another version of Dragom is simply rebuilt.
+        return null;
+      }
+
+      if (!dataInputStream.readUTF().equals(signature)) {
+        return null;
+      }
+
+      nbEntries = dataInputStream.readInt();
+      artifactGroupIdIndex = new ArtifactGroupIdIndex(model, signature, nbEntries);
+
+      for (int i = 0; i < nbEntries; i++) {
+        ArtifactGroupId artifactGroupId;
+        NodePath nodePath;
+
+        artifactGroupId = ArtifactGroupId.valueOf(dataInputStream.readUTF());
+        nodePath = NodePath.valueOf(dataInputStream.readUTF());
+        artifactGroupIdIndex.add(artifactGroupId, nodePath);
+      }
+
+      return artifactGroupIdIndex;
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+}
@@ -22,8 +22,8 @@ package org.azyva.dragom.model;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import org.azyva.dragom.apiutil.InternCache;
 
 /**
  * Bundles the groupId, artifactId and version of an artifact.
@@ -37,6 +37,10 @@ import java.util.regex.Pattern;
  * </p>
  * ArtifactGroupIdVersion supports the literal form
  * &lt;groupId&gt;:&lt;artifactId&gt;:&lt;version&gt;.
+ * <p>
+ * {@link #valueOf} returns canonical instances from a bounded cache and should be
+ * preferred to the constructor when parsing literals that are likely to be
+ * repeated.
  *
  * @author David Raymond
  */
@@ -52,9 +56,21 @@ public final class ArtifactGroupIdVersion {
   private static final ResourceBundle resourceBundle = ResourceBundle.getBundle(ArtifactGroupIdVersion.class.getName() + "ResourceBundle");
 
   /**
-   * Pattern for parsing an ArtifactGroupId literal.
+   * Regex describing a valid ArtifactGroupIdVersion literal.
+   * <p>
+   * Not used for actually parsing, but included in error messages.
+   */
+  private static final String REGEX_ARTIFACT_GROUP_ID_VERSION_LITERAL = "([a-zA-Z][a-zA-Z0-9\\.\\-_]*):([a-zA-Z][a-zA-Z0-9\\.\\-_]*):([a-zA-Z0-9\\.\\-_]+)(-SNAPSHOT)?";
+
+  /**
+   * Maximum number of canonical instances cached by {@link #valueOf}.
    */
-  private static final Pattern patternArtifactGroupIdLiteral = Pattern.compile("([a-zA-Z][a-zA-Z0-9\\.\\-_]*):([a-zA-Z][a-zA-Z0-9\\.\\-_]*):([a-zA-Z0-9\\.\\-_]+)(-SNAPSHOT)?");
+  private static final int MAX_CACHED_INSTANCES = 8192;
+
+  /**
+   * Cache of canonical instances, keyed by ArtifactGroupIdVersion literal.
+   */
+  private static final InternCache<String, ArtifactGroupIdVersion> internCache = new InternCache<String, ArtifactGroupIdVersion>(ArtifactGroupIdVersion.MAX_CACHED_INSTANCES);
 
   /**
    * ArtifactGroupId.
@@ -66,6 +82,11 @@ public final class ArtifactGroupIdVersion {
    */
   private ArtifactVersion artifactVersion;
 
+  /**
+   * Precomputed hash code.
+   */
+  private int hashCode;
+
   /**
    * Constructor using the individual fields.
    *
@@ -79,6 +100,7 @@ public final class ArtifactGroupIdVersion {
 
     this.artifactGroupId = artifactGroupId;
     this.artifactVersion = artifactVersion;
+    this.hashCode = this.computeHashCode();
   }
 
   /**
@@ -89,22 +111,57 @@ public final class ArtifactGroupIdVersion {
    * @param stringArtifactGroupIdVersion ArtifactGroupIdVersion literal.
    */
   public ArtifactGroupIdVersion(String stringArtifactGroupIdVersion) {
-    Matcher matcher;
+    try {
+      int indexSeparator1;
+      int indexSeparator2;
+      int length;
 
-    matcher = ArtifactGroupIdVersion.patternArtifactGroupIdLiteral.matcher(stringArtifactGroupIdVersion);
+      indexSeparator1 = stringArtifactGroupIdVersion.indexOf(':');
+      indexSeparator2 = (indexSeparator1 == -1) ? -1 : stringArtifactGroupIdVersion.indexOf(':', indexSeparator1 + 1);
+      length = stringArtifactGroupIdVersion.length();
 
-    try {
-      if (!matcher.matches()) {
-        throw new ParseException(MessageFormat.format(ArtifactGroupIdVersion.resourceBundle.getString(ArtifactGroupIdVersion.MSG_PATTERN_KEY_ARTIFACT_GROUP_ID_VERSION_PARSING_ERROR), stringArtifactGroupIdVersion, ArtifactGroupIdVersion.patternArtifactGroupIdLiteral), 0);
+      if (   (indexSeparator2 == -1)
+          || !ArtifactGroupId.isValidId(stringArtifactGroupIdVersion, 0, indexSeparator1)
+          || !ArtifactGroupId.isValidId(stringArtifactGroupIdVersion, indexSeparator1 + 1, indexSeparator2)
+          || (indexSeparator2 == (length - 1))) {
+
+        throw new ParseException(MessageFormat.format(ArtifactGroupIdVersion.resourceBundle.getString(ArtifactGroupIdVersion.MSG_PATTERN_KEY_ARTIFACT_GROUP_ID_VERSION_PARSING_ERROR), stringArtifactGroupIdVersion, ArtifactGroupIdVersion.REGEX_ARTIFACT_GROUP_ID_VERSION_LITERAL), 0);
+      }
+
+      for (int i = indexSeparator2 + 1; i < length; i++) {
+        if (!Version.isVersionChar(stringArtifactGroupIdVersion.charAt(i))) {
+          throw new ParseException(MessageFormat.format(ArtifactGroupIdVersion.resourceBundle.getString(ArtifactGroupIdVersion.MSG_PATTERN_KEY_ARTIFACT_GROUP_ID_VERSION_PARSING_ERROR), stringArtifactGroupIdVersion, ArtifactGroupIdVersion.REGEX_ARTIFACT_GROUP_ID_VERSION_LITERAL), i);
+        }
       }
 
-      this.artifactGroupId = new ArtifactGroupId(matcher.group(1), matcher.group(2));
-      this.artifactVersion = new ArtifactVersion(matcher.group(3));
+      this.artifactGroupId = ArtifactGroupId.valueOf(stringArtifactGroupIdVersion.substring(0, indexSeparator2));
+      this.artifactVersion = ArtifactVersion.valueOf(stringArtifactGroupIdVersion.substring(indexSeparator2 + 1));
+      this.hashCode = this.computeHashCode();
     } catch (ParseException pe) {
       throw new RuntimeException(pe);
     }
   }
 
+  /**
+   * Returns the canonical ArtifactGroupIdVersion corresponding to an ArtifactGroupIdVersion literal.
+   * <p>
+   * Throws RuntimeException if parsing fails.
+   *
+   * @param stringArtifactGroupIdVersion ArtifactGroupIdVersion literal.
+   * @return ArtifactGroupIdVersion.
+   */
+  public static ArtifactGroupIdVersion valueOf(String stringArtifactGroupIdVersion) {
+    ArtifactGroupIdVersion artifactGroupIdVersion;
+
+    artifactGroupIdVersion = ArtifactGroupIdVersion.internCache.get(stringArtifactGroupIdVersion);
+
+    if (artifactGroupIdVersion == null) {
+      artifactGroupIdVersion = ArtifactGroupIdVersion.internCache.intern(stringArtifactGroupIdVersion, new ArtifactGroupIdVersion(stringArtifactGroupIdVersion));
+    }
+
+    return artifactGroupIdVersion;
+  }
+
   /**
    * Parses an ArtifactGroupId literal.
    *
@@ -115,7 +172,7 @@ public final class ArtifactGroupIdVersion {
   public static ArtifactGroupIdVersion parse(String stringArtifactGroupId)
   throws ParseException {
     try {
-      return new ArtifactGroupIdVersion(stringArtifactGroupId);
+      return ArtifactGroupIdVersion.valueOf(stringArtifactGroupId);
     } catch (RuntimeException re) {
       if (re.getCause() instanceof ParseException) {
         throw (ParseException)re.getCause();
@@ -147,8 +204,12 @@ public final class ArtifactGroupIdVersion {
     return this.artifactGroupId.toString() + ':' + this.artifactVersion;
   }
 
-  @Override
-  public int hashCode() {
+  /**
+   * Computes the hash code, which is then kept since instances are immutable.
+   *
+   * @return Hash code.
+   */
+  private int computeHashCode() {
     final int prime = 31;
     int result;
 
@@ -159,6 +220,11 @@ public final class ArtifactGroupIdVersion {
     return result;
   }
 
+  @Override
+  public int hashCode() {
+    return this.hashCode;
+  }
+
   @Override
   public boolean equals(Object other) {
     ArtifactGroupIdVersion artifactGroupIdVersionOther;
@@ -173,6 +239,10 @@ public final class ArtifactGroupIdVersion {
 
     artifactGroupIdVersionOther = (ArtifactGroupIdVersion)other;
 
+    if (this.hashCode != artifactGroupIdVersionOther.hashCode) {
+      return false;
+    }
+
     return this.artifactGroupId.equals(artifactGroupIdVersionOther.artifactGroupId) && this.artifactVersion.equals(artifactGroupIdVersionOther.artifactVersion);
   }
 }
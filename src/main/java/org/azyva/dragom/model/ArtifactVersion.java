@@ -22,8 +22,8 @@ package org.azyva.dragom.model;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import org.azyva.dragom.apiutil.InternCache;
 
 import org.azyva.dragom.model.plugin.ArtifactVersionMapperPlugin;
 
@@ -62,6 +62,10 @@ import org.azyva.dragom.model.plugin.ArtifactVersionMapperPlugin;
  * is sufficiently generic to not be considered Maven-specific. Time and
  * experience will tell if this proves wrong and adjustments may be required in
  * the future to keep things clean.
+ * <p>
+ * {@link #valueOf} returns canonical instances from a bounded cache and should be
+ * preferred to the constructor when parsing literals that are likely to be
+ * repeated.
  *
  * @author David Raymond
  */
@@ -82,9 +86,21 @@ public final class ArtifactVersion {
   private static final ResourceBundle resourceBundle = ResourceBundle.getBundle(ArtifactVersion.class.getName() + "ResourceBundle");
 
   /**
-   * Pattern for parsing an ArtifactVersion literal.
+   * Regex describing a valid ArtifactVersion literal.
+   * <p>
+   * Not used for actually parsing, but included in error messages.
+   */
+  private static final String REGEX_ARTIFACT_VERSION_LITERAL = "([a-zA-Z0-9\\.\\-_]+?)(-SNAPSHOT)?";
+
+  /**
+   * Maximum number of canonical instances cached by {@link #valueOf}.
    */
-  private static final Pattern patternArtifactVersionLiteral = Pattern.compile("([a-zA-Z0-9\\.\\-_]+?)(-SNAPSHOT)?");
+  private static final int MAX_CACHED_INSTANCES = 8192;
+
+  /**
+   * Cache of canonical instances, keyed by ArtifactVersion literal.
+   */
+  private static final InternCache<String, ArtifactVersion> internCache = new InternCache<String, ArtifactVersion>(ArtifactVersion.MAX_CACHED_INSTANCES);
 
   /**
    * VersionType.
@@ -96,6 +112,11 @@ public final class ArtifactVersion {
    */
   private String version;
 
+  /**
+   * Precomputed hash code.
+   */
+  private int hashCode;
+
   /**
    * Constructor using the individual fields.
    *
@@ -114,6 +135,7 @@ public final class ArtifactVersion {
 
     this.versionType = versionType;
     this.version = version;
+    this.hashCode = this.computeHashCode();
   }
 
   /**
@@ -124,27 +146,57 @@ public final class ArtifactVersion {
    * @param stringArtifactVersion ArtifactVersion literal.
    */
   public ArtifactVersion(String stringArtifactVersion) {
-    Matcher matcher;
+    try {
+      int length;
 
-    matcher = ArtifactVersion.patternArtifactVersionLiteral.matcher(stringArtifactVersion);
+      length = stringArtifactVersion.length();
 
-    try {
-      if (!matcher.matches()) {
-        throw new ParseException(MessageFormat.format(ArtifactVersion.resourceBundle.getString(ArtifactVersion.MSG_PATTERN_KEY_ARTIFACT_VERSION_PARSING_ERROR), stringArtifactVersion, ArtifactVersion.patternArtifactVersionLiteral), 0);
+      if (length == 0) {
+        throw new ParseException(MessageFormat.format(ArtifactVersion.resourceBundle.getString(ArtifactVersion.MSG_PATTERN_KEY_ARTIFACT_VERSION_PARSING_ERROR), stringArtifactVersion, ArtifactVersion.REGEX_ARTIFACT_VERSION_LITERAL), 0);
       }
 
-      this.version = matcher.group(1);
+      for (int i = 0; i < length; i++) {
+        if (!Version.isVersionChar(stringArtifactVersion.charAt(i))) {
+          throw new ParseException(MessageFormat.format(ArtifactVersion.resourceBundle.getString(ArtifactVersion.MSG_PATTERN_KEY_ARTIFACT_VERSION_PARSING_ERROR), stringArtifactVersion, ArtifactVersion.REGEX_ARTIFACT_VERSION_LITERAL), i);
+        }
+      }
 
-      if (matcher.group(2) != null) {
+      // The version part must contain at least one character, so that "-SNAPSHOT" by
+      // itself is a static ArtifactVersion.
+      if ((length > ArtifactVersion.DYNAMIC_VERSION_SUFFIX.length()) && stringArtifactVersion.endsWith(ArtifactVersion.DYNAMIC_VERSION_SUFFIX)) {
+        this.version = stringArtifactVersion.substring(0, length - ArtifactVersion.DYNAMIC_VERSION_SUFFIX.length());
         this.versionType = VersionType.DYNAMIC;
       } else {
+        this.version = stringArtifactVersion;
         this.versionType = VersionType.STATIC;
       }
+
+      this.hashCode = this.computeHashCode();
     } catch (ParseException pe) {
       throw new RuntimeException(pe);
     }
   }
 
+  /**
+   * Returns the canonical ArtifactVersion corresponding to an ArtifactVersion literal.
+   * <p>
+   * Throws RuntimeException if parsing fails.
+   *
+   * @param stringArtifactVersion ArtifactVersion literal.
+   * @return ArtifactVersion.
+   */
+  public static ArtifactVersion valueOf(String stringArtifactVersion) {
+    ArtifactVersion artifactVersion;
+
+    artifactVersion = ArtifactVersion.internCache.get(stringArtifactVersion);
+
+    if (artifactVersion == null) {
+      artifactVersion = ArtifactVersion.internCache.intern(stringArtifactVersion, new ArtifactVersion(stringArtifactVersion));
+    }
+
+    return artifactVersion;
+  }
+
   /**
    * Parses an ArtifactVersion literal.
    *
@@ -155,7 +207,7 @@ public final class ArtifactVersion {
   public static ArtifactVersion parse(String stringArtifactVersion)
   throws ParseException {
     try {
-      return new ArtifactVersion(stringArtifactVersion);
+      return ArtifactVersion.valueOf(stringArtifactVersion);
     } catch (RuntimeException re) {
       if (re.getCause() instanceof ParseException) {
         throw (ParseException)re.getCause();
@@ -210,8 +262,12 @@ public final class ArtifactVersion {
     }
   }
 
-  @Override
-  public int hashCode() {
+  /**
+   * Computes the hash code, which is then kept since instances are immutable.
+   *
+   * @return Hash code.
+   */
+  private int computeHashCode() {
     final int prime = 31;
     int result;
 
@@ -222,6 +278,11 @@ public final class ArtifactVersion {
     return result;
   }
 
+  @Override
+  public int hashCode() {
+    return this.hashCode;
+  }
+
   @Override
   public boolean equals(Object other) {
     ArtifactVersion versionOther;
@@ -236,6 +297,10 @@ public final class ArtifactVersion {
 
     versionOther = (ArtifactVersion)other;
 
+    if (this.hashCode != versionOther.hashCode) {
+      return false;
+    }
+
     return (this.versionType == versionOther.versionType) && (this.version.equals(versionOther.version));
   }
 }
@@ -75,6 +75,8 @@ public interface Model {
    * This methods gets the parent {@link ClassificationNode} as described for
    * {@link #getClassificationNode} ({@link NodePath#getNodePathParent})
    * and looks up the requested Module.
+   * <p>
+   * Implementations can delegate to {@link NodePathIndex#getModule}.
    *
    * @param nodePath NodePath of the Module to return. Must not be partial.
    * @return Module. null if no Module corresponding to the specified NodePath
@@ -89,6 +91,9 @@ public interface Model {
   /**
    * Finds and returns the {@link Module} whose build produces an
    * {@link ArtifactGroupId}.
+   * <p>
+   * Implementations can consult an {@link ArtifactGroupIdIndex} before probing the
+   * candidate Module's returned by FindModuleByArtifactGroupIdPlugin.
    *
    * @param artifactGroupId ArtifactGroupId for which to find a {@link Module}.
    * @return Module. null if no Module found.
@@ -102,6 +107,10 @@ public interface Model {
    * <p>Can be used by caller to adapt their behavior when
    * findModuleByArtifactGroupId returns null.
    *
+   * <p>Implementations can use
+   * {@link ArtifactGroupIdIndex#isArtifactGroupIdPossiblyIndexed} to quickly rule
+   * out ArtifactGroupId's of existing Module's.
+   *
    * @param artifactGroupId ArtifactGroupId.
    * @return See description.
    */
@@ -22,9 +22,8 @@ package org.azyva.dragom.model;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.azyva.dragom.apiutil.InternCache;
 import org.azyva.dragom.execcontext.plugin.WorkspaceDirUserModuleVersion;
 import org.azyva.dragom.execcontext.plugin.WorkspacePlugin;
 import org.azyva.dragom.model.plugin.ScmPlugin;
@@ -44,6 +43,10 @@ import org.azyva.dragom.model.plugin.ScmPlugin;
  * format and &lt;Version&gt; is the Version in literal form.
  * <p>
  * Example: Acme/module:D/master
+ * <p>
+ * {@link #valueOf} returns canonical instances from a bounded cache and should be
+ * preferred to the constructor when parsing literals that are likely to be
+ * repeated.
 
  * @author David Raymond
  */
@@ -59,9 +62,21 @@ public final class ModuleVersion {
   private static final ResourceBundle resourceBundle = ResourceBundle.getBundle(ModuleVersion.class.getName() + "ResourceBundle");
 
   /**
-   * Pattern for parsing an ModuleVersion literal.
+   * Regex describing a valid ModuleVersion literal.
+   * <p>
+   * Not used for actually parsing, but included in error messages.
+   */
+  private static final String REGEX_MODULE_VERSION_LITERAL = "([^:]+):([^:]+)";
+
+  /**
+   * Maximum number of canonical instances cached by {@link #valueOf}.
    */
-  private static final Pattern patternModuleVersionLiteral = Pattern.compile("([^:]+):([^:]+)");
+  private static final int MAX_CACHED_INSTANCES = 8192;
+
+  /**
+   * Cache of canonical instances, keyed by ModuleVersion literal.
+   */
+  private static final InternCache<String, ModuleVersion> internCache = new InternCache<String, ModuleVersion>(ModuleVersion.MAX_CACHED_INSTANCES);
 
   /**
    * NodePath.
@@ -73,6 +88,11 @@ public final class ModuleVersion {
    */
   private Version version;
 
+  /**
+   * Precomputed hash code.
+   */
+  private int hashCode;
+
   /**
    * Constructor using the individual fields.
    *
@@ -91,6 +111,7 @@ public final class ModuleVersion {
 
     this.nodePath = nodePath;
     this.version = version;
+    this.hashCode = this.computeHashCode();
   }
 
   /**
@@ -118,6 +139,7 @@ public final class ModuleVersion {
     }
 
     this.nodePath = nodePath;
+    this.hashCode = this.computeHashCode();
   }
 
   /**
@@ -128,27 +150,52 @@ public final class ModuleVersion {
    * @param stringModuleVersion ModuleVersion literal.
    */
   public ModuleVersion(String stringModuleVersion) {
-    Matcher matcher;
+    try {
+      int indexSeparator;
 
-    matcher = ModuleVersion.patternModuleVersionLiteral.matcher(stringModuleVersion);
+      indexSeparator = stringModuleVersion.indexOf(':');
 
-    try {
-      if (!matcher.matches()) {
-        throw new ParseException(MessageFormat.format(ModuleVersion.resourceBundle.getString(ModuleVersion.MSG_PATTERN_KEY_MODULE_VERSION_PARSING_ERROR), stringModuleVersion, ModuleVersion.patternModuleVersionLiteral), 0);
+      if (   (indexSeparator <= 0)
+          || (indexSeparator == (stringModuleVersion.length() - 1))
+          || (stringModuleVersion.indexOf(':', indexSeparator + 1) != -1)) {
+
+        throw new ParseException(MessageFormat.format(ModuleVersion.resourceBundle.getString(ModuleVersion.MSG_PATTERN_KEY_MODULE_VERSION_PARSING_ERROR), stringModuleVersion, ModuleVersion.REGEX_MODULE_VERSION_LITERAL), 0);
       }
 
-      this.nodePath = NodePath.parse(matcher.group(1));
+      this.nodePath = NodePath.parse(stringModuleVersion.substring(0, indexSeparator));
 
       try {
-        this.version = Version.parse(matcher.group(2));
+        this.version = Version.parse(stringModuleVersion.substring(indexSeparator + 1));
       } catch (ParseException pe) {
-        throw new ParseException(pe.getMessage(), pe.getErrorOffset() + matcher.start(2));
+        throw new ParseException(pe.getMessage(), pe.getErrorOffset() + indexSeparator + 1);
       }
+
+      this.hashCode = this.computeHashCode();
     } catch (ParseException pe) {
       throw new RuntimeException(pe);
     }
   }
 
+  /**
+   * Returns the canonical ModuleVersion corresponding to a ModuleVersion literal.
+   * <p>
+   * Throws RuntimeException if parsing fails.
+   *
+   * @param stringModuleVersion ModuleVersion literal.
+   * @return ModuleVersion.
+   */
+  public static ModuleVersion valueOf(String stringModuleVersion) {
+    ModuleVersion moduleVersion;
+
+    moduleVersion = ModuleVersion.internCache.get(stringModuleVersion);
+
+    if (moduleVersion == null) {
+      moduleVersion = ModuleVersion.internCache.intern(stringModuleVersion, new ModuleVersion(stringModuleVersion));
+    }
+
+    return moduleVersion;
+  }
+
   /**
    * Parses a ModuleVersion literal.
    *
@@ -159,7 +206,7 @@ public final class ModuleVersion {
   public static ModuleVersion parse(String stringModuleVersion)
   throws ParseException {
     try {
-      return new ModuleVersion(stringModuleVersion);
+      return ModuleVersion.valueOf(stringModuleVersion);
     } catch (RuntimeException re) {
       if (re.getCause() instanceof ParseException) {
         throw (ParseException)re.getCause();
@@ -196,18 +243,27 @@ public final class ModuleVersion {
     return this.nodePath.toString() +  ':' + this.version;
   }
 
-  @Override
-  public int hashCode() {
+  /**
+   * Computes the hash code, which is then kept since instances are immutable.
+   *
+   * @return Hash code.
+   */
+  private int computeHashCode() {
     final int prime = 31;
     int result;
 
     result = 1;
     result = (prime * result) + this.nodePath.hashCode();
-    result = (prime * result) + this.version.hashCode();
+    result = (prime * result) + ((this.version == null) ? 0 : this.version.hashCode());
 
     return result;
   }
 
+  @Override
+  public int hashCode() {
+    return this.hashCode;
+  }
+
   @Override
   public boolean equals(Object other) {
     ModuleVersion moduleVersionOther;
@@ -222,6 +278,10 @@ public final class ModuleVersion {
 
     moduleVersionOther = (ModuleVersion)other;
 
+    if (this.hashCode != moduleVersionOther.hashCode) {
+      return false;
+    }
+
     if (!this.nodePath.equals(moduleVersionOther.nodePath)) {
       return false;
     }
@@ -94,6 +94,11 @@ public interface MutableNode extends Node {
    * Sets the {@link NodeConfigTransferObject}.
    * <p>
    * See {@link MutableNodeConfig#setNodeConfigTransferObject}.
+   * <p>
+   * Since properties and PluginDefConfig's are inherited, this can change the
+   * properties and NodePlugin's of descendant Node's. Implementations which use
+   * {@link NodePropertyTable} or {@link NodePluginCache} must invalidate their
+   * {@link NodePropertyTable.Generation}.
    *
    * @param nodeConfigTransferObject NodeConfigTransferObject.
    * @param optimisticLockHandle OptimisticLockHandle. Can be null.
@@ -72,6 +72,9 @@ public interface Node {
 
   /**
    * Returns the value of a property.
+   * <p>
+   * Implementations can resolve inherited properties with
+   * {@link NodePropertyTable}.
    *
    * @param name Name of the property.
    * @return Value of the property.
@@ -83,6 +86,8 @@ public interface Node {
    * <p>
    * The NodePlugin must exist. {@link #isNodePluginExists} can be used to verify if
    * a NodePlugin exists before getting it.
+   * <p>
+   * See {@link NodePluginCache} for instantiating each NodePlugin once per Node.
    *
    * @param <NodePluginInterface> NodePlugin interface.
    * @param classNodePlugin Class of the NodePlugin.
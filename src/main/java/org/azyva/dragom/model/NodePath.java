@@ -21,10 +21,8 @@ package org.azyva.dragom.model;
 
 import java.text.MessageFormat;
 import java.text.ParseException;
-import java.util.Arrays;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents the path of a {@link Node} within the {@link Model}.
@@ -67,6 +65,20 @@ import java.util.regex.Pattern;
  * A NodePath is always absolute, the first Node representing an immediate child
  * of the unnamed root ClassificationNode of the hierarchy. A NodePath does not
  * start with a "/"; emphasis on them being absolute is not deemed necessary.
+ * <p>
+ * NodePath's are canonicalized within a trie shared by the whole JVM. Each
+ * canonical partial NodePath maintains its canonical children, and each canonical
+ * NodePath refers to its canonical parent. Node names are therefore stored only
+ * once, getting the parent or a child NodePath is a pointer hop (once the child
+ * has been created) and node names are validated only once. The factory methods
+ * {@link #valueOf(String)} and {@link #getNodePathChild} return canonical
+ * instances. The public constructors are kept for compatibility. They create
+ * distinct instances, but these refer to the canonical instance, so that
+ * {@link #equals} is always a reference comparison and {@link #hashCode} is
+ * always precomputed.
+ * <p>
+ * Canonical NodePath's are never released. This is not an issue since the number
+ * of distinct NodePath's is bounded by the number of {@link Node}'s in the Model.
  *
  * @author David Raymond
  */
@@ -82,31 +94,64 @@ public final class NodePath {
   private static final ResourceBundle resourceBundle = ResourceBundle.getBundle(NodePath.class.getName() + "ResourceBundle");
 
   /**
-   * Pattern for validating a NodePath literal.
+   * Regex describing a valid NodePath literal.
    * <p>
-   * Not used for actually parsing.
+   * Not used for actually parsing or validating, but included in error messages.
    */
-  private static final Pattern patternValidateNodePathLiteral = Pattern.compile("(?:[A-Za-z0-9_][A-Za-z0-9\\-_]*/)*(?:[A-Za-z0-9_][A-Za-z0-9\\-_]*)?");
+  private static final String REGEX_NODE_PATH_LITERAL = "(?:[A-Za-z0-9_][A-Za-z0-9\\-_]*/)*(?:[A-Za-z0-9_][A-Za-z0-9\\-_]*)?";
 
   /**
-   * Pattern for validating a {@link Node} names.
+   * Canonical parent NodePath. null for the root NodePath.
    */
-  static private Pattern patternValidateNodeName = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9\\-_]*");
+  private NodePath nodePathParent;
 
   /**
-   * Array of node names.
+   * Name of the last {@link Node}. null for the root NodePath.
    */
-  private String[] arrayNodeName;
+  private String nodeName;
 
   /**
    * Indicates if the NodePath is partial.
    */
   private boolean isPartial;
 
+  /**
+   * Number of {@link Node}'s in the NodePath.
+   */
+  private int nodeCount;
+
+  /**
+   * Precomputed hash code.
+   */
+  private int hashCode;
+
+  /**
+   * Canonical NodePath. Refers to this for a canonical NodePath.
+   */
+  private NodePath nodePathCanonical;
+
+  /**
+   * Map of canonical partial child NodePath's. Only set on canonical partial
+   * NodePath's.
+   */
+  private ConcurrentHashMap<String, NodePath> mapNodePathChildPartial;
+
+  /**
+   * Map of canonical non-partial child NodePath's. Only set on canonical partial
+   * NodePath's.
+   */
+  private ConcurrentHashMap<String, NodePath> mapNodePathChildComplete;
+
+  /**
+   * NodePath literal, computed lazily on canonical NodePath's. Since String's are
+   * immutable, concurrent computations are harmless.
+   */
+  private String literal;
+
   /**
    * Root NodePath.
    */
-  public static final NodePath ROOT = new NodePath("");
+  public static final NodePath ROOT = NodePath.createCanonical(null, null, true);
 
   /**
    * Constructor for a non-partial NodePath using an array of {@link Node} names.
@@ -124,19 +169,7 @@ public final class NodePath {
    * @param isPartial Indicates if the NodePath is partial.
    */
   public NodePath(String[] arrayNodeName, boolean isPartial) {
-    if ((arrayNodeName.length == 0) && !isPartial) {
-      throw new RuntimeException("A NodePath cannot be empty.");
-    }
-
-    for (String nodeName : arrayNodeName) {
-      if (!NodePath.validateNodeName(nodeName)) {
-        throw new RuntimeException("Node name " + nodeName + " is invalid.");
-      }
-    }
-
-    // We make a copy to ensure immutability.
-    this.arrayNodeName = Arrays.copyOf(arrayNodeName, arrayNodeName.length);
-    this.isPartial = isPartial;
+    this.initFromCanonical(NodePath.valueOf(arrayNodeName, isPartial));
   }
 
   /**
@@ -158,30 +191,17 @@ public final class NodePath {
    * @param isPartial Indicates if the NodePath is partial.
    */
   public NodePath(NodePath nodePathParent, String nodeName, boolean isPartial) {
-    if (!NodePath.validateNodeName(nodeName)) {
-      throw new RuntimeException("Node name " + nodeName + " is invalid.");
+    if (nodePathParent == null) {
+      nodePathParent = NodePath.ROOT;
     }
 
-    if (nodePathParent != null) {
-      if (!nodePathParent.isPartial()) {
-        throw new RuntimeException("A node cannot be appended to a complete NodePath " + nodePathParent + '.');
-      }
-
-      this.arrayNodeName = new String[nodePathParent.arrayNodeName.length + 1];
-      System.arraycopy(nodePathParent.arrayNodeName, 0, this.arrayNodeName, 0, nodePathParent.arrayNodeName.length);
-      this.arrayNodeName[this.arrayNodeName.length - 1] = nodeName;
-      this.isPartial = isPartial;
-    } else {
-      this.arrayNodeName = new String[1];
-      this.arrayNodeName[0] = nodeName;
-      this.isPartial = isPartial;
-    }
+    this.initFromCanonical(nodePathParent.getNodePathChild(nodeName, isPartial));
   }
 
   /**
    * Constructor used internally.
    * <p>
-   * Used by {@link #getNodePathParent}.
+   * Used by {@link #createCanonical}.
    */
   private NodePath() {
   }
@@ -194,35 +214,126 @@ public final class NodePath {
    * @param stringNodePath NodePath literal.
    */
   public NodePath(String stringNodePath) {
-    // We handle the case where the NodePath literal is the empty string separately.
-    if (stringNodePath.isEmpty()) {
-      this.isPartial = true;
-      this.arrayNodeName = new String[0];
+    this.initFromCanonical(NodePath.valueOf(stringNodePath));
+  }
+
+  /**
+   * Creates a canonical NodePath. Used only when inserting into the trie.
+   *
+   * @param nodePathParent Canonical parent NodePath. null for the root NodePath.
+   * @param nodeName Node name. Must be valid. null for the root NodePath.
+   * @param isPartial Indicates if the NodePath is partial.
+   * @return Canonical NodePath.
+   */
+  private static NodePath createCanonical(NodePath nodePathParent, String nodeName, boolean isPartial) {
+    final int prime = 31;
+    NodePath nodePath;
+
+    nodePath = new NodePath();
+
+    nodePath.nodePathParent = nodePathParent;
+    nodePath.nodeName = nodeName;
+    nodePath.isPartial = isPartial;
+    nodePath.nodePathCanonical = nodePath;
+
+    if (nodePathParent == null) {
+      nodePath.nodeCount = 0;
+      nodePath.hashCode = 1;
     } else {
-      try {
-        Matcher matcher;
+      nodePath.nodeCount = nodePathParent.nodeCount + 1;
+      nodePath.hashCode = (prime * nodePathParent.hashCode) + nodeName.hashCode();
+    }
 
-        matcher = NodePath.patternValidateNodePathLiteral.matcher(stringNodePath);
+    nodePath.hashCode = (prime * nodePath.hashCode) + (isPartial ? 1 : 0);
 
-        if (!matcher.matches()) {
-          throw new ParseException(MessageFormat.format(NodePath.resourceBundle.getString(NodePath.MSG_PATTERN_KEY_NODE_PATH_PARSING_ERROR), stringNodePath, NodePath.patternValidateNodePathLiteral), 0);
-        }
+    if (isPartial) {
+      nodePath.mapNodePathChildPartial = new ConcurrentHashMap<String, NodePath>();
+      nodePath.mapNodePathChildComplete = new ConcurrentHashMap<String, NodePath>();
+    }
 
-        if (stringNodePath.charAt(stringNodePath.length() - 1) == '/') {
-          this.isPartial = true;
-          stringNodePath = stringNodePath.substring(0, stringNodePath.length() - 1);
-        } else {
-          this.isPartial = false;
-        }
+    return nodePath;
+  }
+
+  /**
+   * Initializes this NodePath from its canonical NodePath. Used by the public
+   * constructors.
+   *
+   * @param nodePathCanonical Canonical NodePath.
+   */
+  private void initFromCanonical(NodePath nodePathCanonical) {
+    this.nodePathParent = nodePathCanonical.nodePathParent;
+    this.nodeName = nodePathCanonical.nodeName;
+    this.isPartial = nodePathCanonical.isPartial;
+    this.nodeCount = nodePathCanonical.nodeCount;
+    this.hashCode = nodePathCanonical.hashCode;
+    this.nodePathCanonical = nodePathCanonical;
+  }
+
+  /**
+   * Returns the canonical NodePath corresponding to an array of {@link Node}
+   * names.
+   *
+   * @param arrayNodeName Array of {@link Node} names.
+   * @param isPartial Indicates if the NodePath is partial.
+   * @return Canonical NodePath.
+   */
+  public static NodePath valueOf(String[] arrayNodeName, boolean isPartial) {
+    NodePath nodePath;
+
+    if ((arrayNodeName.length == 0) && !isPartial) {
+      throw new RuntimeException("A NodePath cannot be empty.");
+    }
 
-        this.arrayNodeName = stringNodePath.split("/");
+    nodePath = NodePath.ROOT;
 
-        // arrayNodeName cannot be empty here, even if stringNodePath is
-        // the empty String. This would have been caught above.
-      } catch (ParseException pe) {
-        throw new RuntimeException(pe);
+    for (int i = 0; i < arrayNodeName.length; i++) {
+      nodePath = nodePath.getNodePathChild(arrayNodeName[i], (i < (arrayNodeName.length - 1)) || isPartial);
+    }
+
+    return nodePath;
+  }
+
+  /**
+   * Returns the canonical NodePath corresponding to a NodePath literal.
+   * <p>
+   * Throws RuntimeException if parsing fails.
+   *
+   * @param stringNodePath NodePath literal.
+   * @return Canonical NodePath.
+   */
+  public static NodePath valueOf(String stringNodePath) {
+    NodePath nodePath;
+    int length;
+    int indexStart;
+
+    nodePath = NodePath.ROOT;
+    length = stringNodePath.length();
+    indexStart = 0;
+
+    // The empty NodePath literal is handled naturally by the loop below not being
+    // executed.
+    while (indexStart < length) {
+      int indexEnd;
+      boolean isPartial;
+
+      indexEnd = stringNodePath.indexOf('/', indexStart);
+
+      if (indexEnd == -1) {
+        indexEnd = length;
+        isPartial = false;
+      } else {
+        isPartial = true;
       }
+
+      if (!NodePath.validateNodeName(stringNodePath, indexStart, indexEnd)) {
+        throw new RuntimeException(new ParseException(MessageFormat.format(NodePath.resourceBundle.getString(NodePath.MSG_PATTERN_KEY_NODE_PATH_PARSING_ERROR), stringNodePath, NodePath.REGEX_NODE_PATH_LITERAL), indexStart));
+      }
+
+      nodePath = nodePath.getNodePathChild(stringNodePath.substring(indexStart, indexEnd), isPartial);
+      indexStart = indexEnd + 1;
     }
+
+    return nodePath;
   }
 
   /**
@@ -235,7 +346,7 @@ public final class NodePath {
   public static NodePath parse(String stringNodePath)
   throws ParseException {
     try {
-      return new NodePath(stringNodePath);
+      return NodePath.valueOf(stringNodePath);
     } catch (RuntimeException re) {
       if (re.getCause() instanceof ParseException) {
         throw (ParseException)re.getCause();
@@ -245,12 +356,69 @@ public final class NodePath {
     }
   }
 
+  /**
+   * Returns the canonical child NodePath of this partial NodePath, creating it
+   * within the trie if it does not exist.
+   *
+   * @param nodeName Node name.
+   * @param isPartial Indicates if the child NodePath is partial.
+   * @return Canonical child NodePath.
+   */
+  public NodePath getNodePathChild(String nodeName, boolean isPartial) {
+    NodePath nodePathCanonical;
+    ConcurrentHashMap<String, NodePath> mapNodePathChild;
+    NodePath nodePathChild;
+    NodePath nodePathChildExisting;
+
+    nodePathCanonical = this.nodePathCanonical;
+
+    if (!nodePathCanonical.isPartial) {
+      throw new RuntimeException("A node cannot be appended to a complete NodePath " + this + '.');
+    }
+
+    mapNodePathChild = isPartial ? nodePathCanonical.mapNodePathChildPartial : nodePathCanonical.mapNodePathChildComplete;
+
+    nodePathChild = mapNodePathChild.get(nodeName);
+
+    if (nodePathChild != null) {
+      return nodePathChild;
+    }
+
+    // Validation is required only when the child NodePath is created.
+    if (!NodePath.validateNodeName(nodeName)) {
+      throw new RuntimeException("Node name " + nodeName + " is invalid.");
+    }
+
+    nodePathChild = NodePath.createCanonical(nodePathCanonical, nodeName, isPartial);
+    nodePathChildExisting = mapNodePathChild.putIfAbsent(nodeName, nodePathChild);
+
+    return (nodePathChildExisting != null) ? nodePathChildExisting : nodePathChild;
+  }
+
+  /**
+   * @return Canonical NodePath equal to this NodePath.
+   */
+  public NodePath getNodePathCanonical() {
+    return this.nodePathCanonical;
+  }
+
   /**
    * @return Array of {@link Node} names.
    */
   public String[] getArrayNodeName() {
-    // A copy is returned to ensure immutability.
-    return Arrays.copyOf(this.arrayNodeName,  this.arrayNodeName.length);
+    String[] arrayNodeName;
+    NodePath nodePath;
+
+    // A new array is returned to ensure immutability.
+    arrayNodeName = new String[this.nodeCount];
+    nodePath = this.nodePathCanonical;
+
+    for (int i = this.nodeCount - 1; i >= 0; i--) {
+      arrayNodeName[i] = nodePath.nodeName;
+      nodePath = nodePath.nodePathParent;
+    }
+
+    return arrayNodeName;
   }
 
   /**
@@ -265,7 +433,7 @@ public final class NodePath {
    * @return Number of {@link Node}'s in the NodePath.
    */
   public int getNodeCount() {
-    return this.arrayNodeName.length;
+    return this.nodeCount;
   }
 
   /**
@@ -275,25 +443,31 @@ public final class NodePath {
    * @return Name of the Node.
    */
   public String getNodeName(int index) {
-    if (index >= this.arrayNodeName.length) {
+    NodePath nodePath;
+
+    if ((index < 0) || (index >= this.nodeCount)) {
       throw new RuntimeException("The index " + index + " is larger than the index of the last node of the NodsePath " + this + '.');
     }
 
-    return this.arrayNodeName[index];
+    nodePath = this.nodePathCanonical;
+
+    for (int i = this.nodeCount - 1; i > index; i--) {
+      nodePath = nodePath.nodePathParent;
+    }
+
+    return nodePath.nodeName;
   }
 
   /**
-   * @return Partial parent NodePath of this NodePath.
+   * @return Partial parent NodePath of this NodePath. The returned NodePath is
+   *   canonical.
    */
   public NodePath getNodePathParent() {
-    NodePath nodePathParent;
-
-    nodePathParent = new NodePath();
-
-    nodePathParent.arrayNodeName = Arrays.copyOfRange(this.arrayNodeName,  0,  this.arrayNodeName.length - 1);
-    nodePathParent.isPartial = true;
+    if (this.nodePathParent == null) {
+      throw new RuntimeException("The root NodePath has no parent.");
+    }
 
-    return nodePathParent;
+    return this.nodePathParent;
   }
 
   /**
@@ -315,7 +489,7 @@ public final class NodePath {
       throw new RuntimeException("The NodsePath " + this + " is partial and has no module.");
     }
 
-    return this.arrayNodeName[this.arrayNodeName.length - 1];
+    return this.nodeName;
   }
 
   /**
@@ -323,19 +497,33 @@ public final class NodePath {
    */
   @Override
   public String toString() {
-    StringBuilder stringBuilder;
+    NodePath nodePathCanonical;
+    String literal;
 
-    stringBuilder = new StringBuilder();
+    nodePathCanonical = this.nodePathCanonical;
+    literal = nodePathCanonical.literal;
 
-    for (String nodeName : this.arrayNodeName) {
-      stringBuilder.append(nodeName).append("/");
-    }
+    if (literal == null) {
+      StringBuilder stringBuilder;
+
+      stringBuilder = new StringBuilder();
+
+      if (nodePathCanonical.nodePathParent != null) {
+        // The literal of the parent, which is partial, ends with "/", except for the
+        // root NodePath whose literal is empty.
+        stringBuilder.append(nodePathCanonical.nodePathParent.toString());
+        stringBuilder.append(nodePathCanonical.nodeName);
 
-    if (!this.isPartial) {
-      stringBuilder.deleteCharAt(stringBuilder.length() - 1);
+        if (nodePathCanonical.isPartial) {
+          stringBuilder.append('/');
+        }
+      }
+
+      literal = stringBuilder.toString();
+      nodePathCanonical.literal = literal;
     }
 
-    return stringBuilder.toString();
+    return literal;
   }
 
   /**
@@ -350,7 +538,7 @@ public final class NodePath {
 
     stringBuilder = new StringBuilder();
 
-    for (String nodeName : this.arrayNodeName) {
+    for (String nodeName : this.getArrayNodeName()) {
       stringBuilder.append(nodeName).append('.');
     }
 
@@ -370,29 +558,54 @@ public final class NodePath {
    * @return true if node name is valid, false if not.
    */
   public static boolean validateNodeName(String nodeName) {
-    Matcher matcher;
+    return NodePath.validateNodeName(nodeName, 0, nodeName.length());
+  }
 
-    matcher = NodePath.patternValidateNodeName.matcher(nodeName);
+  /**
+   * Validates a node name within a String.
+   * <p>
+   * Node names can contain characters A - Z, a - z, 0 - 9, - and _, must contain
+   * at least 1 character and cannot start with -.
+   *
+   * @param string String.
+   * @param indexStart Start index of the node name.
+   * @param indexEnd End index of the node name.
+   * @return true if node name is valid, false if not.
+   */
+  private static boolean validateNodeName(String string, int indexStart, int indexEnd) {
+    if (indexStart >= indexEnd) {
+      return false;
+    }
+
+    if (string.charAt(indexStart) == '-') {
+      return false;
+    }
+
+    for (int i = indexStart; i < indexEnd; i++) {
+      char character;
+
+      character = string.charAt(i);
+
+      if (   !((character >= 'A') && (character <= 'Z'))
+          && !((character >= 'a') && (character <= 'z'))
+          && !((character >= '0') && (character <= '9'))
+          && (character != '-')
+          && (character != '_')) {
 
-    return matcher.matches();
+        return false;
+      }
+    }
+
+    return true;
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result;
-
-    result = 1;
-    result = (prime * result) + Arrays.deepHashCode(this.arrayNodeName);
-    result = (prime * result) + (this.isPartial ? 1 : 0);
-
-    return result;
+    return this.hashCode;
   }
 
   @Override
   public boolean equals(Object other) {
-    NodePath nodePathOther;
-
     if (this == other) {
       return true;
     }
@@ -401,8 +614,6 @@ public final class NodePath {
       return false;
     }
 
-    nodePathOther = (NodePath)other;
-
-    return (Arrays.equals(this.arrayNodeName, nodePathOther.arrayNodeName) && (this.isPartial == nodePathOther.isPartial));
+    return this.nodePathCanonical == ((NodePath)other).nodePathCanonical;
   }
 }
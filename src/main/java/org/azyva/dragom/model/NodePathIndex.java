@@ -0,0 +1,427 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.azyva.dragom.model;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.azyva.dragom.model.plugin.UndefinedDescendantNodeManagerPlugin;
+
+/**
+ * Concurrent index of the {@link Node}'s of a {@link Model} by {@link NodePath},
+ * with negative caching of NodePath's known not to correspond to any Node.
+ * <p>
+ * Without such an index, {@link Model#getModule} and
+ * {@link Model#getClassificationNode} walk the tree of Node's from the root
+ * ClassificationNode, calling {@link ClassificationNode#getNodeChild} at each
+ * level and possibly {@link UndefinedDescendantNodeManagerPlugin} when a Node is
+ * not defined. Since these methods are called for each Reference which is
+ * resolved, Model implementations can delegate to {@link #getModule} and
+ * {@link #getClassificationNode} of a NodePathIndex. When a Node is not indexed,
+ * the walk starts from its nearest indexed ancestor instead of the root, and
+ * every Node found along the way is indexed.
+ * <p>
+ * Resolving a child Node within its parent ClassificationNode is delegated to a
+ * {@link NodeChildResolver}. {@link #NODE_CHILD_RESOLVER_DEFAULT} calls
+ * getNodeChild and, if the child is not defined and the parent
+ * ClassificationNode has an UndefinedDescendantNodeManagerPlugin, requests it to
+ * dynamically create the child Node.
+ * <p>
+ * Model implementations must call {@link #nodeCreated} whenever a Node is
+ * created, including Node's created dynamically
+ * ({@link Node#isCreatedDynamically}) by {@link ModelNodeBuilderFactory} or
+ * {@link MutableClassificationNode}, and {@link #nodeDeleted} whenever a Node is
+ * deleted or renamed. Creating a Node invalidates only the negative entries for
+ * its NodePath and those of its descendants, since these are the only NodePath's
+ * which can now be resolved.
+ * <p>
+ * NodePath's are canonical and have a precomputed hash code, so that lookups in
+ * the index are cheap.
+ * <p>
+ * It is safe to use concurrently. The NodeChildResolver is not called while
+ * holding any lock, so that concurrent first lookups of the same NodePath can
+ * call it more than once, as they would without the index.
+ *
+ * @author David Raymond
+ */
+public final class NodePathIndex {
+  /**
+   * Resolves a child {@link Node} within its parent {@link ClassificationNode}.
+   */
+  public interface NodeChildResolver {
+    /**
+     * Resolves a child Node.
+     *
+     * @param classificationNodeParent Parent ClassificationNode.
+     * @param nodePathChild NodePath of the child Node. Partial if a
+     *   ClassificationNode is expected, not partial if a {@link Module} is expected.
+     * @return Child Node. null if it does not exist.
+     */
+    Node resolveNodeChild(ClassificationNode classificationNodeParent, NodePath nodePathChild);
+  }
+
+  /**
+   * Default NodeChildResolver.
+   * <p>
+   * Calls {@link ClassificationNode#getNodeChild} and, if the child Node is not
+   * defined and the parent ClassificationNode has an
+   * {@link UndefinedDescendantNodeManagerPlugin}, requests it to dynamically create
+   * the child ClassificationNode or Module, depending on whether the NodePath is
+   * partial.
+   */
+  public static final NodeChildResolver NODE_CHILD_RESOLVER_DEFAULT = new NodeChildResolver() {
+    @Override
+    public Node resolveNodeChild(ClassificationNode classificationNodeParent, NodePath nodePathChild) {
+      String name;
+      Node node;
+      UndefinedDescendantNodeManagerPlugin undefinedDescendantNodeManagerPlugin;
+
+      name = nodePathChild.getNodeName(nodePathChild.getNodeCount() - 1);
+      node = classificationNodeParent.getNodeChild(name);
+
+      if ((node == null) && classificationNodeParent.isNodePluginExists(UndefinedDescendantNodeManagerPlugin.class, null)) {
+        undefinedDescendantNodeManagerPlugin = classificationNodeParent.getNodePlugin(UndefinedDescendantNodeManagerPlugin.class, null);
+
+        if (nodePathChild.isPartial()) {
+          node = undefinedDescendantNodeManagerPlugin.requestClassificationNode(name);
+        } else {
+          node = undefinedDescendantNodeManagerPlugin.requestModule(name);
+        }
+      }
+
+      return node;
+    }
+  };
+
+  /**
+   * Maximum number of negative entries. When reached, negative entries are
+   * cleared, which only means the corresponding NodePath's will be resolved again.
+   */
+  private static final int MAX_NEGATIVE_ENTRIES = 65536;
+
+  /**
+   * Model.
+   */
+  private Model model;
+
+  /**
+   * NodeChildResolver.
+   */
+  private NodeChildResolver nodeChildResolver;
+
+  /**
+   * Map of the indexed Node's.
+   */
+  private ConcurrentHashMap<NodePath, Node> mapNode;
+
+  /**
+   * Set of the negative entries, the NodePath's found not to correspond to any
+   * Node.
+   */
+  private Set<NodePath> setNodePathAbsent;
+
+  /**
+   * Generation, incremented each time a Node is created or deleted. A lookup
+   * which finds that a NodePath does not correspond to any Node adds a negative
+   * entry only if the generation did not change since it started, so that a
+   * negative entry is not added for a Node which was created concurrently.
+   */
+  private AtomicLong generation;
+
+  /**
+   * ReadWriteLock used to make adding a negative entry atomic with respect to
+   * invalidating negative entries. The read lock is held while verifying the
+   * generation and adding a negative entry. The write lock is held while
+   * incrementing the generation and invalidating negative entries.
+   */
+  private ReadWriteLock readWriteLockNodePathAbsent;
+
+  /**
+   * Constructor.
+   *
+   * @param model Model. Its root ClassificationNode is obtained when first needed,
+   *   since it may not exist yet when the NodePathIndex is created.
+   * @param nodeChildResolver NodeChildResolver. Generally
+   *   {@link #NODE_CHILD_RESOLVER_DEFAULT}.
+   */
+  public NodePathIndex(Model model, NodeChildResolver nodeChildResolver) {
+    this.model = model;
+    this.nodeChildResolver = nodeChildResolver;
+    this.mapNode = new ConcurrentHashMap<NodePath, Node>();
+    this.setNodePathAbsent = Collections.newSetFromMap(new ConcurrentHashMap<NodePath, Boolean>());
+    this.generation = new AtomicLong();
+    this.readWriteLockNodePathAbsent = new ReentrantReadWriteLock();
+  }
+
+  /**
+   * Returns the Node corresponding to a NodePath, resolving and indexing it if it
+   * is not indexed yet.
+   *
+   * @param nodePath NodePath.
+   * @return Node. null if no Node corresponds to the NodePath.
+   */
+  public Node getNode(NodePath nodePath) {
+    Node node;
+    long generation;
+    Node nodeParent;
+
+    nodePath = nodePath.getNodePathCanonical();
+    node = this.mapNode.get(nodePath);
+
+    if (node != null) {
+      return node;
+    }
+
+    generation = this.generation.get();
+
+    if (this.setNodePathAbsent.contains(nodePath)) {
+      return null;
+    }
+
+    if (nodePath == NodePath.ROOT) {
+      node = this.model.getClassificationNodeRoot();
+    } else {
+      nodeParent = this.getNode(nodePath.getNodePathParent());
+
+      if (nodeParent instanceof ClassificationNode) {
+        node = this.nodeChildResolver.resolveNodeChild((ClassificationNode)nodeParent, nodePath);
+      } else {
+        node = null;
+      }
+    }
+
+    if (node == null) {
+      this.readWriteLockNodePathAbsent.readLock().lock();
+
+      try {
+        if (this.generation.get() == generation) {
+          if (this.setNodePathAbsent.size() >= NodePathIndex.MAX_NEGATIVE_ENTRIES) {
+            this.setNodePathAbsent.clear();
+          }
+
+          this.setNodePathAbsent.add(nodePath);
+        }
+      } finally {
+        this.readWriteLockNodePathAbsent.readLock().unlock();
+      }
+
+      return null;
+    }
+
+    return this.index(nodePath, node);
+  }
+
+  /**
+   * Returns the ClassificationNode corresponding to a NodePath.
+   * <p>
+   * Same contract as {@link Model#getClassificationNode}.
+   *
+   * @param nodePath NodePath of the ClassificationNode. Must be partial.
+   * @return ClassificationNode. null if no ClassificationNode corresponding to the
+   *   NodePath exists.
+   * @throws IllegalArgumentException If the Node identified by nodePath is not a
+   *   ClassificationNode.
+   */
+  public ClassificationNode getClassificationNode(NodePath nodePath) throws IllegalArgumentException {
+    Node node;
+
+    node = this.getNode(nodePath);
+
+    if ((node != null) && !(node instanceof ClassificationNode)) {
+      throw new IllegalArgumentException("The node " + nodePath + " is not a classification node.");
+    }
+
+    return (ClassificationNode)node;
+  }
+
+  /**
+   * Returns the Module corresponding to a NodePath.
+   * <p>
+   * Same contract as {@link Model#getModule}.
+   *
+   * @param nodePath NodePath of the Module. Must not be partial.
+   * @return Module. null if no Module corresponding to the NodePath exists.
+   * @throws IllegalArgumentException If the Node identified by nodePath is not a
+   *   Module.
+   */
+  public Module getModule(NodePath nodePath) throws IllegalArgumentException {
+    Node node;
+
+    node = this.getNode(nodePath);
+
+    if ((node != null) && !(node instanceof Module)) {
+      throw new IllegalArgumentException("The node " + nodePath + " is not a module.");
+    }
+
+    return (Module)node;
+  }
+
+  /**
+   * Indexes a Node which was created, including dynamically.
+   * <p>
+   * Invalidates the negative entries for the NodePath of the Node and those of its
+   * descendants.
+   *
+   * @param node Node.
+   */
+  public void nodeCreated(Node node) {
+    NodePath nodePathCreated;
+    Iterator<NodePath> iteratorNodePath;
+
+    nodePathCreated = node.getNodePath().getNodePathCanonical();
+
+    this.readWriteLockNodePathAbsent.writeLock().lock();
+
+    try {
+      this.generation.incrementAndGet();
+
+      iteratorNodePath = this.setNodePathAbsent.iterator();
+
+      while (iteratorNodePath.hasNext()) {
+        if (NodePathIndex.isSelfOrDescendant(iteratorNodePath.next(), nodePathCreated)) {
+          iteratorNodePath.remove();
+        }
+      }
+    } finally {
+      this.readWriteLockNodePathAbsent.writeLock().unlock();
+    }
+
+    this.index(nodePathCreated, node);
+  }
+
+  /**
+   * Removes a Node which was deleted, as well as all its descendants, from the
+   * index.
+   * <p>
+   * Must also be called before the Node is renamed, in which case
+   * {@link #nodeCreated} must be called after. Invalidates all negative entries.
+   *
+   * @param node Node.
+   */
+  public void nodeDeleted(Node node) {
+    NodePath nodePathDeleted;
+    Iterator<NodePath> iteratorNodePath;
+
+    nodePathDeleted = node.getNodePath().getNodePathCanonical();
+    this.invalidateNegativeEntries();
+
+    iteratorNodePath = this.mapNode.keySet().iterator();
+
+    while (iteratorNodePath.hasNext()) {
+      if (NodePathIndex.isSelfOrDescendant(iteratorNodePath.next(), nodePathDeleted)) {
+        iteratorNodePath.remove();
+      }
+    }
+  }
+
+  /**
+   * Clears the index.
+   */
+  public void clear() {
+    this.invalidateNegativeEntries();
+    this.mapNode.clear();
+  }
+
+  /**
+   * @return Number of indexed Node's.
+   */
+  public int size() {
+    return this.mapNode.size();
+  }
+
+  /**
+   * Invalidates all negative entries.
+   */
+  private void invalidateNegativeEntries() {
+    this.readWriteLockNodePathAbsent.writeLock().lock();
+
+    try {
+      this.generation.incrementAndGet();
+      this.setNodePathAbsent.clear();
+    } finally {
+      this.readWriteLockNodePathAbsent.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Indexes a Node, unless a Node is already indexed for the NodePath, in which
+   * case that Node is kept so that all callers get the same instance.
+   *
+   * @param nodePath Canonical NodePath.
+   * @param node Node.
+   * @return Indexed Node.
+   */
+  private Node index(NodePath nodePath, Node node) {
+    Node nodeExisting;
+
+    nodeExisting = this.mapNode.putIfAbsent(nodePath, node);
+
+    return (nodeExisting != null) ? nodeExisting : node;
+  }
+
+  /**
+   * Verifies if a NodePath is the same as or a descendant of another one.
+   * <p>
+   * The partial and non-partial NodePath's having the same Node names are both
+   * considered as corresponding to the Node, since the index may contain either
+   * depending on how the Node was looked up.
+   *
+   * @param nodePath Canonical NodePath.
+   * @param nodePathAncestor Canonical NodePath of the potential ancestor.
+   * @return See description.
+   */
+  private static boolean isSelfOrDescendant(NodePath nodePath, NodePath nodePathAncestor) {
+    int nodeCountAncestor;
+
+    nodeCountAncestor = nodePathAncestor.getNodeCount();
+
+    if (nodePath.getNodeCount() < nodeCountAncestor) {
+      return false;
+    }
+
+    while (nodePath.getNodeCount() > nodeCountAncestor) {
+      nodePath = nodePath.getNodePathParent();
+    }
+
+    return NodePathIndex.isSameNodeNames(nodePath, nodePathAncestor);
+  }
+
+  /**
+   * Verifies if two NodePath's having the same number of Node's have the same Node
+   * names, regardless of whether they are partial.
+   *
+   * @param nodePath1 First NodePath.
+   * @param nodePath2 Second NodePath.
+   * @return See description.
+   */
+  private static boolean isSameNodeNames(NodePath nodePath1, NodePath nodePath2) {
+    for (int i = 0; i < nodePath1.getNodeCount(); i++) {
+      if (!nodePath1.getNodeName(i).equals(nodePath2.getNodeName(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
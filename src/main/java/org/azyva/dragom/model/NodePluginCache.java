@@ -0,0 +1,636 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.azyva.dragom.model;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.azyva.dragom.model.config.PluginDefConfig;
+import org.azyva.dragom.model.config.PluginKey;
+import org.azyva.dragom.model.plugin.NodePlugin;
+import org.azyva.dragom.model.plugin.NodePluginFactory;
+
+/**
+ * Cache of the {@link NodePlugin}'s of a {@link Node}, for implementing
+ * {@link Node#getNodePlugin}.
+ * <p>
+ * Getting a NodePlugin involves resolving the {@link PluginDefConfig}, loading
+ * the plugin implementation class and instantiating the NodePlugin, either
+ * through a {@link NodePluginFactory} or a constructor taking the Node. Since
+ * NodePlugin's such as ScmPlugin and ReferenceManagerPlugin are requested
+ * repeatedly for thousands of Module's, this must be done once per Node and
+ * {@link PluginKey}, which is what a NodePluginCache does.
+ * <p>
+ * Node implementations create a NodePluginCache for each Node and delegate
+ * {@link Node#getNodePlugin} to {@link #getNodePlugin}, providing a
+ * {@link PluginClassResolver} which resolves the plugin implementation class
+ * from the PluginDefConfig's, taking inheritance into account.
+ * <p>
+ * Since PluginDefConfig's are inherited, a configuration change on a Node can
+ * change the NodePlugin's of all its descendants. As for
+ * {@link NodePropertyTable}, all the NodePluginCache's of a Model therefore share
+ * a {@link NodePropertyTable.Generation} and the NodePlugin's cached before it is
+ * invalidated are discarded on next access.
+ * <p>
+ * The information required to instantiate NodePlugin's of a given implementation
+ * class (the Class itself and MethodHandle's for the constructors or for
+ * obtaining the NodePluginFactory) is cached globally, by class name, so that
+ * reflection is performed once per implementation class and not once per Node.
+ * This assumes that plugin implementation classes are loaded by a single
+ * ClassLoader, which is the case within Dragom.
+ * <p>
+ * {@link #warmup} can be used to instantiate the NodePlugin's of all the Node's
+ * of a {@link Model} in parallel ahead of time, and reports the time spent per
+ * plugin implementation class.
+ * <p>
+ * It is safe to use concurrently. A NodePlugin is instantiated outside of any
+ * lock so that its constructor can itself get other NodePlugin's of the same
+ * Node. Concurrent requests for the same NodePlugin can therefore instantiate it
+ * more than once, but only one instance is ever returned.
+ *
+ * @author David Raymond
+ */
+public final class NodePluginCache {
+  /**
+   * Resolves the plugin implementation class of a {@link NodePlugin} of a
+   * {@link Node}.
+   */
+  public interface PluginClassResolver {
+    /**
+     * Returns the plugin implementation class name, generally from
+     * {@link PluginDefConfig#getPluginClass} of the applicable PluginDefConfig.
+     *
+     * @param classNodePlugin Class of the NodePlugin.
+     * @param pluginId Plugin ID. Can be null.
+     * @return Plugin implementation class name. null if the NodePlugin does not
+     *   exist for the Node.
+     */
+    String getPluginClass(Class<? extends NodePlugin> classNodePlugin, String pluginId);
+  }
+
+  /**
+   * Information about a plugin implementation class, shared by all Node's.
+   */
+  private static final class PluginClassInfo {
+    /**
+     * Plugin implementation class.
+     */
+    private Class<?> classPlugin;
+
+    /**
+     * MethodHandle of type ()Object for obtaining the NodePluginFactory if the class
+     * implements NodePluginFactory. null otherwise.
+     */
+    private MethodHandle methodHandleFactory;
+
+    /**
+     * Map of Node implementation classes to MethodHandle's of type (Node)Object for
+     * the constructor taking that Node. Populated lazily since the constructor
+     * to use depends on the type of Node.
+     */
+    private Map<Class<?>, MethodHandle> mapMethodHandleConstructor;
+
+    /**
+     * Constructor.
+     *
+     * @param classPlugin Plugin implementation class.
+     */
+    private PluginClassInfo(Class<?> classPlugin) {
+      this.classPlugin = classPlugin;
+
+      if (NodePluginFactory.class.isAssignableFrom(classPlugin)) {
+        this.methodHandleFactory = PluginClassInfo.findMethodHandleFactory(classPlugin);
+      } else {
+        this.mapMethodHandleConstructor = new ConcurrentHashMap<Class<?>, MethodHandle>();
+      }
+    }
+
+    /**
+     * Finds the MethodHandle for obtaining the NodePluginFactory: the static
+     * getInstance method if it exists (singleton pattern), otherwise the no-arg
+     * constructor.
+     *
+     * @param classPlugin Plugin implementation class.
+     * @return MethodHandle of type ()Object.
+     */
+    private static MethodHandle findMethodHandleFactory(Class<?> classPlugin) {
+      Method methodGetInstance;
+      MethodHandle methodHandle;
+
+      // Looked up by name regardless of the declared return type, which can be
+      // NodePluginFactory or any other supertype of the class.
+      try {
+        methodGetInstance = classPlugin.getMethod("getInstance");
+
+        if (!Modifier.isStatic(methodGetInstance.getModifiers())) {
+          methodGetInstance = null;
+        }
+      } catch (NoSuchMethodException nsme) {
+        methodGetInstance = null;
+      }
+
+      try {
+        if (methodGetInstance != null) {
+          methodHandle = MethodHandles.publicLookup().unreflect(methodGetInstance);
+        } else {
+          try {
+            methodHandle = MethodHandles.publicLookup().findConstructor(classPlugin, MethodType.methodType(void.class));
+          } catch (NoSuchMethodException nsme) {
+            throw new RuntimeException("NodePluginFactory " + classPlugin.getName() + " has neither a public static getInstance method nor a public no-arg constructor.", nsme);
+          }
+        }
+      } catch (IllegalAccessException iae) {
+        throw new RuntimeException(iae);
+      }
+
+      return methodHandle.asType(MethodType.methodType(Object.class));
+    }
+
+    /**
+     * Returns the MethodHandle for the constructor taking a given type of Node.
+     *
+     * @param classNode Node implementation class.
+     * @return MethodHandle of type (Node)Object.
+     */
+    private MethodHandle getMethodHandleConstructor(Class<?> classNode) {
+      MethodHandle methodHandle;
+
+      methodHandle = this.mapMethodHandleConstructor.get(classNode);
+
+      if (methodHandle == null) {
+        Constructor<?> constructorFound;
+
+        constructorFound = null;
+
+        // The order of getConstructors is unspecified. The constructor with the most
+        // specific parameter type is used, as the compiler would do, so that a
+        // constructor taking a Module is preferred to one taking a Node.
+        for (Constructor<?> constructor: this.classPlugin.getConstructors()) {
+          if ((constructor.getParameterCount() == 1) && constructor.getParameterTypes()[0].isAssignableFrom(classNode)) {
+            if ((constructorFound == null) || constructorFound.getParameterTypes()[0].isAssignableFrom(constructor.getParameterTypes()[0])) {
+              constructorFound = constructor;
+            }
+          }
+        }
+
+        if (constructorFound == null) {
+          throw new RuntimeException("NodePlugin " + this.classPlugin.getName() + " has no public constructor taking a " + classNode.getName() + '.');
+        }
+
+        for (Constructor<?> constructor: this.classPlugin.getConstructors()) {
+          if ((constructor.getParameterCount() == 1) && constructor.getParameterTypes()[0].isAssignableFrom(classNode) && !constructor.getParameterTypes()[0].isAssignableFrom(constructorFound.getParameterTypes()[0])) {
+            throw new RuntimeException("NodePlugin " + this.classPlugin.getName() + " has ambiguous public constructors taking a " + classNode.getName() + ": " + constructorFound + " and " + constructor + '.');
+          }
+        }
+
+        try {
+          methodHandle = MethodHandles.publicLookup().unreflectConstructor(constructorFound).asType(MethodType.methodType(Object.class, Node.class));
+        } catch (IllegalAccessException iae) {
+          throw new RuntimeException(iae);
+        }
+
+        this.mapMethodHandleConstructor.put(classNode, methodHandle);
+      }
+
+      return methodHandle;
+    }
+
+    /**
+     * Instantiates a NodePlugin.
+     *
+     * @param classNodePlugin Class of the NodePlugin.
+     * @param node Node.
+     * @return NodePlugin.
+     */
+    private NodePlugin instantiate(Class<? extends NodePlugin> classNodePlugin, Node node) {
+      Object object;
+
+      try {
+        if (this.methodHandleFactory != null) {
+          // invokeExact requires the call site type to be exactly ()Object.
+          object = this.methodHandleFactory.invokeExact();
+          object = ((NodePluginFactory)object).getPlugin(classNodePlugin, node);
+        } else {
+          object = this.getMethodHandleConstructor(node.getClass()).invokeExact(node);
+        }
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new RuntimeException(t);
+      }
+
+      if (!classNodePlugin.isInstance(object)) {
+        throw new RuntimeException("Plugin " + this.classPlugin.getName() + " did not produce a " + classNodePlugin.getName() + '.');
+      }
+
+      return (NodePlugin)object;
+    }
+  }
+
+  /**
+   * Timing of the instantiation of the {@link NodePlugin}'s of a plugin
+   * implementation class during {@link #warmup}.
+   */
+  public static final class PluginTiming {
+    /**
+     * Plugin implementation class.
+     */
+    private Class<?> classPlugin;
+
+    /**
+     * Number of NodePlugin's.
+     */
+    private AtomicLong atomicLongCount;
+
+    /**
+     * Total time in nanoseconds.
+     */
+    private AtomicLong atomicLongTotalNanos;
+
+    /**
+     * Maximum time in nanoseconds.
+     */
+    private AtomicLong atomicLongMaxNanos;
+
+    /**
+     * Constructor.
+     *
+     * @param classPlugin Plugin implementation class.
+     */
+    private PluginTiming(Class<?> classPlugin) {
+      this.classPlugin = classPlugin;
+      this.atomicLongCount = new AtomicLong();
+      this.atomicLongTotalNanos = new AtomicLong();
+      this.atomicLongMaxNanos = new AtomicLong();
+    }
+
+    /**
+     * Records a NodePlugin.
+     *
+     * @param nanos Time in nanoseconds.
+     */
+    private void record(long nanos) {
+      long maxNanos;
+
+      this.atomicLongCount.incrementAndGet();
+      this.atomicLongTotalNanos.addAndGet(nanos);
+
+      do {
+        maxNanos = this.atomicLongMaxNanos.get();
+      } while ((nanos > maxNanos) && !this.atomicLongMaxNanos.compareAndSet(maxNanos, nanos));
+    }
+
+    /**
+     * @return Plugin implementation class.
+     */
+    public Class<?> getClassPlugin() {
+      return this.classPlugin;
+    }
+
+    /**
+     * @return Number of NodePlugin's obtained.
+     */
+    public long getCount() {
+      return this.atomicLongCount.get();
+    }
+
+    /**
+     * @return Total time in nanoseconds, summed over the threads.
+     */
+    public long getTotalNanos() {
+      return this.atomicLongTotalNanos.get();
+    }
+
+    /**
+     * @return Maximum time for a single NodePlugin in nanoseconds.
+     */
+    public long getMaxNanos() {
+      return this.atomicLongMaxNanos.get();
+    }
+
+    @Override
+    public String toString() {
+      return this.classPlugin.getName() + ": count=" + this.getCount() + ", total=" + (this.getTotalNanos() / 1000000) + "ms, max=" + (this.getMaxNanos() / 1000000) + "ms";
+    }
+  }
+
+  /**
+   * Map of plugin implementation class names to PluginClassInfo.
+   */
+  private static final Map<String, PluginClassInfo> mapPluginClassInfo = new ConcurrentHashMap<String, PluginClassInfo>();
+
+  /**
+   * Node.
+   */
+  private Node node;
+
+  /**
+   * PluginClassResolver.
+   */
+  private PluginClassResolver pluginClassResolver;
+
+  /**
+   * Generation shared by the NodePluginCache's of the Model.
+   */
+  private NodePropertyTable.Generation generation;
+
+  /**
+   * NodePlugin's instantiated for the Node for a given generation.
+   */
+  private static final class GenerationNodePlugins {
+    /**
+     * Generation for which the NodePlugin's were instantiated.
+     */
+    private long generation;
+
+    /**
+     * Map of the NodePlugin's.
+     */
+    private Map<PluginKey, NodePlugin> mapNodePlugin;
+
+    /**
+     * Constructor.
+     *
+     * @param generation Generation.
+     */
+    private GenerationNodePlugins(long generation) {
+      this.generation = generation;
+      this.mapNodePlugin = new ConcurrentHashMap<PluginKey, NodePlugin>();
+    }
+  }
+
+  /**
+   * NodePlugin's instantiated for the current generation. Replaced as a whole
+   * when the Generation is invalidated, so that a NodePlugin instantiated
+   * concurrently from the previous configuration is not retained.
+   */
+  private volatile GenerationNodePlugins generationNodePlugins;
+
+  /**
+   * Constructor.
+   *
+   * @param generation Generation shared by the NodePluginCache's (and the
+   *   NodePropertyTable's) of the Model.
+   * @param node Node.
+   * @param pluginClassResolver PluginClassResolver.
+   */
+  public NodePluginCache(NodePropertyTable.Generation generation, Node node, PluginClassResolver pluginClassResolver) {
+    this.generation = generation;
+    this.node = node;
+    this.pluginClassResolver = pluginClassResolver;
+    this.generationNodePlugins = new GenerationNodePlugins(generation.get());
+  }
+
+  /**
+   * Returns a {@link NodePlugin}, instantiating it if not already done.
+   *
+   * @param <NodePluginInterface> NodePlugin interface.
+   * @param classNodePlugin Class of the NodePlugin.
+   * @param pluginId Plugin ID. Can be null.
+   * @return NodePlugin.
+   */
+  public <NodePluginInterface extends NodePlugin> NodePluginInterface getNodePlugin(Class<NodePluginInterface> classNodePlugin, String pluginId) {
+    GenerationNodePlugins generationNodePlugins;
+    long generation;
+    PluginKey pluginKey;
+    NodePlugin nodePlugin;
+
+    generationNodePlugins = this.generationNodePlugins;
+    generation = this.generation.get();
+
+    if (generationNodePlugins.generation != generation) {
+      // A concurrent replacement for a more recent generation can be overwritten
+      // by this one, in which case it is simply replaced again on next access.
+      generationNodePlugins = new GenerationNodePlugins(generation);
+      this.generationNodePlugins = generationNodePlugins;
+    }
+
+    pluginKey = new PluginKey(classNodePlugin, pluginId);
+    nodePlugin = generationNodePlugins.mapNodePlugin.get(pluginKey);
+
+    if (nodePlugin == null) {
+      String pluginClass;
+      NodePlugin nodePluginExisting;
+
+      pluginClass = this.pluginClassResolver.getPluginClass(classNodePlugin, pluginId);
+
+      if (pluginClass == null) {
+        throw new RuntimeException("NodePlugin " + classNodePlugin.getName() + " with plugin ID " + pluginId + " does not exist for node " + this.node + '.');
+      }
+
+      // Not computeIfAbsent since the NodePlugin constructor may get other
+      // NodePlugin's of the same Node.
+      nodePlugin = NodePluginCache.getPluginClassInfo(pluginClass).instantiate(classNodePlugin, this.node);
+      nodePluginExisting = generationNodePlugins.mapNodePlugin.putIfAbsent(pluginKey, nodePlugin);
+
+      if (nodePluginExisting != null) {
+        nodePlugin = nodePluginExisting;
+      }
+    }
+
+    return classNodePlugin.cast(nodePlugin);
+  }
+
+  /**
+   * Returns the PluginClassInfo for a plugin implementation class, loading the
+   * class if not already done.
+   *
+   * @param pluginClass Plugin implementation class name.
+   * @return PluginClassInfo.
+   */
+  private static PluginClassInfo getPluginClassInfo(String pluginClass) {
+    PluginClassInfo pluginClassInfo;
+
+    pluginClassInfo = NodePluginCache.mapPluginClassInfo.get(pluginClass);
+
+    if (pluginClassInfo == null) {
+      PluginClassInfo pluginClassInfoExisting;
+
+      try {
+        pluginClassInfo = new PluginClassInfo(Class.forName(pluginClass));
+      } catch (ClassNotFoundException cnfe) {
+        throw new RuntimeException(cnfe);
+      }
+
+      pluginClassInfoExisting = NodePluginCache.mapPluginClassInfo.putIfAbsent(pluginClass, pluginClassInfo);
+
+      if (pluginClassInfoExisting != null) {
+        pluginClassInfo = pluginClassInfoExisting;
+      }
+    }
+
+    return pluginClassInfo;
+  }
+
+  /**
+   * Gets the {@link NodePlugin}'s of the specified classes, for all their plugin
+   * IDs, for all the Node's of a Model, in parallel.
+   * <p>
+   * This goes through {@link Node#getNodePlugin}, so that the NodePlugin's are
+   * cached by the Node implementation. The Node implementation and the
+   * NodePlugin's must therefore support being instantiated from worker threads.
+   * If parallelism is 1, the calling thread is used.
+   * <p>
+   * Only Node's which exist in the Model are visited. Node's which would be created
+   * dynamically are not.
+   * <p>
+   * If getting a NodePlugin fails, the warmup continues with the other Node's and
+   * the first failure is then thrown.
+   *
+   * @param model Model.
+   * @param listClassNodePlugin List of NodePlugin classes.
+   * @param parallelism Number of threads.
+   * @return List of PluginTiming, one per plugin implementation class, in
+   *   decreasing order of total time.
+   */
+  public static List<PluginTiming> warmup(Model model, final List<Class<? extends NodePlugin>> listClassNodePlugin, int parallelism) {
+    final List<Node> listNode;
+    final Map<Class<?>, PluginTiming> mapPluginTiming;
+    List<Callable<Void>> listCallable;
+    List<PluginTiming> listPluginTiming;
+
+    listNode = new ArrayList<Node>();
+
+    model.getClassificationNodeRoot().traverseNodeHierarchy(null, false, new NodeVisitor() {
+      @Override
+      public NodeVisitor.VisitControl visitNode(NodeVisitor.VisitAction visitAction, Node node) {
+        if (visitAction == NodeVisitor.VisitAction.VISIT) {
+          listNode.add(node);
+        }
+
+        return NodeVisitor.VisitControl.CONTINUE;
+      }
+    });
+
+    mapPluginTiming = new ConcurrentHashMap<Class<?>, PluginTiming>();
+    listCallable = new ArrayList<Callable<Void>>();
+
+    for (final Node node: listNode) {
+      listCallable.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (Class<? extends NodePlugin> classNodePlugin: listClassNodePlugin) {
+            for (String pluginId: node.getListPluginId(classNodePlugin)) {
+              long nanoStart;
+              NodePlugin nodePlugin;
+              PluginTiming pluginTiming;
+
+              nanoStart = System.nanoTime();
+              nodePlugin = node.getNodePlugin(classNodePlugin, pluginId);
+              pluginTiming = mapPluginTiming.get(nodePlugin.getClass());
+
+              if (pluginTiming == null) {
+                PluginTiming pluginTimingExisting;
+
+                pluginTiming = new PluginTiming(nodePlugin.getClass());
+                pluginTimingExisting = mapPluginTiming.putIfAbsent(nodePlugin.getClass(), pluginTiming);
+
+                if (pluginTimingExisting != null) {
+                  pluginTiming = pluginTimingExisting;
+                }
+              }
+
+              pluginTiming.record(System.nanoTime() - nanoStart);
+            }
+          }
+
+          return null;
+        }
+      });
+    }
+
+    if (parallelism <= 1) {
+      RuntimeException runtimeExceptionFirst;
+
+      runtimeExceptionFirst = null;
+
+      for (Callable<Void> callable: listCallable) {
+        try {
+          callable.call();
+        } catch (Exception e) {
+          if (runtimeExceptionFirst == null) {
+            runtimeExceptionFirst = new RuntimeException(e);
+          }
+        }
+      }
+
+      if (runtimeExceptionFirst != null) {
+        throw runtimeExceptionFirst;
+      }
+    } else {
+      ExecutorService executorService;
+
+      executorService = Executors.newFixedThreadPool(parallelism);
+
+      try {
+        List<Future<Void>> listFuture;
+        RuntimeException runtimeExceptionFirst;
+
+        listFuture = executorService.invokeAll(listCallable);
+        runtimeExceptionFirst = null;
+
+        for (Future<Void> future: listFuture) {
+          try {
+            future.get();
+          } catch (ExecutionException ee) {
+            if (runtimeExceptionFirst == null) {
+              runtimeExceptionFirst = new RuntimeException(ee.getCause());
+            }
+          }
+        }
+
+        if (runtimeExceptionFirst != null) {
+          throw runtimeExceptionFirst;
+        }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ie);
+      } finally {
+        executorService.shutdownNow();
+      }
+    }
+
+    listPluginTiming = new ArrayList<PluginTiming>(mapPluginTiming.values());
+
+    Collections.sort(listPluginTiming, new Comparator<PluginTiming>() {
+      @Override
+      public int compare(PluginTiming pluginTiming1, PluginTiming pluginTiming2) {
+        return Long.compare(pluginTiming2.getTotalNanos(), pluginTiming1.getTotalNanos());
+      }
+    });
+
+    return listPluginTiming;
+  }
+}
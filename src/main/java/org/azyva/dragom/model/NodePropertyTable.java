@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.azyva.dragom.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.azyva.dragom.model.config.PropertyDefConfig;
+
+/**
+ * Flattened table of the properties of a {@link Node}, including those inherited
+ * from its ancestors, for implementing {@link Node#getProperty}.
+ * <p>
+ * A property is resolved by looking for a {@link PropertyDefConfig} on the Node
+ * itself and then on its ancestors, ignoring on ancestors those which apply only
+ * to the Node on which they are defined ({@link PropertyDefConfig#isOnlyThisNode}).
+ * The first one found provides the value, which can be null to prevent
+ * inheritance. Since plugins call {@link Node#getProperty} repeatedly, walking up
+ * the ancestors at each call is wasteful. A NodePropertyTable resolves all the
+ * properties of a Node at once, lazily, so that getting a property requires a
+ * single hash lookup.
+ * <p>
+ * Node implementations create a NodePropertyTable for each Node, giving it the
+ * NodePropertyTable of the parent Node and a {@link PropertyDefSupplier} providing
+ * the PropertyDefConfig's defined on the Node itself, and delegate
+ * {@link Node#getProperty} to {@link #getProperty}.
+ * <p>
+ * All the NodePropertyTable's of a {@link Model} share a {@link Generation}. When
+ * the configuration of a Node changes (generally in
+ * {@link MutableNode#setNodeConfigTransferObject}), the Generation must be
+ * invalidated, which causes all the NodePropertyTable's to be lazily rebuilt.
+ * Invalidating all of them is simpler and safer than tracking the descendants of
+ * the modified Node, and configuration changes are rare compared to property
+ * reads.
+ * <p>
+ * It is safe to use concurrently. A resolved table is immutable and is
+ * published atomically. Concurrent rebuilds can happen and produce the same
+ * result.
+ *
+ * @author David Raymond
+ */
+public final class NodePropertyTable {
+  /**
+   * Provides the {@link PropertyDefConfig}'s defined on a {@link Node} itself.
+   * <p>
+   * For a Node based on a NodeConfig, this is generally
+   * {@link org.azyva.dragom.model.config.NodeConfig#getListPropertyDefConfig}.
+   */
+  public interface PropertyDefSupplier {
+    /**
+     * @return List of PropertyDefConfig's defined on the Node. Must not be null.
+     */
+    List<PropertyDefConfig> getListPropertyDefConfig();
+  }
+
+  /**
+   * Generation of the configuration of the {@link Node}'s of a {@link Model},
+   * shared by all the NodePropertyTable's of the Model. Also used by
+   * {@link NodePluginCache} since PluginDefConfig's are inherited like
+   * properties.
+   */
+  public static final class Generation {
+    /**
+     * Current generation.
+     */
+    private AtomicLong atomicLongGeneration;
+
+    /**
+     * Constructor.
+     */
+    public Generation() {
+      this.atomicLongGeneration = new AtomicLong();
+    }
+
+    /**
+     * Invalidates all the NodePropertyTable's and NodePluginCache's sharing this
+     * Generation.
+     * <p>
+     * Must be called after the configuration of any Node changes.
+     */
+    public void invalidate() {
+      this.atomicLongGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return Current generation.
+     */
+    long get() {
+      return this.atomicLongGeneration.get();
+    }
+  }
+
+  /**
+   * Resolved properties of a Node for a given generation. Immutable.
+   */
+  private static final class ResolvedTable {
+    /**
+     * Generation for which the ResolvedTable was built.
+     */
+    private long generation;
+
+    /**
+     * Map of the properties visible on the Node. A property whose value is null is
+     * present in the Map.
+     */
+    private Map<String, String> mapProperty;
+
+    /**
+     * Map of the properties inherited by the children of the Node. Same as
+     * mapProperty (same instance) if the Node does not define properties which
+     * apply only to itself.
+     */
+    private Map<String, String> mapPropertyInherited;
+
+    /**
+     * Constructor.
+     *
+     * @param generation Generation.
+     * @param mapProperty See field.
+     * @param mapPropertyInherited See field.
+     */
+    private ResolvedTable(long generation, Map<String, String> mapProperty, Map<String, String> mapPropertyInherited) {
+      this.generation = generation;
+      this.mapProperty = mapProperty;
+      this.mapPropertyInherited = mapPropertyInherited;
+    }
+  }
+
+  /**
+   * Generation.
+   */
+  private Generation generation;
+
+  /**
+   * NodePropertyTable of the parent Node. null for the root ClassificationNode.
+   */
+  private NodePropertyTable nodePropertyTableParent;
+
+  /**
+   * PropertyDefSupplier.
+   */
+  private PropertyDefSupplier propertyDefSupplier;
+
+  /**
+   * ResolvedTable. null if not resolved yet.
+   */
+  private volatile ResolvedTable resolvedTable;
+
+  /**
+   * Constructor.
+   *
+   * @param generation Generation shared by the NodePropertyTable's of the Model.
+   * @param nodePropertyTableParent NodePropertyTable of the parent Node. null for
+   *   the root ClassificationNode.
+   * @param propertyDefSupplier PropertyDefSupplier.
+   */
+  public NodePropertyTable(Generation generation, NodePropertyTable nodePropertyTableParent, PropertyDefSupplier propertyDefSupplier) {
+    this.generation = generation;
+    this.nodePropertyTableParent = nodePropertyTableParent;
+    this.propertyDefSupplier = propertyDefSupplier;
+  }
+
+  /**
+   * Returns the value of a property, resolved as described in the class
+   * description.
+   *
+   * @param name Name of the property.
+   * @return Value of the property. null if the property is not defined or is
+   *   defined with a null value.
+   */
+  public String getProperty(String name) {
+    return this.getResolvedTable().mapProperty.get(name);
+  }
+
+  /**
+   * Verifies if a property is defined, even if with a null value.
+   *
+   * @param name Name of the property.
+   * @return See description.
+   */
+  public boolean isPropertyExists(String name) {
+    return this.getResolvedTable().mapProperty.containsKey(name);
+  }
+
+  /**
+   * @return Unmodifiable Map of all the properties visible on the Node, including
+   *   those defined with a null value.
+   */
+  public Map<String, String> getMapProperty() {
+    return Collections.unmodifiableMap(this.getResolvedTable().mapProperty);
+  }
+
+  /**
+   * Returns the ResolvedTable, resolving it if it is not resolved yet or if the
+   * Generation was invalidated since.
+   *
+   * @return ResolvedTable.
+   */
+  private ResolvedTable getResolvedTable() {
+    ResolvedTable resolvedTable;
+    long generation;
+
+    resolvedTable = this.resolvedTable;
+    generation = this.generation.get();
+
+    if ((resolvedTable != null) && (resolvedTable.generation == generation)) {
+      return resolvedTable;
+    }
+
+    // The ResolvedTable is tagged with the generation read before resolving, so
+    // that if the Generation is invalidated during the resolution, it is resolved
+    // again on next access.
+    resolvedTable = this.resolve(generation);
+    this.resolvedTable = resolvedTable;
+
+    return resolvedTable;
+  }
+
+  /**
+   * Resolves the properties.
+   *
+   * @param generation Generation.
+   * @return ResolvedTable.
+   */
+  private ResolvedTable resolve(long generation) {
+    Map<String, String> mapPropertyInheritedParent;
+    List<PropertyDefConfig> listPropertyDefConfig;
+    Map<String, String> mapProperty;
+    Map<String, String> mapPropertyInherited;
+    boolean indOnlyThisNode;
+
+    if (this.nodePropertyTableParent == null) {
+      mapPropertyInheritedParent = Collections.emptyMap();
+    } else {
+      mapPropertyInheritedParent = this.nodePropertyTableParent.getResolvedTable().mapPropertyInherited;
+    }
+
+    listPropertyDefConfig = this.propertyDefSupplier.getListPropertyDefConfig();
+
+    // Most Node's, and in particular Module's, define no property of their own and
+    // can share the Map of their parent.
+    if (listPropertyDefConfig.isEmpty()) {
+      return new ResolvedTable(generation, mapPropertyInheritedParent, mapPropertyInheritedParent);
+    }
+
+    mapProperty = new HashMap<String, String>(mapPropertyInheritedParent);
+    indOnlyThisNode = false;
+
+    for (PropertyDefConfig propertyDefConfig: listPropertyDefConfig) {
+      mapProperty.put(propertyDefConfig.getName(), propertyDefConfig.getValue());
+
+      if (propertyDefConfig.isOnlyThisNode()) {
+        indOnlyThisNode = true;
+      }
+    }
+
+    if (!indOnlyThisNode) {
+      return new ResolvedTable(generation, mapProperty, mapProperty);
+    }
+
+    // Children do not see the properties which apply only to this Node. They see
+    // what the parent provides instead, if anything.
+    mapPropertyInherited = new HashMap<String, String>(mapPropertyInheritedParent);
+
+    for (PropertyDefConfig propertyDefConfig: listPropertyDefConfig) {
+      if (!propertyDefConfig.isOnlyThisNode()) {
+        mapPropertyInherited.put(propertyDefConfig.getName(), propertyDefConfig.getValue());
+      }
+    }
+
+    return new ResolvedTable(generation, mapProperty, mapPropertyInherited);
+  }
+}
@@ -22,9 +22,8 @@ package org.azyva.dragom.model;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ResourceBundle;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import org.azyva.dragom.apiutil.InternCache;
 import org.azyva.dragom.model.plugin.ArtifactVersionMapperPlugin;
 import org.azyva.dragom.model.plugin.ScmPlugin;
 
@@ -49,6 +48,10 @@ import org.azyva.dragom.model.plugin.ScmPlugin;
  * Version's in a way that can be handled by the SCM. For example a Version such
  * as D/develop-my-project could be mapped to refs/heads/develop-my-project for
  * Git and branches/develop-my-project for Subversion.
+ * <p>
+ * {@link #valueOf} returns canonical instances from a bounded cache and should be
+ * preferred to the constructor when parsing literals that are likely to be
+ * repeated.
  *
  * @author David Raymond
  */
@@ -64,11 +67,23 @@ public final class Version {
   private static final ResourceBundle resourceBundle = ResourceBundle.getBundle(Version.class.getName() + "ResourceBundle");
 
   /**
-   * Pattern for parsing a Version literal.
+   * Regex describing a valid Version literal.
    *
    * <p>We allow "/" in Version literals, but not at the beginning or end.
+   *
+   * <p>Not used for actually parsing, but included in error messages.
+   */
+  private static final String REGEX_VERSION_LITERAL = "(D|S)/([a-zA-Z0-9\\.\\-_]+(?:/[a-zA-Z0-9\\.\\-_]+)*)";
+
+  /**
+   * Maximum number of canonical instances cached by {@link #valueOf}.
+   */
+  private static final int MAX_CACHED_INSTANCES = 8192;
+
+  /**
+   * Cache of canonical instances, keyed by Version literal.
    */
-  private static final Pattern patternVersionLiteral = Pattern.compile("(D|S)/([a-zA-Z0-9\\.\\-_]+(?:/[a-zA-Z0-9\\.\\-_]+)*)");
+  private static final InternCache<String, Version> internCache = new InternCache<String, Version>(Version.MAX_CACHED_INSTANCES);
 
   /**
    * VersionType.
@@ -80,6 +95,11 @@ public final class Version {
    */
   private String version;
 
+  /**
+   * Precomputed hash code.
+   */
+  private int hashCode;
+
   /**
    * Constructor using the individual fields.
    *
@@ -97,6 +117,7 @@ public final class Version {
 
     this.versionType = versionType;
     this.version = version;
+    this.hashCode = this.computeHashCode();
   }
 
   /**
@@ -107,27 +128,85 @@ public final class Version {
    * @param stringVersion Version literal.
    */
   public Version(String stringVersion) {
-    Matcher matcher;
+    try {
+      int length;
 
-    matcher = Version.patternVersionLiteral.matcher(stringVersion);
+      length = stringVersion.length();
 
-    try {
-      if (!matcher.matches()) {
-        throw new ParseException(MessageFormat.format(Version.resourceBundle.getString(Version.MSG_PATTERN_KEY_VERSION_PARSING_ERROR), stringVersion, Version.patternVersionLiteral), 0);
+      // We allow "/" in Version literals, but not at the beginning or end, and not
+      // consecutively.
+      if (   (length < 3)
+          || ((stringVersion.charAt(0) != 'D') && (stringVersion.charAt(0) != 'S'))
+          || (stringVersion.charAt(1) != '/')
+          || (stringVersion.charAt(2) == '/')
+          || (stringVersion.charAt(length - 1) == '/')) {
+
+        throw new ParseException(MessageFormat.format(Version.resourceBundle.getString(Version.MSG_PATTERN_KEY_VERSION_PARSING_ERROR), stringVersion, Version.REGEX_VERSION_LITERAL), 0);
+      }
+
+      for (int i = 2; i < length; i++) {
+        char character;
+
+        character = stringVersion.charAt(i);
+
+        if (character == '/') {
+          if (stringVersion.charAt(i - 1) == '/') {
+            throw new ParseException(MessageFormat.format(Version.resourceBundle.getString(Version.MSG_PATTERN_KEY_VERSION_PARSING_ERROR), stringVersion, Version.REGEX_VERSION_LITERAL), i);
+          }
+        } else if (!Version.isVersionChar(character)) {
+          throw new ParseException(MessageFormat.format(Version.resourceBundle.getString(Version.MSG_PATTERN_KEY_VERSION_PARSING_ERROR), stringVersion, Version.REGEX_VERSION_LITERAL), i);
+        }
       }
 
-      if (matcher.group(1).charAt(0) == 'D') {
+      if (stringVersion.charAt(0) == 'D') {
         this.versionType = VersionType.DYNAMIC;
       } else {
         this.versionType = VersionType.STATIC;
       }
 
-      this.version = matcher.group(2);
+      this.version = stringVersion.substring(2);
+      this.hashCode = this.computeHashCode();
     } catch (ParseException pe) {
       throw new RuntimeException(pe);
     }
   }
 
+  /**
+   * Indicates if a character is valid within the String part of a Version, or an
+   * {@link ArtifactVersion}, excluding "/".
+   *
+   * @param character Character.
+   * @return See description.
+   */
+  static boolean isVersionChar(char character) {
+    return    ((character >= 'a') && (character <= 'z'))
+           || ((character >= 'A') && (character <= 'Z'))
+           || ((character >= '0') && (character <= '9'))
+           || (character == '.')
+           || (character == '-')
+           || (character == '_');
+  }
+
+  /**
+   * Returns the canonical Version corresponding to a Version literal.
+   * <p>
+   * Throws RuntimeException if parsing fails.
+   *
+   * @param stringVersion Version literal.
+   * @return Version.
+   */
+  public static Version valueOf(String stringVersion) {
+    Version version;
+
+    version = Version.internCache.get(stringVersion);
+
+    if (version == null) {
+      version = Version.internCache.intern(stringVersion, new Version(stringVersion));
+    }
+
+    return version;
+  }
+
   /**
    * Parses a Version literal.
    *
@@ -138,7 +217,7 @@ public final class Version {
   public static Version parse(String stringVersion)
   throws ParseException {
     try {
-      return new Version(stringVersion);
+      return Version.valueOf(stringVersion);
     } catch (RuntimeException re) {
       if (re.getCause() instanceof ParseException) {
         throw (ParseException)re.getCause();
@@ -194,8 +273,12 @@ public final class Version {
     }
   }
 
-  @Override
-  public int hashCode() {
+  /**
+   * Computes the hash code, which is then kept since instances are immutable.
+   *
+   * @return Hash code.
+   */
+  private int computeHashCode() {
     final int prime = 31;
     int result;
 
@@ -206,6 +289,11 @@ public final class Version {
     return result;
   }
 
+  @Override
+  public int hashCode() {
+    return this.hashCode;
+  }
+
   @Override
   public boolean equals(Object other) {
     Version versionOther;
@@ -220,6 +308,10 @@ public final class Version {
 
     versionOther = (Version)other;
 
+    if (this.hashCode != versionOther.hashCode) {
+      return false;
+    }
+
     return (this.versionType == versionOther.versionType) && (this.version.equals(versionOther.version));
   }
 }
@@ -28,6 +28,7 @@ import org.azyva.dragom.execcontext.plugin.WorkspaceDirSystemModule;
 import org.azyva.dragom.execcontext.plugin.WorkspaceDirUserModuleVersion;
 import org.azyva.dragom.model.ArtifactVersion;
 import org.azyva.dragom.model.Module;
+import org.azyva.dragom.model.NodePath;
 import org.azyva.dragom.model.Version;
 
 // TODO: What about merges? Should this plugin handle merges? Are they similar enough between SCM?
@@ -442,6 +443,12 @@ public interface ScmPlugin extends ModulePlugin {
   //   then again, maybe use attributes on initial dummy commit for dynamic version.
   /**
    * Creates a Version of the {@link Module}.
+   * <p>
+   * When the {@link ScmVersionAttrCache} is enabled, the Version attributes of the
+   * new Version may have been cached (possibly as empty) before it was created.
+   * Callers should then use {@link ScmVersionAttrCache#createVersion}, which
+   * invalidates them. Implementations can also invalidate them themselves using
+   * {@link ScmVersionAttrCache#invalidate(NodePath, Version)}.
    *
    * @param pathModuleWorkspace Path to the Module.
    * @param versionTarget New Version.
@@ -453,6 +460,10 @@ public interface ScmPlugin extends ModulePlugin {
   // Cannot return null (but empty map, yes).
   /**
    * Returns the attributes of a Version.
+   * <p>
+   * This generally requires an SCM round-trip. Callers which may request the
+   * attributes of the same Version repeatedly should use
+   * {@link ScmVersionAttrCache}.
    *
    * @param version Version.
    * @return See description.
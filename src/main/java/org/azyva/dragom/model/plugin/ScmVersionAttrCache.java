@@ -0,0 +1,313 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.azyva.dragom.model.plugin;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.azyva.dragom.execcontext.ExecContext;
+import org.azyva.dragom.model.Model;
+import org.azyva.dragom.model.Module;
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+import org.azyva.dragom.model.Version;
+
+/**
+ * Bounded cache of the {@link Version} attributes returned by
+ * {@link ScmPlugin#getMapVersionAttr}, keyed by {@link ModuleVersion}.
+ * <p>
+ * Obtaining Version attributes generally requires an SCM round-trip. Some
+ * callers, such as ReferencePathMatcherVersionAttribute, need the Version
+ * attributes of the same ModuleVersion many times during a tool execution. This
+ * cache ensures that at most one round-trip is made for each ModuleVersion,
+ * including when the same ModuleVersion is requested concurrently.
+ * <p>
+ * There is one instance per {@link ExecContext}, stored as transient data and
+ * obtained with {@link #get}. It therefore has tool scope.
+ * <p>
+ * The cache is disabled by default and must be enabled with the
+ * {@link #INIT_PROPERTY_IND_ENABLED} initialization property. When it is
+ * disabled, {@link #get} returns null and callers obtain Version attributes
+ * directly from the ScmPlugin.
+ * <p>
+ * This cache is not safe across {@link ScmPlugin#createVersion}. Version
+ * attributes cached before a Version is created (possibly as empty for a Version
+ * which did not exist yet) remain cached unless the Version is created through
+ * {@link #createVersion}, or unless the ScmPlugin implementation itself calls
+ * {@link #invalidate}. The cache should therefore only be enabled when one of
+ * these conditions holds for all Versions created during the tool execution.
+ * <p>
+ * The cache is bounded to a maximum number of ModuleVersion's, after which the
+ * least recently used ones are evicted. The maximum can be specified with the
+ * {@link #INIT_PROPERTY_MAX_SIZE} initialization property.
+ * <p>
+ * It is safe to use concurrently.
+ *
+ * @author David Raymond
+ */
+public final class ScmVersionAttrCache {
+  /**
+   * Initialization property indicating to enable the cache. Default is false.
+   */
+  public static final String INIT_PROPERTY_IND_ENABLED = "org.azyva.dragom.ScmVersionAttrCacheEnabled";
+
+  /**
+   * Initialization property specifying the maximum number of ModuleVersion's for
+   * which Version attributes are cached. Default is {@link #DEFAULT_MAX_SIZE}.
+   */
+  public static final String INIT_PROPERTY_MAX_SIZE = "org.azyva.dragom.ScmVersionAttrCacheMaxSize";
+
+  /**
+   * Default maximum number of ModuleVersion's for which Version attributes are
+   * cached.
+   */
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  /**
+   * Transient data holding the ScmVersionAttrCache of an ExecContext.
+   */
+  private static final String TRANSIENT_DATA_SCM_VERSION_ATTR_CACHE = ScmVersionAttrCache.class.getName() + ".ScmVersionAttrCache";
+
+  /**
+   * Entry of the cache.
+   * <p>
+   * The CacheEntry is inserted in the cache before the Version attributes are
+   * obtained. The Version attributes are obtained while holding the lock on the
+   * CacheEntry, so that concurrent requests for the same ModuleVersion wait for the
+   * single round-trip instead of performing their own, while requests for other
+   * ModuleVersion's are not blocked.
+   */
+  private static final class CacheEntry {
+    /**
+     * Version attributes. null if not obtained yet.
+     */
+    private Map<String, String> mapVersionAttr;
+  }
+
+  /**
+   * LRU Map of the CacheEntry's.
+   */
+  private LinkedHashMap<ModuleVersion, CacheEntry> mapCacheEntry;
+
+  /**
+   * Number of round-trips made, for diagnostic purposes.
+   */
+  private long nbLoads;
+
+  /**
+   * Number of requests, for diagnostic purposes.
+   */
+  private long nbRequests;
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize Maximum number of ModuleVersion's.
+   */
+  public ScmVersionAttrCache(final int maxSize) {
+    if (maxSize <= 0) {
+      throw new RuntimeException("Invalid maximum size " + maxSize + '.');
+    }
+
+    this.mapCacheEntry = new LinkedHashMap<ModuleVersion, CacheEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ModuleVersion, CacheEntry> eldest) {
+        return this.size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the ScmVersionAttrCache of an ExecContext, creating it if it does not
+   * exist yet.
+   *
+   * @param execContext ExecContext.
+   * @return See description. null if the cache is not enabled with
+   *   {@link #INIT_PROPERTY_IND_ENABLED}.
+   */
+  public static ScmVersionAttrCache get(ExecContext execContext) {
+    ScmVersionAttrCache scmVersionAttrCache;
+
+    if (!Boolean.parseBoolean(execContext.getInitProperty(ScmVersionAttrCache.INIT_PROPERTY_IND_ENABLED))) {
+      return null;
+    }
+
+    synchronized (execContext) {
+      scmVersionAttrCache = (ScmVersionAttrCache)execContext.getTransientData(ScmVersionAttrCache.TRANSIENT_DATA_SCM_VERSION_ATTR_CACHE);
+
+      if (scmVersionAttrCache == null) {
+        String maxSize;
+
+        maxSize = execContext.getInitProperty(ScmVersionAttrCache.INIT_PROPERTY_MAX_SIZE);
+
+        try {
+          scmVersionAttrCache = new ScmVersionAttrCache((maxSize == null) ? ScmVersionAttrCache.DEFAULT_MAX_SIZE : Integer.parseInt(maxSize));
+        } catch (NumberFormatException nfe) {
+          throw new RuntimeException("Invalid value " + maxSize + " for initialization property " + ScmVersionAttrCache.INIT_PROPERTY_MAX_SIZE + '.', nfe);
+        }
+
+        execContext.setTransientData(ScmVersionAttrCache.TRANSIENT_DATA_SCM_VERSION_ATTR_CACHE, scmVersionAttrCache);
+      }
+    }
+
+    return scmVersionAttrCache;
+  }
+
+  /**
+   * Returns the Version attributes of a ModuleVersion, obtaining them from the
+   * {@link ScmPlugin} of the {@link Module} if they are not cached.
+   *
+   * @param model Model used to resolve the Module.
+   * @param moduleVersion ModuleVersion.
+   * @return Unmodifiable Map of the Version attributes. Never null.
+   */
+  public Map<String, String> getMapVersionAttr(Model model, ModuleVersion moduleVersion) {
+    CacheEntry cacheEntry;
+
+    synchronized (this.mapCacheEntry) {
+      this.nbRequests++;
+      cacheEntry = this.mapCacheEntry.get(moduleVersion);
+
+      if (cacheEntry == null) {
+        cacheEntry = new CacheEntry();
+        this.mapCacheEntry.put(moduleVersion, cacheEntry);
+      }
+    }
+
+    // If the CacheEntry is evicted or invalidated while the Version attributes are
+    // being obtained, they are still returned to the callers which were waiting for
+    // them, but the CacheEntry is not reused.
+    synchronized (cacheEntry) {
+      if (cacheEntry.mapVersionAttr == null) {
+        Module module;
+        ScmPlugin scmPlugin;
+
+        module = model.getModule(moduleVersion.getNodePath());
+        scmPlugin = module.getNodePlugin(ScmPlugin.class, null);
+        cacheEntry.mapVersionAttr = Collections.unmodifiableMap(scmPlugin.getMapVersionAttr(moduleVersion.getVersion()));
+
+        synchronized (this.mapCacheEntry) {
+          this.nbLoads++;
+        }
+      }
+
+      return cacheEntry.mapVersionAttr;
+    }
+  }
+
+  /**
+   * Invalidates the cached Version attributes of a ModuleVersion.
+   * <p>
+   * {@link #createVersion} calls this method. ScmPlugin implementations can also
+   * call it from {@link ScmPlugin#createVersion} so that the cache remains
+   * consistent when Versions are created directly.
+   *
+   * @param moduleVersion ModuleVersion.
+   */
+  public void invalidate(ModuleVersion moduleVersion) {
+    synchronized (this.mapCacheEntry) {
+      this.mapCacheEntry.remove(moduleVersion);
+    }
+  }
+
+  /**
+   * Invalidates the cached Version attributes of a ModuleVersion, given the
+   * {@link NodePath} of the Module and the Version.
+   * <p>
+   * Convenience method for callers which know the Module and the Version, but not
+   * necessarily a ModuleVersion.
+   *
+   * @param nodePath NodePath of the Module.
+   * @param version Version.
+   */
+  public void invalidate(NodePath nodePath, Version version) {
+    this.invalidate(new ModuleVersion(nodePath, version));
+  }
+
+  /**
+   * Creates a Version of a {@link Module} by calling
+   * {@link ScmPlugin#createVersion} and invalidates the cached Version attributes
+   * of the new Version in the ScmVersionAttrCache of the ExecContext, if enabled.
+   * <p>
+   * Callers which create Versions while the cache is enabled should use this
+   * method instead of calling ScmPlugin.createVersion directly.
+   *
+   * @param execContext ExecContext.
+   * @param scmPlugin ScmPlugin of the Module.
+   * @param pathModuleWorkspace Path to the Module.
+   * @param versionTarget New Version.
+   * @param mapVersionAttr Version attributes.
+   * @param indSwitch Indicates to switch to the new Version.
+   */
+  public static void createVersion(ExecContext execContext, ScmPlugin scmPlugin, Path pathModuleWorkspace, Version versionTarget, Map<String, String> mapVersionAttr, boolean indSwitch) {
+    ScmVersionAttrCache scmVersionAttrCache;
+
+    try {
+      scmPlugin.createVersion(pathModuleWorkspace, versionTarget, mapVersionAttr, indSwitch);
+    } finally {
+      // Invalidating also when createVersion fails since the Version may have been
+      // partially created.
+      scmVersionAttrCache = ScmVersionAttrCache.get(execContext);
+
+      if (scmVersionAttrCache != null) {
+        scmVersionAttrCache.invalidate(scmPlugin.getNode().getNodePath(), versionTarget);
+      }
+    }
+  }
+
+  /**
+   * Invalidates all cached Version attributes.
+   */
+  public void clear() {
+    synchronized (this.mapCacheEntry) {
+      this.mapCacheEntry.clear();
+    }
+  }
+
+  /**
+   * @return Number of ModuleVersion's currently cached.
+   */
+  public int size() {
+    synchronized (this.mapCacheEntry) {
+      return this.mapCacheEntry.size();
+    }
+  }
+
+  /**
+   * @return Number of round-trips made to obtain Version attributes.
+   */
+  public long getNbLoads() {
+    synchronized (this.mapCacheEntry) {
+      return this.nbLoads;
+    }
+  }
+
+  /**
+   * @return Number of requests for Version attributes.
+   */
+  public long getNbRequests() {
+    synchronized (this.mapCacheEntry) {
+      return this.nbRequests;
+    }
+  }
+}
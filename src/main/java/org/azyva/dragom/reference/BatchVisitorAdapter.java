@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.reference.ReferenceGraph.BatchVisitor;
+import org.azyva.dragom.reference.ReferenceGraph.VisitAction;
+import org.azyva.dragom.reference.ReferenceGraph.VisitControl;
+import org.azyva.dragom.reference.ReferenceGraph.Visitor;
+
+/**
+ * {@link Visitor} which accumulates visits in a {@link VisitBatch} and passes them
+ * to a {@link BatchVisitor}.
+ * <p>
+ * Used by the default implementation of
+ * {@link ReferenceGraph#traverseReferenceGraphBatch}, which is based on
+ * {@link ReferenceGraph#traverseReferenceGraph}. {@link ModuleVersion} IDs are
+ * assigned in the order in which ModuleVersion's are first visited.
+ *
+ * @author David Raymond
+ */
+class BatchVisitorAdapter implements Visitor {
+  /**
+   * BatchVisitor.
+   */
+  private BatchVisitor batchVisitor;
+
+  /**
+   * VisitBatch.
+   */
+  private VisitBatch visitBatch;
+
+  /**
+   * Map of {@link ModuleVersion}'s to their IDs.
+   */
+  private Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+  /**
+   * ModuleVersion's indexed by ID.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * Constructor.
+   *
+   * @param batchSize Maximum number of visits in a batch.
+   * @param batchVisitor BatchVisitor.
+   */
+  BatchVisitorAdapter(int batchSize, BatchVisitor batchVisitor) {
+    this.batchVisitor = batchVisitor;
+    this.visitBatch = new VisitBatch(batchSize);
+    this.mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+    this.arrayModuleVersion = new ModuleVersion[64];
+    this.visitBatch.setArrayModuleVersion(this.arrayModuleVersion);
+  }
+
+  @Override
+  public VisitControl visit(ReferenceGraph referenceGraph, ReferencePath referencePath, EnumSet<VisitAction> enumSetVisitAction) {
+    ModuleVersion moduleVersion;
+    Integer id;
+
+    moduleVersion = referencePath.getLeafModuleVersion();
+    id = this.mapIdModuleVersion.get(moduleVersion);
+
+    if (id == null) {
+      id = this.mapIdModuleVersion.size();
+
+      if (id == this.arrayModuleVersion.length) {
+        this.arrayModuleVersion = Arrays.copyOf(this.arrayModuleVersion, id * 2);
+        this.visitBatch.setArrayModuleVersion(this.arrayModuleVersion);
+      }
+
+      this.arrayModuleVersion[id] = moduleVersion;
+      this.mapIdModuleVersion.put(moduleVersion, id);
+    }
+
+    if (this.visitBatch.add(id, referencePath.size() - 1, VisitBatch.getVisitActionMask(enumSetVisitAction)) && this.visitBatch.flush(this.batchVisitor)) {
+      return VisitControl.ABORT;
+    }
+
+    return VisitControl.CONTINUE;
+  }
+
+  /**
+   * Passes the remaining visits to the {@link BatchVisitor}.
+   *
+   * @return Indicates if the traversal has been aborted.
+   */
+  boolean flush() {
+    return this.visitBatch.flush(this.batchVisitor);
+  }
+}
@@ -0,0 +1,1786 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+
+/**
+ * {@link ReferenceGraph} implementation backed by primitive arrays.
+ * <p>
+ * Each {@link ModuleVersion} is assigned a dense int ID when it is added. While
+ * the ReferenceGraph is being built, {@link Reference}'s are kept in growable
+ * arrays with an int linked list of the Reference's of each ModuleVersion. On the
+ * first query after a modification, an index is built which stores the
+ * Reference's in both directions in CSR (compressed sparse row) form: an array of
+ * offsets indexed by ID and arrays of Reference's, {@link Referrer}'s and target
+ * IDs ordered by source ModuleVersion. The index of a graph with 100k Reference's
+ * takes a few MB, most of which for the Referrer's.
+ * <p>
+ * {@link #getListReference}, {@link #getListReferrer},
+ * {@link #getListModuleVersion} and {@link #isMatchedModuleVersion} are O(1) once
+ * the index is built. The Lists they return are unmodifiable views over the index
+ * which are created once per ModuleVersion and cached, so that repeated queries
+ * do not allocate.
+ * <p>
+ * Modifications are synchronized and invalidate the index. Queries are
+ * thread-safe as long as the ReferenceGraph is not modified concurrently, so that
+ * {@link #traverseReferenceGraphParallel} can be used.
+ * <p>
+ * {@link #replaceReferences} and {@link #removeModuleVersion} modify the
+ * ReferenceGraph in time proportional to the affected ModuleVersion's and
+ * Reference's. IDs and edges that are freed are reused. The index is rebuilt on
+ * the next query, which only involves the arrays.
+ * <p>
+ * Contrary to the ReferenceGraph interface which only keeps track of matched
+ * ModuleVersion's, the ReferencePath's added with {@link #addMatchedReferencePath}
+ * are kept in a {@link MatchedReferencePathTrie} so that it is possible to know
+ * which ReferencePath's were actually matched (see
+ * {@link #isReferencePathMatched}).
+ * <p>
+ * As for other implementations, it is the responsibility of the caller not to
+ * introduce cycles. They are detected by the traversals, which fail with an
+ * exception.
+ *
+ * @author David Raymond
+ */
+public class IndexedReferenceGraph implements ReferenceGraph {
+  /**
+   * Initial capacity of the growable arrays.
+   */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * Map of {@link ModuleVersion}'s to their IDs.
+   */
+  private Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+  /**
+   * {@link ModuleVersion}'s indexed by ID. Only the first nbModuleVersions
+   * elements are used. null for the IDs of removed ModuleVersion's.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * Number of {@link ModuleVersion} IDs in use, including those of removed
+   * ModuleVersion's.
+   */
+  private int nbModuleVersions;
+
+  /**
+   * IDs of removed {@link ModuleVersion}'s, which are reused by new
+   * ModuleVersion's.
+   */
+  private Deque<Integer> dequeIdFree;
+
+  /**
+   * First {@link Reference} of each {@link ModuleVersion} in the edge arrays,
+   * indexed by ID. -1 if none.
+   */
+  private int[] arrayIndexEdgeFirst;
+
+  /**
+   * Last {@link Reference} of each {@link ModuleVersion} in the edge arrays,
+   * indexed by ID. -1 if none.
+   */
+  private int[] arrayIndexEdgeLast;
+
+  /**
+   * Reference's. Only the first nbEdges elements are used.
+   */
+  private Reference[] arrayEdgeReference;
+
+  /**
+   * IDs of the referred-to {@link ModuleVersion}'s, indexed like
+   * arrayEdgeReference.
+   */
+  private int[] arrayEdgeIdTarget;
+
+  /**
+   * Index of the next {@link Reference} of the same {@link ModuleVersion} in the
+   * edge arrays. -1 if none. For free edges, index of the next free edge.
+   */
+  private int[] arrayEdgeIndexNext;
+
+  /**
+   * Number of edges in use, including free edges.
+   */
+  private int nbEdges;
+
+  /**
+   * First free edge, left over by removed {@link Reference}'s. -1 if none.
+   */
+  private int indexEdgeFreeFirst;
+
+  /**
+   * Number of free edges.
+   */
+  private int nbEdgesFree;
+
+  /**
+   * List of root {@link ModuleVersion}'s.
+   */
+  private List<ModuleVersion> listModuleVersionRoot;
+
+  /**
+   * IDs of the root {@link ModuleVersion}'s.
+   */
+  private BitSet bitSetIdRoot;
+
+  /**
+   * List of matched {@link ModuleVersion}'s.
+   */
+  private List<ModuleVersion> listModuleVersionMatched;
+
+  /**
+   * IDs of the matched {@link ModuleVersion}'s.
+   */
+  private BitSet bitSetIdMatched;
+
+  /**
+   * Matched {@link ReferencePath}'s.
+   */
+  private MatchedReferencePathTrie matchedReferencePathTrie;
+
+  /**
+   * Index. null if it must be (re)built.
+   */
+  private volatile Index index;
+
+  /**
+   * {@link ReferenceReachabilityIndex} built from {@link #indexReachability}. null
+   * if not built yet.
+   */
+  private ReferenceReachabilityIndex referenceReachabilityIndex;
+
+  /**
+   * Index from which {@link #referenceReachabilityIndex} was built. If it is not
+   * the current index, referenceReachabilityIndex must be rebuilt.
+   */
+  private Index indexReachability;
+
+  /**
+   * {@link StronglyConnectedComponents} built from {@link #indexComponents}. null
+   * if not built yet.
+   */
+  private StronglyConnectedComponents stronglyConnectedComponents;
+
+  /**
+   * Index from which {@link #stronglyConnectedComponents} was built. If it is not
+   * the current index, stronglyConnectedComponents must be rebuilt.
+   */
+  private Index indexComponents;
+
+  /**
+   * Unmodifiable List which is a view over a slice of an array.
+   *
+   * @param <E> Element type.
+   */
+  private static final class ArraySliceList<E> extends AbstractList<E> implements RandomAccess {
+    /**
+     * Array.
+     */
+    private final E[] array;
+
+    /**
+     * Index of the first element.
+     */
+    private final int indexStart;
+
+    /**
+     * Number of elements.
+     */
+    private final int size;
+
+    /**
+     * Constructor.
+     *
+     * @param array Array.
+     * @param indexStart Index of the first element.
+     * @param indexEnd Index following the last element.
+     */
+    ArraySliceList(E[] array, int indexStart, int indexEnd) {
+      this.array = array;
+      this.indexStart = indexStart;
+      this.size = indexEnd - indexStart;
+    }
+
+    @Override
+    public E get(int index) {
+      if ((index < 0) || (index >= this.size)) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+      }
+
+      return this.array[this.indexStart + index];
+    }
+
+    @Override
+    public int size() {
+      return this.size;
+    }
+  }
+
+  /**
+   * Immutable CSR index of the ReferenceGraph.
+   */
+  static final class Index {
+    /**
+     * Number of {@link ModuleVersion}'s.
+     */
+    final int nbModuleVersions;
+
+    /**
+     * {@link ModuleVersion}'s indexed by ID. null for the IDs of removed
+     * ModuleVersion's.
+     */
+    final ModuleVersion[] arrayModuleVersion;
+
+    /**
+     * Offsets of the {@link Reference}'s of each {@link ModuleVersion} in
+     * arrayReference and arrayIdReferenceTarget, indexed by ID. Has
+     * nbModuleVersions + 1 elements.
+     */
+    final int[] arrayOffsetReference;
+
+    /**
+     * {@link Reference}'s, ordered by referrer ModuleVersion.
+     */
+    final Reference[] arrayReference;
+
+    /**
+     * IDs of the referred-to {@link ModuleVersion}'s, indexed like arrayReference.
+     */
+    final int[] arrayIdReferenceTarget;
+
+    /**
+     * Offsets of the {@link Referrer}'s of each {@link ModuleVersion} in
+     * arrayReferrer and arrayIdReferrerSource, indexed by ID. Has
+     * nbModuleVersions + 1 elements.
+     */
+    final int[] arrayOffsetReferrer;
+
+    /**
+     * {@link Referrer}'s, ordered by referred-to ModuleVersion.
+     */
+    final Referrer[] arrayReferrer;
+
+    /**
+     * IDs of the referrer {@link ModuleVersion}'s, indexed like arrayReferrer.
+     */
+    final int[] arrayIdReferrerSource;
+
+    /**
+     * Cached Lists of {@link Reference}'s, indexed by ID.
+     */
+    final Object[] arrayListReference;
+
+    /**
+     * Cached Lists of {@link Referrer}'s, indexed by ID.
+     */
+    final Object[] arrayListReferrer;
+
+    /**
+     * Map of {@link NodePath}'s to the Lists of their {@link ModuleVersion}'s.
+     */
+    final Map<NodePath, List<ModuleVersion>> mapListModuleVersionNodePath;
+
+    /**
+     * List of all the {@link ModuleVersion}'s.
+     */
+    final List<ModuleVersion> listModuleVersionAll;
+
+    /**
+     * Constructor.
+     *
+     * @param indexedReferenceGraph IndexedReferenceGraph to index.
+     */
+    Index(IndexedReferenceGraph indexedReferenceGraph) {
+      int nbEdges;
+      int[] arrayIndexNextReferrer;
+      Map<NodePath, List<ModuleVersion>> mapListModuleVersionNodePath;
+      ModuleVersion[] arrayModuleVersionAll;
+
+      this.nbModuleVersions = indexedReferenceGraph.nbModuleVersions;
+      this.arrayModuleVersion = Arrays.copyOf(indexedReferenceGraph.arrayModuleVersion, this.nbModuleVersions);
+      nbEdges = indexedReferenceGraph.nbEdges - indexedReferenceGraph.nbEdgesFree;
+
+      // Forward direction. The linked list of each ModuleVersion preserves the order
+      // in which Reference's were added.
+
+      this.arrayOffsetReference = new int[this.nbModuleVersions + 1];
+      this.arrayReference = new Reference[nbEdges];
+      this.arrayIdReferenceTarget = new int[nbEdges];
+      this.arrayOffsetReferrer = new int[this.nbModuleVersions + 1];
+
+      for (int id = 0, offset = 0; id < this.nbModuleVersions; id++) {
+        this.arrayOffsetReference[id] = offset;
+
+        for (int indexEdge = indexedReferenceGraph.arrayIndexEdgeFirst[id]; indexEdge != -1; indexEdge = indexedReferenceGraph.arrayEdgeIndexNext[indexEdge]) {
+          this.arrayReference[offset] = indexedReferenceGraph.arrayEdgeReference[indexEdge];
+          this.arrayIdReferenceTarget[offset] = indexedReferenceGraph.arrayEdgeIdTarget[indexEdge];
+
+          // Counts the referrers of each ModuleVersion, shifted by one so that the
+          // prefix sum below yields the offsets directly.
+          this.arrayOffsetReferrer[this.arrayIdReferenceTarget[offset] + 1]++;
+          offset++;
+        }
+
+        this.arrayOffsetReference[id + 1] = offset;
+      }
+
+      // Reverse direction.
+
+      for (int id = 0; id < this.nbModuleVersions; id++) {
+        this.arrayOffsetReferrer[id + 1] += this.arrayOffsetReferrer[id];
+      }
+
+      this.arrayReferrer = new Referrer[nbEdges];
+      this.arrayIdReferrerSource = new int[nbEdges];
+      arrayIndexNextReferrer = Arrays.copyOf(this.arrayOffsetReferrer, this.nbModuleVersions);
+
+      for (int id = 0; id < this.nbModuleVersions; id++) {
+        for (int offset = this.arrayOffsetReference[id]; offset < this.arrayOffsetReference[id + 1]; offset++) {
+          int indexReferrer;
+
+          indexReferrer = arrayIndexNextReferrer[this.arrayIdReferenceTarget[offset]]++;
+          this.arrayReferrer[indexReferrer] = new Referrer(this.arrayModuleVersion[id], this.arrayReference[offset]);
+          this.arrayIdReferrerSource[indexReferrer] = id;
+        }
+      }
+
+      this.arrayListReference = new Object[this.nbModuleVersions];
+      this.arrayListReferrer = new Object[this.nbModuleVersions];
+
+      mapListModuleVersionNodePath = new HashMap<NodePath, List<ModuleVersion>>();
+
+      for (int id = 0; id < this.nbModuleVersions; id++) {
+        List<ModuleVersion> listModuleVersion;
+
+        if (this.arrayModuleVersion[id] == null) {
+          continue;
+        }
+
+        listModuleVersion = mapListModuleVersionNodePath.get(this.arrayModuleVersion[id].getNodePath());
+
+        if (listModuleVersion == null) {
+          listModuleVersion = new ArrayList<ModuleVersion>(1);
+          mapListModuleVersionNodePath.put(this.arrayModuleVersion[id].getNodePath(), listModuleVersion);
+        }
+
+        listModuleVersion.add(this.arrayModuleVersion[id]);
+      }
+
+      for (Map.Entry<NodePath, List<ModuleVersion>> mapEntry: mapListModuleVersionNodePath.entrySet()) {
+        mapEntry.setValue(Collections.unmodifiableList(mapEntry.getValue()));
+      }
+
+      this.mapListModuleVersionNodePath = mapListModuleVersionNodePath;
+
+      if (indexedReferenceGraph.dequeIdFree.isEmpty()) {
+        arrayModuleVersionAll = this.arrayModuleVersion;
+      } else {
+        int nbModuleVersionsAll;
+
+        arrayModuleVersionAll = new ModuleVersion[this.nbModuleVersions - indexedReferenceGraph.dequeIdFree.size()];
+        nbModuleVersionsAll = 0;
+
+        for (ModuleVersion moduleVersion: this.arrayModuleVersion) {
+          if (moduleVersion != null) {
+            arrayModuleVersionAll[nbModuleVersionsAll++] = moduleVersion;
+          }
+        }
+      }
+
+      this.listModuleVersionAll = new ArraySliceList<ModuleVersion>(arrayModuleVersionAll, 0, arrayModuleVersionAll.length);
+    }
+
+    /**
+     * @param id ID of the referrer {@link ModuleVersion}.
+     * @return List of {@link Reference}'s.
+     */
+    @SuppressWarnings("unchecked")
+    List<Reference> getListReference(int id) {
+      List<Reference> listReference;
+
+      listReference = (List<Reference>)this.arrayListReference[id];
+
+      if (listReference == null) {
+        // Benign race: the List is immutable and equivalent Lists may be created by
+        // multiple threads.
+        listReference = new ArraySliceList<Reference>(this.arrayReference, this.arrayOffsetReference[id], this.arrayOffsetReference[id + 1]);
+        this.arrayListReference[id] = listReference;
+      }
+
+      return listReference;
+    }
+
+    /**
+     * @param id ID of the referred-to {@link ModuleVersion}.
+     * @return List of {@link Referrer}'s.
+     */
+    @SuppressWarnings("unchecked")
+    List<Referrer> getListReferrer(int id) {
+      List<Referrer> listReferrer;
+
+      listReferrer = (List<Referrer>)this.arrayListReferrer[id];
+
+      if (listReferrer == null) {
+        listReferrer = new ArraySliceList<Referrer>(this.arrayReferrer, this.arrayOffsetReferrer[id], this.arrayOffsetReferrer[id + 1]);
+        this.arrayListReferrer[id] = listReferrer;
+      }
+
+      return listReferrer;
+    }
+  }
+
+  /**
+   * Constructor for an empty ReferenceGraph.
+   */
+  public IndexedReferenceGraph() {
+    this.mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+    this.arrayModuleVersion = new ModuleVersion[IndexedReferenceGraph.INITIAL_CAPACITY];
+    this.dequeIdFree = new ArrayDeque<Integer>();
+    this.arrayIndexEdgeFirst = new int[IndexedReferenceGraph.INITIAL_CAPACITY];
+    this.arrayIndexEdgeLast = new int[IndexedReferenceGraph.INITIAL_CAPACITY];
+    this.arrayEdgeReference = new Reference[IndexedReferenceGraph.INITIAL_CAPACITY];
+    this.arrayEdgeIdTarget = new int[IndexedReferenceGraph.INITIAL_CAPACITY];
+    this.arrayEdgeIndexNext = new int[IndexedReferenceGraph.INITIAL_CAPACITY];
+    this.indexEdgeFreeFirst = -1;
+    this.listModuleVersionRoot = new ArrayList<ModuleVersion>();
+    this.bitSetIdRoot = new BitSet();
+    this.listModuleVersionMatched = new ArrayList<ModuleVersion>();
+    this.bitSetIdMatched = new BitSet();
+    this.matchedReferencePathTrie = new MatchedReferencePathTrie();
+  }
+
+  /**
+   * Returns the index, building it if required.
+   *
+   * @return Index.
+   */
+  Index getIndex() {
+    Index index;
+
+    index = this.index;
+
+    if (index == null) {
+      synchronized (this) {
+        index = this.index;
+
+        if (index == null) {
+          index = new Index(this);
+          this.index = index;
+        }
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Returns the ID of a {@link ModuleVersion}.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return ID. -1 if the ModuleVersion is not in the ReferenceGraph.
+   */
+  int getId(ModuleVersion moduleVersion) {
+    Integer id;
+
+    id = this.mapIdModuleVersion.get(moduleVersion);
+
+    return (id == null) ? -1 : id;
+  }
+
+  /**
+   * Returns the ID of a {@link ModuleVersion}, throwing an exception if it is not
+   * in the ReferenceGraph.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return ID.
+   */
+  private int getExistingId(ModuleVersion moduleVersion) {
+    int id;
+
+    id = this.getId(moduleVersion);
+
+    if (id == -1) {
+      throw new RuntimeException("ModuleVersion " + moduleVersion + " is not part of the ReferenceGraph.");
+    }
+
+    return id;
+  }
+
+  /**
+   * Returns the ID of a {@link ModuleVersion}, adding it if it is not in the
+   * ReferenceGraph.
+   * <p>
+   * Must be called while synchronized.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return ID.
+   */
+  private int getOrAddId(ModuleVersion moduleVersion) {
+    Integer id;
+
+    id = this.mapIdModuleVersion.get(moduleVersion);
+
+    if (id != null) {
+      return id;
+    }
+
+    if (!this.dequeIdFree.isEmpty()) {
+      id = this.dequeIdFree.removeLast();
+    } else {
+      if (this.nbModuleVersions == this.arrayModuleVersion.length) {
+        int newLength;
+
+        newLength = this.arrayModuleVersion.length * 2;
+        this.arrayModuleVersion = Arrays.copyOf(this.arrayModuleVersion, newLength);
+        this.arrayIndexEdgeFirst = Arrays.copyOf(this.arrayIndexEdgeFirst, newLength);
+        this.arrayIndexEdgeLast = Arrays.copyOf(this.arrayIndexEdgeLast, newLength);
+      }
+
+      id = this.nbModuleVersions++;
+    }
+
+    this.arrayModuleVersion[id] = moduleVersion;
+    this.arrayIndexEdgeFirst[id] = -1;
+    this.arrayIndexEdgeLast[id] = -1;
+    this.mapIdModuleVersion.put(moduleVersion, id);
+    this.index = null;
+
+    return id;
+  }
+
+  /**
+   * Returns the {@link ReferenceReachabilityIndex} of this ReferenceGraph.
+   * <p>
+   * It is built on the first call and cached until the ReferenceGraph is
+   * modified.
+   *
+   * @return ReferenceReachabilityIndex.
+   */
+  public synchronized ReferenceReachabilityIndex getReferenceReachabilityIndex() {
+    Index index;
+
+    index = this.getIndex();
+
+    if (this.indexReachability != index) {
+      this.referenceReachabilityIndex = new ReferenceReachabilityIndex(this);
+      this.indexReachability = index;
+    }
+
+    return this.referenceReachabilityIndex;
+  }
+
+  /**
+   * Returns the {@link StronglyConnectedComponents} of this ReferenceGraph.
+   * <p>
+   * They are computed on the first call and cached until the ReferenceGraph is
+   * modified.
+   *
+   * @return StronglyConnectedComponents.
+   */
+  public synchronized StronglyConnectedComponents getStronglyConnectedComponents() {
+    Index index;
+
+    index = this.getIndex();
+
+    if (this.indexComponents != index) {
+      this.stronglyConnectedComponents = new StronglyConnectedComponents(this);
+      this.indexComponents = index;
+    }
+
+    return this.stronglyConnectedComponents;
+  }
+
+  @Override
+  public boolean moduleVersionExists(ModuleVersion moduleVersion) {
+    return this.mapIdModuleVersion.containsKey(moduleVersion);
+  }
+
+  @Override
+  public List<ModuleVersion> getListModuleVersionRoot() {
+    return Collections.unmodifiableList(this.listModuleVersionRoot);
+  }
+
+  @Override
+  public boolean isRootModuleVersion(ModuleVersion moduleVersion) {
+    int id;
+
+    id = this.getId(moduleVersion);
+
+    return (id != -1) && this.bitSetIdRoot.get(id);
+  }
+
+  @Override
+  public List<ModuleVersion> getListModuleVersionMatched() {
+    return Collections.unmodifiableList(this.listModuleVersionMatched);
+  }
+
+  @Override
+  public boolean isMatchedModuleVersion(ModuleVersion moduleVersion) {
+    int id;
+
+    id = this.getId(moduleVersion);
+
+    return (id != -1) && this.bitSetIdMatched.get(id);
+  }
+
+  /**
+   * @param referencePath ReferencePath.
+   * @return Indicates if the {@link ReferencePath} was added with
+   *   {@link #addMatchedReferencePath}.
+   */
+  public boolean isReferencePathMatched(ReferencePath referencePath) {
+    return this.matchedReferencePathTrie.contains(referencePath);
+  }
+
+  /**
+   * @param referencePath ReferencePath.
+   * @return Indicates if at least one matched {@link ReferencePath} starts with
+   *   referencePath.
+   */
+  public boolean isReferencePathPrefixMatched(ReferencePath referencePath) {
+    return this.matchedReferencePathTrie.containsPrefix(referencePath);
+  }
+
+  /**
+   * @param moduleVersion ModuleVersion.
+   * @return Indicates if at least one matched {@link ReferencePath} goes through
+   *   the {@link ModuleVersion}.
+   */
+  public boolean isModuleVersionOnMatchedReferencePath(ModuleVersion moduleVersion) {
+    return this.matchedReferencePathTrie.isModuleVersionOnMatchedPath(moduleVersion);
+  }
+
+  /**
+   * @return List of the matched {@link ReferencePath}'s, in no particular order.
+   */
+  public List<ReferencePath> getListReferencePathMatched() {
+    return this.matchedReferencePathTrie.getListReferencePath();
+  }
+
+  @Override
+  public List<ModuleVersion> getListModuleVersion(NodePath nodePath) {
+    Index index;
+    List<ModuleVersion> listModuleVersion;
+
+    index = this.getIndex();
+
+    if (nodePath == null) {
+      return index.listModuleVersionAll;
+    }
+
+    listModuleVersion = index.mapListModuleVersionNodePath.get(nodePath);
+
+    return (listModuleVersion == null) ? Collections.<ModuleVersion>emptyList() : listModuleVersion;
+  }
+
+  @Override
+  public List<Referrer> getListReferrer(ModuleVersion moduleVersionReferred) {
+    return this.getIndex().getListReferrer(this.getExistingId(moduleVersionReferred));
+  }
+
+  @Override
+  public List<Reference> getListReference(ModuleVersion moduleVersionReferrer) {
+    return this.getIndex().getListReference(this.getExistingId(moduleVersionReferrer));
+  }
+
+  @Override
+  public boolean traverseReferenceGraph(ModuleVersion moduleVersion, TraversalOrder traversalOrder, ReentryMode reentryMode, Visitor visitor) {
+    Index index;
+    List<ModuleVersion> listModuleVersionStart;
+
+    index = this.getIndex();
+
+    if (moduleVersion == null) {
+      listModuleVersionStart = new ArrayList<ModuleVersion>(this.listModuleVersionRoot);
+    } else {
+      this.getExistingId(moduleVersion);
+      listModuleVersionStart = Collections.singletonList(moduleVersion);
+    }
+
+    if (traversalOrder == TraversalOrder.ALL_PARENTS_FIRST) {
+      return this.traverseAllParentsFirst(index, listModuleVersionStart, visitor);
+    } else {
+      BitSet bitSetIdVisited;
+
+      bitSetIdVisited = new BitSet(index.nbModuleVersions);
+
+      for (ModuleVersion moduleVersionStart: listModuleVersionStart) {
+        ReferencePath referencePath;
+
+        referencePath = new ReferencePath();
+        referencePath.add(new Reference(moduleVersionStart));
+
+        if (this.traverseModuleVersion(index, this.getId(moduleVersionStart), referencePath, bitSetIdVisited, traversalOrder, reentryMode, visitor) == VisitControl.ABORT) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+  }
+
+  /**
+   * Returns the EnumSet of VisitAction's for visiting a {@link ModuleVersion}.
+   *
+   * @param id ID of the ModuleVersion.
+   * @param indRepeated Indicates if the ModuleVersion has already been visited.
+   * @return EnumSet of VisitAction's.
+   */
+  private EnumSet<VisitAction> getEnumSetVisitAction(int id, boolean indRepeated) {
+    if (this.bitSetIdMatched.get(id)) {
+      return indRepeated ? VisitAction.ENUM_SET_REPEATED_VISIT_MATCHED : VisitAction.ENUM_SET_VISIT_MATCHED;
+    } else {
+      return indRepeated ? VisitAction.ENUM_SET_REPEATED_VISIT : VisitAction.ENUM_SET_VISIT;
+    }
+  }
+
+  /**
+   * Traverses a {@link ModuleVersion} and its children for
+   * {@link TraversalOrder#PARENT_FIRST} and {@link TraversalOrder#DEPTH_FIRST}.
+   *
+   * @param index Index.
+   * @param id ID of the ModuleVersion.
+   * @param referencePath ReferencePath of the ModuleVersion.
+   * @param bitSetIdVisited IDs of the visited ModuleVersion's.
+   * @param traversalOrder TraversalOrder.
+   * @param reentryMode ReentryMode.
+   * @param visitor Visitor.
+   * @return {@link VisitControl#CONTINUE}, {@link VisitControl#ABORT} or
+   *   {@link VisitControl#SKIP_CURRENT_ROOT}.
+   */
+  private VisitControl traverseModuleVersion(Index index, int id, ReferencePath referencePath, BitSet bitSetIdVisited, TraversalOrder traversalOrder, ReentryMode reentryMode, Visitor visitor) {
+    boolean indRepeated;
+    EnumSet<VisitAction> enumSetVisitAction;
+    VisitControl visitControl;
+
+    indRepeated = bitSetIdVisited.get(id);
+
+    if (indRepeated && (reentryMode == ReentryMode.NO_REENTRY)) {
+      return VisitControl.CONTINUE;
+    }
+
+    bitSetIdVisited.set(id);
+    enumSetVisitAction = this.getEnumSetVisitAction(id, indRepeated);
+
+    if (traversalOrder == TraversalOrder.PARENT_FIRST) {
+      visitControl = visitor.visit(this, referencePath, enumSetVisitAction);
+
+      if (visitControl == VisitControl.SKIP_CHILDREN) {
+        return VisitControl.CONTINUE;
+      }
+
+      if (visitControl != VisitControl.CONTINUE) {
+        return visitControl;
+      }
+    }
+
+    if (!indRepeated || (reentryMode == ReentryMode.REENTRY)) {
+      visitControl = visitor.visit(this, referencePath, VisitAction.ENUM_SET_STEP_IN);
+
+      if ((visitControl == VisitControl.ABORT) || (visitControl == VisitControl.SKIP_CURRENT_ROOT)) {
+        return visitControl;
+      }
+
+      if (visitControl != VisitControl.SKIP_CHILDREN) {
+        for (int offset = index.arrayOffsetReference[id]; offset < index.arrayOffsetReference[id + 1]; offset++) {
+          referencePath.add(index.arrayReference[offset]);
+          visitControl = this.traverseModuleVersion(index, index.arrayIdReferenceTarget[offset], referencePath, bitSetIdVisited, traversalOrder, reentryMode, visitor);
+          referencePath.removeLeafReference();
+
+          if (visitControl != VisitControl.CONTINUE) {
+            return visitControl;
+          }
+        }
+      }
+
+      visitControl = visitor.visit(this, referencePath, VisitAction.ENUM_SET_STEP_OUT);
+
+      if (visitControl == VisitControl.SKIP_CHILDREN) {
+        throw new RuntimeException("VisitControl.SKIP_CHILDREN is not valid for VisitAction.STEP_OUT.");
+      }
+
+      if (visitControl != VisitControl.CONTINUE) {
+        return visitControl;
+      }
+    }
+
+    if (traversalOrder == TraversalOrder.DEPTH_FIRST) {
+      visitControl = visitor.visit(this, referencePath, enumSetVisitAction);
+
+      if (visitControl == VisitControl.SKIP_CHILDREN) {
+        throw new RuntimeException("VisitControl.SKIP_CHILDREN is not valid for VisitAction.VISIT with TraversalOrder.DEPTH_FIRST.");
+      }
+
+      return visitControl;
+    }
+
+    return VisitControl.CONTINUE;
+  }
+
+  /**
+   * Traverses the {@link ModuleVersion}'s reachable from starting ModuleVersion's
+   * for {@link TraversalOrder#ALL_PARENTS_FIRST}.
+   * <p>
+   * A ModuleVersion is visited once all its referrers that are reachable have been
+   * visited, using one of the ReferencePath's leading to it. Each ModuleVersion is
+   * visited once, so that {@link ReentryMode} does not apply.
+   *
+   * @param index Index.
+   * @param listModuleVersionStart List of starting ModuleVersion's.
+   * @param visitor Visitor.
+   * @return Indicates if the traversal has been aborted.
+   */
+  private boolean traverseAllParentsFirst(Index index, List<ModuleVersion> listModuleVersionStart, Visitor visitor) {
+    int[] arrayNbPendingReferrers;
+    PersistentReferencePath[] arrayPersistentReferencePathReached;
+    BitSet bitSetIdReachable;
+    Deque<Integer> dequeId;
+
+    arrayNbPendingReferrers = new int[index.nbModuleVersions];
+    arrayPersistentReferencePathReached = new PersistentReferencePath[index.nbModuleVersions];
+    bitSetIdReachable = new BitSet(index.nbModuleVersions);
+    dequeId = new ArrayDeque<Integer>();
+
+    for (ModuleVersion moduleVersionStart: listModuleVersionStart) {
+      int id;
+
+      id = this.getId(moduleVersionStart);
+
+      if (!bitSetIdReachable.get(id)) {
+        bitSetIdReachable.set(id);
+        dequeId.add(id);
+      }
+
+      arrayPersistentReferencePathReached[id] = PersistentReferencePath.EMPTY.append(new Reference(moduleVersionStart));
+    }
+
+    while (!dequeId.isEmpty()) {
+      int id;
+
+      id = dequeId.removeFirst();
+
+      for (int offset = index.arrayOffsetReference[id]; offset < index.arrayOffsetReference[id + 1]; offset++) {
+        int idTarget;
+
+        idTarget = index.arrayIdReferenceTarget[offset];
+        arrayNbPendingReferrers[idTarget]++;
+
+        if (!bitSetIdReachable.get(idTarget)) {
+          bitSetIdReachable.set(idTarget);
+          dequeId.add(idTarget);
+        }
+      }
+    }
+
+    for (int id = bitSetIdReachable.nextSetBit(0); id >= 0; id = bitSetIdReachable.nextSetBit(id + 1)) {
+      if (arrayNbPendingReferrers[id] == 0) {
+        dequeId.add(id);
+      }
+    }
+
+    while (!dequeId.isEmpty()) {
+      int id;
+      PersistentReferencePath persistentReferencePath;
+      boolean indSkipChildren;
+
+      id = dequeId.removeFirst();
+      persistentReferencePath = arrayPersistentReferencePathReached[id];
+
+      if (persistentReferencePath == null) {
+        // Not actually reached, but the children must still be released.
+        indSkipChildren = true;
+      } else {
+        VisitControl visitControl;
+
+        visitControl = visitor.visit(this, new ReferencePath(persistentReferencePath), this.getEnumSetVisitAction(id, false));
+
+        if (visitControl == VisitControl.ABORT) {
+          return true;
+        }
+
+        indSkipChildren = (visitControl != VisitControl.CONTINUE);
+      }
+
+      for (int offset = index.arrayOffsetReference[id]; offset < index.arrayOffsetReference[id + 1]; offset++) {
+        int idTarget;
+
+        idTarget = index.arrayIdReferenceTarget[offset];
+
+        if (!indSkipChildren) {
+          arrayPersistentReferencePathReached[idTarget] = persistentReferencePath.append(index.arrayReference[offset]);
+        }
+
+        if (--arrayNbPendingReferrers[idTarget] == 0) {
+          dequeId.add(idTarget);
+        }
+      }
+    }
+
+    this.checkNoPendingReferrers(index, bitSetIdReachable, arrayNbPendingReferrers);
+
+    return false;
+  }
+
+  /**
+   * Verifies that all the reachable {@link ModuleVersion}'s were released by an
+   * ALL_PARENTS_FIRST traversal.
+   * <p>
+   * A ModuleVersion that is part of a cycle always has a referrer that is not
+   * processed, so that neither it nor the ModuleVersion's it references are ever
+   * released. Walking up the unprocessed referrers from any such ModuleVersion
+   * necessarily ends up in the cycle, which is reported.
+   *
+   * @param index Index.
+   * @param bitSetIdReachable IDs of the reachable ModuleVersion's.
+   * @param arrayNbPendingReferrers Number of unprocessed referrers, indexed by ID.
+   */
+  private void checkNoPendingReferrers(Index index, BitSet bitSetIdReachable, int[] arrayNbPendingReferrers) {
+    for (int id = bitSetIdReachable.nextSetBit(0); id >= 0; id = bitSetIdReachable.nextSetBit(id + 1)) {
+      if (arrayNbPendingReferrers[id] != 0) {
+        int idCycle;
+
+        idCycle = id;
+
+        // After nbModuleVersions steps, the walk is necessarily within the cycle.
+        for (int step = 0; step < index.nbModuleVersions; step++) {
+          for (int offset = index.arrayOffsetReferrer[idCycle]; offset < index.arrayOffsetReferrer[idCycle + 1]; offset++) {
+            int idReferrer;
+
+            idReferrer = index.arrayIdReferrerSource[offset];
+
+            if (bitSetIdReachable.get(idReferrer) && (arrayNbPendingReferrers[idReferrer] != 0)) {
+              idCycle = idReferrer;
+              break;
+            }
+          }
+        }
+
+        throw new RuntimeException("Cycle detected in ReferenceGraph involving ModuleVersion " + index.arrayModuleVersion[idCycle] + '.');
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * This implementation works directly on the index without building
+   * {@link ReferencePath}'s. Apart from per-traversal arrays, it does not allocate.
+   * {@link ModuleVersion} IDs are those of this ReferenceGraph.
+   */
+  @Override
+  public boolean traverseReferenceGraphBatch(ModuleVersion moduleVersion, TraversalOrder traversalOrder, ReentryMode reentryMode, int batchSize, BatchVisitor batchVisitor) {
+    Index index;
+    int[] arrayIdStart;
+    VisitBatch visitBatch;
+    boolean indAborted;
+
+    index = this.getIndex();
+
+    if (moduleVersion == null) {
+      arrayIdStart = new int[this.listModuleVersionRoot.size()];
+
+      for (int i = 0; i < arrayIdStart.length; i++) {
+        arrayIdStart[i] = this.getId(this.listModuleVersionRoot.get(i));
+      }
+    } else {
+      arrayIdStart = new int[] {this.getExistingId(moduleVersion)};
+    }
+
+    visitBatch = new VisitBatch(batchSize);
+    visitBatch.setArrayModuleVersion(index.arrayModuleVersion);
+
+    if (traversalOrder == TraversalOrder.ALL_PARENTS_FIRST) {
+      indAborted = this.traverseAllParentsFirstBatch(index, arrayIdStart, visitBatch, batchVisitor);
+    } else {
+      indAborted = this.traverseBatch(index, arrayIdStart, traversalOrder, reentryMode, visitBatch, batchVisitor);
+    }
+
+    return indAborted || visitBatch.flush(batchVisitor);
+  }
+
+  /**
+   * Returns the bitmask of VisitAction's for visiting a {@link ModuleVersion}.
+   *
+   * @param id ID of the ModuleVersion.
+   * @param indRepeated Indicates if the ModuleVersion has already been visited.
+   * @return Bitmask of VisitAction's. See {@link VisitBatch}.
+   */
+  private int getVisitActionMask(int id, boolean indRepeated) {
+    int visitActionMask;
+
+    visitActionMask = VisitBatch.MASK_VISIT;
+
+    if (indRepeated) {
+      visitActionMask |= VisitBatch.MASK_REPEATED;
+    }
+
+    if (this.bitSetIdMatched.get(id)) {
+      visitActionMask |= VisitBatch.MASK_MATCHED;
+    }
+
+    return visitActionMask;
+  }
+
+  /**
+   * Batch traversal for {@link TraversalOrder#PARENT_FIRST} and
+   * {@link TraversalOrder#DEPTH_FIRST}.
+   * <p>
+   * Iterative equivalent of {@link #traverseModuleVersion} using an explicit stack
+   * indexed by depth.
+   *
+   * @param index Index.
+   * @param arrayIdStart IDs of the starting ModuleVersion's.
+   * @param traversalOrder TraversalOrder.
+   * @param reentryMode ReentryMode.
+   * @param visitBatch VisitBatch.
+   * @param batchVisitor BatchVisitor.
+   * @return Indicates if the traversal has been aborted.
+   */
+  private boolean traverseBatch(Index index, int[] arrayIdStart, TraversalOrder traversalOrder, ReentryMode reentryMode, VisitBatch visitBatch, BatchVisitor batchVisitor) {
+    BitSet bitSetIdVisited;
+    BitSet bitSetIdOnStack;
+    int[] arrayStackId;
+    int[] arrayStackOffset;
+    int[] arrayStackVisitActionMask;
+
+    bitSetIdVisited = new BitSet(index.nbModuleVersions);
+    bitSetIdOnStack = new BitSet(index.nbModuleVersions);
+
+    // Since there are no cycles, the depth cannot exceed the number of
+    // ModuleVersion's.
+    arrayStackId = new int[index.nbModuleVersions];
+    arrayStackOffset = new int[index.nbModuleVersions];
+    arrayStackVisitActionMask = new int[index.nbModuleVersions];
+
+    for (int idStart: arrayIdStart) {
+      int idEnter;
+      int depth;
+
+      // ModuleVersion to enter, as a child of the top of the stack. -1 if none.
+      idEnter = idStart;
+
+      // Depth of the top of the stack. -1 if the stack is empty.
+      depth = -1;
+
+      while (true) {
+        if (idEnter != -1) {
+          boolean indRepeated;
+
+          if (bitSetIdOnStack.get(idEnter)) {
+            throw new RuntimeException("Cycle detected in ReferenceGraph involving ModuleVersion " + index.arrayModuleVersion[idEnter] + '.');
+          }
+
+          indRepeated = bitSetIdVisited.get(idEnter);
+
+          if (!indRepeated || (reentryMode != ReentryMode.NO_REENTRY)) {
+            int visitActionMask;
+
+            bitSetIdVisited.set(idEnter);
+            visitActionMask = this.getVisitActionMask(idEnter, indRepeated);
+
+            if ((traversalOrder == TraversalOrder.PARENT_FIRST) && visitBatch.add(idEnter, depth + 1, visitActionMask) && visitBatch.flush(batchVisitor)) {
+              return true;
+            }
+
+            if (!indRepeated || (reentryMode == ReentryMode.REENTRY)) {
+              if (visitBatch.add(idEnter, depth + 1, VisitBatch.MASK_STEP_IN) && visitBatch.flush(batchVisitor)) {
+                return true;
+              }
+
+              depth++;
+              arrayStackId[depth] = idEnter;
+              arrayStackOffset[depth] = index.arrayOffsetReference[idEnter];
+              arrayStackVisitActionMask[depth] = visitActionMask;
+              bitSetIdOnStack.set(idEnter);
+            } else if ((traversalOrder == TraversalOrder.DEPTH_FIRST) && visitBatch.add(idEnter, depth + 1, visitActionMask) && visitBatch.flush(batchVisitor)) {
+              return true;
+            }
+          }
+
+          idEnter = -1;
+        }
+
+        if (depth == -1) {
+          break;
+        }
+
+        if (arrayStackOffset[depth] < index.arrayOffsetReference[arrayStackId[depth] + 1]) {
+          idEnter = index.arrayIdReferenceTarget[arrayStackOffset[depth]++];
+        } else {
+          int id;
+
+          id = arrayStackId[depth];
+
+          if (visitBatch.add(id, depth, VisitBatch.MASK_STEP_OUT) && visitBatch.flush(batchVisitor)) {
+            return true;
+          }
+
+          if ((traversalOrder == TraversalOrder.DEPTH_FIRST) && visitBatch.add(id, depth, arrayStackVisitActionMask[depth]) && visitBatch.flush(batchVisitor)) {
+            return true;
+          }
+
+          bitSetIdOnStack.clear(id);
+          depth--;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Batch traversal for {@link TraversalOrder#ALL_PARENTS_FIRST}.
+   * <p>
+   * Equivalent of {@link #traverseAllParentsFirst} where the ReferencePath by
+   * which a ModuleVersion is reached is only represented by its depth.
+   *
+   * @param index Index.
+   * @param arrayIdStart IDs of the starting ModuleVersion's.
+   * @param visitBatch VisitBatch.
+   * @param batchVisitor BatchVisitor.
+   * @return Indicates if the traversal has been aborted.
+   */
+  private boolean traverseAllParentsFirstBatch(Index index, int[] arrayIdStart, VisitBatch visitBatch, BatchVisitor batchVisitor) {
+    int[] arrayNbPendingReferrers;
+    int[] arrayDepthReached;
+    BitSet bitSetIdReachable;
+    int[] arrayIdQueue;
+    int indexQueueHead;
+    int indexQueueTail;
+
+    arrayNbPendingReferrers = new int[index.nbModuleVersions];
+    arrayDepthReached = new int[index.nbModuleVersions];
+    Arrays.fill(arrayDepthReached, -1);
+    bitSetIdReachable = new BitSet(index.nbModuleVersions);
+
+    // Each ModuleVersion is queued at most once in each of the two phases below.
+    arrayIdQueue = new int[index.nbModuleVersions];
+    indexQueueHead = 0;
+    indexQueueTail = 0;
+
+    for (int idStart: arrayIdStart) {
+      if (!bitSetIdReachable.get(idStart)) {
+        bitSetIdReachable.set(idStart);
+        arrayIdQueue[indexQueueTail++] = idStart;
+      }
+
+      arrayDepthReached[idStart] = 0;
+    }
+
+    while (indexQueueHead < indexQueueTail) {
+      int id;
+
+      id = arrayIdQueue[indexQueueHead++];
+
+      for (int offset = index.arrayOffsetReference[id]; offset < index.arrayOffsetReference[id + 1]; offset++) {
+        int idTarget;
+
+        idTarget = index.arrayIdReferenceTarget[offset];
+        arrayNbPendingReferrers[idTarget]++;
+
+        if (!bitSetIdReachable.get(idTarget)) {
+          bitSetIdReachable.set(idTarget);
+          arrayIdQueue[indexQueueTail++] = idTarget;
+        }
+      }
+    }
+
+    indexQueueHead = 0;
+    indexQueueTail = 0;
+
+    for (int id = bitSetIdReachable.nextSetBit(0); id >= 0; id = bitSetIdReachable.nextSetBit(id + 1)) {
+      if (arrayNbPendingReferrers[id] == 0) {
+        arrayIdQueue[indexQueueTail++] = id;
+      }
+    }
+
+    while (indexQueueHead < indexQueueTail) {
+      int id;
+      int depth;
+
+      id = arrayIdQueue[indexQueueHead++];
+      depth = arrayDepthReached[id];
+
+      // A ModuleVersion which is not reached still releases its children.
+      if ((depth != -1) && visitBatch.add(id, depth, this.getVisitActionMask(id, false)) && visitBatch.flush(batchVisitor)) {
+        return true;
+      }
+
+      for (int offset = index.arrayOffsetReference[id]; offset < index.arrayOffsetReference[id + 1]; offset++) {
+        int idTarget;
+
+        idTarget = index.arrayIdReferenceTarget[offset];
+
+        if (depth != -1) {
+          arrayDepthReached[idTarget] = depth + 1;
+        }
+
+        if (--arrayNbPendingReferrers[idTarget] == 0) {
+          arrayIdQueue[indexQueueTail++] = idTarget;
+        }
+      }
+    }
+
+    this.checkNoPendingReferrers(index, bitSetIdReachable, arrayNbPendingReferrers);
+
+    return false;
+  }
+
+  @Override
+  public boolean visitLeafModuleVersionReferencePaths(ModuleVersion moduleVersion, Visitor visitor) {
+    Index index;
+    int id;
+
+    index = this.getIndex();
+    id = this.getExistingId(moduleVersion);
+
+    return this.visitLeafModuleVersionReferencePaths(index, id, new int[index.nbModuleVersions + 1], 0, this.getEnumSetVisitAction(id, false), visitor);
+  }
+
+  /**
+   * Visits the {@link ReferencePath}'s ending with a leaf {@link ModuleVersion},
+   * walking up the referrers.
+   *
+   * @param index Index.
+   * @param id ID of the current ModuleVersion, which is the root of the
+   *   ReferencePath being built.
+   * @param arrayIndexReferrer Indexes of the {@link Referrer}'s walked so far, from
+   *   the leaf.
+   * @param nbReferrers Number of Referrer's walked so far.
+   * @param enumSetVisitAction EnumSet of VisitAction's for the visit.
+   * @param visitor Visitor.
+   * @return Indicates if the traversal has been aborted.
+   */
+  private boolean visitLeafModuleVersionReferencePaths(Index index, int id, int[] arrayIndexReferrer, int nbReferrers, EnumSet<VisitAction> enumSetVisitAction, Visitor visitor) {
+    if (nbReferrers > index.nbModuleVersions) {
+      throw new RuntimeException("Cycle detected in ReferenceGraph involving ModuleVersion " + index.arrayModuleVersion[id] + '.');
+    }
+
+    if (this.bitSetIdRoot.get(id)) {
+      ReferencePath referencePath;
+
+      referencePath = new ReferencePath();
+      referencePath.add(new Reference(index.arrayModuleVersion[id]));
+
+      for (int i = nbReferrers - 1; i >= 0; i--) {
+        referencePath.add(index.arrayReferrer[arrayIndexReferrer[i]].getReference());
+      }
+
+      if (visitor.visit(this, referencePath, enumSetVisitAction) == VisitControl.ABORT) {
+        return true;
+      }
+    }
+
+    for (int indexReferrer = index.arrayOffsetReferrer[id]; indexReferrer < index.arrayOffsetReferrer[id + 1]; indexReferrer++) {
+      arrayIndexReferrer[nbReferrers] = indexReferrer;
+
+      if (this.visitLeafModuleVersionReferencePaths(index, index.arrayIdReferrerSource[indexReferrer], arrayIndexReferrer, nbReferrers + 1, enumSetVisitAction, visitor)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Adds a {@link ModuleVersion} without any {@link Reference}, if it does not
+   * exist.
+   * <p>
+   * Used by {@link ReferenceGraphSnapshot} so that IDs are assigned in the same
+   * order as when the snapshot was written.
+   *
+   * @param moduleVersion ModuleVersion.
+   */
+  synchronized void addModuleVersion(ModuleVersion moduleVersion) {
+    this.getOrAddId(moduleVersion);
+  }
+
+  /**
+   * Makes an existing {@link ModuleVersion} matched, if not already.
+   *
+   * @param moduleVersion ModuleVersion.
+   */
+  synchronized void addMatchedModuleVersion(ModuleVersion moduleVersion) {
+    int id;
+
+    id = this.getExistingId(moduleVersion);
+
+    if (!this.bitSetIdMatched.get(id)) {
+      this.bitSetIdMatched.set(id);
+      this.listModuleVersionMatched.add(moduleVersion);
+    }
+  }
+
+  @Override
+  public synchronized void addRootModuleVersion(ModuleVersion moduleVersionRoot) {
+    int id;
+
+    id = this.getOrAddId(moduleVersionRoot);
+
+    if (!this.bitSetIdRoot.get(id)) {
+      this.bitSetIdRoot.set(id);
+      this.listModuleVersionRoot.add(moduleVersionRoot);
+    }
+  }
+
+  @Override
+  public synchronized void addReference(ModuleVersion moduleVersionReferrer, Reference reference) {
+    int idReferrer;
+    int idTarget;
+    int indexEdge;
+
+    idReferrer = this.getExistingId(moduleVersionReferrer);
+
+    if (this.getIndexEdge(idReferrer, reference) != -1) {
+      return;
+    }
+
+    idTarget = this.getOrAddId(reference.getModuleVersion());
+
+    if (this.indexEdgeFreeFirst != -1) {
+      indexEdge = this.indexEdgeFreeFirst;
+      this.indexEdgeFreeFirst = this.arrayEdgeIndexNext[indexEdge];
+      this.nbEdgesFree--;
+    } else {
+      if (this.nbEdges == this.arrayEdgeReference.length) {
+        int newLength;
+
+        newLength = this.arrayEdgeReference.length * 2;
+        this.arrayEdgeReference = Arrays.copyOf(this.arrayEdgeReference, newLength);
+        this.arrayEdgeIdTarget = Arrays.copyOf(this.arrayEdgeIdTarget, newLength);
+        this.arrayEdgeIndexNext = Arrays.copyOf(this.arrayEdgeIndexNext, newLength);
+      }
+
+      indexEdge = this.nbEdges++;
+    }
+
+    this.arrayEdgeReference[indexEdge] = reference;
+    this.arrayEdgeIdTarget[indexEdge] = idTarget;
+    this.arrayEdgeIndexNext[indexEdge] = -1;
+
+    if (this.arrayIndexEdgeLast[idReferrer] == -1) {
+      this.arrayIndexEdgeFirst[idReferrer] = indexEdge;
+    } else {
+      this.arrayEdgeIndexNext[this.arrayIndexEdgeLast[idReferrer]] = indexEdge;
+    }
+
+    this.arrayIndexEdgeLast[idReferrer] = indexEdge;
+    this.index = null;
+  }
+
+  @Override
+  public synchronized void addMatchedReferencePath(ReferencePath referencePath) {
+    referencePath.forEachReference(new PersistentReferencePath.ReferenceVisitor() {
+      /**
+       * ModuleVersion of the previous Reference.
+       */
+      private ModuleVersion moduleVersionReferrer;
+
+      @Override
+      public boolean visitReference(int index, Reference reference) {
+        if (index == 0) {
+          IndexedReferenceGraph.this.addRootModuleVersion(reference.getModuleVersion());
+        } else {
+          IndexedReferenceGraph.this.addReference(this.moduleVersionReferrer, reference);
+        }
+
+        this.moduleVersionReferrer = reference.getModuleVersion();
+
+        return true;
+      }
+    });
+
+    this.addMatchedModuleVersion(referencePath.getLeafModuleVersion());
+    this.matchedReferencePathTrie.add(referencePath);
+  }
+
+  /**
+   * Returns the edge of a {@link ModuleVersion} for a {@link Reference}.
+   *
+   * @param id ID of the ModuleVersion.
+   * @param reference Reference.
+   * @return Index of the edge. -1 if none.
+   */
+  private int getIndexEdge(int id, Reference reference) {
+    for (int indexEdge = this.arrayIndexEdgeFirst[id]; indexEdge != -1; indexEdge = this.arrayEdgeIndexNext[indexEdge]) {
+      if (this.arrayEdgeReference[indexEdge].equals(reference)) {
+        return indexEdge;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Replaces the {@link Reference}'s of a {@link ModuleVersion}.
+   * <p>
+   * This allows updating the IndexedReferenceGraph when the Reference's of a
+   * ModuleVersion change, without rebuilding it.
+   * <p>
+   * The ModuleVersion must exist in the ReferenceGraph. Its Reference's are
+   * replaced by those in listReference, in order. As for
+   * {@link #addReference}, referred-to ModuleVersion's are created if they do not
+   * exist, duplicate Reference's are not added and the new Reference's must not
+   * create cycles.
+   * <p>
+   * ModuleVersion's which were referenced only through the replaced Reference's,
+   * directly or indirectly, and which are not roots, are removed as if
+   * {@link #removeModuleVersion} was called on them, so that the ReferenceGraph
+   * remains as if it had been built from scratch.
+   *
+   * @param moduleVersionReferrer Referrer ModuleVersion.
+   * @param listReference List of the new Reference's.
+   */
+  public synchronized void replaceReferences(ModuleVersion moduleVersionReferrer, List<Reference> listReference) {
+    Index index;
+    int idReferrer;
+    BitSet bitSetIdKeep;
+    List<Integer> listIdOrphan;
+    boolean indPruneMatchedReferencePaths;
+
+    index = this.getIndex();
+    idReferrer = this.getExistingId(moduleVersionReferrer);
+
+    // ModuleVersion's referenced by the new Reference's must not be removed even if
+    // they were referenced only through the replaced ones.
+    bitSetIdKeep = new BitSet();
+
+    for (Reference reference: listReference) {
+      int idTarget;
+
+      idTarget = this.getId(reference.getModuleVersion());
+
+      if (idTarget != -1) {
+        bitSetIdKeep.set(idTarget);
+      }
+    }
+
+    listIdOrphan = this.getListIdOrphan(index, idReferrer, bitSetIdKeep);
+    indPruneMatchedReferencePaths = this.matchedReferencePathTrie.isModuleVersionOnMatchedPath(moduleVersionReferrer) || this.isAnyOnMatchedReferencePath(listIdOrphan);
+    this.removeIds(index, listIdOrphan);
+    this.freeEdges(idReferrer);
+
+    for (Reference reference: listReference) {
+      this.addReference(moduleVersionReferrer, reference);
+    }
+
+    this.index = null;
+
+    if (indPruneMatchedReferencePaths) {
+      this.pruneMatchedReferencePaths();
+    }
+  }
+
+  /**
+   * Removes a {@link ModuleVersion} from the ReferenceGraph.
+   * <p>
+   * The {@link Reference}'s to and from the ModuleVersion are removed and it is no
+   * longer root nor matched. ModuleVersion's which become unreferenced and are not
+   * roots are also removed.
+   *
+   * @param moduleVersion ModuleVersion. Must exist in the ReferenceGraph.
+   */
+  public synchronized void removeModuleVersion(ModuleVersion moduleVersion) {
+    Index index;
+    int id;
+    List<Integer> listId;
+    boolean indPruneMatchedReferencePaths;
+
+    index = this.getIndex();
+    id = this.getExistingId(moduleVersion);
+
+    listId = this.getListIdOrphan(index, id, new BitSet());
+    listId.add(0, id);
+    indPruneMatchedReferencePaths = this.isAnyOnMatchedReferencePath(listId);
+    this.removeIds(index, listId);
+
+    if (indPruneMatchedReferencePaths) {
+      this.pruneMatchedReferencePaths();
+    }
+  }
+
+  /**
+   * @param listId IDs of {@link ModuleVersion}'s.
+   * @return Indicates if at least one of the ModuleVersion's is on a matched
+   *   {@link ReferencePath}.
+   */
+  private boolean isAnyOnMatchedReferencePath(List<Integer> listId) {
+    for (int id: listId) {
+      if (this.matchedReferencePathTrie.isModuleVersionOnMatchedPath(this.arrayModuleVersion[id])) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Removes the matched {@link ReferencePath}'s which are no longer part of the
+   * ReferenceGraph following the removal of {@link ModuleVersion}'s or
+   * {@link Reference}'s.
+   * <p>
+   * The matched ModuleVersion's are then recomputed as the leaf ModuleVersion's of
+   * the remaining matched ReferencePath's, since a ModuleVersion which remains in
+   * the ReferenceGraph may no longer end any matched ReferencePath.
+   * <p>
+   * Must be called while synchronized.
+   */
+  private void pruneMatchedReferencePaths() {
+    Set<ModuleVersion> setModuleVersionLeaf;
+    Iterator<ModuleVersion> iteratorModuleVersion;
+
+    this.matchedReferencePathTrie.retain(new MatchedReferencePathTrie.ReferenceFilter() {
+      @Override
+      public boolean retain(ModuleVersion moduleVersionReferrer, Reference reference) {
+        if (moduleVersionReferrer == null) {
+          int id;
+
+          // A matched ReferencePath starts with a root ModuleVersion.
+          id = IndexedReferenceGraph.this.getId(reference.getModuleVersion());
+
+          return (id != -1) && IndexedReferenceGraph.this.bitSetIdRoot.get(id);
+        }
+
+        return IndexedReferenceGraph.this.getIndexEdge(IndexedReferenceGraph.this.getExistingId(moduleVersionReferrer), reference) != -1;
+      }
+    });
+
+    setModuleVersionLeaf = this.matchedReferencePathTrie.getSetModuleVersionLeaf();
+    iteratorModuleVersion = this.listModuleVersionMatched.iterator();
+
+    while (iteratorModuleVersion.hasNext()) {
+      ModuleVersion moduleVersion;
+
+      moduleVersion = iteratorModuleVersion.next();
+
+      if (!setModuleVersionLeaf.contains(moduleVersion)) {
+        this.bitSetIdMatched.clear(this.getExistingId(moduleVersion));
+        iteratorModuleVersion.remove();
+      }
+    }
+
+    for (ModuleVersion moduleVersion: setModuleVersionLeaf) {
+      this.addMatchedModuleVersion(moduleVersion);
+    }
+  }
+
+  /**
+   * Returns the IDs of the {@link ModuleVersion}'s which become orphans when the
+   * {@link Reference}'s of a ModuleVersion are removed.
+   * <p>
+   * A ModuleVersion becomes an orphan when all its referrers are either the
+   * ModuleVersion whose Reference's are removed or orphans themselves, and it is
+   * not a root. Only the ModuleVersion's reachable from the ModuleVersion whose
+   * Reference's are removed are considered.
+   *
+   * @param index Index. Must be up to date.
+   * @param idReferrer ID of the ModuleVersion whose Reference's are removed.
+   * @param bitSetIdKeep IDs of the ModuleVersion's which must not be considered
+   *   orphans.
+   * @return IDs of the orphan ModuleVersion's.
+   */
+  private List<Integer> getListIdOrphan(Index index, int idReferrer, BitSet bitSetIdKeep) {
+    List<Integer> listIdOrphan;
+    Map<Integer, Integer> mapNbReferrersRemoved;
+
+    listIdOrphan = new ArrayList<Integer>();
+    mapNbReferrersRemoved = new HashMap<Integer, Integer>();
+
+    // listIdOrphan is also the work list. -1 stands for idReferrer itself.
+    for (int i = -1; i < listIdOrphan.size(); i++) {
+      int id;
+
+      id = (i == -1) ? idReferrer : listIdOrphan.get(i);
+
+      for (int offset = index.arrayOffsetReference[id]; offset < index.arrayOffsetReference[id + 1]; offset++) {
+        int idTarget;
+        Integer nbReferrersRemoved;
+
+        idTarget = index.arrayIdReferenceTarget[offset];
+        nbReferrersRemoved = mapNbReferrersRemoved.get(idTarget);
+        nbReferrersRemoved = (nbReferrersRemoved == null) ? 1 : nbReferrersRemoved + 1;
+        mapNbReferrersRemoved.put(idTarget, nbReferrersRemoved);
+
+        // Since there are no cycles, the number of removed referrers reaches the
+        // number of referrers once, when the last one is removed.
+        if (   (nbReferrersRemoved == (index.arrayOffsetReferrer[idTarget + 1] - index.arrayOffsetReferrer[idTarget]))
+            && !this.bitSetIdRoot.get(idTarget)
+            && !bitSetIdKeep.get(idTarget)) {
+
+          listIdOrphan.add(idTarget);
+        }
+      }
+    }
+
+    return listIdOrphan;
+  }
+
+  /**
+   * Removes {@link ModuleVersion}'s, together with their {@link Reference}'s and
+   * the Reference's to them.
+   * <p>
+   * Must be called while synchronized.
+   *
+   * @param index Index. Must be up to date.
+   * @param listId IDs of the ModuleVersion's.
+   */
+  private void removeIds(Index index, List<Integer> listId) {
+    BitSet bitSetIdRemoved;
+
+    if (listId.isEmpty()) {
+      return;
+    }
+
+    bitSetIdRemoved = new BitSet(index.nbModuleVersions);
+
+    for (int id: listId) {
+      bitSetIdRemoved.set(id);
+      this.freeEdges(id);
+    }
+
+    for (int id: listId) {
+      ModuleVersion moduleVersion;
+
+      for (int indexReferrer = index.arrayOffsetReferrer[id]; indexReferrer < index.arrayOffsetReferrer[id + 1]; indexReferrer++) {
+        int idSource;
+
+        idSource = index.arrayIdReferrerSource[indexReferrer];
+
+        if (!bitSetIdRemoved.get(idSource)) {
+          this.freeEdges(idSource, id);
+        }
+      }
+
+      moduleVersion = this.arrayModuleVersion[id];
+
+      if (this.bitSetIdRoot.get(id)) {
+        this.bitSetIdRoot.clear(id);
+        this.listModuleVersionRoot.remove(moduleVersion);
+      }
+
+      if (this.bitSetIdMatched.get(id)) {
+        this.bitSetIdMatched.clear(id);
+        this.listModuleVersionMatched.remove(moduleVersion);
+      }
+
+      this.mapIdModuleVersion.remove(moduleVersion);
+      this.arrayModuleVersion[id] = null;
+      this.dequeIdFree.add(id);
+    }
+
+    this.index = null;
+  }
+
+  /**
+   * Frees all the edges of a {@link ModuleVersion}.
+   * <p>
+   * Must be called while synchronized.
+   *
+   * @param id ID of the ModuleVersion.
+   */
+  private void freeEdges(int id) {
+    int indexEdge;
+
+    indexEdge = this.arrayIndexEdgeFirst[id];
+
+    while (indexEdge != -1) {
+      int indexEdgeNext;
+
+      indexEdgeNext = this.arrayEdgeIndexNext[indexEdge];
+      this.freeEdge(indexEdge);
+      indexEdge = indexEdgeNext;
+    }
+
+    this.arrayIndexEdgeFirst[id] = -1;
+    this.arrayIndexEdgeLast[id] = -1;
+  }
+
+  /**
+   * Frees the edges of a {@link ModuleVersion} to a given referred-to
+   * ModuleVersion.
+   * <p>
+   * Must be called while synchronized.
+   *
+   * @param id ID of the ModuleVersion.
+   * @param idTarget ID of the referred-to ModuleVersion.
+   */
+  private void freeEdges(int id, int idTarget) {
+    int indexEdgePrevious;
+    int indexEdge;
+
+    indexEdgePrevious = -1;
+    indexEdge = this.arrayIndexEdgeFirst[id];
+
+    while (indexEdge != -1) {
+      int indexEdgeNext;
+
+      indexEdgeNext = this.arrayEdgeIndexNext[indexEdge];
+
+      if (this.arrayEdgeIdTarget[indexEdge] == idTarget) {
+        if (indexEdgePrevious == -1) {
+          this.arrayIndexEdgeFirst[id] = indexEdgeNext;
+        } else {
+          this.arrayEdgeIndexNext[indexEdgePrevious] = indexEdgeNext;
+        }
+
+        if (indexEdgeNext == -1) {
+          this.arrayIndexEdgeLast[id] = indexEdgePrevious;
+        }
+
+        this.freeEdge(indexEdge);
+      } else {
+        indexEdgePrevious = indexEdge;
+      }
+
+      indexEdge = indexEdgeNext;
+    }
+  }
+
+  /**
+   * Adds an edge to the free list. The edge must have been unlinked.
+   *
+   * @param indexEdge Index of the edge.
+   */
+  private void freeEdge(int indexEdge) {
+    this.arrayEdgeReference[indexEdge] = null;
+    this.arrayEdgeIndexNext[indexEdge] = this.indexEdgeFreeFirst;
+    this.indexEdgeFreeFirst = indexEdge;
+    this.nbEdgesFree++;
+  }
+}
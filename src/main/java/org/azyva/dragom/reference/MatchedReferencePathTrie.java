@@ -0,0 +1,488 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.azyva.dragom.model.ModuleVersion;
+
+/**
+ * Set of matched {@link ReferencePath}'s stored as a prefix trie keyed by
+ * {@link Reference}.
+ * <p>
+ * A {@link ReferenceGraph} only keeps track of matched {@link ModuleVersion}'s,
+ * not of the ReferencePath's that were actually matched. When that information
+ * is required, storing copies of the ReferencePath's is wasteful since matched
+ * ReferencePath's generally share long prefixes. In the trie, each common prefix
+ * is stored once, so that the memory used is proportional to the number of
+ * distinct prefixes rather than to the total length of the ReferencePath's.
+ * <p>
+ * Since a node of the trie exists only if at least one matched ReferencePath goes
+ * through it, both {@link #contains} and {@link #containsPrefix} are O(depth).
+ * Whether a ModuleVersion is on a matched ReferencePath is O(1).
+ * <p>
+ * Children of a node are kept in a linked list and moved to a HashMap when they
+ * become numerous, so that most nodes, which have few children, remain small.
+ * <p>
+ * Modifications must not occur concurrently with other accesses.
+ *
+ * @author David Raymond
+ */
+public final class MatchedReferencePathTrie {
+  /**
+   * Number of children of a node above which they are kept in a HashMap.
+   */
+  private static final int MAX_CHILDREN_LIST = 8;
+
+  /**
+   * Filter used to remove the {@link ReferencePath}'s which are no longer valid.
+   * See {@link MatchedReferencePathTrie#retain}.
+   */
+  static interface ReferenceFilter {
+    /**
+     * @param moduleVersionReferrer Referrer {@link ModuleVersion}. null for the
+     *   first {@link Reference} of a ReferencePath.
+     * @param reference Reference.
+     * @return Indicates if the Reference is to be retained.
+     */
+    boolean retain(ModuleVersion moduleVersionReferrer, Reference reference);
+  }
+
+  /**
+   * Node of the trie.
+   */
+  private static final class Node {
+    /**
+     * {@link Reference}. null for the root node.
+     */
+    private final Reference reference;
+
+    /**
+     * First child, when children are in a linked list.
+     */
+    private Node nodeChildFirst;
+
+    /**
+     * Next sibling, when children of the parent are in a linked list.
+     */
+    private Node nodeSiblingNext;
+
+    /**
+     * Number of children.
+     */
+    private int nbChildren;
+
+    /**
+     * Map of children, when they are numerous. null otherwise.
+     */
+    private Map<Reference, Node> mapNodeChild;
+
+    /**
+     * Indicates if the {@link ReferencePath} ending at this node is matched.
+     */
+    private boolean indMatched;
+
+    /**
+     * Constructor.
+     *
+     * @param reference Reference.
+     */
+    Node(Reference reference) {
+      this.reference = reference;
+    }
+
+    /**
+     * @param reference Reference.
+     * @return Child for the Reference. null if none.
+     */
+    Node getChild(Reference reference) {
+      if (this.mapNodeChild != null) {
+        return this.mapNodeChild.get(reference);
+      }
+
+      for (Node node = this.nodeChildFirst; node != null; node = node.nodeSiblingNext) {
+        if (node.reference.equals(reference)) {
+          return node;
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Adds a child. There must not be a child for the same Reference.
+     *
+     * @param node Child.
+     */
+    void addChild(Node node) {
+      this.nbChildren++;
+
+      if (this.mapNodeChild != null) {
+        this.mapNodeChild.put(node.reference, node);
+      } else if (this.nbChildren > MatchedReferencePathTrie.MAX_CHILDREN_LIST) {
+        this.mapNodeChild = new HashMap<Reference, Node>();
+
+        for (Node nodeChild = this.nodeChildFirst; nodeChild != null; nodeChild = nodeChild.nodeSiblingNext) {
+          this.mapNodeChild.put(nodeChild.reference, nodeChild);
+        }
+
+        this.mapNodeChild.put(node.reference, node);
+        this.nodeChildFirst = null;
+      } else {
+        node.nodeSiblingNext = this.nodeChildFirst;
+        this.nodeChildFirst = node;
+      }
+    }
+
+    /**
+     * @return List of children.
+     */
+    List<Node> getListChild() {
+      List<Node> listNodeChild;
+
+      if (this.mapNodeChild != null) {
+        return new ArrayList<Node>(this.mapNodeChild.values());
+      }
+
+      listNodeChild = new ArrayList<Node>(this.nbChildren);
+
+      for (Node node = this.nodeChildFirst; node != null; node = node.nodeSiblingNext) {
+        listNodeChild.add(node);
+      }
+
+      return listNodeChild;
+    }
+
+    /**
+     * Replaces the children.
+     *
+     * @param listNodeChild List of children.
+     */
+    void setListChild(List<Node> listNodeChild) {
+      this.nodeChildFirst = null;
+      this.nbChildren = 0;
+      this.mapNodeChild = null;
+
+      for (Node node: listNodeChild) {
+        node.nodeSiblingNext = null;
+        this.addChild(node);
+      }
+    }
+  }
+
+  /**
+   * Walks the trie along the {@link Reference}'s of a ReferencePath, for
+   * {@link MatchedReferencePathTrie#add} and
+   * {@link MatchedReferencePathTrie#getNode}.
+   */
+  private final class Walk implements PersistentReferencePath.ReferenceVisitor {
+    /**
+     * Indicates to create the missing nodes.
+     */
+    private boolean indCreate;
+
+    /**
+     * Current node. null if a node is missing and indCreate is false.
+     */
+    private Node node;
+
+    /**
+     * Constructor.
+     *
+     * @param indCreate Indicates to create the missing nodes.
+     */
+    private Walk(boolean indCreate) {
+      this.indCreate = indCreate;
+      this.node = MatchedReferencePathTrie.this.nodeRoot;
+    }
+
+    @Override
+    public boolean visitReference(int index, Reference reference) {
+      MatchedReferencePathTrie matchedReferencePathTrie;
+      Node nodeChild;
+
+      matchedReferencePathTrie = MatchedReferencePathTrie.this;
+      nodeChild = this.node.getChild(reference);
+
+      if ((nodeChild == null) && this.indCreate) {
+        Integer nbNodes;
+
+        nodeChild = new Node(reference);
+        this.node.addChild(nodeChild);
+        matchedReferencePathTrie.nbNodes++;
+        nbNodes = matchedReferencePathTrie.mapNbNodesModuleVersion.get(reference.getModuleVersion());
+        matchedReferencePathTrie.mapNbNodesModuleVersion.put(reference.getModuleVersion(), (nbNodes == null) ? 1 : nbNodes + 1);
+      }
+
+      this.node = nodeChild;
+
+      return nodeChild != null;
+    }
+  }
+
+  /**
+   * Root node, which does not correspond to a {@link Reference}.
+   */
+  private Node nodeRoot;
+
+  /**
+   * Number of matched {@link ReferencePath}'s.
+   */
+  private int size;
+
+  /**
+   * Number of nodes, excluding the root node.
+   */
+  private int nbNodes;
+
+  /**
+   * Number of nodes for each {@link ModuleVersion}.
+   */
+  private Map<ModuleVersion, Integer> mapNbNodesModuleVersion;
+
+  /**
+   * Constructor for an empty trie.
+   */
+  public MatchedReferencePathTrie() {
+    this.nodeRoot = new Node(null);
+    this.mapNbNodesModuleVersion = new HashMap<ModuleVersion, Integer>();
+  }
+
+  /**
+   * Adds a matched {@link ReferencePath}.
+   *
+   * @param referencePath ReferencePath. Not kept.
+   * @return Indicates if the ReferencePath was not already present.
+   */
+  public boolean add(ReferencePath referencePath) {
+    Walk walk;
+    Node node;
+
+    walk = new Walk(true);
+    referencePath.forEachReference(walk);
+    node = walk.node;
+
+    if (node.indMatched || (node == this.nodeRoot)) {
+      return false;
+    }
+
+    node.indMatched = true;
+    this.size++;
+
+    return true;
+  }
+
+  /**
+   * Returns the node corresponding to a {@link ReferencePath}.
+   *
+   * @param referencePath ReferencePath.
+   * @return Node. null if none.
+   */
+  private Node getNode(ReferencePath referencePath) {
+    Walk walk;
+
+    walk = new Walk(false);
+    referencePath.forEachReference(walk);
+
+    return walk.node;
+  }
+
+  /**
+   * @param referencePath ReferencePath.
+   * @return Indicates if the {@link ReferencePath} is matched.
+   */
+  public boolean contains(ReferencePath referencePath) {
+    Node node;
+
+    node = this.getNode(referencePath);
+
+    return (node != null) && node.indMatched;
+  }
+
+  /**
+   * Indicates if at least one matched {@link ReferencePath} starts with a given
+   * ReferencePath, which is then a prefix of a matched ReferencePath or a matched
+   * ReferencePath itself.
+   *
+   * @param referencePath ReferencePath.
+   * @return See description.
+   */
+  public boolean containsPrefix(ReferencePath referencePath) {
+    return (referencePath.size() != 0) && (this.getNode(referencePath) != null);
+  }
+
+  /**
+   * @param moduleVersion ModuleVersion.
+   * @return Indicates if at least one matched {@link ReferencePath} goes through
+   *   the {@link ModuleVersion}.
+   */
+  public boolean isModuleVersionOnMatchedPath(ModuleVersion moduleVersion) {
+    return this.mapNbNodesModuleVersion.containsKey(moduleVersion);
+  }
+
+  /**
+   * @return Number of matched {@link ReferencePath}'s.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return Number of nodes in the trie, which is the number of distinct prefixes
+   *   of the matched {@link ReferencePath}'s.
+   */
+  public int getNbNodes() {
+    return this.nbNodes;
+  }
+
+  /**
+   * @return List of the matched {@link ReferencePath}'s, in no particular order.
+   */
+  public List<ReferencePath> getListReferencePath() {
+    List<ReferencePath> listReferencePath;
+
+    listReferencePath = new ArrayList<ReferencePath>(this.size);
+    this.collectReferencePaths(this.nodeRoot, PersistentReferencePath.EMPTY, listReferencePath);
+
+    return listReferencePath;
+  }
+
+  /**
+   * Collects the matched {@link ReferencePath}'s under a node.
+   *
+   * @param node Node.
+   * @param persistentReferencePath PersistentReferencePath of the node.
+   * @param listReferencePath List into which the ReferencePath's are added.
+   */
+  private void collectReferencePaths(Node node, PersistentReferencePath persistentReferencePath, List<ReferencePath> listReferencePath) {
+    if (node.indMatched) {
+      listReferencePath.add(new ReferencePath(persistentReferencePath));
+    }
+
+    for (Node nodeChild: node.getListChild()) {
+      this.collectReferencePaths(nodeChild, persistentReferencePath.append(nodeChild.reference), listReferencePath);
+    }
+  }
+
+  /**
+   * @return Set of the leaf {@link ModuleVersion}'s of the matched
+   *   {@link ReferencePath}'s.
+   */
+  Set<ModuleVersion> getSetModuleVersionLeaf() {
+    Set<ModuleVersion> setModuleVersionLeaf;
+
+    setModuleVersionLeaf = new HashSet<ModuleVersion>();
+    this.collectModuleVersionsLeaf(this.nodeRoot, setModuleVersionLeaf);
+
+    return setModuleVersionLeaf;
+  }
+
+  /**
+   * Collects the leaf {@link ModuleVersion}'s of the matched
+   * {@link ReferencePath}'s under a node.
+   *
+   * @param node Node.
+   * @param setModuleVersionLeaf Set into which the ModuleVersion's are added.
+   */
+  private void collectModuleVersionsLeaf(Node node, Set<ModuleVersion> setModuleVersionLeaf) {
+    if (node.indMatched) {
+      setModuleVersionLeaf.add(node.reference.getModuleVersion());
+    }
+
+    for (Node nodeChild: node.getListChild()) {
+      this.collectModuleVersionsLeaf(nodeChild, setModuleVersionLeaf);
+    }
+  }
+
+  /**
+   * Removes the matched {@link ReferencePath}'s which contain a {@link Reference}
+   * that is not retained by a {@link ReferenceFilter}.
+   *
+   * @param referenceFilter ReferenceFilter.
+   */
+  void retain(ReferenceFilter referenceFilter) {
+    this.retain(this.nodeRoot, null, referenceFilter);
+  }
+
+  /**
+   * Removes the matched {@link ReferencePath}'s under a node which contain a
+   * {@link Reference} that is not retained by a {@link ReferenceFilter}.
+   *
+   * @param node Node.
+   * @param moduleVersion ModuleVersion of the node. null for the root node.
+   * @param referenceFilter ReferenceFilter.
+   * @return Indicates if the node must be kept, because it is matched or still has
+   *   children.
+   */
+  private boolean retain(Node node, ModuleVersion moduleVersion, ReferenceFilter referenceFilter) {
+    List<Node> listNodeChild;
+    List<Node> listNodeChildRetained;
+
+    listNodeChild = node.getListChild();
+    listNodeChildRetained = new ArrayList<Node>(listNodeChild.size());
+
+    for (Node nodeChild: listNodeChild) {
+      if (referenceFilter.retain(moduleVersion, nodeChild.reference) && this.retain(nodeChild, nodeChild.reference.getModuleVersion(), referenceFilter)) {
+        listNodeChildRetained.add(nodeChild);
+      } else {
+        this.removeSubtree(nodeChild);
+      }
+    }
+
+    if (listNodeChildRetained.size() != listNodeChild.size()) {
+      node.setListChild(listNodeChildRetained);
+    }
+
+    return node.indMatched || (node.nbChildren != 0);
+  }
+
+  /**
+   * Updates the counts for the removal of a subtree.
+   *
+   * @param node Root node of the subtree.
+   */
+  private void removeSubtree(Node node) {
+    ModuleVersion moduleVersion;
+    int nbNodes;
+
+    for (Node nodeChild: node.getListChild()) {
+      this.removeSubtree(nodeChild);
+    }
+
+    if (node.indMatched) {
+      this.size--;
+    }
+
+    this.nbNodes--;
+    moduleVersion = node.reference.getModuleVersion();
+    nbNodes = this.mapNbNodesModuleVersion.get(moduleVersion);
+
+    if (nbNodes == 1) {
+      this.mapNbNodesModuleVersion.remove(moduleVersion);
+    } else {
+      this.mapNbNodesModuleVersion.put(moduleVersion, nbNodes - 1);
+    }
+  }
+}
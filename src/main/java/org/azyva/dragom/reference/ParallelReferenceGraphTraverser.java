@@ -0,0 +1,596 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.reference.ReferenceGraph.ConcurrentVisitor;
+import org.azyva.dragom.reference.ReferenceGraph.ReentryMode;
+import org.azyva.dragom.reference.ReferenceGraph.TraversalOrder;
+import org.azyva.dragom.reference.ReferenceGraph.VisitAction;
+import org.azyva.dragom.reference.ReferenceGraph.VisitControl;
+
+/**
+ * Parallel traversal of a {@link ReferenceGraph} on a ForkJoinPool.
+ * <p>
+ * This class implements
+ * {@link ReferenceGraph#traverseReferenceGraphParallel}. It only uses the read
+ * methods of ReferenceGraph and can therefore be used with any implementation,
+ * as long as these methods are thread-safe when the ReferenceGraph is not
+ * modified, which is normally the case.
+ * <p>
+ * For {@link TraversalOrder#PARENT_FIRST} and {@link TraversalOrder#DEPTH_FIRST},
+ * the traversal is the same as the sequential one, except that the subtrees of
+ * sibling {@link ModuleVersion}'s (including the root ModuleVersion's) are
+ * traversed concurrently. For a given {@link ReferencePath}, the sequence of
+ * visits is the same as for the sequential traversal: {@link VisitAction#VISIT}
+ * (for PARENT_FIRST), {@link VisitAction#STEP_IN}, visits of the children,
+ * {@link VisitAction#STEP_OUT} when all children have been traversed and
+ * VISIT (for DEPTH_FIRST). Since siblings are traversed concurrently, which
+ * visit of a ModuleVersion that is reached by multiple ReferencePath's is the
+ * first one, and the others are {@link VisitAction#REPEATED}, is not
+ * deterministic.
+ * For DEPTH_FIRST, a ModuleVersion is still visited only after all the
+ * ModuleVersion's it references, even if they were first reached on another
+ * thread: a visit which does not traverse the children again waits for the one
+ * which does to complete.
+ * <p>
+ * For {@link TraversalOrder#ALL_PARENTS_FIRST}, the reachable part of the
+ * ReferenceGraph is first collected and a ModuleVersion is visited only once all
+ * of its referrers within it have been visited. Each ModuleVersion is then
+ * visited once, regardless of the {@link ReentryMode}, with one of the
+ * ReferencePath's leading to it. STEP_IN and STEP_OUT are not used since the
+ * visits are not nested. A ModuleVersion is not visited if all its referrers
+ * returned {@link VisitControl#SKIP_CHILDREN} or were not visited themselves.
+ * {@link VisitControl#SKIP_CURRENT_ROOT} has the same effect as SKIP_CHILDREN
+ * since the visits are not related to a single root ModuleVersion.
+ * <p>
+ * {@link VisitControl#ABORT} stops the traversal as soon as possible: no new
+ * visits are started, but visits that are already underway on other threads
+ * complete. If the {@link ConcurrentVisitor} throws an exception, the traversal
+ * is aborted the same way and the exception is rethrown.
+ *
+ * @author David Raymond
+ */
+class ParallelReferenceGraphTraverser {
+  /**
+   * ReferenceGraph.
+   */
+  private ReferenceGraph referenceGraph;
+
+  /**
+   * TraversalOrder.
+   */
+  private TraversalOrder traversalOrder;
+
+  /**
+   * ReentryMode.
+   */
+  private ReentryMode reentryMode;
+
+  /**
+   * ConcurrentVisitor.
+   */
+  private ConcurrentVisitor concurrentVisitor;
+
+  /**
+   * Indicates the traversal has been aborted.
+   */
+  private AtomicBoolean indAborted;
+
+  /**
+   * Map of {@link ModuleVersion}'s that have been visited to the task which
+   * visited them first, to handle {@link ReentryMode} and so that later visits
+   * can wait for the first one to complete.
+   */
+  private Map<ModuleVersion, ModuleVersionTask> mapModuleVersionTaskFirst;
+
+  /**
+   * Constructor.
+   *
+   * @param referenceGraph ReferenceGraph.
+   * @param traversalOrder TraversalOrder.
+   * @param reentryMode ReentryMode.
+   * @param concurrentVisitor ConcurrentVisitor.
+   */
+  ParallelReferenceGraphTraverser(ReferenceGraph referenceGraph, TraversalOrder traversalOrder, ReentryMode reentryMode, ConcurrentVisitor concurrentVisitor) {
+    this.referenceGraph = referenceGraph;
+    this.traversalOrder = traversalOrder;
+    this.reentryMode = reentryMode;
+    this.concurrentVisitor = concurrentVisitor;
+    this.indAborted = new AtomicBoolean();
+    this.mapModuleVersionTaskFirst = new ConcurrentHashMap<ModuleVersion, ModuleVersionTask>();
+  }
+
+  /**
+   * Performs the traversal.
+   *
+   * @param moduleVersion ModuleVersion at which to start the traversal. Can be null
+   *   to indicate to perform the traversal for each root ModuleVersion.
+   * @param forkJoinPool ForkJoinPool.
+   * @return Indicates if the traversal has been aborted.
+   */
+  boolean traverse(ModuleVersion moduleVersion, ForkJoinPool forkJoinPool) {
+    List<ModuleVersion> listModuleVersionRoot;
+
+    if (moduleVersion == null) {
+      listModuleVersionRoot = this.referenceGraph.getListModuleVersionRoot();
+    } else {
+      if (!this.referenceGraph.moduleVersionExists(moduleVersion)) {
+        throw new RuntimeException("ModuleVersion " + moduleVersion + " is not part of the ReferenceGraph.");
+      }
+
+      listModuleVersionRoot = Collections.singletonList(moduleVersion);
+    }
+
+    if (this.traversalOrder == TraversalOrder.ALL_PARENTS_FIRST) {
+      forkJoinPool.invoke(new AllParentsFirstRootTask(listModuleVersionRoot));
+    } else {
+      List<ModuleVersionTask> listModuleVersionTask;
+
+      listModuleVersionTask = new ArrayList<ModuleVersionTask>(listModuleVersionRoot.size());
+
+      for (ModuleVersion moduleVersionRoot: listModuleVersionRoot) {
+        listModuleVersionTask.add(new ModuleVersionTask(PersistentReferencePath.EMPTY.append(new Reference(moduleVersionRoot)), new AtomicBoolean()));
+      }
+
+      forkJoinPool.invoke(new InvokeAllTask(listModuleVersionTask));
+    }
+
+    return this.indAborted.get();
+  }
+
+  /**
+   * Calls the {@link ConcurrentVisitor}, aborting the traversal if it throws an
+   * exception.
+   *
+   * @param persistentReferencePath PersistentReferencePath.
+   * @param enumSetVisitAction EnumSet of VisitAction's.
+   * @return VisitControl.
+   */
+  private VisitControl visit(PersistentReferencePath persistentReferencePath, EnumSet<VisitAction> enumSetVisitAction) {
+    VisitControl visitControl;
+
+    try {
+      visitControl = this.concurrentVisitor.visit(this.referenceGraph, new ReferencePath(persistentReferencePath), enumSetVisitAction);
+    } catch (RuntimeException re) {
+      this.indAborted.set(true);
+      throw re;
+    }
+
+    if (visitControl == VisitControl.ABORT) {
+      this.indAborted.set(true);
+    }
+
+    return visitControl;
+  }
+
+  /**
+   * Returns the EnumSet of VisitAction's for visiting a {@link ModuleVersion}.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @param indRepeated Indicates if the ModuleVersion has already been visited.
+   * @return EnumSet of VisitAction's.
+   */
+  private EnumSet<VisitAction> getEnumSetVisitAction(ModuleVersion moduleVersion, boolean indRepeated) {
+    if (this.referenceGraph.isMatchedModuleVersion(moduleVersion)) {
+      return indRepeated ? VisitAction.ENUM_SET_REPEATED_VISIT_MATCHED : VisitAction.ENUM_SET_VISIT_MATCHED;
+    } else {
+      return indRepeated ? VisitAction.ENUM_SET_REPEATED_VISIT : VisitAction.ENUM_SET_VISIT;
+    }
+  }
+
+  /**
+   * Task which invokes a List of tasks concurrently.
+   */
+  private static class InvokeAllTask extends RecursiveAction {
+    /**
+     * Generated serialVersionUID.
+     */
+    private static final long serialVersionUID = 5276331658925873342L;
+
+    /**
+     * List of tasks.
+     */
+    private List<? extends ForkJoinTask<?>> listForkJoinTask;
+
+    /**
+     * Constructor.
+     *
+     * @param listForkJoinTask List of tasks.
+     */
+    InvokeAllTask(List<? extends ForkJoinTask<?>> listForkJoinTask) {
+      this.listForkJoinTask = listForkJoinTask;
+    }
+
+    @Override
+    protected void compute() {
+      ForkJoinTask.invokeAll(this.listForkJoinTask);
+    }
+  }
+
+  /**
+   * Task which traverses a {@link ModuleVersion} and its children for
+   * {@link TraversalOrder#PARENT_FIRST} and {@link TraversalOrder#DEPTH_FIRST}.
+   */
+  private class ModuleVersionTask extends RecursiveAction {
+    /**
+     * Generated serialVersionUID.
+     */
+    private static final long serialVersionUID = -3416127412553540167L;
+
+    /**
+     * PersistentReferencePath of the ModuleVersion.
+     */
+    private PersistentReferencePath persistentReferencePath;
+
+    /**
+     * Indicates the current root ModuleVersion must be skipped. Shared by all the
+     * tasks for the same root ModuleVersion.
+     */
+    private AtomicBoolean indSkipCurrentRoot;
+
+    /**
+     * Constructor.
+     *
+     * @param persistentReferencePath PersistentReferencePath of the ModuleVersion.
+     * @param indSkipCurrentRoot Indicates the current root ModuleVersion must be
+     *   skipped.
+     */
+    ModuleVersionTask(PersistentReferencePath persistentReferencePath, AtomicBoolean indSkipCurrentRoot) {
+      this.persistentReferencePath = persistentReferencePath;
+      this.indSkipCurrentRoot = indSkipCurrentRoot;
+    }
+
+    /**
+     * @return Indicates if the traversal of this task must stop.
+     */
+    private boolean isStopped() {
+      return ParallelReferenceGraphTraverser.this.indAborted.get() || this.indSkipCurrentRoot.get();
+    }
+
+    /**
+     * Handles a VisitControl.
+     *
+     * @param visitControl VisitControl.
+     * @param indSkipChildrenValid Indicates if {@link VisitControl#SKIP_CHILDREN}
+     *   is valid.
+     * @return Indicates if the children must be skipped.
+     */
+    private boolean handleVisitControl(VisitControl visitControl, boolean indSkipChildrenValid) {
+      switch (visitControl) {
+      case CONTINUE:
+        return false;
+
+      case SKIP_CHILDREN:
+        if (!indSkipChildrenValid) {
+          throw new RuntimeException("VisitControl.SKIP_CHILDREN is not valid in this context.");
+        }
+
+        return true;
+
+      case SKIP_CURRENT_ROOT:
+        this.indSkipCurrentRoot.set(true);
+        return true;
+
+      case ABORT:
+        return true;
+
+      default:
+        throw new RuntimeException("Must not get here.");
+      }
+    }
+
+    @Override
+    protected void compute() {
+      ParallelReferenceGraphTraverser parallelReferenceGraphTraverser;
+      ModuleVersion moduleVersion;
+      ModuleVersionTask moduleVersionTaskFirst;
+      boolean indRepeated;
+      EnumSet<VisitAction> enumSetVisitAction;
+
+      parallelReferenceGraphTraverser = ParallelReferenceGraphTraverser.this;
+
+      if (this.isStopped()) {
+        return;
+      }
+
+      moduleVersion = this.persistentReferencePath.getLeafModuleVersion();
+      moduleVersionTaskFirst = parallelReferenceGraphTraverser.mapModuleVersionTaskFirst.putIfAbsent(moduleVersion, this);
+      indRepeated = (moduleVersionTaskFirst != null);
+
+      // For DEPTH_FIRST, the parent is visited after this task completes and must
+      // not be visited before the children of this ModuleVersion. If they are not
+      // traversed again by this task, the task which traverses them, which may be
+      // running on another thread, must complete first. This cannot deadlock since
+      // the ReferenceGraph has no cycles.
+      if (indRepeated && (parallelReferenceGraphTraverser.traversalOrder == TraversalOrder.DEPTH_FIRST) && (parallelReferenceGraphTraverser.reentryMode != ReentryMode.REENTRY)) {
+        moduleVersionTaskFirst.join();
+      }
+
+      if (indRepeated && (parallelReferenceGraphTraverser.reentryMode == ReentryMode.NO_REENTRY)) {
+        return;
+      }
+
+      enumSetVisitAction = parallelReferenceGraphTraverser.getEnumSetVisitAction(moduleVersion, indRepeated);
+
+      if (parallelReferenceGraphTraverser.traversalOrder == TraversalOrder.PARENT_FIRST) {
+        if (this.handleVisitControl(parallelReferenceGraphTraverser.visit(this.persistentReferencePath, enumSetVisitAction), true)) {
+          return;
+        }
+      }
+
+      if (!indRepeated || (parallelReferenceGraphTraverser.reentryMode == ReentryMode.REENTRY)) {
+        if (this.isStopped()) {
+          return;
+        }
+
+        if (!this.handleVisitControl(parallelReferenceGraphTraverser.visit(this.persistentReferencePath, VisitAction.ENUM_SET_STEP_IN), true)) {
+          List<Reference> listReference;
+          List<ModuleVersionTask> listModuleVersionTask;
+
+          listReference = parallelReferenceGraphTraverser.referenceGraph.getListReference(moduleVersion);
+          listModuleVersionTask = new ArrayList<ModuleVersionTask>(listReference.size());
+
+          for (Reference reference: listReference) {
+            listModuleVersionTask.add(new ModuleVersionTask(this.persistentReferencePath.append(reference), this.indSkipCurrentRoot));
+          }
+
+          ForkJoinTask.invokeAll(listModuleVersionTask);
+        }
+
+        // STEP_OUT matches STEP_IN, even if the children were skipped.
+
+        if (this.isStopped()) {
+          return;
+        }
+
+        if (this.handleVisitControl(parallelReferenceGraphTraverser.visit(this.persistentReferencePath, VisitAction.ENUM_SET_STEP_OUT), false)) {
+          return;
+        }
+      }
+
+      if (parallelReferenceGraphTraverser.traversalOrder == TraversalOrder.DEPTH_FIRST) {
+        if (this.isStopped()) {
+          return;
+        }
+
+        this.handleVisitControl(parallelReferenceGraphTraverser.visit(this.persistentReferencePath, enumSetVisitAction), false);
+      }
+    }
+  }
+
+  /**
+   * State of a {@link ModuleVersion} for {@link TraversalOrder#ALL_PARENTS_FIRST}.
+   */
+  private static class AllParentsFirstNode {
+    /**
+     * ModuleVersion.
+     */
+    private ModuleVersion moduleVersion;
+
+    /**
+     * List of Reference's of the ModuleVersion.
+     */
+    private List<Reference> listReference;
+
+    /**
+     * Number of Reference's to this ModuleVersion from ModuleVersion's that have
+     * not been processed yet.
+     */
+    private AtomicInteger nbPendingReferrers;
+
+    /**
+     * PersistentReferencePath by which the ModuleVersion was reached. null if it
+     * was not reached (yet).
+     */
+    private volatile PersistentReferencePath persistentReferencePathReached;
+
+    /**
+     * Constructor.
+     *
+     * @param moduleVersion ModuleVersion.
+     * @param listReference List of Reference's of the ModuleVersion.
+     */
+    AllParentsFirstNode(ModuleVersion moduleVersion, List<Reference> listReference) {
+      this.moduleVersion = moduleVersion;
+      this.listReference = listReference;
+      this.nbPendingReferrers = new AtomicInteger();
+    }
+  }
+
+  /**
+   * Task which collects the part of the ReferenceGraph which is reachable from
+   * the root ModuleVersion's and starts the traversal for
+   * {@link TraversalOrder#ALL_PARENTS_FIRST}.
+   */
+  private class AllParentsFirstRootTask extends RecursiveAction {
+    /**
+     * Generated serialVersionUID.
+     */
+    private static final long serialVersionUID = 2203919452611839411L;
+
+    /**
+     * List of root ModuleVersion's.
+     */
+    private List<ModuleVersion> listModuleVersionRoot;
+
+    /**
+     * Constructor.
+     *
+     * @param listModuleVersionRoot List of root ModuleVersion's.
+     */
+    AllParentsFirstRootTask(List<ModuleVersion> listModuleVersionRoot) {
+      this.listModuleVersionRoot = listModuleVersionRoot;
+    }
+
+    @Override
+    protected void compute() {
+      ReferenceGraph referenceGraph;
+      Map<ModuleVersion, AllParentsFirstNode> mapAllParentsFirstNode;
+      Deque<AllParentsFirstNode> dequeAllParentsFirstNode;
+      List<AllParentsFirstNodeTask> listAllParentsFirstNodeTask;
+
+      referenceGraph = ParallelReferenceGraphTraverser.this.referenceGraph;
+      mapAllParentsFirstNode = new HashMap<ModuleVersion, AllParentsFirstNode>();
+      dequeAllParentsFirstNode = new ArrayDeque<AllParentsFirstNode>();
+
+      for (ModuleVersion moduleVersionRoot: this.listModuleVersionRoot) {
+        AllParentsFirstNode allParentsFirstNode;
+
+        if (!mapAllParentsFirstNode.containsKey(moduleVersionRoot)) {
+          allParentsFirstNode = new AllParentsFirstNode(moduleVersionRoot, referenceGraph.getListReference(moduleVersionRoot));
+          mapAllParentsFirstNode.put(moduleVersionRoot, allParentsFirstNode);
+          dequeAllParentsFirstNode.add(allParentsFirstNode);
+        } else {
+          allParentsFirstNode = mapAllParentsFirstNode.get(moduleVersionRoot);
+        }
+
+        allParentsFirstNode.persistentReferencePathReached = PersistentReferencePath.EMPTY.append(new Reference(moduleVersionRoot));
+      }
+
+      while (!dequeAllParentsFirstNode.isEmpty()) {
+        AllParentsFirstNode allParentsFirstNode;
+
+        allParentsFirstNode = dequeAllParentsFirstNode.removeFirst();
+
+        for (Reference reference: allParentsFirstNode.listReference) {
+          AllParentsFirstNode allParentsFirstNodeChild;
+
+          allParentsFirstNodeChild = mapAllParentsFirstNode.get(reference.getModuleVersion());
+
+          if (allParentsFirstNodeChild == null) {
+            allParentsFirstNodeChild = new AllParentsFirstNode(reference.getModuleVersion(), referenceGraph.getListReference(reference.getModuleVersion()));
+            mapAllParentsFirstNode.put(reference.getModuleVersion(), allParentsFirstNodeChild);
+            dequeAllParentsFirstNode.add(allParentsFirstNodeChild);
+          }
+
+          allParentsFirstNodeChild.nbPendingReferrers.incrementAndGet();
+        }
+      }
+
+      listAllParentsFirstNodeTask = new ArrayList<AllParentsFirstNodeTask>();
+
+      for (AllParentsFirstNode allParentsFirstNode: mapAllParentsFirstNode.values()) {
+        if (allParentsFirstNode.nbPendingReferrers.get() == 0) {
+          listAllParentsFirstNodeTask.add(new AllParentsFirstNodeTask(mapAllParentsFirstNode, allParentsFirstNode));
+        }
+      }
+
+      ForkJoinTask.invokeAll(listAllParentsFirstNodeTask);
+    }
+  }
+
+  /**
+   * Task which visits a {@link ModuleVersion} whose referrers have all been
+   * processed and releases its children for {@link TraversalOrder#ALL_PARENTS_FIRST}.
+   */
+  private class AllParentsFirstNodeTask extends RecursiveAction {
+    /**
+     * Generated serialVersionUID.
+     */
+    private static final long serialVersionUID = -7460214437658237718L;
+
+    /**
+     * Map of the AllParentsFirstNode's. Not modified during the traversal.
+     */
+    private Map<ModuleVersion, AllParentsFirstNode> mapAllParentsFirstNode;
+
+    /**
+     * AllParentsFirstNode.
+     */
+    private AllParentsFirstNode allParentsFirstNode;
+
+    /**
+     * Constructor.
+     *
+     * @param mapAllParentsFirstNode Map of the AllParentsFirstNode's.
+     * @param allParentsFirstNode AllParentsFirstNode.
+     */
+    AllParentsFirstNodeTask(Map<ModuleVersion, AllParentsFirstNode> mapAllParentsFirstNode, AllParentsFirstNode allParentsFirstNode) {
+      this.mapAllParentsFirstNode = mapAllParentsFirstNode;
+      this.allParentsFirstNode = allParentsFirstNode;
+    }
+
+    @Override
+    protected void compute() {
+      ParallelReferenceGraphTraverser parallelReferenceGraphTraverser;
+      PersistentReferencePath persistentReferencePath;
+      boolean indSkipChildren;
+      List<AllParentsFirstNodeTask> listAllParentsFirstNodeTask;
+
+      parallelReferenceGraphTraverser = ParallelReferenceGraphTraverser.this;
+
+      if (parallelReferenceGraphTraverser.indAborted.get()) {
+        return;
+      }
+
+      persistentReferencePath = this.allParentsFirstNode.persistentReferencePathReached;
+
+      if (persistentReferencePath == null) {
+        // No referrer actually reached this ModuleVersion, but its children must still
+        // be released so that they can be visited if reached by some other referrer.
+        indSkipChildren = true;
+      } else {
+        VisitControl visitControl;
+
+        visitControl = parallelReferenceGraphTraverser.visit(persistentReferencePath, parallelReferenceGraphTraverser.getEnumSetVisitAction(this.allParentsFirstNode.moduleVersion, false));
+
+        if (visitControl == VisitControl.ABORT) {
+          return;
+        }
+
+        indSkipChildren = (visitControl != VisitControl.CONTINUE);
+      }
+
+      listAllParentsFirstNodeTask = new ArrayList<AllParentsFirstNodeTask>();
+
+      for (Reference reference: this.allParentsFirstNode.listReference) {
+        AllParentsFirstNode allParentsFirstNodeChild;
+
+        allParentsFirstNodeChild = this.mapAllParentsFirstNode.get(reference.getModuleVersion());
+
+        if (!indSkipChildren) {
+          allParentsFirstNodeChild.persistentReferencePathReached = persistentReferencePath.append(reference);
+        }
+
+        if (allParentsFirstNodeChild.nbPendingReferrers.decrementAndGet() == 0) {
+          listAllParentsFirstNodeTask.add(new AllParentsFirstNodeTask(this.mapAllParentsFirstNode, allParentsFirstNodeChild));
+        }
+      }
+
+      ForkJoinTask.invokeAll(listAllParentsFirstNodeTask);
+    }
+  }
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.Arrays;
+
+import org.azyva.dragom.model.Module;
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+import org.azyva.dragom.model.Version;
+
+/**
+ * Immutable reference path with structural sharing.
+ * <p>
+ * A PersistentReferencePath is a cons list of {@link Reference}'s linked from
+ * the leaf to the root. Appending a Reference creates a new
+ * PersistentReferencePath which shares all of its parent's Reference's, so that
+ * appending is O(1) and taking a snapshot of a ReferencePath during a traversal
+ * is free. {@link ReferencePath} remains the mutable class used in the API and is
+ * implemented as a facade over a PersistentReferencePath.
+ * <p>
+ * Each PersistentReferencePath maintains a small bloom filter of the
+ * {@link NodePath}'s of the {@link Module}'s it contains. It allows
+ * {@link #findModuleVersion} and the cycle check performed by {@link #append} to
+ * avoid walking the Reference's in the most common case where the Module is not
+ * present.
+ * <p>
+ * Since Reference's are linked from the leaf to the root, indexed access walks
+ * the parent links. {@link #forEachReference} iterates over the Reference's from
+ * the root to the leaf without allocating and is what callers iterating over
+ * the whole PersistentReferencePath should use.
+ * <p>
+ * Instances are immutable and therefore thread-safe.
+ *
+ * @author David Raymond
+ */
+public final class PersistentReferencePath {
+  /**
+   * Visitor of the {@link Reference}'s of a PersistentReferencePath, used by
+   * {@link PersistentReferencePath#forEachReference}.
+   */
+  public interface ReferenceVisitor {
+    /**
+     * Visits a Reference.
+     *
+     * @param index Index of the Reference.
+     * @param reference Reference.
+     * @return Indicates to continue with the next Reference.
+     */
+    boolean visitReference(int index, Reference reference);
+  }
+
+  /**
+   * Empty PersistentReferencePath.
+   */
+  public static final PersistentReferencePath EMPTY = new PersistentReferencePath();
+
+  /**
+   * Parent PersistentReferencePath. null for {@link #EMPTY}.
+   */
+  private final PersistentReferencePath persistentReferencePathParent;
+
+  /**
+   * Leaf {@link Reference}. null for {@link #EMPTY}.
+   */
+  private final Reference referenceLeaf;
+
+  /**
+   * Number of {@link Reference}'s.
+   */
+  private final int size;
+
+  /**
+   * Bloom filter of the {@link NodePath}'s of the {@link Module}'s in this
+   * PersistentReferencePath. See {@link #getBloomBits}.
+   */
+  private final long bloomNodePath;
+
+  /**
+   * Constructor for {@link #EMPTY}.
+   */
+  private PersistentReferencePath() {
+    this.persistentReferencePathParent = null;
+    this.referenceLeaf = null;
+    this.size = 0;
+    this.bloomNodePath = 0;
+  }
+
+  /**
+   * Constructor used by {@link #append}.
+   *
+   * @param persistentReferencePathParent Parent PersistentReferencePath.
+   * @param referenceLeaf Leaf Reference.
+   * @param bloomNodePath Bloom filter of the NodePath's.
+   */
+  private PersistentReferencePath(PersistentReferencePath persistentReferencePathParent, Reference referenceLeaf, long bloomNodePath) {
+    this.persistentReferencePathParent = persistentReferencePathParent;
+    this.referenceLeaf = referenceLeaf;
+    this.size = persistentReferencePathParent.size + 1;
+    this.bloomNodePath = bloomNodePath;
+  }
+
+  /**
+   * Returns the bits corresponding to a {@link NodePath} in the bloom filter.
+   * <p>
+   * Two bits are used, derived from different parts of the hash code of the
+   * NodePath.
+   *
+   * @param nodePath NodePath.
+   * @return Bits.
+   */
+  private static long getBloomBits(NodePath nodePath) {
+    int hashCode;
+
+    hashCode = nodePath.hashCode();
+
+    // Spread the high bits in case the hash code is poorly distributed.
+    hashCode ^= (hashCode >>> 16);
+
+    return (1L << (hashCode & 63)) | (1L << ((hashCode >>> 6) & 63));
+  }
+
+  /**
+   * Returns a new PersistentReferencePath with a {@link Reference} appended at the
+   * end.
+   * <p>
+   * The new Reference must not create a cycle among the {@link Module}'s.
+   *
+   * @param reference Reference.
+   * @return New PersistentReferencePath.
+   */
+  public PersistentReferencePath append(Reference reference) {
+    ModuleVersion moduleVersion;
+    long bloomBits;
+
+    moduleVersion = reference.getModuleVersion();
+
+    if (moduleVersion == null) {
+      return new PersistentReferencePath(this, reference, this.bloomNodePath);
+    }
+
+    bloomBits = PersistentReferencePath.getBloomBits(moduleVersion.getNodePath());
+
+    if (((this.bloomNodePath & bloomBits) == bloomBits) && (this.findNodePath(moduleVersion.getNodePath()) != null)) {
+      throw new RuntimeException("Cycle detected in ReferencePath\n" + this + "\nwhen adding Reference " + reference + '.');
+    }
+
+    return new PersistentReferencePath(this, reference, this.bloomNodePath | bloomBits);
+  }
+
+  /**
+   * Returns a new PersistentReferencePath with the {@link Reference}'s of another
+   * one appended at the end.
+   * <p>
+   * The new Reference's must not create a cycle among the {@link Module}'s.
+   *
+   * @param persistentReferencePath PersistentReferencePath.
+   * @return New PersistentReferencePath.
+   */
+  public PersistentReferencePath append(PersistentReferencePath persistentReferencePath) {
+    PersistentReferencePath persistentReferencePathNew;
+    Reference[] arrayReference;
+
+    persistentReferencePathNew = this;
+    arrayReference = persistentReferencePath.toArrayReference();
+
+    for (int i = 0; i < arrayReference.length; i++) {
+      persistentReferencePathNew = persistentReferencePathNew.append(arrayReference[i]);
+    }
+
+    return persistentReferencePathNew;
+  }
+
+  /**
+   * Returns a PersistentReferencePath containing the {@link Reference}'s of this
+   * PersistentReferencePath, starting at a given index.
+   * <p>
+   * Since Reference's are linked from the leaf to the root, this is O(size).
+   *
+   * @param index Index of the first Reference retained.
+   * @return PersistentReferencePath.
+   */
+  public PersistentReferencePath subPathFrom(int index) {
+    PersistentReferencePath persistentReferencePathNew;
+    Reference[] arrayReference;
+
+    if ((index < 0) || (index > this.size)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+
+    if (index == 0) {
+      return this;
+    }
+
+    persistentReferencePathNew = PersistentReferencePath.EMPTY;
+    arrayReference = this.toArrayReference();
+
+    for (int i = index; i < arrayReference.length; i++) {
+      persistentReferencePathNew = persistentReferencePathNew.append(arrayReference[i]);
+    }
+
+    return persistentReferencePathNew;
+  }
+
+  /**
+   * Returns the ancestor PersistentReferencePath containing a given number of
+   * root {@link Reference}'s.
+   * <p>
+   * This is O(size - newSize) and does not allocate.
+   *
+   * @param newSize Number of Reference's retained.
+   * @return PersistentReferencePath.
+   */
+  public PersistentReferencePath prefix(int newSize) {
+    PersistentReferencePath persistentReferencePath;
+
+    if ((newSize < 0) || (newSize > this.size)) {
+      throw new IndexOutOfBoundsException("Size: " + newSize + ", Current size: " + this.size);
+    }
+
+    persistentReferencePath = this;
+
+    while (persistentReferencePath.size > newSize) {
+      persistentReferencePath = persistentReferencePath.persistentReferencePathParent;
+    }
+
+    return persistentReferencePath;
+  }
+
+  /**
+   * @return Parent PersistentReferencePath, without the leaf {@link Reference}.
+   */
+  public PersistentReferencePath getParent() {
+    if (this.size == 0) {
+      throw new RuntimeException("The empty PersistentReferencePath does not have a parent.");
+    }
+
+    return this.persistentReferencePathParent;
+  }
+
+  /**
+   * @return Number of {@link Reference}'s in the PersistentReferencePath.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return Indicates if the PersistentReferencePath is empty.
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns a {@link Reference} in the PersistentReferencePath given an index.
+   * <p>
+   * This is O(size - index), that is O(depth) in general, and does not allocate.
+   * Iterating over the Reference's by index is therefore quadratic. Use
+   * {@link #forEachReference} to iterate over all the Reference's.
+   *
+   * @param index Index.
+   * @return Reference.
+   */
+  public Reference get(int index) {
+    if ((index < 0) || (index >= this.size)) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+    }
+
+    return this.prefix(index + 1).referenceLeaf;
+  }
+
+  /**
+   * Visits the {@link Reference}'s from the root to the leaf.
+   * <p>
+   * The parent links are followed recursively so that nothing is allocated. The
+   * recursion depth is the size of the PersistentReferencePath.
+   *
+   * @param referenceVisitor ReferenceVisitor.
+   * @return Indicates if all the Reference's were visited, that is, if
+   *   {@link ReferenceVisitor#visitReference} never returned false.
+   */
+  public boolean forEachReference(ReferenceVisitor referenceVisitor) {
+    if (this.size == 0) {
+      return true;
+    }
+
+    if (!this.persistentReferencePathParent.forEachReference(referenceVisitor)) {
+      return false;
+    }
+
+    return referenceVisitor.visitReference(this.size - 1, this.referenceLeaf);
+  }
+
+  /**
+   * @return Leaf {@link Reference}.
+   */
+  public Reference getLeafReference() {
+    if (this.size == 0) {
+      throw new IndexOutOfBoundsException("Index: -1, Size: 0");
+    }
+
+    return this.referenceLeaf;
+  }
+
+  /**
+   * @return Leaf {@link ModuleVersion}.
+   */
+  public ModuleVersion getLeafModuleVersion() {
+    return this.getLeafReference().getModuleVersion();
+  }
+
+  /**
+   * Returns a new array of the {@link Reference}'s from the root to the leaf.
+   * <p>
+   * Only used by methods which allocate proportionally to the size anyway.
+   *
+   * @return Array of Reference's.
+   */
+  private Reference[] toArrayReference() {
+    Reference[] arrayReference;
+    PersistentReferencePath persistentReferencePath;
+
+    arrayReference = new Reference[this.size];
+    persistentReferencePath = this;
+
+    for (int i = this.size - 1; i >= 0; i--) {
+      arrayReference[i] = persistentReferencePath.referenceLeaf;
+      persistentReferencePath = persistentReferencePath.persistentReferencePathParent;
+    }
+
+    return arrayReference;
+  }
+
+  /**
+   * Finds the PersistentReferencePath whose leaf {@link Reference} is for a given
+   * {@link NodePath}, walking from the leaf to the root.
+   * <p>
+   * Since there cannot be cycles among {@link Module}'s, there is at most one such
+   * PersistentReferencePath.
+   *
+   * @param nodePath NodePath.
+   * @return PersistentReferencePath. null if not found.
+   */
+  private PersistentReferencePath findNodePath(NodePath nodePath) {
+    PersistentReferencePath persistentReferencePath;
+
+    persistentReferencePath = this;
+
+    while (persistentReferencePath.size != 0) {
+      ModuleVersion moduleVersion;
+
+      moduleVersion = persistentReferencePath.referenceLeaf.getModuleVersion();
+
+      if ((moduleVersion != null) && moduleVersion.getNodePath().equals(nodePath)) {
+        return persistentReferencePath;
+      }
+
+      persistentReferencePath = persistentReferencePath.persistentReferencePathParent;
+    }
+
+    return null;
+  }
+
+  /**
+   * Finds a {@link ModuleVersion}.
+   * <p>
+   * The bloom filter is consulted first so that in the common case where the
+   * {@link Module} is not in the PersistentReferencePath, the Reference's are not
+   * walked.
+   *
+   * @param moduleVersion ModuleVersion. The {@link Version} can be null in which
+   *   case only the {@link NodePath}'s of the {@link Module}'s are considered.
+   * @return Index of the ModuleVersion if found. -1 if the ModuleVersion is not
+   *   found.
+   */
+  public int findModuleVersion(ModuleVersion moduleVersion) {
+    long bloomBits;
+    PersistentReferencePath persistentReferencePath;
+
+    bloomBits = PersistentReferencePath.getBloomBits(moduleVersion.getNodePath());
+
+    if ((this.bloomNodePath & bloomBits) != bloomBits) {
+      return -1;
+    }
+
+    persistentReferencePath = this.findNodePath(moduleVersion.getNodePath());
+
+    if (persistentReferencePath == null) {
+      return -1;
+    }
+
+    if ((moduleVersion.getVersion() != null) && !persistentReferencePath.referenceLeaf.getModuleVersion().getVersion().equals(moduleVersion.getVersion())) {
+      return -1;
+    }
+
+    return persistentReferencePath.size - 1;
+  }
+
+  /**
+   * See {@link ReferencePath#toString}.
+   */
+  @Override
+  public String toString() {
+    StringBuilder stringBuilder;
+    Reference[] arrayReference;
+    char[] arrayCharIndent;
+
+    stringBuilder = new StringBuilder();
+    arrayReference = this.toArrayReference();
+    arrayCharIndent = new char[arrayReference.length * 2];
+    Arrays.fill(arrayCharIndent, ' ');
+
+    for (int i = 0; i < arrayReference.length; i++) {
+      Reference reference;
+
+      stringBuilder.append(arrayCharIndent, 0, i * 2);
+
+      reference = arrayReference[i];
+
+      if (i != 0) {
+        if (reference.getImplData() == null) {
+          stringBuilder.append("|> ");
+        } else {
+          stringBuilder.append("-> ");
+        }
+
+      }
+
+      stringBuilder.append(reference.toString());
+
+      if (i != (arrayReference.length - 1)) {
+        stringBuilder.append('\n');
+      }
+    }
+
+    return stringBuilder.toString();
+  }
+}
@@ -239,6 +239,25 @@ public final class Reference {
     return true;
   }
 
+  /**
+   * Computes a hash code which is consistent with {@link #equalsNoVersion}, so
+   * that Reference's can be looked up without considering the Version and
+   * ArtifactVersion.
+   *
+   * @return Hash code.
+   */
+  public int hashCodeNoVersion() {
+    final int prime = 31;
+    int result;
+
+    result = 1;
+    result = (prime * result) + ((this.moduleVersion == null) ? 0 : this.moduleVersion.getNodePath().hashCode());
+    result = (prime * result) + ((this.artifactGroupId == null) ? 0 : this.artifactGroupId.hashCode());
+    result = (prime * result) + ((this.implData == null) ? 0 : this.implData.hashCode());
+
+    return result;
+  }
+
   /**
    * Tests equality between two Reference without considering the Version and
    * ArtifactVersion.
@@ -21,6 +21,7 @@ package org.azyva.dragom.reference;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.azyva.dragom.model.Module;
 import org.azyva.dragom.model.ModuleVersion;
@@ -352,6 +353,32 @@ public interface ReferenceGraph {
     VisitControl visit(ReferenceGraph referenceGraph, ReferencePath referencePath, EnumSet<ReferenceGraph.VisitAction> enumSetVisitAction);
   }
 
+  /**
+   * Visitor which can be used with {@link ReferenceGraph#traverseReferenceGraphParallel}.
+   * <p>
+   * This interface does not add any method to {@link Visitor}. It represents the
+   * contract that {@link Visitor#visit} can be called concurrently from multiple
+   * threads for different {@link ReferencePath}'s. The ReferencePath passed to
+   * visit is not shared with other threads and can be kept by the visitor.
+   */
+  public static interface ConcurrentVisitor extends Visitor {
+  }
+
+  /**
+   * Visitor which receives visits in batches. Used with
+   * {@link ReferenceGraph#traverseReferenceGraphBatch}.
+   */
+  public static interface BatchVisitor {
+    /**
+     * Called when a batch of visits is full and at the end of the traversal.
+     *
+     * @param visitBatch VisitBatch. It is reused for subsequent calls and must not
+     *   be kept.
+     * @return {@link VisitControl#CONTINUE} or {@link VisitControl#ABORT}.
+     */
+    VisitControl visitBatch(VisitBatch visitBatch);
+  }
+
   /**
    * Indicates if a {@link ModuleVersion} is part of the ReferenceGraph.
    *
@@ -426,6 +453,92 @@ public interface ReferenceGraph {
    */
   boolean traverseReferenceGraph(ModuleVersion moduleVersion, TraversalOrder traversalOrder, ReentryMode reentryMode, Visitor visitor);
 
+  /**
+   * Traverses the ReferenceGraph in parallel starting at a given
+   * {@link ModuleVersion} or for each root ModuleVersion.
+   * <p>
+   * The subtrees of sibling ModuleVersion's are traversed concurrently on a
+   * ForkJoinPool. For {@link TraversalOrder#PARENT_FIRST} and
+   * {@link TraversalOrder#DEPTH_FIRST}, the order of the visits for a given
+   * {@link ReferencePath} is the same as for {@link #traverseReferenceGraph}. For
+   * {@link TraversalOrder#ALL_PARENTS_FIRST}, each ModuleVersion is visited once,
+   * after all its parents, and {@link VisitAction#STEP_IN} and
+   * {@link VisitAction#STEP_OUT} are not used. {@link VisitControl#ABORT} stops the
+   * traversal on all threads and {@link VisitControl#SKIP_CHILDREN} applies to the
+   * visited ModuleVersion only.
+   * <p>
+   * The default implementation only uses the read methods of this interface, which
+   * must therefore be thread-safe as long as the ReferenceGraph is not modified.
+   *
+   * @param moduleVersion ModuleVersion at which to start the traversal. Can be null
+   *   to indicate to perform the traversal for each root ModuleVersion.
+   * @param traversalOrder TraversalOrder.
+   * @param reentryMode ReentryMode.
+   * @param concurrentVisitor ConcurrentVisitor.
+   * @param forkJoinPool ForkJoinPool on which to run the traversal.
+   * @return Indicates if the traversal has been aborted (if {@link Visitor#visit}
+   *   returned {@link VisitControl#ABORT}).
+   */
+  default boolean traverseReferenceGraphParallel(ModuleVersion moduleVersion, TraversalOrder traversalOrder, ReentryMode reentryMode, ConcurrentVisitor concurrentVisitor, ForkJoinPool forkJoinPool) {
+    return new ParallelReferenceGraphTraverser(this, traversalOrder, reentryMode, concurrentVisitor).traverse(moduleVersion, forkJoinPool);
+  }
+
+  /**
+   * Traverses the ReferenceGraph in parallel using the common ForkJoinPool.
+   * <p>
+   * See {@link #traverseReferenceGraphParallel(ModuleVersion, TraversalOrder, ReentryMode, ConcurrentVisitor, ForkJoinPool)}.
+   *
+   * @param moduleVersion ModuleVersion at which to start the traversal. Can be null
+   *   to indicate to perform the traversal for each root ModuleVersion.
+   * @param traversalOrder TraversalOrder.
+   * @param reentryMode ReentryMode.
+   * @param concurrentVisitor ConcurrentVisitor.
+   * @return Indicates if the traversal has been aborted.
+   */
+  default boolean traverseReferenceGraphParallel(ModuleVersion moduleVersion, TraversalOrder traversalOrder, ReentryMode reentryMode, ConcurrentVisitor concurrentVisitor) {
+    return this.traverseReferenceGraphParallel(moduleVersion, traversalOrder, reentryMode, concurrentVisitor, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Traverses the ReferenceGraph starting at a given {@link ModuleVersion} or for
+   * each root ModuleVersion, passing the visits in batches to a
+   * {@link BatchVisitor}.
+   * <p>
+   * The visits are the same and in the same order as for
+   * {@link #traverseReferenceGraph}, but they are represented as primitive records
+   * in a reused {@link VisitBatch}. This is meant for visitors which only collect
+   * data, for which the cost of a call with an EnumSet and a
+   * {@link ReferencePath} for each visit dominates. As visits are not passed
+   * individually, {@link VisitControl#SKIP_CHILDREN} and
+   * {@link VisitControl#SKIP_CURRENT_ROOT} are not supported.
+   * <p>
+   * The default implementation adapts traverseReferenceGraph and therefore does
+   * not save its cost: the recursive traversal still builds a ReferencePath and an
+   * EnumSet for each visit, and the adapter adds a HashMap lookup per visit to
+   * assign ModuleVersion IDs. Only implementations which override this method,
+   * such as {@link IndexedReferenceGraph}, provide the intended gain.
+   *
+   * @param moduleVersion ModuleVersion at which to start the traversal. Can be null
+   *   to indicate to perform the traversal for each root ModuleVersion.
+   * @param traversalOrder TraversalOrder.
+   * @param reentryMode ReentryMode.
+   * @param batchSize Maximum number of visits in a batch.
+   * @param batchVisitor BatchVisitor.
+   * @return Indicates if the traversal has been aborted (if
+   *   {@link BatchVisitor#visitBatch} returned {@link VisitControl#ABORT}).
+   */
+  default boolean traverseReferenceGraphBatch(ModuleVersion moduleVersion, TraversalOrder traversalOrder, ReentryMode reentryMode, int batchSize, BatchVisitor batchVisitor) {
+    BatchVisitorAdapter batchVisitorAdapter;
+
+    batchVisitorAdapter = new BatchVisitorAdapter(batchSize, batchVisitor);
+
+    if (this.traverseReferenceGraph(moduleVersion, traversalOrder, reentryMode, batchVisitorAdapter)) {
+      return true;
+    }
+
+    return batchVisitorAdapter.flush();
+  }
+
   /**
    * Visits all {@link ReferencePath}'s ending with a leaf ModuleVersion.
    *
@@ -436,6 +549,24 @@ public interface ReferenceGraph {
    */
   boolean visitLeafModuleVersionReferencePaths(ModuleVersion moduleVersion, Visitor visitor);
 
+  /**
+   * Returns a {@link ReferencePathDag} representing all {@link ReferencePath}'s
+   * ending with a leaf ModuleVersion.
+   * <p>
+   * Contrary to {@link #visitLeafModuleVersionReferencePaths}, this is linear in
+   * the number of ModuleVersion's and {@link Reference}'s which lead to the leaf
+   * ModuleVersion. The number of ReferencePath's is known without enumerating them,
+   * and they can be obtained lazily.
+   * <p>
+   * The default implementation only uses the read methods of this interface.
+   *
+   * @param moduleVersion Leaf ModuleVersion.
+   * @return ReferencePathDag.
+   */
+  default ReferencePathDag getReferencePathDag(ModuleVersion moduleVersion) {
+    return new ReferencePathDag(this, moduleVersion);
+  }
+
   /**
    * Adds a root {@link ModuleVersion}.
    * <p>
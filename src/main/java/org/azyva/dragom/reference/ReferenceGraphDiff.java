@@ -0,0 +1,484 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.azyva.dragom.model.Module;
+import org.azyva.dragom.model.ModuleVersion;
+
+/**
+ * Computes the structural differences between two {@link ReferenceGraph}'s, such
+ * as the ReferenceGraph of a release and that of the current dynamic Version's.
+ * <p>
+ * The differences are streamed to a {@link ChangeVisitor} as {@link Change}'s:
+ * <ul>
+ * <li>{@link ModuleVersion}'s added or removed. When a {@link Module} has a
+ *     single ModuleVersion in each ReferenceGraph and they differ, a
+ *     {@link ChangeType#MODULE_VERSION_CHANGED} is reported instead;
+ * <li>Root ModuleVersion's added or removed;
+ * <li>{@link Reference}'s added, removed or whose version changed. Reference's are
+ *     compared for ModuleVersion's present in both ReferenceGraph's or whose
+ *     Version changed as described above. Reference's are paired using
+ *     {@link Reference#equalsNoVersion}, so that a Reference to another Version of
+ *     the same Module is reported as {@link ChangeType#REFERENCE_VERSION_CHANGED}.
+ *     The Reference's of added and removed ModuleVersion's are not reported.
+ * </ul>
+ * The comparison uses hash lookups only and runs in time linear in the number of
+ * ModuleVersion's and Reference's of both ReferenceGraph's.
+ *
+ * @author David Raymond
+ */
+public final class ReferenceGraphDiff {
+  /**
+   * Types of {@link Change}'s.
+   */
+  public static enum ChangeType {
+    /**
+     * {@link ModuleVersion} is present in the new {@link ReferenceGraph} only.
+     * {@link Change#getModuleVersionNew} is set.
+     */
+    MODULE_VERSION_ADDED,
+
+    /**
+     * {@link ModuleVersion} is present in the old {@link ReferenceGraph} only.
+     * {@link Change#getModuleVersionOld} is set.
+     */
+    MODULE_VERSION_REMOVED,
+
+    /**
+     * The single {@link ModuleVersion} of a {@link Module} in the old
+     * {@link ReferenceGraph} is replaced by another Version in the new one.
+     * {@link Change#getModuleVersionOld} and {@link Change#getModuleVersionNew} are
+     * set.
+     */
+    MODULE_VERSION_CHANGED,
+
+    /**
+     * {@link ModuleVersion} is a root in the new {@link ReferenceGraph} only.
+     * {@link Change#getModuleVersionNew} is set.
+     */
+    ROOT_ADDED,
+
+    /**
+     * {@link ModuleVersion} is a root in the old {@link ReferenceGraph} only.
+     * {@link Change#getModuleVersionOld} is set.
+     */
+    ROOT_REMOVED,
+
+    /**
+     * {@link Reference} is present in the new {@link ReferenceGraph} only.
+     * {@link Change#getModuleVersionOld} (if the referrer ModuleVersion is in the
+     * old ReferenceGraph), {@link Change#getModuleVersionNew} and
+     * {@link Change#getReferenceNew} are set.
+     */
+    REFERENCE_ADDED,
+
+    /**
+     * {@link Reference} is present in the old {@link ReferenceGraph} only.
+     * {@link Change#getModuleVersionOld}, {@link Change#getModuleVersionNew} (if
+     * the referrer ModuleVersion is in the new ReferenceGraph) and
+     * {@link Change#getReferenceOld} are set.
+     */
+    REFERENCE_REMOVED,
+
+    /**
+     * {@link Reference} is present in both {@link ReferenceGraph}'s with different
+     * versions. All the properties of {@link Change} are set.
+     */
+    REFERENCE_VERSION_CHANGED
+  }
+
+  /**
+   * Change between two {@link ReferenceGraph}'s.
+   * <p>
+   * For changes to {@link Reference}'s, the ModuleVersion's are those of the
+   * referrer.
+   */
+  public static final class Change {
+    /**
+     * ChangeType.
+     */
+    private ChangeType changeType;
+
+    /**
+     * {@link ModuleVersion} in the old {@link ReferenceGraph}.
+     */
+    private ModuleVersion moduleVersionOld;
+
+    /**
+     * {@link ModuleVersion} in the new {@link ReferenceGraph}.
+     */
+    private ModuleVersion moduleVersionNew;
+
+    /**
+     * {@link Reference} in the old {@link ReferenceGraph}.
+     */
+    private Reference referenceOld;
+
+    /**
+     * {@link Reference} in the new {@link ReferenceGraph}.
+     */
+    private Reference referenceNew;
+
+    /**
+     * Constructor.
+     *
+     * @param changeType ChangeType.
+     * @param moduleVersionOld ModuleVersion in the old ReferenceGraph.
+     * @param moduleVersionNew ModuleVersion in the new ReferenceGraph.
+     * @param referenceOld Reference in the old ReferenceGraph.
+     * @param referenceNew Reference in the new ReferenceGraph.
+     */
+    Change(ChangeType changeType, ModuleVersion moduleVersionOld, ModuleVersion moduleVersionNew, Reference referenceOld, Reference referenceNew) {
+      this.changeType = changeType;
+      this.moduleVersionOld = moduleVersionOld;
+      this.moduleVersionNew = moduleVersionNew;
+      this.referenceOld = referenceOld;
+      this.referenceNew = referenceNew;
+    }
+
+    /**
+     * @return ChangeType.
+     */
+    public ChangeType getChangeType() {
+      return this.changeType;
+    }
+
+    /**
+     * @return {@link ModuleVersion} in the old {@link ReferenceGraph}. null if not
+     *   applicable.
+     */
+    public ModuleVersion getModuleVersionOld() {
+      return this.moduleVersionOld;
+    }
+
+    /**
+     * @return {@link ModuleVersion} in the new {@link ReferenceGraph}. null if not
+     *   applicable.
+     */
+    public ModuleVersion getModuleVersionNew() {
+      return this.moduleVersionNew;
+    }
+
+    /**
+     * @return {@link Reference} in the old {@link ReferenceGraph}. null if not
+     *   applicable.
+     */
+    public Reference getReferenceOld() {
+      return this.referenceOld;
+    }
+
+    /**
+     * @return {@link Reference} in the new {@link ReferenceGraph}. null if not
+     *   applicable.
+     */
+    public Reference getReferenceNew() {
+      return this.referenceNew;
+    }
+
+    @Override
+    public String toString() {
+      switch (this.changeType) {
+      case MODULE_VERSION_ADDED:
+      case ROOT_ADDED:
+        return this.changeType + " " + this.moduleVersionNew;
+      case MODULE_VERSION_REMOVED:
+      case ROOT_REMOVED:
+        return this.changeType + " " + this.moduleVersionOld;
+      case MODULE_VERSION_CHANGED:
+        return this.changeType + " " + this.moduleVersionOld + " -> " + this.moduleVersionNew;
+      case REFERENCE_ADDED:
+        return this.changeType + " " + this.moduleVersionNew + ": " + this.referenceNew;
+      case REFERENCE_REMOVED:
+        return this.changeType + " " + this.moduleVersionOld + ": " + this.referenceOld;
+      case REFERENCE_VERSION_CHANGED:
+        return this.changeType + " " + this.moduleVersionNew + ": " + this.referenceOld + " -> " + this.referenceNew;
+      default:
+        throw new RuntimeException("Must not get here.");
+      }
+    }
+  }
+
+  /**
+   * Receives the {@link Change}'s as they are found.
+   */
+  public static interface ChangeVisitor {
+    /**
+     * Called for each {@link Change}.
+     *
+     * @param change Change.
+     */
+    void visit(Change change);
+  }
+
+  /**
+   * Key for looking up a {@link Reference} using {@link Reference#equalsNoVersion}.
+   */
+  private static final class ReferenceNoVersionKey {
+    /**
+     * Reference.
+     */
+    private final Reference reference;
+
+    /**
+     * Constructor.
+     *
+     * @param reference Reference.
+     */
+    ReferenceNoVersionKey(Reference reference) {
+      this.reference = reference;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.reference.hashCodeNoVersion();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return (other instanceof ReferenceNoVersionKey) && this.reference.equalsNoVersion(((ReferenceNoVersionKey)other).reference);
+    }
+  }
+
+  /**
+   * Old {@link ReferenceGraph}.
+   */
+  private ReferenceGraph referenceGraphOld;
+
+  /**
+   * New {@link ReferenceGraph}.
+   */
+  private ReferenceGraph referenceGraphNew;
+
+  /**
+   * Constructor.
+   *
+   * @param referenceGraphOld Old {@link ReferenceGraph}.
+   * @param referenceGraphNew New ReferenceGraph.
+   */
+  public ReferenceGraphDiff(ReferenceGraph referenceGraphOld, ReferenceGraph referenceGraphNew) {
+    this.referenceGraphOld = referenceGraphOld;
+    this.referenceGraphNew = referenceGraphNew;
+  }
+
+  /**
+   * Computes the differences and returns them.
+   *
+   * @return List of {@link Change}'s.
+   */
+  public List<Change> getListChange() {
+    final List<Change> listChange;
+
+    listChange = new ArrayList<Change>();
+
+    this.visitChanges(new ChangeVisitor() {
+      @Override
+      public void visit(Change change) {
+        listChange.add(change);
+      }
+    });
+
+    return listChange;
+  }
+
+  /**
+   * Computes the differences and streams them to a {@link ChangeVisitor}.
+   * <p>
+   * {@link Change}'s are reported in this order: ModuleVersion's removed, changed
+   * and added, roots removed and added, and then the changes to {@link Reference}'s
+   * grouped by referrer ModuleVersion.
+   *
+   * @param changeVisitor ChangeVisitor.
+   */
+  public void visitChanges(ChangeVisitor changeVisitor) {
+    List<ModuleVersion> listModuleVersionOld;
+    List<ModuleVersion> listModuleVersionNew;
+    Map<ModuleVersion, ModuleVersion> mapModuleVersionChanged;
+
+    listModuleVersionOld = this.referenceGraphOld.getListModuleVersion(null);
+    listModuleVersionNew = this.referenceGraphNew.getListModuleVersion(null);
+
+    // Maps old ModuleVersion's to new ones for the Module's having a single Version in
+    // each ReferenceGraph.
+    mapModuleVersionChanged = new LinkedHashMap<ModuleVersion, ModuleVersion>();
+
+    for (ModuleVersion moduleVersionOld: listModuleVersionOld) {
+      if (!this.referenceGraphNew.moduleVersionExists(moduleVersionOld)) {
+        ModuleVersion moduleVersionNew;
+
+        moduleVersionNew = this.getModuleVersionChanged(moduleVersionOld);
+
+        if (moduleVersionNew == null) {
+          changeVisitor.visit(new Change(ChangeType.MODULE_VERSION_REMOVED, moduleVersionOld, null, null, null));
+        } else {
+          mapModuleVersionChanged.put(moduleVersionOld, moduleVersionNew);
+        }
+      }
+    }
+
+    for (Map.Entry<ModuleVersion, ModuleVersion> mapEntry: mapModuleVersionChanged.entrySet()) {
+      changeVisitor.visit(new Change(ChangeType.MODULE_VERSION_CHANGED, mapEntry.getKey(), mapEntry.getValue(), null, null));
+    }
+
+    for (ModuleVersion moduleVersionNew: listModuleVersionNew) {
+      if (!this.referenceGraphOld.moduleVersionExists(moduleVersionNew) && (this.getModuleVersionChanged(moduleVersionNew, this.referenceGraphNew, this.referenceGraphOld) == null)) {
+        changeVisitor.visit(new Change(ChangeType.MODULE_VERSION_ADDED, null, moduleVersionNew, null, null));
+      }
+    }
+
+    for (ModuleVersion moduleVersionRoot: this.referenceGraphOld.getListModuleVersionRoot()) {
+      if (!this.referenceGraphNew.isRootModuleVersion(moduleVersionRoot)) {
+        changeVisitor.visit(new Change(ChangeType.ROOT_REMOVED, moduleVersionRoot, null, null, null));
+      }
+    }
+
+    for (ModuleVersion moduleVersionRoot: this.referenceGraphNew.getListModuleVersionRoot()) {
+      if (!this.referenceGraphOld.isRootModuleVersion(moduleVersionRoot)) {
+        changeVisitor.visit(new Change(ChangeType.ROOT_ADDED, null, moduleVersionRoot, null, null));
+      }
+    }
+
+    for (ModuleVersion moduleVersionOld: listModuleVersionOld) {
+      ModuleVersion moduleVersionNew;
+
+      if (this.referenceGraphNew.moduleVersionExists(moduleVersionOld)) {
+        moduleVersionNew = moduleVersionOld;
+      } else {
+        moduleVersionNew = mapModuleVersionChanged.get(moduleVersionOld);
+
+        if (moduleVersionNew == null) {
+          continue;
+        }
+      }
+
+      this.visitReferenceChanges(moduleVersionOld, moduleVersionNew, changeVisitor);
+    }
+  }
+
+  /**
+   * Returns the new {@link ModuleVersion} corresponding to an old one when its
+   * {@link Module} has a single Version in each {@link ReferenceGraph}.
+   *
+   * @param moduleVersionOld Old ModuleVersion, which does not exist in the new
+   *   ReferenceGraph.
+   * @return New ModuleVersion. null if none.
+   */
+  private ModuleVersion getModuleVersionChanged(ModuleVersion moduleVersionOld) {
+    return this.getModuleVersionChanged(moduleVersionOld, this.referenceGraphOld, this.referenceGraphNew);
+  }
+
+  /**
+   * Returns the {@link ModuleVersion} in a {@link ReferenceGraph} corresponding to
+   * a ModuleVersion in another one when its {@link Module} has a single Version in
+   * each.
+   *
+   * @param moduleVersion ModuleVersion, which does not exist in
+   *   referenceGraphOther.
+   * @param referenceGraph ReferenceGraph containing moduleVersion.
+   * @param referenceGraphOther Other ReferenceGraph.
+   * @return ModuleVersion in referenceGraphOther. null if none.
+   */
+  private ModuleVersion getModuleVersionChanged(ModuleVersion moduleVersion, ReferenceGraph referenceGraph, ReferenceGraph referenceGraphOther) {
+    List<ModuleVersion> listModuleVersionOther;
+
+    if (referenceGraph.getListModuleVersion(moduleVersion.getNodePath()).size() != 1) {
+      return null;
+    }
+
+    listModuleVersionOther = referenceGraphOther.getListModuleVersion(moduleVersion.getNodePath());
+
+    if (listModuleVersionOther.size() != 1) {
+      return null;
+    }
+
+    return listModuleVersionOther.get(0);
+  }
+
+  /**
+   * Streams the changes to the {@link Reference}'s of a referrer
+   * {@link ModuleVersion}.
+   *
+   * @param moduleVersionOld Referrer ModuleVersion in the old ReferenceGraph.
+   * @param moduleVersionNew Referrer ModuleVersion in the new ReferenceGraph.
+   * @param changeVisitor ChangeVisitor.
+   */
+  private void visitReferenceChanges(ModuleVersion moduleVersionOld, ModuleVersion moduleVersionNew, ChangeVisitor changeVisitor) {
+    Map<ReferenceNoVersionKey, List<Reference>> mapListReferenceOld;
+    List<Reference> listReferenceNewUnmatched;
+
+    // Old Reference's by key. Multiple Reference's can have the same key, such as
+    // References to different Version's of the same Module.
+    mapListReferenceOld = new HashMap<ReferenceNoVersionKey, List<Reference>>();
+
+    for (Reference referenceOld: this.referenceGraphOld.getListReference(moduleVersionOld)) {
+      ReferenceNoVersionKey referenceNoVersionKey;
+      List<Reference> listReferenceOld;
+
+      referenceNoVersionKey = new ReferenceNoVersionKey(referenceOld);
+      listReferenceOld = mapListReferenceOld.get(referenceNoVersionKey);
+
+      if (listReferenceOld == null) {
+        listReferenceOld = new ArrayList<Reference>(1);
+        mapListReferenceOld.put(referenceNoVersionKey, listReferenceOld);
+      }
+
+      listReferenceOld.add(referenceOld);
+    }
+
+    // First pass removes the unchanged Reference's so that the second pass pairs the
+    // remaining ones as version changes.
+
+    listReferenceNewUnmatched = new ArrayList<Reference>();
+
+    for (Reference referenceNew: this.referenceGraphNew.getListReference(moduleVersionNew)) {
+      List<Reference> listReferenceOld;
+
+      listReferenceOld = mapListReferenceOld.get(new ReferenceNoVersionKey(referenceNew));
+
+      if ((listReferenceOld == null) || !listReferenceOld.remove(referenceNew)) {
+        listReferenceNewUnmatched.add(referenceNew);
+      }
+    }
+
+    for (Reference referenceNew: listReferenceNewUnmatched) {
+      List<Reference> listReferenceOld;
+
+      listReferenceOld = mapListReferenceOld.get(new ReferenceNoVersionKey(referenceNew));
+
+      if ((listReferenceOld == null) || listReferenceOld.isEmpty()) {
+        changeVisitor.visit(new Change(ChangeType.REFERENCE_ADDED, moduleVersionOld, moduleVersionNew, null, referenceNew));
+      } else {
+        changeVisitor.visit(new Change(ChangeType.REFERENCE_VERSION_CHANGED, moduleVersionOld, moduleVersionNew, listReferenceOld.remove(0), referenceNew));
+      }
+    }
+
+    // The remaining old Reference's are reported in their original order.
+    for (Reference referenceOld: this.referenceGraphOld.getListReference(moduleVersionOld)) {
+      if (mapListReferenceOld.get(new ReferenceNoVersionKey(referenceOld)).remove(referenceOld)) {
+        changeVisitor.visit(new Change(ChangeType.REFERENCE_REMOVED, moduleVersionOld, moduleVersionNew, referenceOld, null));
+      }
+    }
+  }
+}
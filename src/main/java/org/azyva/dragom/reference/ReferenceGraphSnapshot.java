@@ -0,0 +1,826 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.azyva.dragom.execcontext.WorkspaceExecContext;
+import org.azyva.dragom.model.ArtifactGroupId;
+import org.azyva.dragom.model.ArtifactVersion;
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.model.NodePath;
+import org.azyva.dragom.model.Version;
+import org.azyva.dragom.model.plugin.ReferenceManagerPlugin;
+
+/**
+ * Compact binary snapshot of a {@link ReferenceGraph}.
+ * <p>
+ * Building a ReferenceGraph requires obtaining the {@link Reference}'s of each
+ * {@link ModuleVersion} using {@link ReferenceManagerPlugin}, which generally
+ * implies checking out and parsing build scripts. A snapshot allows a subsequent
+ * run to start from the ReferenceGraph as it was built, together with an optional
+ * SCM revision for each ModuleVersion so that only the ModuleVersion's whose
+ * revision changed need to be revalidated.
+ * <p>
+ * The snapshot contains the ModuleVersion's (with SCM revision), the root and
+ * matched ModuleVersion's in order, the Reference's with their artifact
+ * coordinates, the matched ReferencePath's and a string table in which all
+ * strings are stored once. The format is versioned with {@link #FORMAT_VERSION}
+ * and is big-endian:
+ * <pre>
+ * int magic, int formatVersion
+ * int nbStrings, int[nbStrings + 1] offsets, byte[] UTF-8 string data
+ * int nbModuleVersions, nbModuleVersions * {int nodePath, int version, int revision}
+ * int nbRoots, int[nbRoots] ids
+ * int nbMatched, int[nbMatched] ids
+ * int nbReferences, nbReferences * {int idReferrer, int idReferred, int artifactGroupId, int artifactVersion, int implData}
+ * int nbMatchedReferencePaths, int[nbMatchedReferencePaths + 1] offsets, int[] matched ReferencePath data
+ * </pre>
+ * Strings are represented by their index in the string table, or -1 for null.
+ * <p>
+ * A matched ReferencePath is represented by the ID of its root ModuleVersion
+ * followed by the indexes of the Reference records of its other elements. Its
+ * first Reference is restored as a Reference to the root ModuleVersion without
+ * artifact coordinates, as built by the traversals of the ReferenceGraph.
+ * <p>
+ * A snapshot is loaded through a MappedByteBuffer, without reading the file into
+ * the heap. Strings are decoded from the buffer on first use only, and each
+ * record can be accessed directly since records have a fixed size.
+ * <p>
+ * The matched ReferencePath's are persisted only for an
+ * {@link IndexedReferenceGraph}, since other ReferenceGraph's only keep track of
+ * matched ModuleVersion's.
+ * <p>
+ * The implData of Reference's is persisted using an {@link ImplDataCodec}. The
+ * default one supports null and String implData only.
+ *
+ * @author David Raymond
+ */
+public final class ReferenceGraphSnapshot {
+  /**
+   * Magic number at the start of a snapshot ("DRGS").
+   */
+  private static final int MAGIC = 0x44524753;
+
+  /**
+   * Version of the snapshot format.
+   */
+  public static final int FORMAT_VERSION = 2;
+
+  /**
+   * Name of the snapshot file within the workspace metadata directory. See
+   * {@link #getPathSnapshot}.
+   */
+  public static final String SNAPSHOT_FILE_NAME = "reference-graph.snapshot";
+
+  /**
+   * Size of a ModuleVersion record.
+   */
+  private static final int MODULE_VERSION_RECORD_SIZE = 12;
+
+  /**
+   * Size of a Reference record.
+   */
+  private static final int REFERENCE_RECORD_SIZE = 20;
+
+  /**
+   * Encodes and decodes the implData of {@link Reference}'s to and from strings.
+   */
+  public static interface ImplDataCodec {
+    /**
+     * @param implData implData. Not null.
+     * @return Encoded implData.
+     */
+    String encode(Object implData);
+
+    /**
+     * @param stringImplData Encoded implData.
+     * @return implData.
+     */
+    Object decode(String stringImplData);
+  }
+
+  /**
+   * Default {@link ImplDataCodec} which supports String implData only.
+   */
+  public static final ImplDataCodec IMPL_DATA_CODEC_STRING = new ImplDataCodec() {
+    @Override
+    public String encode(Object implData) {
+      if (!(implData instanceof String)) {
+        throw new RuntimeException("implData of class " + implData.getClass().getName() + " cannot be persisted by the default ImplDataCodec.");
+      }
+
+      return (String)implData;
+    }
+
+    @Override
+    public Object decode(String stringImplData) {
+      return stringImplData;
+    }
+  };
+
+  /**
+   * Buffer containing the snapshot.
+   */
+  private ByteBuffer byteBuffer;
+
+  /**
+   * Number of strings.
+   */
+  private int nbStrings;
+
+  /**
+   * Position of the string offsets.
+   */
+  private int positionStringOffsets;
+
+  /**
+   * Position of the string data.
+   */
+  private int positionStringData;
+
+  /**
+   * Decoded strings, indexed by string index.
+   */
+  private String[] arrayString;
+
+  /**
+   * Number of ModuleVersion's.
+   */
+  private int nbModuleVersions;
+
+  /**
+   * Position of the ModuleVersion records.
+   */
+  private int positionModuleVersions;
+
+  /**
+   * Decoded ModuleVersion's, indexed by ID.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * Map of ModuleVersion's to their IDs. Built on first use.
+   */
+  private Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+  /**
+   * Number of root ModuleVersion's.
+   */
+  private int nbRoots;
+
+  /**
+   * Position of the root ModuleVersion IDs.
+   */
+  private int positionRoots;
+
+  /**
+   * Number of matched ModuleVersion's.
+   */
+  private int nbMatched;
+
+  /**
+   * Position of the matched ModuleVersion IDs.
+   */
+  private int positionMatched;
+
+  /**
+   * Number of Reference's.
+   */
+  private int nbReferences;
+
+  /**
+   * Position of the Reference records.
+   */
+  private int positionReferences;
+
+  /**
+   * Number of matched ReferencePath's.
+   */
+  private int nbMatchedReferencePaths;
+
+  /**
+   * Position of the matched ReferencePath offsets.
+   */
+  private int positionMatchedReferencePathOffsets;
+
+  /**
+   * Position of the matched ReferencePath data.
+   */
+  private int positionMatchedReferencePathData;
+
+  /**
+   * Encodes a matched {@link ReferencePath} as the ID of its root
+   * {@link ModuleVersion} followed by the indexes of the Reference records of its
+   * other elements, for {@link ReferenceGraphSnapshot#write}.
+   */
+  private static final class MatchedReferencePathEncoder implements PersistentReferencePath.ReferenceVisitor {
+    /**
+     * Map of ModuleVersion's to their IDs.
+     */
+    private Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+    /**
+     * Maps of Reference's to the index of their record, indexed by the ID of the
+     * referrer ModuleVersion.
+     */
+    private List<Map<Reference, Integer>> listMapIndexReference;
+
+    /**
+     * Encoded ReferencePath.
+     */
+    private int[] arrayEncoded;
+
+    /**
+     * ID of the ModuleVersion of the previous Reference.
+     */
+    private int idReferrer;
+
+    /**
+     * Constructor.
+     *
+     * @param mapIdModuleVersion Map of ModuleVersion's to their IDs.
+     * @param listMapIndexReference Maps of Reference's to the index of their
+     *   record, indexed by the ID of the referrer ModuleVersion.
+     * @param size Size of the ReferencePath.
+     */
+    private MatchedReferencePathEncoder(Map<ModuleVersion, Integer> mapIdModuleVersion, List<Map<Reference, Integer>> listMapIndexReference, int size) {
+      this.mapIdModuleVersion = mapIdModuleVersion;
+      this.listMapIndexReference = listMapIndexReference;
+      this.arrayEncoded = new int[size];
+    }
+
+    @Override
+    public boolean visitReference(int index, Reference reference) {
+      Integer id;
+
+      id = this.mapIdModuleVersion.get(reference.getModuleVersion());
+
+      if (id == null) {
+        throw new RuntimeException("ModuleVersion " + reference.getModuleVersion() + " of a matched ReferencePath is not part of the ReferenceGraph.");
+      }
+
+      if (index == 0) {
+        this.arrayEncoded[0] = id;
+      } else {
+        Integer indexReference;
+
+        indexReference = this.listMapIndexReference.get(this.idReferrer).get(reference);
+
+        if (indexReference == null) {
+          throw new RuntimeException("Reference " + reference + " of a matched ReferencePath is not part of the ReferenceGraph.");
+        }
+
+        this.arrayEncoded[index] = indexReference;
+      }
+
+      this.idReferrer = id;
+
+      return true;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param byteBuffer Buffer containing the snapshot.
+   */
+  private ReferenceGraphSnapshot(ByteBuffer byteBuffer) {
+    int position;
+
+    this.byteBuffer = byteBuffer;
+
+    if ((byteBuffer.limit() < 8) || (byteBuffer.getInt(0) != ReferenceGraphSnapshot.MAGIC)) {
+      throw new RuntimeException("Not a ReferenceGraph snapshot.");
+    }
+
+    if (byteBuffer.getInt(4) != ReferenceGraphSnapshot.FORMAT_VERSION) {
+      throw new RuntimeException("ReferenceGraph snapshot format version " + byteBuffer.getInt(4) + " is not supported. Expected version is " + ReferenceGraphSnapshot.FORMAT_VERSION + '.');
+    }
+
+    position = 8;
+
+    this.nbStrings = byteBuffer.getInt(position);
+    this.positionStringOffsets = position + 4;
+    this.positionStringData = this.positionStringOffsets + ((this.nbStrings + 1) * 4);
+    this.arrayString = new String[this.nbStrings];
+    position = this.positionStringData + byteBuffer.getInt(this.positionStringOffsets + (this.nbStrings * 4));
+
+    this.nbModuleVersions = byteBuffer.getInt(position);
+    this.positionModuleVersions = position + 4;
+    this.arrayModuleVersion = new ModuleVersion[this.nbModuleVersions];
+    position = this.positionModuleVersions + (this.nbModuleVersions * ReferenceGraphSnapshot.MODULE_VERSION_RECORD_SIZE);
+
+    this.nbRoots = byteBuffer.getInt(position);
+    this.positionRoots = position + 4;
+    position = this.positionRoots + (this.nbRoots * 4);
+
+    this.nbMatched = byteBuffer.getInt(position);
+    this.positionMatched = position + 4;
+    position = this.positionMatched + (this.nbMatched * 4);
+
+    this.nbReferences = byteBuffer.getInt(position);
+    this.positionReferences = position + 4;
+    position = this.positionReferences + (this.nbReferences * ReferenceGraphSnapshot.REFERENCE_RECORD_SIZE);
+
+    this.nbMatchedReferencePaths = byteBuffer.getInt(position);
+    this.positionMatchedReferencePathOffsets = position + 4;
+    this.positionMatchedReferencePathData = this.positionMatchedReferencePathOffsets + ((this.nbMatchedReferencePaths + 1) * 4);
+    position = this.positionMatchedReferencePathData + (byteBuffer.getInt(this.positionMatchedReferencePathOffsets + (this.nbMatchedReferencePaths * 4)) * 4);
+
+    if (position != byteBuffer.limit()) {
+      throw new RuntimeException("ReferenceGraph snapshot is corrupted. Expected size is " + position + " but actual size is " + byteBuffer.limit() + '.');
+    }
+  }
+
+  /**
+   * Returns the Path of the snapshot within the workspace metadata directory.
+   *
+   * @param workspaceExecContext WorkspaceExecContext.
+   * @return Path.
+   */
+  public static Path getPathSnapshot(WorkspaceExecContext workspaceExecContext) {
+    return workspaceExecContext.getPathMetadataDir().resolve(ReferenceGraphSnapshot.SNAPSHOT_FILE_NAME);
+  }
+
+  /**
+   * Writes a snapshot of a {@link ReferenceGraph} in the workspace metadata
+   * directory.
+   * <p>
+   * See {@link #write(ReferenceGraph, Map, ImplDataCodec, Path)}.
+   *
+   * @param referenceGraph ReferenceGraph.
+   * @param mapScmRevision Map of ModuleVersion's to their SCM revision. Can be
+   *   null.
+   * @param workspaceExecContext WorkspaceExecContext.
+   */
+  public static void write(ReferenceGraph referenceGraph, Map<ModuleVersion, String> mapScmRevision, WorkspaceExecContext workspaceExecContext) {
+    ReferenceGraphSnapshot.write(referenceGraph, mapScmRevision, ReferenceGraphSnapshot.IMPL_DATA_CODEC_STRING, ReferenceGraphSnapshot.getPathSnapshot(workspaceExecContext));
+  }
+
+  /**
+   * Writes a snapshot of a {@link ReferenceGraph}.
+   * <p>
+   * The snapshot is first written to a temporary file which then replaces the
+   * snapshot file atomically, so that a concurrent or interrupted run never sees a
+   * partial snapshot.
+   *
+   * @param referenceGraph ReferenceGraph.
+   * @param mapScmRevision Map of ModuleVersion's to their SCM revision. Can be
+   *   null.
+   * @param implDataCodec ImplDataCodec.
+   * @param pathSnapshot Path of the snapshot.
+   */
+  public static void write(ReferenceGraph referenceGraph, Map<ModuleVersion, String> mapScmRevision, ImplDataCodec implDataCodec, Path pathSnapshot) {
+    List<ModuleVersion> listModuleVersion;
+    Map<ModuleVersion, Integer> mapIdModuleVersion;
+    Map<String, Integer> mapIndexString;
+    List<byte[]> listStringBytes;
+    int[] arrayModuleVersionRecord;
+    List<int[]> listReferenceRecord;
+    List<Map<Reference, Integer>> listMapIndexReference;
+    List<int[]> listMatchedReferencePathEncoded;
+    Path pathTemp;
+
+    listModuleVersion = referenceGraph.getListModuleVersion(null);
+    mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+
+    for (int id = 0; id < listModuleVersion.size(); id++) {
+      mapIdModuleVersion.put(listModuleVersion.get(id), id);
+    }
+
+    mapIndexString = new HashMap<String, Integer>();
+    listStringBytes = new ArrayList<byte[]>();
+    arrayModuleVersionRecord = new int[listModuleVersion.size() * 3];
+    listReferenceRecord = new ArrayList<int[]>();
+    listMapIndexReference = new ArrayList<Map<Reference, Integer>>(listModuleVersion.size());
+
+    for (int id = 0; id < listModuleVersion.size(); id++) {
+      ModuleVersion moduleVersion;
+      Map<Reference, Integer> mapIndexReference;
+
+      moduleVersion = listModuleVersion.get(id);
+      arrayModuleVersionRecord[id * 3] = ReferenceGraphSnapshot.internString(mapIndexString, listStringBytes, moduleVersion.getNodePath().toString());
+      arrayModuleVersionRecord[(id * 3) + 1] = ReferenceGraphSnapshot.internString(mapIndexString, listStringBytes, (moduleVersion.getVersion() == null) ? null : moduleVersion.getVersion().toString());
+      arrayModuleVersionRecord[(id * 3) + 2] = ReferenceGraphSnapshot.internString(mapIndexString, listStringBytes, (mapScmRevision == null) ? null : mapScmRevision.get(moduleVersion));
+      mapIndexReference = new HashMap<Reference, Integer>();
+      listMapIndexReference.add(mapIndexReference);
+
+      for (Reference reference: referenceGraph.getListReference(moduleVersion)) {
+        mapIndexReference.put(reference, listReferenceRecord.size());
+
+        listReferenceRecord.add(new int[] {
+            id,
+            mapIdModuleVersion.get(reference.getModuleVersion()),
+            ReferenceGraphSnapshot.internString(mapIndexString, listStringBytes, (reference.getArtifactGroupId() == null) ? null : reference.getArtifactGroupId().toString()),
+            ReferenceGraphSnapshot.internString(mapIndexString, listStringBytes, (reference.getArtifactVersion() == null) ? null : reference.getArtifactVersion().toString()),
+            ReferenceGraphSnapshot.internString(mapIndexString, listStringBytes, (reference.getImplData() == null) ? null : implDataCodec.encode(reference.getImplData()))});
+      }
+    }
+
+    listMatchedReferencePathEncoded = new ArrayList<int[]>();
+
+    if (referenceGraph instanceof IndexedReferenceGraph) {
+      for (ReferencePath referencePath: ((IndexedReferenceGraph)referenceGraph).getListReferencePathMatched()) {
+        MatchedReferencePathEncoder matchedReferencePathEncoder;
+
+        matchedReferencePathEncoder = new MatchedReferencePathEncoder(mapIdModuleVersion, listMapIndexReference, referencePath.size());
+        referencePath.forEachReference(matchedReferencePathEncoder);
+        listMatchedReferencePathEncoded.add(matchedReferencePathEncoder.arrayEncoded);
+      }
+    }
+
+    try {
+      Files.createDirectories(pathSnapshot.toAbsolutePath().getParent());
+
+      // A unique temporary file so that concurrent writers do not write to the same
+      // one.
+      pathTemp = Files.createTempFile(pathSnapshot.toAbsolutePath().getParent(), pathSnapshot.getFileName().toString(), ".tmp");
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+
+    try {
+      try (OutputStream outputStream = Files.newOutputStream(pathTemp)) {
+        DataOutputStream dataOutputStream;
+        int offset;
+        List<ModuleVersion> listModuleVersionRoot;
+        List<ModuleVersion> listModuleVersionMatched;
+
+        dataOutputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        dataOutputStream.writeInt(ReferenceGraphSnapshot.MAGIC);
+        dataOutputStream.writeInt(ReferenceGraphSnapshot.FORMAT_VERSION);
+
+        dataOutputStream.writeInt(listStringBytes.size());
+        offset = 0;
+
+        for (byte[] arrayByte: listStringBytes) {
+          dataOutputStream.writeInt(offset);
+          offset += arrayByte.length;
+        }
+
+        dataOutputStream.writeInt(offset);
+
+        for (byte[] arrayByte: listStringBytes) {
+          dataOutputStream.write(arrayByte);
+        }
+
+        dataOutputStream.writeInt(listModuleVersion.size());
+
+        for (int id = 0; id < listModuleVersion.size(); id++) {
+          dataOutputStream.writeInt(arrayModuleVersionRecord[id * 3]);
+          dataOutputStream.writeInt(arrayModuleVersionRecord[(id * 3) + 1]);
+          dataOutputStream.writeInt(arrayModuleVersionRecord[(id * 3) + 2]);
+        }
+
+        listModuleVersionRoot = referenceGraph.getListModuleVersionRoot();
+        dataOutputStream.writeInt(listModuleVersionRoot.size());
+
+        for (ModuleVersion moduleVersion: listModuleVersionRoot) {
+          dataOutputStream.writeInt(mapIdModuleVersion.get(moduleVersion));
+        }
+
+        listModuleVersionMatched = referenceGraph.getListModuleVersionMatched();
+        dataOutputStream.writeInt(listModuleVersionMatched.size());
+
+        for (ModuleVersion moduleVersion: listModuleVersionMatched) {
+          dataOutputStream.writeInt(mapIdModuleVersion.get(moduleVersion));
+        }
+
+        dataOutputStream.writeInt(listReferenceRecord.size());
+
+        for (int[] arrayReferenceRecord: listReferenceRecord) {
+          for (int value: arrayReferenceRecord) {
+            dataOutputStream.writeInt(value);
+          }
+        }
+
+        dataOutputStream.writeInt(listMatchedReferencePathEncoded.size());
+        offset = 0;
+
+        for (int[] arrayEncoded: listMatchedReferencePathEncoded) {
+          dataOutputStream.writeInt(offset);
+          offset += arrayEncoded.length;
+        }
+
+        dataOutputStream.writeInt(offset);
+
+        for (int[] arrayEncoded: listMatchedReferencePathEncoded) {
+          for (int value: arrayEncoded) {
+            dataOutputStream.writeInt(value);
+          }
+        }
+
+        dataOutputStream.flush();
+      }
+
+      Files.move(pathTemp, pathSnapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    } finally {
+      // The temporary file no longer exists if it was moved. Failing to delete it is
+      // not reported so as not to hide the exception being thrown, if any, and since
+      // the snapshot itself is not affected.
+      try {
+        Files.deleteIfExists(pathTemp);
+      } catch (IOException ioe) {
+      }
+    }
+  }
+
+  /**
+   * Adds a string to the string table if not already there.
+   *
+   * @param mapIndexString Map of strings to their index.
+   * @param listStringBytes List of UTF-8 encoded strings.
+   * @param string String. Can be null.
+   * @return Index of the string. -1 if string is null.
+   */
+  private static int internString(Map<String, Integer> mapIndexString, List<byte[]> listStringBytes, String string) {
+    Integer index;
+
+    if (string == null) {
+      return -1;
+    }
+
+    index = mapIndexString.get(string);
+
+    if (index == null) {
+      index = listStringBytes.size();
+      mapIndexString.put(string, index);
+      listStringBytes.add(string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    return index;
+  }
+
+  /**
+   * Loads the snapshot from the workspace metadata directory, if it exists.
+   *
+   * @param workspaceExecContext WorkspaceExecContext.
+   * @return ReferenceGraphSnapshot. null if there is no snapshot.
+   */
+  public static ReferenceGraphSnapshot load(WorkspaceExecContext workspaceExecContext) {
+    Path pathSnapshot;
+
+    pathSnapshot = ReferenceGraphSnapshot.getPathSnapshot(workspaceExecContext);
+
+    if (!Files.exists(pathSnapshot)) {
+      return null;
+    }
+
+    return ReferenceGraphSnapshot.load(pathSnapshot);
+  }
+
+  /**
+   * Loads a snapshot by mapping it in memory.
+   * <p>
+   * The file can be deleted or replaced once loaded, but must not be modified in
+   * place.
+   *
+   * @param pathSnapshot Path of the snapshot.
+   * @return ReferenceGraphSnapshot.
+   */
+  public static ReferenceGraphSnapshot load(Path pathSnapshot) {
+    try (FileChannel fileChannel = FileChannel.open(pathSnapshot, StandardOpenOption.READ)) {
+      MappedByteBuffer mappedByteBuffer;
+
+      // The mapping remains valid after the FileChannel is closed.
+      mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+
+      return new ReferenceGraphSnapshot(mappedByteBuffer);
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
+  /**
+   * Returns a string from the string table, decoding it on first use.
+   *
+   * @param index Index of the string. Can be -1.
+   * @return String. null if index is -1.
+   */
+  private String getString(int index) {
+    String string;
+
+    if (index == -1) {
+      return null;
+    }
+
+    string = this.arrayString[index];
+
+    if (string == null) {
+      int offsetStart;
+      int offsetEnd;
+      byte[] arrayByte;
+      ByteBuffer byteBuffer;
+
+      offsetStart = this.byteBuffer.getInt(this.positionStringOffsets + (index * 4));
+      offsetEnd = this.byteBuffer.getInt(this.positionStringOffsets + ((index + 1) * 4));
+      arrayByte = new byte[offsetEnd - offsetStart];
+
+      // A duplicate is used since the position of the shared buffer must not be
+      // modified.
+      byteBuffer = this.byteBuffer.duplicate();
+      byteBuffer.position(this.positionStringData + offsetStart);
+      byteBuffer.get(arrayByte);
+
+      string = new String(arrayByte, StandardCharsets.UTF_8);
+      this.arrayString[index] = string;
+    }
+
+    return string;
+  }
+
+  /**
+   * @return Number of {@link ModuleVersion}'s.
+   */
+  public int getNbModuleVersions() {
+    return this.nbModuleVersions;
+  }
+
+  /**
+   * @return Number of {@link Reference}'s.
+   */
+  public int getNbReferences() {
+    return this.nbReferences;
+  }
+
+  /**
+   * Returns a {@link ModuleVersion} given its ID in the snapshot.
+   *
+   * @param id ID.
+   * @return ModuleVersion.
+   */
+  public ModuleVersion getModuleVersion(int id) {
+    ModuleVersion moduleVersion;
+
+    moduleVersion = this.arrayModuleVersion[id];
+
+    if (moduleVersion == null) {
+      int position;
+      NodePath nodePath;
+      String stringVersion;
+
+      position = this.positionModuleVersions + (id * ReferenceGraphSnapshot.MODULE_VERSION_RECORD_SIZE);
+      nodePath = NodePath.valueOf(this.getString(this.byteBuffer.getInt(position)));
+      stringVersion = this.getString(this.byteBuffer.getInt(position + 4));
+
+      if (stringVersion == null) {
+        moduleVersion = new ModuleVersion(nodePath);
+      } else {
+        moduleVersion = new ModuleVersion(nodePath, Version.valueOf(stringVersion));
+      }
+
+      this.arrayModuleVersion[id] = moduleVersion;
+    }
+
+    return moduleVersion;
+  }
+
+  /**
+   * Returns the SCM revision of a {@link ModuleVersion} recorded when the snapshot
+   * was written.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return SCM revision. null if the ModuleVersion is not in the snapshot or no
+   *   revision was recorded for it.
+   */
+  public String getScmRevision(ModuleVersion moduleVersion) {
+    Integer id;
+
+    if (this.mapIdModuleVersion == null) {
+      Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+      mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+
+      for (int i = 0; i < this.nbModuleVersions; i++) {
+        mapIdModuleVersion.put(this.getModuleVersion(i), i);
+      }
+
+      this.mapIdModuleVersion = mapIdModuleVersion;
+    }
+
+    id = this.mapIdModuleVersion.get(moduleVersion);
+
+    if (id == null) {
+      return null;
+    }
+
+    return this.getString(this.byteBuffer.getInt(this.positionModuleVersions + (id * ReferenceGraphSnapshot.MODULE_VERSION_RECORD_SIZE) + 8));
+  }
+
+  /**
+   * Rebuilds the {@link ReferenceGraph} using the default {@link ImplDataCodec}.
+   *
+   * @return IndexedReferenceGraph.
+   */
+  public IndexedReferenceGraph toReferenceGraph() {
+    return this.toReferenceGraph(ReferenceGraphSnapshot.IMPL_DATA_CODEC_STRING);
+  }
+
+  /**
+   * Rebuilds the {@link ReferenceGraph}.
+   * <p>
+   * The {@link ModuleVersion}'s are added in the order of the snapshot so that
+   * {@link ReferenceGraph#getListModuleVersion} returns them in the same order as
+   * the original ReferenceGraph. The matched ReferencePath's are restored as well.
+   *
+   * @param implDataCodec ImplDataCodec.
+   * @return IndexedReferenceGraph.
+   */
+  public IndexedReferenceGraph toReferenceGraph(ImplDataCodec implDataCodec) {
+    IndexedReferenceGraph indexedReferenceGraph;
+    Reference[] arrayReference;
+
+    indexedReferenceGraph = new IndexedReferenceGraph();
+    arrayReference = new Reference[this.nbReferences];
+
+    for (int id = 0; id < this.nbModuleVersions; id++) {
+      indexedReferenceGraph.addModuleVersion(this.getModuleVersion(id));
+    }
+
+    for (int i = 0; i < this.nbRoots; i++) {
+      indexedReferenceGraph.addRootModuleVersion(this.getModuleVersion(this.byteBuffer.getInt(this.positionRoots + (i * 4))));
+    }
+
+    for (int i = 0; i < this.nbReferences; i++) {
+      int position;
+      String stringArtifactGroupId;
+      String stringArtifactVersion;
+      String stringImplData;
+
+      position = this.positionReferences + (i * ReferenceGraphSnapshot.REFERENCE_RECORD_SIZE);
+      stringArtifactGroupId = this.getString(this.byteBuffer.getInt(position + 8));
+      stringArtifactVersion = this.getString(this.byteBuffer.getInt(position + 12));
+      stringImplData = this.getString(this.byteBuffer.getInt(position + 16));
+
+      arrayReference[i] =
+          new Reference(
+              this.getModuleVersion(this.byteBuffer.getInt(position + 4)),
+              (stringArtifactGroupId == null) ? null : ArtifactGroupId.valueOf(stringArtifactGroupId),
+              (stringArtifactVersion == null) ? null : ArtifactVersion.valueOf(stringArtifactVersion),
+              (stringImplData == null) ? null : implDataCodec.decode(stringImplData));
+
+      indexedReferenceGraph.addReference(this.getModuleVersion(this.byteBuffer.getInt(position)), arrayReference[i]);
+    }
+
+    // The matched ModuleVersion's are added first so that they are in the same order
+    // as in the original ReferenceGraph.
+    for (int i = 0; i < this.nbMatched; i++) {
+      indexedReferenceGraph.addMatchedModuleVersion(this.getModuleVersion(this.byteBuffer.getInt(this.positionMatched + (i * 4))));
+    }
+
+    for (int i = 0; i < this.nbMatchedReferencePaths; i++) {
+      int offsetStart;
+      int offsetEnd;
+      ReferencePath referencePath;
+
+      offsetStart = this.byteBuffer.getInt(this.positionMatchedReferencePathOffsets + (i * 4));
+      offsetEnd = this.byteBuffer.getInt(this.positionMatchedReferencePathOffsets + ((i + 1) * 4));
+      referencePath = new ReferencePath();
+      referencePath.add(new Reference(this.getModuleVersion(this.byteBuffer.getInt(this.positionMatchedReferencePathData + (offsetStart * 4)))));
+
+      for (int offset = offsetStart + 1; offset < offsetEnd; offset++) {
+        referencePath.add(arrayReference[this.byteBuffer.getInt(this.positionMatchedReferencePathData + (offset * 4))]);
+      }
+
+      indexedReferenceGraph.addMatchedReferencePath(referencePath);
+    }
+
+    return indexedReferenceGraph;
+  }
+}
@@ -19,10 +19,6 @@
 
 package org.azyva.dragom.reference;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 import org.azyva.dragom.model.Module;
 import org.azyva.dragom.model.ModuleVersion;
 import org.azyva.dragom.model.NodePath;
@@ -37,29 +33,58 @@ import org.azyva.dragom.model.Version;
  * <p>
  * Note that a ReferencePath is NOT a List. If it extended a List class it would
  * carry over methods that are not appropriate for a ReferencePath.
+ * <p>
+ * A ReferencePath is a mutable facade over an immutable
+ * {@link PersistentReferencePath}. Adding and removing leaf {@link Reference}'s
+ * simply replace the PersistentReferencePath with a new one which shares its
+ * Reference's with the previous one. Therefore the copy constructor and
+ * {@link #snapshot} are O(1) and callers which need to keep a ReferencePath
+ * during a traversal can do so without copying the Reference's.
  *
  * @author David Raymond
  */
 public class ReferencePath {
   /**
-   * List of Reference's.
+   * PersistentReferencePath holding the Reference's.
    */
-  private List<Reference> listReference;
+  private PersistentReferencePath persistentReferencePath;
 
   /**
    * Default constructor;
    */
   public ReferencePath() {
-    this.listReference = new ArrayList<Reference>();
+    this.persistentReferencePath = PersistentReferencePath.EMPTY;
   }
 
   /**
    * Copy constructor.
+   * <p>
+   * This is O(1) since the {@link PersistentReferencePath} is shared.
    *
    * @param referencePath ReferencePath.
    */
   public ReferencePath(ReferencePath referencePath) {
-    this.listReference = new ArrayList<Reference>(referencePath.listReference);
+    this.persistentReferencePath = referencePath.persistentReferencePath;
+  }
+
+  /**
+   * Constructor from a {@link PersistentReferencePath}.
+   *
+   * @param persistentReferencePath PersistentReferencePath.
+   */
+  public ReferencePath(PersistentReferencePath persistentReferencePath) {
+    this.persistentReferencePath = persistentReferencePath;
+  }
+
+  /**
+   * Returns an immutable snapshot of this ReferencePath.
+   * <p>
+   * This is O(1).
+   *
+   * @return PersistentReferencePath.
+   */
+  public PersistentReferencePath snapshot() {
+    return this.persistentReferencePath;
   }
 
   /**
@@ -70,13 +95,7 @@ public class ReferencePath {
    * @param reference Reference.
    */
   public void add(Reference reference) {
-    for (Reference reference2: this.listReference) {
-      if (reference2.getModuleVersion().getNodePath().equals(reference.getModuleVersion().getNodePath())) {
-        throw new RuntimeException("Cycle detected in ReferencePath\n" + this + "\nwhen adding Reference " + reference + '.');
-      }
-    }
-
-    this.listReference.add(reference);
+    this.persistentReferencePath = this.persistentReferencePath.append(reference);
   }
 
   /**
@@ -87,36 +106,47 @@ public class ReferencePath {
    * @param referencePath ReferencePath.
    */
   public void add(ReferencePath referencePath) {
-    // Adding the Reference's one at a time using the {@link #add} method ensure that
-    // we properly check for cycles.
-    for (int i = 0; i < referencePath.size() ; i++ ) {
-      this.add(referencePath.get(i));
-    }
+    this.persistentReferencePath = this.persistentReferencePath.append(referencePath.persistentReferencePath);
   }
 
   /**
    * @return Number of {@link Reference}'s in the ReferencePath.
    */
   public int size() {
-    return this.listReference.size();
+    return this.persistentReferencePath.size();
   }
 
   /**
    * Returns a {@link Reference} in the ReferencePath given an index.
+   * <p>
+   * This is O(depth) as the parent links are walked from the leaf (see
+   * {@link PersistentReferencePath#get}). Iterating over the Reference's by index
+   * is therefore quadratic. Use {@link #forEachReference} instead.
    *
    * @param index Index.
    * @return Reference.
    */
   public Reference get(int index) {
-    return this.listReference.get(index);
+    return this.persistentReferencePath.get(index);
+  }
+
+  /**
+   * Visits the {@link Reference}'s from the root to the leaf without allocating.
+   * <p>
+   * See {@link PersistentReferencePath#forEachReference}.
+   *
+   * @param referenceVisitor ReferenceVisitor.
+   * @return Indicates if all the Reference's were visited.
+   */
+  public boolean forEachReference(PersistentReferencePath.ReferenceVisitor referenceVisitor) {
+    return this.persistentReferencePath.forEachReference(referenceVisitor);
   }
 
   /**
    * Removes the root {@link Reference} (from the head of the List).
    */
   public void removeRootReference() {
-    this.listReference.remove(0);
-
+    this.persistentReferencePath = this.persistentReferencePath.subPathFrom(1);
   }
 
   /**
@@ -125,30 +155,28 @@ public class ReferencePath {
    * @param nbReferences Number of references.
    */
   public void removeRootReferences(int nbReferences) {
-    // This is the idiom for removing range of elements in a List, and ReferencePath
-    // simply extends ArrayList.
-    this.listReference.subList(0, nbReferences).clear();
+    this.persistentReferencePath = this.persistentReferencePath.subPathFrom(nbReferences);
   }
 
   /**
    * @return Leaf {@link Reference} (from the tail of the List).
    */
   public Reference getLeafReference() {
-    return this.listReference.get(this.listReference.size() - 1);
+    return this.persistentReferencePath.getLeafReference();
   }
 
   /**
    * @return Leaf {@link ModuleVersion} (from the tail of the List).
    */
   public ModuleVersion getLeafModuleVersion() {
-    return this.listReference.get(this.listReference.size() - 1).getModuleVersion();
+    return this.persistentReferencePath.getLeafModuleVersion();
   }
 
   /**
    * Removes the leaf {@link Reference} (from the tail of the List).
    */
   public void removeLeafReference() {
-    this.listReference.remove(this.listReference.size() - 1);
+    this.persistentReferencePath = this.persistentReferencePath.getParent();
   }
 
   /**
@@ -157,7 +185,7 @@ public class ReferencePath {
    * @param nbReferences Number of references.
    */
   public void removeLeafReferences(int nbReferences) {
-    this.listReference.subList(this.listReference.size() - nbReferences, nbReferences).clear();
+    this.persistentReferencePath = this.persistentReferencePath.prefix(this.persistentReferencePath.size() - nbReferences);
   }
 
   /**
@@ -169,20 +197,7 @@ public class ReferencePath {
    *   found.
    */
   public int findModuleVersion(ModuleVersion moduleVersion) {
-    for (int i = 0; i < this.listReference.size(); i++) {
-      ModuleVersion moduleVersion2;
-
-      moduleVersion2 = this.listReference.get(i).getModuleVersion();
-
-      if (   (moduleVersion2 != null)
-          && (moduleVersion2.getNodePath().equals(moduleVersion.getNodePath()))
-          && ((moduleVersion.getVersion() == null) || (moduleVersion2.getVersion().equals(moduleVersion.getVersion())))) {
-
-        return i;
-      }
-    }
-
-    return -1;
+    return this.persistentReferencePath.findModuleVersion(moduleVersion);
   }
 
   /**
@@ -206,39 +221,6 @@ public class ReferencePath {
    */
   @Override
   public String toString() {
-    StringBuilder stringBuilder;
-    int size;
-    char[] arrayCharIndent;
-    boolean indFirst;
-
-    stringBuilder = new StringBuilder();
-    size = this.listReference.size();
-    arrayCharIndent = new char[size * 2];
-    Arrays.fill(arrayCharIndent, ' ');
-
-    for (int i = 0; i < size; i++) {
-      Reference reference;
-
-      stringBuilder.append(arrayCharIndent, 0, i * 2);
-
-      reference = this.listReference.get(i);
-
-      if (i != 0) {
-        if (reference.getImplData() == null) {
-          stringBuilder.append("|> ");
-        } else {
-          stringBuilder.append("-> ");
-        }
-
-      }
-
-      stringBuilder.append(reference.toString());
-
-      if (i != (size - 1)) {
-        stringBuilder.append('\n');
-      }
-    }
-
-    return stringBuilder.toString();
+    return this.persistentReferencePath.toString();
   }
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.reference.ReferenceGraph.Referrer;
+
+/**
+ * Compressed representation of the {@link ReferencePath}'s from the root
+ * {@link ModuleVersion}'s of a {@link ReferenceGraph} to a leaf ModuleVersion.
+ * <p>
+ * {@link ReferenceGraph#visitLeafModuleVersionReferencePaths} visits each
+ * ReferencePath leading to the leaf ModuleVersion, whose number can grow
+ * exponentially with the depth of the ReferenceGraph when ModuleVersion's are
+ * referenced through multiple paths. A ReferencePathDag is instead built in time
+ * linear in the size of the subgraph of the ModuleVersion's which reference the
+ * leaf ModuleVersion, directly or indirectly. For each of these ModuleVersion's,
+ * the number of ReferencePath's from the roots is memoized, so that:
+ * <ul>
+ * <li>The number of ReferencePath's is available without enumerating them
+ *     ({@link #getNbReferencePaths});
+ * <li>Any ReferencePath can be obtained directly given its index
+ *     ({@link #getReferencePath}), in time proportional to its length and to the
+ *     number of referrers along it;
+ * <li>The ReferencePath's can be enumerated lazily ({@link #iterator}), in the
+ *     same order as visitLeafModuleVersionReferencePaths.
+ * </ul>
+ * <p>
+ * Numbers of ReferencePath's saturate at Long.MAX_VALUE. ReferencePath's with an
+ * index below Long.MAX_VALUE can still be obtained.
+ * <p>
+ * A ReferencePathDag reflects the ReferenceGraph when it was built. Once built,
+ * it is immutable and thread-safe.
+ *
+ * @author David Raymond
+ */
+public final class ReferencePathDag implements Iterable<ReferencePath> {
+  /**
+   * {@link ModuleVersion}'s of the subgraph, indexed by ID. The leaf ModuleVersion
+   * has ID 0.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * Indicates for each ModuleVersion if it is a root, indexed by ID.
+   */
+  private boolean[] arrayIndRoot;
+
+  /**
+   * IDs of the referrer {@link ModuleVersion}'s of each ModuleVersion, indexed by
+   * ID.
+   */
+  private int[][] arrayArrayIdReferrer;
+
+  /**
+   * {@link Reference}'s of the {@link Referrer}'s of each ModuleVersion, indexed
+   * like arrayArrayIdReferrer.
+   */
+  private Reference[][] arrayArrayReferenceReferrer;
+
+  /**
+   * Number of {@link ReferencePath}'s from the roots to each ModuleVersion,
+   * indexed by ID. Saturates at Long.MAX_VALUE.
+   */
+  private long[] arrayNbReferencePaths;
+
+  /**
+   * Constructor.
+   *
+   * @param referenceGraph ReferenceGraph.
+   * @param moduleVersionLeaf Leaf {@link ModuleVersion}.
+   */
+  public ReferencePathDag(ReferenceGraph referenceGraph, ModuleVersion moduleVersionLeaf) {
+    List<ModuleVersion> listModuleVersion;
+    Map<ModuleVersion, Integer> mapIdModuleVersion;
+    List<List<Referrer>> listListReferrer;
+    int nbModuleVersions;
+    int[] arrayNbReferenced;
+    int[][] arrayArrayIdReferenced;
+    int[] arrayNbReferrersPending;
+    Deque<Integer> dequeId;
+    int nbSorted;
+
+    // Collects the ModuleVersion's referencing the leaf ModuleVersion, directly or
+    // indirectly.
+
+    listModuleVersion = new ArrayList<ModuleVersion>();
+    mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+    listListReferrer = new ArrayList<List<Referrer>>();
+
+    listModuleVersion.add(moduleVersionLeaf);
+    mapIdModuleVersion.put(moduleVersionLeaf, 0);
+
+    for (int id = 0; id < listModuleVersion.size(); id++) {
+      List<Referrer> listReferrer;
+
+      listReferrer = referenceGraph.getListReferrer(listModuleVersion.get(id));
+      listListReferrer.add(listReferrer);
+
+      for (Referrer referrer: listReferrer) {
+        if (!mapIdModuleVersion.containsKey(referrer.getModuleVersion())) {
+          mapIdModuleVersion.put(referrer.getModuleVersion(), listModuleVersion.size());
+          listModuleVersion.add(referrer.getModuleVersion());
+        }
+      }
+    }
+
+    nbModuleVersions = listModuleVersion.size();
+    this.arrayModuleVersion = listModuleVersion.toArray(new ModuleVersion[nbModuleVersions]);
+    this.arrayIndRoot = new boolean[nbModuleVersions];
+    this.arrayArrayIdReferrer = new int[nbModuleVersions][];
+    this.arrayArrayReferenceReferrer = new Reference[nbModuleVersions][];
+    arrayNbReferenced = new int[nbModuleVersions];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      List<Referrer> listReferrer;
+
+      this.arrayIndRoot[id] = referenceGraph.isRootModuleVersion(this.arrayModuleVersion[id]);
+      listReferrer = listListReferrer.get(id);
+      this.arrayArrayIdReferrer[id] = new int[listReferrer.size()];
+      this.arrayArrayReferenceReferrer[id] = new Reference[listReferrer.size()];
+
+      for (int i = 0; i < listReferrer.size(); i++) {
+        int idReferrer;
+
+        idReferrer = mapIdModuleVersion.get(listReferrer.get(i).getModuleVersion());
+        this.arrayArrayIdReferrer[id][i] = idReferrer;
+        this.arrayArrayReferenceReferrer[id][i] = listReferrer.get(i).getReference();
+        arrayNbReferenced[idReferrer]++;
+      }
+    }
+
+    // Reverse adjacency within the subgraph, to release the ModuleVersion's
+    // referenced by a ModuleVersion once it is processed.
+
+    arrayArrayIdReferenced = new int[nbModuleVersions][];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      arrayArrayIdReferenced[id] = new int[arrayNbReferenced[id]];
+      arrayNbReferenced[id] = 0;
+    }
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      for (int idReferrer: this.arrayArrayIdReferrer[id]) {
+        arrayArrayIdReferenced[idReferrer][arrayNbReferenced[idReferrer]++] = id;
+      }
+    }
+
+    // Computes the number of ReferencePath's to each ModuleVersion in topological
+    // order, from the roots towards the leaf, so that those of the referrers are
+    // known.
+
+    this.arrayNbReferencePaths = new long[nbModuleVersions];
+    arrayNbReferrersPending = new int[nbModuleVersions];
+    dequeId = new ArrayDeque<Integer>();
+    nbSorted = 0;
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      arrayNbReferrersPending[id] = this.arrayArrayIdReferrer[id].length;
+
+      if (arrayNbReferrersPending[id] == 0) {
+        dequeId.add(id);
+      }
+    }
+
+    while (!dequeId.isEmpty()) {
+      int id;
+      long nbReferencePaths;
+
+      id = dequeId.removeFirst();
+      nbSorted++;
+      nbReferencePaths = this.arrayIndRoot[id] ? 1 : 0;
+
+      for (int idReferrer: this.arrayArrayIdReferrer[id]) {
+        nbReferencePaths = ReferencePathDag.addSaturated(nbReferencePaths, this.arrayNbReferencePaths[idReferrer]);
+      }
+
+      this.arrayNbReferencePaths[id] = nbReferencePaths;
+
+      for (int idReferenced: arrayArrayIdReferenced[id]) {
+        if (--arrayNbReferrersPending[idReferenced] == 0) {
+          dequeId.add(idReferenced);
+        }
+      }
+    }
+
+    if (nbSorted != nbModuleVersions) {
+      throw new RuntimeException("Cycle detected in ReferenceGraph involving the referrers of ModuleVersion " + moduleVersionLeaf + '.');
+    }
+  }
+
+  /**
+   * Adds two non-negative numbers, saturating at Long.MAX_VALUE.
+   *
+   * @param long1 First number.
+   * @param long2 Second number.
+   * @return Sum.
+   */
+  private static long addSaturated(long long1, long long2) {
+    long sum;
+
+    sum = long1 + long2;
+
+    return (sum < 0) ? Long.MAX_VALUE : sum;
+  }
+
+  /**
+   * @return Leaf {@link ModuleVersion}.
+   */
+  public ModuleVersion getLeafModuleVersion() {
+    return this.arrayModuleVersion[0];
+  }
+
+  /**
+   * @return Number of {@link ModuleVersion}'s which reference the leaf
+   *   ModuleVersion, directly or indirectly, including the leaf ModuleVersion.
+   */
+  public int getNbModuleVersions() {
+    return this.arrayModuleVersion.length;
+  }
+
+  /**
+   * @return Number of {@link ReferencePath}'s from the roots to the leaf
+   *   {@link ModuleVersion}. Long.MAX_VALUE if there are at least that many.
+   */
+  public long getNbReferencePaths() {
+    return this.arrayNbReferencePaths[0];
+  }
+
+  /**
+   * Returns a {@link ReferencePath} given its index.
+   * <p>
+   * ReferencePath's are ordered as they are visited by
+   * {@link ReferenceGraph#visitLeafModuleVersionReferencePaths}: walking up from
+   * the leaf {@link ModuleVersion}, the ReferencePath's rooted at a ModuleVersion
+   * come before those going through its referrers, which are taken in order.
+   *
+   * @param index Index of the ReferencePath. Must be less than
+   *   {@link #getNbReferencePaths}.
+   * @return ReferencePath.
+   */
+  public ReferencePath getReferencePath(long index) {
+    Deque<Reference> dequeReference;
+    int id;
+    ReferencePath referencePath;
+
+    if ((index < 0) || (index >= this.arrayNbReferencePaths[0])) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.arrayNbReferencePaths[0]);
+    }
+
+    dequeReference = new ArrayDeque<Reference>();
+    id = 0;
+
+    // Walks up from the leaf, choosing at each ModuleVersion the alternative
+    // (ending at the ModuleVersion as a root or going through one of its referrers)
+    // whose range of indexes contains the remaining index.
+    walk:
+    while (true) {
+      if (this.arrayIndRoot[id]) {
+        if (index == 0) {
+          break;
+        }
+
+        index--;
+      }
+
+      for (int i = 0; i < this.arrayArrayIdReferrer[id].length; i++) {
+        int idReferrer;
+
+        idReferrer = this.arrayArrayIdReferrer[id][i];
+
+        if (index < this.arrayNbReferencePaths[idReferrer]) {
+          dequeReference.addFirst(this.arrayArrayReferenceReferrer[id][i]);
+          id = idReferrer;
+          continue walk;
+        }
+
+        index -= this.arrayNbReferencePaths[idReferrer];
+      }
+
+      // Cannot happen given the numbers of ReferencePath's, unless index is beyond
+      // a saturated number.
+      throw new RuntimeException("Must not get here.");
+    }
+
+    referencePath = new ReferencePath();
+    referencePath.add(new Reference(this.arrayModuleVersion[id]));
+
+    for (Reference reference: dequeReference) {
+      referencePath.add(reference);
+    }
+
+    return referencePath;
+  }
+
+  /**
+   * Returns an Iterator over the {@link ReferencePath}'s, which are built lazily
+   * as they are requested.
+   * <p>
+   * See {@link #getReferencePath} for the order.
+   *
+   * @return Iterator.
+   */
+  @Override
+  public Iterator<ReferencePath> iterator() {
+    return new Iterator<ReferencePath>() {
+      private long indexNext;
+
+      @Override
+      public boolean hasNext() {
+        return this.indexNext < ReferencePathDag.this.arrayNbReferencePaths[0];
+      }
+
+      @Override
+      public ReferencePath next() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+
+        return ReferencePathDag.this.getReferencePath(this.indexNext++);
+      }
+    };
+  }
+}
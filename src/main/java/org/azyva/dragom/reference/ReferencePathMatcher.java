@@ -30,6 +30,20 @@ package org.azyva.dragom.reference;
  * - ReferencePathMatcherOr
  * - ReferencePathMatcherNot
  *
+ * <p>Besides the methods which take a complete ReferencePath, this interface
+ * provides a stateful API ({@link #initialState}, {@link #step},
+ * {@link #isAccepting}, {@link #canContinue} and
+ * {@link #acceptsAllContinuations}) which allows a caller traversing a reference
+ * graph to extend the state of the ReferencePathMatcher as it descends, instead
+ * of submitting the whole ReferencePath at each level. States are opaque to the
+ * caller and immutable, so that the state of a parent ReferencePath can be
+ * extended for each of its children.
+ *
+ * <p>This stateful API is optional. Default implementations are provided which
+ * keep a copy of the ReferencePath within the state and delegate to the methods
+ * which take a complete ReferencePath. They are correct, but do not provide the
+ * performance benefits. The implementations within Dragom override them.
+ *
  * @author David Raymond
  */
 public interface ReferencePathMatcher {
@@ -66,4 +80,68 @@ public interface ReferencePathMatcher {
    *   ReferencePath.
    */
   public boolean matchesAllChildren(ReferencePath referencePath);
+
+  /**
+   * Returns the state corresponding to the empty ReferencePath.
+   *
+   * @return Initial state.
+   */
+  default Object initialState() {
+    return new ReferencePath();
+  }
+
+  /**
+   * Returns the state corresponding to the ReferencePath of a given state to which
+   * a {@link Reference} is appended.
+   *
+   * <p>The given state is not modified.
+   *
+   * @param state State returned by {@link #initialState} or a previous call to
+   *   this method.
+   * @param reference Reference.
+   * @return New state.
+   */
+  default Object step(Object state, Reference reference) {
+    ReferencePath referencePath;
+
+    referencePath = new ReferencePath((ReferencePath)state);
+    referencePath.add(reference);
+
+    return referencePath;
+  }
+
+  /**
+   * Stateful equivalent of {@link #matches}.
+   *
+   * @param state State.
+   * @return true if the ReferencePath corresponding to the state is matched by the
+   *   ReferencePathMatcher.
+   */
+  default boolean isAccepting(Object state) {
+    return this.matches((ReferencePath)state);
+  }
+
+  /**
+   * Stateful equivalent of {@link #canMatchChildren}.
+   *
+   * @param state State.
+   * @return true if the ReferencePathMatcher can match children of the
+   *   ReferencePath corresponding to the state.
+   */
+  default boolean canContinue(Object state) {
+    return this.canMatchChildren((ReferencePath)state);
+  }
+
+  /**
+   * Stateful equivalent of {@link #matchesAllChildren}.
+   *
+   * <p>As for matchesAllChildren, false is always a safe value to return.
+   *
+   * @param state State.
+   * @return true if the ReferencePathMatcher matches all children of the
+   *   ReferencePath corresponding to the state.
+   */
+  default boolean acceptsAllContinuations(Object state) {
+    return this.matchesAllChildren((ReferencePath)state);
+  }
 }
@@ -43,4 +43,30 @@ public class ReferencePathMatcherAll implements ReferencePathMatcher {
   public boolean matchesAllChildren(ReferencePath referencePath) {
     return true;
   }
+
+  @Override
+  public Object initialState() {
+    // No state is required since all ReferencePath's are matched.
+    return null;
+  }
+
+  @Override
+  public Object step(Object state, Reference reference) {
+    return null;
+  }
+
+  @Override
+  public boolean isAccepting(Object state) {
+    return true;
+  }
+
+  @Override
+  public boolean canContinue(Object state) {
+    return true;
+  }
+
+  @Override
+  public boolean acceptsAllContinuations(Object state) {
+    return true;
+  }
 }
@@ -26,6 +26,12 @@ import java.util.List;
  * Represents a List of ReferencePathMatcher which matches a ReferencePath if all
  * of the ReferencePathMatcher's within the List match, or, as a special case, if
  * the List is empty.
+ * <p>
+ * The ReferencePathMatcher's are not necessarily evaluated in the order of the
+ * List. Cost and selectivity statistics are kept for each of them and they are
+ * periodically reordered so that the ones which are cheap and most likely to
+ * short-circuit the evaluation are evaluated first. See
+ * {@link #getPlanDump}.
  *
  * @author David Raymond
  */
@@ -35,11 +41,17 @@ public class ReferencePathMatcherAnd implements ReferencePathMatcher {
    */
   private List<ReferencePathMatcher> listReferencePathMatcher;
 
+  /**
+   * Adaptive evaluation order of the ReferencePathMatcher's.
+   */
+  private ReferencePathMatcherEvaluationPlan referencePathMatcherEvaluationPlan;
+
   /**
    * Default constructor.
    */
   public ReferencePathMatcherAnd() {
     this.listReferencePathMatcher = new ArrayList<ReferencePathMatcher>();
+    this.referencePathMatcherEvaluationPlan = new ReferencePathMatcherEvaluationPlan(false);
   }
 
   /**
@@ -63,6 +75,55 @@ public class ReferencePathMatcherAnd implements ReferencePathMatcher {
    */
   public void addReferencePathMatcher(ReferencePathMatcher referencePathMatcher) {
     this.listReferencePathMatcher.add(referencePathMatcher);
+    this.referencePathMatcherEvaluationPlan.reset(this.listReferencePathMatcher.size());
+  }
+
+  /**
+   * Flattens nested ReferencePathMatcherAnd's and removes duplicate
+   * ReferencePathMatcher's (according to equals) from the List.
+   * <p>
+   * Nested ReferencePathMatcherAnd's are replaced by their own
+   * ReferencePathMatcher's. Nested ReferencePathMatcherOr's are replaced by an
+   * optimized copy, or by their only ReferencePathMatcher if they have a single
+   * one. Only the List of this ReferencePathMatcherAnd is modified; nested
+   * ReferencePathMatcher's, which may be shared, are left untouched.
+   * <p>
+   * The statistics used to order the evaluation of the ReferencePathMatcher's are
+   * reset. As for any other modification of the List, this must not be done while
+   * states obtained from {@link #initialState} are in use.
+   */
+  public void optimize() {
+    ReferencePathMatcherEvaluationPlan.optimize(ReferencePathMatcherAnd.class, this.listReferencePathMatcher);
+    this.referencePathMatcherEvaluationPlan.reset(this.listReferencePathMatcher.size());
+  }
+
+  /**
+   * Returns a dump of the evaluation plan, for debugging.
+   * <p>
+   * The ReferencePathMatcher's are listed in their current evaluation order,
+   * together with their index in the List and the cost and selectivity statistics
+   * which determined that order. Nested ReferencePathMatcherAnd's and
+   * ReferencePathMatcherOr's are dumped recursively.
+   *
+   * @return See description.
+   */
+  public String getPlanDump() {
+    StringBuilder stringBuilder;
+
+    stringBuilder = new StringBuilder();
+    this.appendPlan(stringBuilder, "");
+
+    return stringBuilder.toString();
+  }
+
+  /**
+   * Appends a dump of the evaluation plan to a StringBuilder.
+   *
+   * @param stringBuilder StringBuilder.
+   * @param indent Indentation.
+   */
+  void appendPlan(StringBuilder stringBuilder, String indent) {
+    this.referencePathMatcherEvaluationPlan.appendPlan(stringBuilder, indent, "AND", this.listReferencePathMatcher);
   }
 
   /**
@@ -74,13 +135,7 @@ public class ReferencePathMatcherAnd implements ReferencePathMatcher {
    */
   @Override
   public boolean matches(ReferencePath referencePath) {
-    for (ReferencePathMatcher referencePathMatcher: this.listReferencePathMatcher) {
-      if (!referencePathMatcher.matches(referencePath)) {
-        return false;
-      }
-    }
-
-    return true;
+    return this.referencePathMatcherEvaluationPlan.evaluate(ReferencePathMatcherEvaluationPlan.OPERATION_MATCHES, this.listReferencePathMatcher, referencePath, null);
   }
 
   /**
@@ -93,13 +148,7 @@ public class ReferencePathMatcherAnd implements ReferencePathMatcher {
    */
   @Override
   public boolean canMatchChildren(ReferencePath referencePath) {
-    for (ReferencePathMatcher referencePathMatcher: this.listReferencePathMatcher) {
-      if (!referencePathMatcher.canMatchChildren(referencePath)) {
-        return false;
-      }
-    }
-
-    return true;
+    return this.referencePathMatcherEvaluationPlan.evaluate(ReferencePathMatcherEvaluationPlan.OPERATION_CAN_MATCH_CHILDREN, this.listReferencePathMatcher, referencePath, null);
   }
 
   /**
@@ -112,12 +161,58 @@ public class ReferencePathMatcherAnd implements ReferencePathMatcher {
    */
   @Override
   public boolean matchesAllChildren(ReferencePath referencePath) {
-    for (ReferencePathMatcher referencePathMatcher: this.listReferencePathMatcher) {
-      if (!referencePathMatcher.matchesAllChildren(referencePath)) {
-        return false;
-      }
+    return this.referencePathMatcherEvaluationPlan.evaluate(ReferencePathMatcherEvaluationPlan.OPERATION_MATCHES_ALL_CHILDREN, this.listReferencePathMatcher, referencePath, null);
+  }
+
+  /**
+   * The state of a ReferencePathMatcherAnd is an array of the states of the
+   * ReferencePathMatcher's within the List, in the same order.
+   * <p>
+   * The List of ReferencePathMatcher's must not be modified while states obtained
+   * from this method are in use.
+   *
+   * @return Initial state.
+   */
+  @Override
+  public Object initialState() {
+    Object[] arrayState;
+
+    arrayState = new Object[this.listReferencePathMatcher.size()];
+
+    for (int i = 0; i < arrayState.length; i++) {
+      arrayState[i] = this.listReferencePathMatcher.get(i).initialState();
+    }
+
+    return arrayState;
+  }
+
+  @Override
+  public Object step(Object state, Reference reference) {
+    Object[] arrayState;
+    Object[] arrayStateNew;
+
+    arrayState = (Object[])state;
+    arrayStateNew = new Object[arrayState.length];
+
+    for (int i = 0; i < arrayState.length; i++) {
+      arrayStateNew[i] = this.listReferencePathMatcher.get(i).step(arrayState[i], reference);
     }
 
-    return true;
+    return arrayStateNew;
+  }
+
+  @Override
+  public boolean isAccepting(Object state) {
+    return this.referencePathMatcherEvaluationPlan.evaluate(ReferencePathMatcherEvaluationPlan.OPERATION_IS_ACCEPTING, this.listReferencePathMatcher, null, (Object[])state);
+  }
+
+  @Override
+  public boolean canContinue(Object state) {
+    return this.referencePathMatcherEvaluationPlan.evaluate(ReferencePathMatcherEvaluationPlan.OPERATION_CAN_CONTINUE, this.listReferencePathMatcher, null, (Object[])state);
+  }
+
+  @Override
+  public boolean acceptsAllContinuations(Object state) {
+    return this.referencePathMatcherEvaluationPlan.evaluate(ReferencePathMatcherEvaluationPlan.OPERATION_ACCEPTS_ALL_CONTINUATIONS, this.listReferencePathMatcher, null, (Object[])state);
   }
 }
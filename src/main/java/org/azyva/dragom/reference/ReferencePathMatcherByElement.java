@@ -19,15 +19,21 @@
 
 package org.azyva.dragom.reference;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import org.azyva.dragom.apiutil.InternCache;
 import org.azyva.dragom.model.ArtifactGroupId;
 import org.azyva.dragom.model.ArtifactVersion;
 import org.azyva.dragom.model.Model;
@@ -172,6 +178,13 @@ import org.azyva.dragom.model.VersionType;
  *   more, where the last reference is to an artifact having the groupId
  *   "com.acme" and a SNAPSHOT ArtifactVersion.
  *
+ * A ReferencePathMatcherByElement is immutable once constructed: parsing
+ * compiles the ElementMatcher's (including their regexes) and the automaton
+ * once, and evaluation never modifies them. Instances can therefore be shared
+ * among threads. {@link #valueOf} takes advantage of this by caching instances
+ * by literal and {@link Model}, so that tools which parse the same literals
+ * repeatedly (from runtime properties, for instance) do not parse them again.
+ *
  * @author David Raymond
  */
 public class ReferencePathMatcherByElement implements ReferencePathMatcher {
@@ -211,6 +224,225 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
    * Helps match a single element of a ReferencePath.
    */
   private static class ElementMatcher {
+    /**
+     * Matches a String against a regex part, using plain String comparisons when
+     * the regex is a literal, a prefix (literal followed by ".*"), a suffix (".*"
+     * followed by a literal) or a substring (literal enclosed within ".*").
+     * <p>
+     * Most regex parts used in practice are of one of these simple forms, for which
+     * going through a {@link Matcher} is comparatively costly. Other regexes are
+     * matched with the Pattern.
+     * <p>
+     * The semantics of the Pattern are preserved exactly. In particular, since "."
+     * does not match line terminators, the portion of the String matched by ".*"
+     * must not contain any.
+     */
+    private static final class RegexPartMatcher {
+      /**
+       * The regex is a literal.
+       */
+      private static final int KIND_LITERAL = 0;
+
+      /**
+       * The regex is a literal followed by ".*".
+       */
+      private static final int KIND_PREFIX = 1;
+
+      /**
+       * The regex is ".*" followed by a literal.
+       */
+      private static final int KIND_SUFFIX = 2;
+
+      /**
+       * The regex is a literal enclosed within ".*". Also used for ".*" alone, with
+       * an empty literal.
+       */
+      private static final int KIND_SUBSTRING = 3;
+
+      /**
+       * The regex is none of the above and is matched with the Pattern.
+       */
+      private static final int KIND_PATTERN = 4;
+
+      /**
+       * Regex metacharacters which prevent a regex from being handled as a literal
+       * when not escaped.
+       */
+      private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+      /**
+       * Kind of regex. One of the KIND_* constants.
+       */
+      private final int kind;
+
+      /**
+       * Literal. null for KIND_PATTERN.
+       */
+      private final String literal;
+
+      /**
+       * Precomputed hash code of the literal, for KIND_LITERAL.
+       */
+      private final int hashCodeLiteral;
+
+      /**
+       * Pattern, for KIND_PATTERN.
+       */
+      private final Pattern pattern;
+
+      /**
+       * Constructor.
+       *
+       * @param kind Kind of regex.
+       * @param literal Literal.
+       * @param pattern Pattern.
+       */
+      private RegexPartMatcher(int kind, String literal, Pattern pattern) {
+        this.kind = kind;
+        this.literal = literal;
+        this.hashCodeLiteral = (literal == null) ? 0 : literal.hashCode();
+        this.pattern = pattern;
+      }
+
+      /**
+       * Analyzes a Pattern and returns the corresponding RegexPartMatcher.
+       *
+       * @param pattern Pattern. Can be null, in which case null is returned.
+       * @return RegexPartMatcher.
+       */
+      private static RegexPartMatcher compile(Pattern pattern) {
+        String regex;
+        int length;
+        boolean indAnyBefore;
+        boolean indAnyAfter;
+        StringBuilder stringBuilderLiteral;
+        int index;
+
+        if (pattern == null) {
+          return null;
+        }
+
+        if (pattern.flags() != 0) {
+          return new RegexPartMatcher(RegexPartMatcher.KIND_PATTERN, null, pattern);
+        }
+
+        regex = pattern.pattern();
+        length = regex.length();
+
+        // ".*" must not be followed by "?" or "+" which would make it reluctant or
+        // possessive. Reluctant would still be equivalent, but not possessive.
+        indAnyBefore = regex.startsWith(".*") && ((length == 2) || ("?+".indexOf(regex.charAt(2)) == -1));
+        indAnyAfter = false;
+        stringBuilderLiteral = new StringBuilder();
+        index = indAnyBefore ? 2 : 0;
+
+        while (index < length) {
+          char character;
+
+          character = regex.charAt(index);
+
+          if ((character == '.') && (index == length - 2) && (regex.charAt(index + 1) == '*')) {
+            indAnyAfter = true;
+            break;
+          }
+
+          if (character == '\\') {
+            // Only escaped non-alphanumeric characters are literals. Escaped
+            // alphanumeric characters are character classes, anchors, etc.
+            if ((index == length - 1) || Character.isLetterOrDigit(regex.charAt(index + 1))) {
+              return new RegexPartMatcher(RegexPartMatcher.KIND_PATTERN, null, pattern);
+            }
+
+            character = regex.charAt(index + 1);
+            index += 2;
+          } else if (RegexPartMatcher.REGEX_METACHARACTERS.indexOf(character) != -1) {
+            return new RegexPartMatcher(RegexPartMatcher.KIND_PATTERN, null, pattern);
+          } else {
+            index++;
+          }
+
+          // A quantifier applying to the character is not a literal. An escaped line
+          // terminator is not handled either, to keep the ".*" semantics simple.
+          if (((index < length) && ("?*+{".indexOf(regex.charAt(index)) != -1)) || RegexPartMatcher.isLineTerminator(character)) {
+            return new RegexPartMatcher(RegexPartMatcher.KIND_PATTERN, null, pattern);
+          }
+
+          stringBuilderLiteral.append(character);
+        }
+
+        if (indAnyBefore && indAnyAfter) {
+          return new RegexPartMatcher(RegexPartMatcher.KIND_SUBSTRING, stringBuilderLiteral.toString(), null);
+        } else if (indAnyBefore) {
+          return new RegexPartMatcher((stringBuilderLiteral.length() == 0) ? RegexPartMatcher.KIND_SUBSTRING : RegexPartMatcher.KIND_SUFFIX, stringBuilderLiteral.toString(), null);
+        } else if (indAnyAfter) {
+          return new RegexPartMatcher(RegexPartMatcher.KIND_PREFIX, stringBuilderLiteral.toString(), null);
+        } else {
+          return new RegexPartMatcher(RegexPartMatcher.KIND_LITERAL, stringBuilderLiteral.toString(), null);
+        }
+      }
+
+      /**
+       * Verifies if a String is matched.
+       *
+       * @param string String.
+       * @return true if the String is matched.
+       */
+      private boolean matches(String string) {
+        int index;
+
+        switch (this.kind) {
+        case KIND_LITERAL:
+          return (string.hashCode() == this.hashCodeLiteral) && string.equals(this.literal);
+
+        case KIND_PREFIX:
+          return string.startsWith(this.literal) && !RegexPartMatcher.containsLineTerminator(string, this.literal.length(), string.length());
+
+        case KIND_SUFFIX:
+          return string.endsWith(this.literal) && !RegexPartMatcher.containsLineTerminator(string, 0, string.length() - this.literal.length());
+
+        case KIND_SUBSTRING:
+          // The literal itself never contains line terminators since they are
+          // not matched by ".". The whole String must therefore not contain any.
+          index = string.indexOf(this.literal);
+
+          return (index != -1) && !RegexPartMatcher.containsLineTerminator(string, 0, string.length());
+
+        default:
+          return this.pattern.matcher(string).matches();
+        }
+      }
+
+      /**
+       * Verifies if a range of a String contains a line terminator, as understood by
+       * {@link Pattern} without the DOTALL and UNIX_LINES flags.
+       *
+       * @param string String.
+       * @param indexStart Start index, inclusive.
+       * @param indexEnd End index, exclusive.
+       * @return See description.
+       */
+      private static boolean containsLineTerminator(String string, int indexStart, int indexEnd) {
+        for (int i = indexStart; i < indexEnd; i++) {
+          if (RegexPartMatcher.isLineTerminator(string.charAt(i))) {
+            return true;
+          }
+        }
+
+        return false;
+      }
+
+      /**
+       * Verifies if a character is a line terminator, as understood by
+       * {@link Pattern} without the DOTALL and UNIX_LINES flags.
+       *
+       * @param character Character.
+       * @return See description.
+       */
+      private static boolean isLineTerminator(char character) {
+        return (character == '\n') || (character == '\r') || (character == '\u0085') || (character == '\u2028') || (character == '\u2029');
+      }
+    }
+
     /**
      * Represents a part (NodePath, Version, groupId, artifactId or
      * ArtifactVersion) of an element in a ElementMatcher.
@@ -231,13 +463,13 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
      * Indicates if this is a "*" ElementMatcher. Mutually exclusive with all other
      * properties below.
      */
-    private boolean indAsterisk;
+    private final boolean indAsterisk;
 
     /**
      * Indicates if this is a "**" ElementMatcher. Mutually exclusive with all other
      * properties below.
      */
-    private boolean indDoubleAsterisk;
+    private final boolean indDoubleAsterisk;
 
     /**
      * Indicates that the ElementMatcher refers to a specific Module. This implies
@@ -246,74 +478,201 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
      * This is a computed property. It is used by the algorithm for inferring whether
      * a ReferencePathMatcherByElement can potentially match children ReferencePath's.
      */
-    private boolean indSpecificModule;
+    private final boolean indSpecificModule;
 
     /**
      * NodePath. Mutually exclusive with patternLiteralNodePath, isAsterisk and
      * isDoubleAsterisk.
      */
-    private NodePath nodePath;
+    private final NodePath nodePath;
 
     /**
      * Pattern for the NodePath literal. Mutually exclusive with nodePath,
      * isAsterisk and isDoubleAsterisk.
      */
-    private Pattern patternLiteralNodePath;
+    private final Pattern patternLiteralNodePath;
 
     /**
      * Version. Mutually exclusive with patternLiteralVersion, isAsterisk and
      * isDoubleAsterisk.
      */
-    private Version version;
+    private final Version version;
 
     /**
      * Pattern for Version literal. Mutually exclusive with version, isAsterisk
      * and isDoubleAsterisk.
      */
-    private Pattern patternLiteralVersion;
+    private final Pattern patternLiteralVersion;
 
     /**
      * GroupId. Mutually exclusive with patternGroupId, isAsterisk and
      * isDoubleAsterisk.
      */
-    private String groupId;
+    private final String groupId;
 
     /**
      * Pattern for the groupId. Mutually exclusive with groupId, isAsterisk and
      * isDoubleAsterisk.
      */
-    private Pattern patternGroupId;
+    private final Pattern patternGroupId;
 
     /**
      * ArtifactId. Mutually exclusive with patternArtifactId, isAsterisk and
      * isDoubleAsterisk.
      */
-    private String artifactId;
+    private final String artifactId;
 
     /**
      * Pattern for the artifactId. Mutually exclusive with artifactId, isAsterisk and
      * isDoubleAsterisk.
      */
-    private Pattern patternArtifactId;
+    private final Pattern patternArtifactId;
 
     /**
      * ArtifactVersion. Mutually exclusive with patternLiteralArtifactVersion,
      * isAsterisk and isDoubleAsterisk.
      */
-    private ArtifactVersion artifactVersion;
+    private final ArtifactVersion artifactVersion;
 
     /**
      * Pattern for the ArtifactVersion literal. Mutually exclusive with
      * artifactVersion, isAsterisk and isDoubleAsterisk.
      */
-    private Pattern patternLiteralArtifactVersion;
+    private final Pattern patternLiteralArtifactVersion;
 
     /**
      * Indicates this ElementMatcher matches only dynamic {@link Version}'s. Knowing
      * this allows optimizing the matching process since a static
      * {@link ModuleVersion} cannot refer to dynamic Version's.
      */
-    private boolean indDynamicVersion;
+    private final boolean indDynamicVersion;
+
+    /**
+     * Precomputed hash code of nodePath. NodePath's have a precomputed hash code,
+     * so that most non-matching NodePath's are rejected with a single int
+     * comparison.
+     */
+    private final int hashCodeNodePath;
+
+    /**
+     * Precomputed hash code of version.
+     */
+    private final int hashCodeVersion;
+
+    /**
+     * Precomputed hash code of groupId.
+     */
+    private final int hashCodeGroupId;
+
+    /**
+     * Precomputed hash code of artifactId.
+     */
+    private final int hashCodeArtifactId;
+
+    /**
+     * RegexPartMatcher for patternLiteralNodePath.
+     */
+    private final RegexPartMatcher regexPartMatcherNodePath;
+
+    /**
+     * RegexPartMatcher for patternLiteralVersion.
+     */
+    private final RegexPartMatcher regexPartMatcherVersion;
+
+    /**
+     * RegexPartMatcher for patternGroupId.
+     */
+    private final RegexPartMatcher regexPartMatcherGroupId;
+
+    /**
+     * RegexPartMatcher for patternArtifactId.
+     */
+    private final RegexPartMatcher regexPartMatcherArtifactId;
+
+    /**
+     * RegexPartMatcher for patternLiteralArtifactVersion.
+     */
+    private final RegexPartMatcher regexPartMatcherArtifactVersion;
+
+    /**
+     * Constructor.
+     * <p>
+     * The computed properties are derived from the parts, which are mutually
+     * exclusive between source-level and artifact-level ElementMatcher's.
+     *
+     * @param indDoubleAsterisk Indicates if this is a "**" ElementMatcher.
+     * @param nodePath NodePath.
+     * @param patternLiteralNodePath Pattern for the NodePath literal.
+     * @param version Version.
+     * @param patternLiteralVersion Pattern for the Version literal.
+     * @param groupId GroupId.
+     * @param patternGroupId Pattern for the groupId.
+     * @param artifactId ArtifactId.
+     * @param patternArtifactId Pattern for the artifactId.
+     * @param artifactVersion ArtifactVersion.
+     * @param patternLiteralArtifactVersion Pattern for the ArtifactVersion
+     *   literal.
+     */
+    private ElementMatcher(
+        boolean indDoubleAsterisk,
+        NodePath nodePath,
+        Pattern patternLiteralNodePath,
+        Version version,
+        Pattern patternLiteralVersion,
+        String groupId,
+        Pattern patternGroupId,
+        String artifactId,
+        Pattern patternArtifactId,
+        ArtifactVersion artifactVersion,
+        Pattern patternLiteralArtifactVersion) {
+
+      this.indDoubleAsterisk = indDoubleAsterisk;
+      this.nodePath = nodePath;
+      this.patternLiteralNodePath = patternLiteralNodePath;
+      this.version = version;
+      this.patternLiteralVersion = patternLiteralVersion;
+      this.groupId = groupId;
+      this.patternGroupId = patternGroupId;
+      this.artifactId = artifactId;
+      this.patternArtifactId = patternArtifactId;
+      this.artifactVersion = artifactVersion;
+      this.patternLiteralArtifactVersion = patternLiteralArtifactVersion;
+
+      // If "*" is not used, but all ElementMatcher parts are empty or not specified,
+      // this is equivalent to the "*" ElementMatcher.
+      this.indAsterisk =
+             !indDoubleAsterisk
+          && (nodePath == null)
+          && (patternLiteralNodePath == null)
+          && (version == null)
+          && (patternLiteralVersion == null)
+          && (groupId == null)
+          && (patternGroupId == null)
+          && (artifactId == null)
+          && (patternArtifactId == null)
+          && (artifactVersion == null)
+          && (patternLiteralArtifactVersion == null);
+
+      this.indSpecificModule = (nodePath != null) || ((groupId != null) && (artifactId != null));
+
+      this.indDynamicVersion =
+             ((version != null) && (version.getVersionType() == VersionType.DYNAMIC))
+          || ((patternLiteralVersion != null) && patternLiteralVersion.toString().startsWith("D/"))
+          || ((artifactVersion != null) && (artifactVersion.getVersionType() == VersionType.DYNAMIC))
+          || ((patternLiteralArtifactVersion != null) && patternLiteralArtifactVersion.toString().endsWith("-SNAPSHOT"));
+
+      // Precompute the hash codes of the literal parts and the RegexPartMatcher's of
+      // the regex parts used by matches.
+      this.hashCodeNodePath = (nodePath == null) ? 0 : nodePath.hashCode();
+      this.hashCodeVersion = (version == null) ? 0 : version.hashCode();
+      this.hashCodeGroupId = (groupId == null) ? 0 : groupId.hashCode();
+      this.hashCodeArtifactId = (artifactId == null) ? 0 : artifactId.hashCode();
+      this.regexPartMatcherNodePath = RegexPartMatcher.compile(patternLiteralNodePath);
+      this.regexPartMatcherVersion = RegexPartMatcher.compile(patternLiteralVersion);
+      this.regexPartMatcherGroupId = RegexPartMatcher.compile(patternGroupId);
+      this.regexPartMatcherArtifactId = RegexPartMatcher.compile(patternArtifactId);
+      this.regexPartMatcherArtifactVersion = RegexPartMatcher.compile(patternLiteralArtifactVersion);
+    }
 
     /**
      * Parses a ElementMatcher within a ReferencePathMatcherByElement literal.
@@ -334,109 +693,83 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
      */
     private static ElementMatcher parse(String stringReferencePathMatcherByElement, int indexStart, int indexEnd)
     throws ParseException {
-      ElementMatcher elementMatcher;
       PartMatcher partMatcher;
       int indexStartParse;
+      boolean indDoubleAsterisk;
+      NodePath nodePath;
+      Pattern patternLiteralNodePath;
+      Version version;
+      Pattern patternLiteralVersion;
+      String groupId;
+      Pattern patternGroupId;
+      String artifactId;
+      Pattern patternArtifactId;
+      ArtifactVersion artifactVersion;
+      Pattern patternLiteralArtifactVersion;
 
-      elementMatcher = new ElementMatcher();
       partMatcher = new PartMatcher();
       indexStartParse = indexStart;
+      indDoubleAsterisk = false;
+      nodePath = null;
+      patternLiteralNodePath = null;
+      version = null;
+      patternLiteralVersion = null;
+      groupId = null;
+      patternGroupId = null;
+      artifactId = null;
+      patternArtifactId = null;
+      artifactVersion = null;
+      patternLiteralArtifactVersion = null;
 
       if (indexStart == indexEnd) {
         throw new ParseException(MessageFormat.format(ReferencePathMatcherByElement.resourceBundle.getString(ReferencePathMatcherByElement.MSG_PATTERN_KEY_ELEMENT_EMPTY), stringReferencePathMatcherByElement, indexStart), indexStart);
       }
 
-      if (stringReferencePathMatcherByElement.substring(indexStart, indexEnd).equals("*")) {
-        elementMatcher.indAsterisk = true;
-      } else if (stringReferencePathMatcherByElement.substring(indexStart, indexEnd).equals("**")) {
-          elementMatcher.indDoubleAsterisk = true;
-      } else {
+      // The "*" ElementMatcher simply has no part specified, which the constructor
+      // recognizes.
+      if (stringReferencePathMatcherByElement.substring(indexStart, indexEnd).equals("**")) {
+        indDoubleAsterisk = true;
+      } else if (!stringReferencePathMatcherByElement.substring(indexStart, indexEnd).equals("*")) {
         if (stringReferencePathMatcherByElement.charAt(indexStartParse) == '/') {
           indexStartParse = ElementMatcher.parsePart(stringReferencePathMatcherByElement, indexStartParse + 1, indexEnd, partMatcher); // The + 1 is to skip the leading '/'.
 
           if (partMatcher.string != null) {
-            elementMatcher.nodePath = NodePath.parse(partMatcher.string);
+            nodePath = NodePath.parse(partMatcher.string);
           }
 
-          elementMatcher.patternLiteralNodePath = partMatcher.pattern;
+          patternLiteralNodePath = partMatcher.pattern;
 
           if (indexStartParse != indexEnd) {
             indexStartParse = ElementMatcher.parsePart(stringReferencePathMatcherByElement, indexStartParse, indexEnd, partMatcher);
 
             if (partMatcher.string != null) {
-              elementMatcher.version = Version.parse(partMatcher.string);
+              version = Version.parse(partMatcher.string);
             }
 
-            elementMatcher.patternLiteralVersion = partMatcher.pattern;
-          }
-
-          if (elementMatcher.nodePath != null) {
-            elementMatcher.indSpecificModule = true;
-          }
-
-          // If "*" is not used, but all ElementMatcher parts are empty or
-          // not specified, this is equivalent to the "*" ElementMatcher.
-          if (   (elementMatcher.nodePath == null)
-            && (elementMatcher.patternLiteralNodePath == null)
-            && (elementMatcher.version == null)
-            && (elementMatcher.patternLiteralVersion == null)) {
-
-            elementMatcher.indAsterisk = true;
-          }
-
-          if ((elementMatcher.version != null) && (elementMatcher.version.getVersionType() == VersionType.DYNAMIC)) {
-            elementMatcher.indDynamicVersion = true;
-          }
-
-          if ((elementMatcher.patternLiteralVersion != null) && (elementMatcher.patternLiteralVersion.toString().startsWith("D/"))) {
-            elementMatcher.indDynamicVersion = true;
+            patternLiteralVersion = partMatcher.pattern;
           }
         } else {
           indexStartParse = ElementMatcher.parsePart(stringReferencePathMatcherByElement, indexStartParse, indexEnd, partMatcher);
 
-          elementMatcher.groupId = partMatcher.string;
-          elementMatcher.patternGroupId = partMatcher.pattern;
+          groupId = partMatcher.string;
+          patternGroupId = partMatcher.pattern;
 
           if (indexStartParse != indexEnd) {
             indexStartParse = ElementMatcher.parsePart(stringReferencePathMatcherByElement, indexStartParse, indexEnd, partMatcher);
 
-            elementMatcher.artifactId = partMatcher.string;
-            elementMatcher.patternArtifactId = partMatcher.pattern;
+            artifactId = partMatcher.string;
+            patternArtifactId = partMatcher.pattern;
 
             if (indexStartParse != indexEnd) {
               indexStartParse = ElementMatcher.parsePart(stringReferencePathMatcherByElement, indexStartParse, indexEnd, partMatcher);
 
               if (partMatcher.string != null) {
-                elementMatcher.artifactVersion = ArtifactVersion.parse(partMatcher.string);
+                artifactVersion = ArtifactVersion.parse(partMatcher.string);
               }
 
-              elementMatcher.patternLiteralArtifactVersion = partMatcher.pattern;
+              patternLiteralArtifactVersion = partMatcher.pattern;
             }
           }
-
-          if ((elementMatcher.groupId != null) && (elementMatcher.artifactId != null)) {
-            elementMatcher.indSpecificModule = true;
-          }
-
-          // If "*" is not used, but all ElementMatcher parts are empty or not specified,
-          // this is equivalent to the "*" ElementMatcher.
-          if (   (elementMatcher.groupId == null)
-            && (elementMatcher.patternGroupId == null)
-            && (elementMatcher.artifactId == null)
-            && (elementMatcher.patternArtifactId == null)
-            && (elementMatcher.artifactVersion == null)
-            && (elementMatcher.patternLiteralArtifactVersion == null)) {
-
-            elementMatcher.indAsterisk = true;
-          }
-
-          if ((elementMatcher.artifactVersion != null) && (elementMatcher.artifactVersion.getVersionType() == VersionType.DYNAMIC)) {
-            elementMatcher.indDynamicVersion = true;
-          }
-
-          if ((elementMatcher.patternLiteralArtifactVersion != null) && (elementMatcher.patternLiteralArtifactVersion.toString().endsWith("-SNAPSHOT"))) {
-            elementMatcher.indDynamicVersion = true;
-          }
         }
 
         // If indexStartParse != indexEnd, then it should be the case that
@@ -450,7 +783,7 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
         }
       }
 
-      return elementMatcher;
+      return new ElementMatcher(indDoubleAsterisk, nodePath, patternLiteralNodePath, version, patternLiteralVersion, groupId, patternGroupId, artifactId, patternArtifactId, artifactVersion, patternLiteralArtifactVersion);
     }
 
     /**
@@ -605,7 +938,8 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
      * @return true if the Reference is matched by the ElementMatcher.
      */
     private boolean matches(Reference reference) {
-      Matcher matcher;
+      ModuleVersion moduleVersion;
+      ArtifactGroupId artifactGroupId;
 
       if (this.indDoubleAsterisk) {
         throw new RuntimeException("Method called for a \"**\" matcher.");
@@ -618,75 +952,75 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
       // A ElementMatcher can be source-level or an artifact-level but not both.
       // Therefore many execution paths below are mutually exclusive. We nevertheless
       // keep the code simple and linear by not introducing nested if's.
+      //
+      // Literal parts are first compared by their precomputed hash codes, which are
+      // also precomputed within NodePath, Version and String, so that most
+      // non-matching References are rejected with a single int comparison.
+
+      moduleVersion = reference.getModuleVersion();
 
       if (this.nodePath != null) {
-        if (!this.nodePath.equals(reference.getModuleVersion().getNodePath())) {
+        if ((this.hashCodeNodePath != moduleVersion.getNodePath().hashCode()) || !this.nodePath.equals(moduleVersion.getNodePath())) {
           return false;
         }
       }
 
-      if (this.patternLiteralNodePath != null) {
-        matcher = this.patternLiteralNodePath.matcher(reference.getModuleVersion().getNodePath().toString());
-
-        if (!matcher.matches()) {
+      if (this.regexPartMatcherNodePath != null) {
+        if (!this.regexPartMatcherNodePath.matches(moduleVersion.getNodePath().toString())) {
           return false;
         }
       }
 
       if (this.version != null) {
-        if (!this.version.equals(reference.getModuleVersion().getVersion())) {
+        if ((moduleVersion.getVersion() == null) || (this.hashCodeVersion != moduleVersion.getVersion().hashCode()) || !this.version.equals(moduleVersion.getVersion())) {
           return false;
         }
       }
 
-      if (this.patternLiteralVersion != null) {
-        matcher = this.patternLiteralVersion.matcher(reference.getModuleVersion().getVersion().toString());
-
-        if (!matcher.matches()) {
+      if (this.regexPartMatcherVersion != null) {
+        if (!this.regexPartMatcherVersion.matches(moduleVersion.getVersion().toString())) {
           return false;
         }
       }
 
+      artifactGroupId = reference.getArtifactGroupId();
+
       if (this.groupId != null) {
-        if (reference.getArtifactGroupId() == null) {
+        if (artifactGroupId == null) {
           return false;
         }
 
-        if (!this.groupId.equals(reference.getArtifactGroupId().getGroupId())) {
+        if ((this.hashCodeGroupId != artifactGroupId.getGroupId().hashCode()) || !this.groupId.equals(artifactGroupId.getGroupId())) {
           return false;
         }
       }
 
-      if (this.patternGroupId != null) {
-        if (reference.getArtifactGroupId() == null) {
+      if (this.regexPartMatcherGroupId != null) {
+        if (artifactGroupId == null) {
           return false;
         }
 
-        matcher = this.patternGroupId.matcher(reference.getArtifactGroupId().getGroupId());
-
-        if (!matcher.matches()) {
+        if (!this.regexPartMatcherGroupId.matches(artifactGroupId.getGroupId())) {
           return false;
         }
       }
 
       if (this.artifactId != null) {
-        if (reference.getArtifactGroupId() == null) {
+        if (artifactGroupId == null) {
           return false;
         }
 
-        if (!this.artifactId.equals(reference.getArtifactGroupId().getArtifactId())) {
+        if ((this.hashCodeArtifactId != artifactGroupId.getArtifactId().hashCode()) || !this.artifactId.equals(artifactGroupId.getArtifactId())) {
           return false;
         }
       }
 
-      if (this.patternArtifactId != null) {
-        if (reference.getArtifactGroupId() == null) {
+      if (this.regexPartMatcherArtifactId != null) {
+        if (artifactGroupId == null) {
           return false;
         }
 
-        matcher = this.patternArtifactId.matcher(reference.getArtifactGroupId().getArtifactId());
-
-        if (!matcher.matches()) {
+        if (!this.regexPartMatcherArtifactId.matches(artifactGroupId.getArtifactId())) {
           return false;
         }
       }
@@ -701,14 +1035,12 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
         }
       }
 
-      if (this.patternLiteralArtifactVersion != null) {
+      if (this.regexPartMatcherArtifactVersion != null) {
         if (reference.getArtifactVersion() == null) {
           return false;
         }
 
-        matcher = this.patternLiteralArtifactVersion.matcher(reference.getArtifactVersion().toString());
-
-        if (!matcher.matches()) {
+        if (!this.regexPartMatcherArtifactVersion.matches(reference.getArtifactVersion().toString())) {
           return false;
         }
       }
@@ -834,113 +1166,258 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
   }
 
   /**
-   * Used by the matches method to keep track of the ElementMatcher groups.
+   * State of the automaton into which the List of ElementMatcher's is compiled.
+   * <p>
+   * Position i within the automaton is active when the {@link Reference}'s
+   * consumed so far can be matched by the first i ElementMatcher's. The position
+   * corresponding to the size of the List of ElementMatcher's is therefore the
+   * accepting position. A "**" ElementMatcher at index i loops on position i and
+   * also activates position i + 1 without consuming a Reference.
+   * <p>
+   * Active positions are kept in a bit set so that extending a ReferencePath by
+   * one Reference costs a single pass over the active positions, regardless of
+   * the length of the ReferencePath.
+   * <p>
+   * Instances are immutable so that a State can be shared by all the children of
+   * a ReferencePath during a traversal.
    */
-  private static class ElementMatcherGroup {
+  private static final class State {
     /**
-     * Index of first element in the group.
+     * Bit set of the active positions.
      */
-    private int indexFirstElementMatcher;
+    private final long[] arrayPositionBits;
 
     /**
-     * Number of elements in the group.
+     * Indicates the last Reference consumed refers to a static {@link Version}.
+     * A static {@link ModuleVersion} cannot refer to dynamic Version's, which
+     * allows eliminating positions from which only dynamic Version's can be
+     * matched.
      */
-    private int nbElementMatchers;
+    private final boolean indLeafStatic;
 
     /**
-     * Total number of ElementMatcher's remaining including those in this group and
-     * those in the following groups.
+     * Constructor.
+     *
+     * @param arrayPositionBits Bit set of the active positions.
+     * @param indLeafStatic Indicates the last Reference consumed refers to a
+     *   static Version.
      */
-    private int nbTotalElementMatchers;
+    private State(long[] arrayPositionBits, boolean indLeafStatic) {
+      this.arrayPositionBits = arrayPositionBits;
+      this.indLeafStatic = indLeafStatic;
+    }
   }
 
   /**
-   * Used by the canMatchChildren method to convert a
-   * ReferencePathMatcherByElement to a sequence of specific Module matchers.
+   * Runs the {@link Reference}'s of a ReferencePath through the automaton, for
+   * {@link ReferencePathMatcherByElement#run}.
    */
-  private static class ModuleMatcher {
+  private final class Run implements PersistentReferencePath.ReferenceVisitor {
     /**
-     * NodePath.
+     * Current state.
      */
-    NodePath nodePath;
+    private Object state;
 
     /**
-     * Minimum number of preceding elements.
+     * Constructor.
      */
-    int minPrecedingElements;
+    private Run() {
+      this.state = ReferencePathMatcherByElement.this.stateInitial;
+    }
+
+    @Override
+    public boolean visitReference(int index, Reference reference) {
+      this.state = ReferencePathMatcherByElement.this.step(this.state, reference);
+
+      return this.state != ReferencePathMatcherByElement.this.stateDead;
+    }
+  }
 
+  /**
+   * Finds the last ElementMatcher for a specific {@link Module} which is present
+   * in a ReferencePath, for {@link ReferencePathMatcherByElement#canMatchChildren}.
+   */
+  private final class SpecificModuleSearch implements PersistentReferencePath.ReferenceVisitor {
     /**
-     * Maximum number of preceding elements. -1 if no maximum (if the "**"
-     * ElementMatcher was used).
+     * Index of the last ElementMatcher for a specific Module found so far. -1 if
+     * none.
      */
-    int maxPrecedingElements;
+    private int indexElementMatcher;
 
     /**
-     * Index of the ElementMatcher to which this entry corresponds.
+     * Constructor.
      */
-    int indexElementMatcher;
+    private SpecificModuleSearch() {
+      this.indexElementMatcher = -1;
+    }
+
+    @Override
+    public boolean visitReference(int index, Reference reference) {
+      NodePath[] arrayNodePathSpecificModule;
+      NodePath nodePath;
+
+      arrayNodePathSpecificModule = ReferencePathMatcherByElement.this.arrayNodePathSpecificModule;
+      nodePath = reference.getModuleVersion().getNodePath();
+
+      for (int indexElementMatcher = ReferencePathMatcherByElement.this.indexLastSpecificModule; indexElementMatcher > this.indexElementMatcher; indexElementMatcher--) {
+        if ((arrayNodePathSpecificModule[indexElementMatcher] != null) && arrayNodePathSpecificModule[indexElementMatcher].equals(nodePath)) {
+          this.indexElementMatcher = indexElementMatcher;
+          break;
+        }
+      }
+
+      // Once the last ElementMatcher for a specific Module is found, no other can be
+      // found after it.
+      return this.indexElementMatcher != ReferencePathMatcherByElement.this.indexLastSpecificModule;
+    }
   }
 
+  /**
+   * Key of {@link ReferencePathMatcherByElement#mapModelInternCache}.
+   * <p>
+   * Refers weakly to a {@link Model} and compares by identity, since the Model in
+   * which the {@link ArtifactGroupId}'s are resolved is the actual Model instance,
+   * regardless of how Model implementations define equals. Once the Model is
+   * collected, the key is only equal to itself, so that it can be removed when
+   * polled from the ReferenceQueue.
+   */
+  private static final class ModelKey extends WeakReference<Model> {
+    /**
+     * Identity hash code of the Model, kept since the Model can be collected.
+     */
+    private final int hashCode;
+
+    /**
+     * Constructor.
+     *
+     * @param model Model. Must not be null.
+     * @param referenceQueue ReferenceQueue with which the key is registered.
+     */
+    private ModelKey(Model model, ReferenceQueue<Model> referenceQueue) {
+      super(model, referenceQueue);
+      this.hashCode = System.identityHashCode(model);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hashCode;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      Model model;
+
+      if (this == other) {
+        return true;
+      }
+
+      if (!(other instanceof ModelKey)) {
+        return false;
+      }
+
+      model = this.get();
+
+      return (model != null) && (model == ((ModelKey)other).get());
+    }
+  }
+
+  /**
+   * Maximum number of instances cached by {@link #valueOf} per Model.
+   */
+  private static final int MAX_CACHED_INSTANCES = 1024;
+
+  /**
+   * Caches of instances, keyed by ReferencePathMatcherByElement literal, per Model.
+   * <p>
+   * The Model is a separate key since the {@link ArtifactGroupId}'s within a
+   * ReferencePathMatcherByElement are resolved within a specific Model. Models are
+   * compared by identity (see {@link ModelKey}).
+   * <p>
+   * Since instances refer to their Model, they are referenced weakly. Otherwise,
+   * a Model which is no longer used would remain reachable through the values of
+   * the Map and would never be collected. An instance is therefore shared as long
+   * as it is in use. The entries of collected Model's are removed by valueOf.
+   * <p>
+   * Access is synchronized on the Map. valueOf is called when parsing
+   * configuration, not when matching, so contention is not an issue.
+   */
+  private static final Map<ModelKey, InternCache<String, WeakReference<ReferencePathMatcherByElement>>> mapModelInternCache = new HashMap<ModelKey, InternCache<String, WeakReference<ReferencePathMatcherByElement>>>();
+
+  /**
+   * ReferenceQueue with which the keys of {@link #mapModelInternCache} are
+   * registered.
+   */
+  private static final ReferenceQueue<Model> referenceQueueModel = new ReferenceQueue<Model>();
+
+  /**
+   * Cache of instances for a null Model, which cannot be referred to by a
+   * {@link ModelKey}. Access is synchronized on {@link #mapModelInternCache}.
+   */
+  private static InternCache<String, WeakReference<ReferencePathMatcherByElement>> internCacheModelNull;
+
   /**
    * Model. Needed to convert {@link ArtifactGroupId}'s to {@link NodePath}'s.
    */
-  private Model model;
+  private final Model model;
 
   /**
    * List of ElementMatcher that make up this ReferencePathMatcherByElement.
+   * Unmodifiable once constructed.
    */
-  private List<ElementMatcher> listElementMatcher;
+  private final List<ElementMatcher> listElementMatcher;
 
   /**
    * Indicates the ReferencePathMatcherByElement has a fixed length (does not
    * contain "**" ElementMatcher's).
    */
-  private boolean indFixedLength;
+  private final boolean indFixedLength;
 
   /**
    * Length of the fixed part (excluding the "**" ElementMatcher) of the
    * ReferencePathMatcherByElement.
    */
-  private int fixedLength;
+  private final int fixedLength;
 
   /**
-   * Pre-computed index of the first "**" ElementMatcher.
-   *
-   * If the ReferencePathMatcherByElement is fixed (no "**" ElementMatcher), this is
-   * set to the end of the List of ElementMatcher to make the implementation of the
-   * matches method simpler.
-   *
-   * Used by the matches method to keep track of the ElementMatcherGroup's.
+   * Pre-computed array of the ElementMatcher's, used by the automaton.
    */
-  private int indexFirstDoubleAsterisk;
+  private final ElementMatcher[] arrayElementMatcher;
 
   /**
-   * Pre-computed index of the last "**" ElementMatcher if !indFixedLength.
-   *
-   * Used by the matches method to keep track of the ElementMatcherGroup's.
+   * Pre-computed index of the last ElementMatcher which matches only dynamic
+   * {@link Version}'s. -1 if none.
+   * <p>
+   * Used by the automaton to eliminate positions that cannot be reached after a
+   * static Version.
    */
-  private int indexLastDoubleAsterisk;
+  private final int indexLastDynamicVersion;
 
   /**
-   * Pre-computed List of ElementMatcherGroup if !indFixedLength.
-   *
-   * Used by the matches method to keep track of the ElementMatcherGroup's.
+   * Pre-computed NodePath of the {@link Module} referred to by each ElementMatcher
+   * for a specific Module, including those for a specific artifact. null for other
+   * ElementMatcher's.
+   * <p>
+   * Used by canMatchChildren to take into consideration the rule that forbids
+   * Module cycles, which the automaton does not know about.
    */
-  private List<ElementMatcherGroup> listElementMatcherGroup;
+  private final NodePath[] arrayNodePathSpecificModule;
 
   /**
-   * Pre-computed List of ModuleMatcher.
-   *
-   * Used by the canMatchChildren method to convert a
-   * ReferencePathMatcherByElement to a sequence of specific Module matchers.
+   * Pre-computed index of the last ElementMatcher for a specific Module. -1 if
+   * none.
    */
-  private List<ModuleMatcher> listModuleMatcher;
+  private final int indexLastSpecificModule;
 
   /**
-   * Private default constructor used only internally.
+   * Pre-computed initial State of the automaton.
    */
-  private ReferencePathMatcherByElement() {
-  }
+  private final State stateInitial;
+
+  /**
+   * Pre-computed State of the automaton having no active position. Shared since
+   * once a ReferencePath cannot be matched, none of its children can.
+   */
+  private final State stateDead;
 
   /**
    * Constructor using a ReferencePathMatcherByElement literal.
@@ -954,13 +1431,23 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
    *   must be translated to {@link NodePath}'s.
    */
   public ReferencePathMatcherByElement(String stringReferencePathMatcherByElement, Model model) {
+    List<ElementMatcher> listElementMatcher;
+    boolean indFixedLength;
+    int fixedLength;
     int indexStartElementMatcher;
     int indexEndElementMatcher;
+    int indexLastDynamicVersion;
+    long[] arrayPositionBits;
+    NodePath[] arrayNodePathSpecificModule;
+    int indexLastSpecificModule;
+
+    this.model = model;
+    listElementMatcher = new ArrayList<ElementMatcher>();
+    this.listElementMatcher = Collections.unmodifiableList(listElementMatcher);
 
     try {
-      this.model = model;
-      this.listElementMatcher = new ArrayList<ElementMatcher>();
-      this.indFixedLength = true;
+      indFixedLength = true;
+      fixedLength = 0;
 
       // If the literal ReferencePathMatcherByElement is empty, we must not get into the
       // block below as it assumes at least one ElementMatcher. The rest of this class
@@ -983,26 +1470,89 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
           elementMatcher = ElementMatcher.parse(stringReferencePathMatcherByElement, indexStartElementMatcher, indexEndElementMatcher);
 
           if (elementMatcher.indDoubleAsterisk) {
-            this.indFixedLength = false;
+            indFixedLength = false;
           } else {
-            this.fixedLength++;
+            fixedLength++;
           }
 
-          this.listElementMatcher.add(elementMatcher);
+          listElementMatcher.add(elementMatcher);
 
           indexStartElementMatcher = indexEndElementMatcher + 2; // + 2 to skip "->", if any.
         } while (indexEndElementMatcher != stringReferencePathMatcherByElement.length());
       }
 
-      // Then initialize the transient fields.
-      this.init();
+      this.indFixedLength = indFixedLength;
+      this.fixedLength = fixedLength;
+
+      // Then pre-compute the automaton data.
+
+      this.arrayElementMatcher = listElementMatcher.toArray(new ElementMatcher[listElementMatcher.size()]);
+      indexLastDynamicVersion = -1;
+
+      for (int index = 0; index < this.arrayElementMatcher.length; index++) {
+        if (this.arrayElementMatcher[index].indDynamicVersion) {
+          indexLastDynamicVersion = index;
+        }
+      }
+
+      this.indexLastDynamicVersion = indexLastDynamicVersion;
+
+      // There is one more position than there are ElementMatcher's.
+      arrayPositionBits = new long[(this.arrayElementMatcher.length >>> 6) + 1];
+      arrayPositionBits[0] = 1L;
+      this.closePositions(arrayPositionBits);
+      this.stateInitial = new State(arrayPositionBits, false);
+      this.stateDead = new State(new long[arrayPositionBits.length], false);
+
+      // Finally pre-compute the NodePath's of the specific Module's. If the specific
+      // Module is actually an artifact reference, it must be converted into a NodePath
+      // as it is cycles between Module's that are pertinent here (multiple artifacts
+      // can be produced by the same Module).
+
+      arrayNodePathSpecificModule = new NodePath[this.arrayElementMatcher.length];
+      indexLastSpecificModule = -1;
+
+      for (int index = 0; index < this.arrayElementMatcher.length; index++) {
+        ElementMatcher elementMatcher;
+
+        elementMatcher = this.arrayElementMatcher[index];
+
+        if (!elementMatcher.indSpecificModule) {
+          continue;
+        }
+
+        if (elementMatcher.nodePath != null) {
+          arrayNodePathSpecificModule[index] = elementMatcher.nodePath;
+        } else {
+          ArtifactGroupId artifactGroupId;
+          Module module;
+
+          artifactGroupId = new ArtifactGroupId(elementMatcher.groupId, elementMatcher.artifactId);
+          module = this.model.findModuleByArtifactGroupId(artifactGroupId);
+
+          if (module == null) {
+            throw new ParseException(MessageFormat.format(ReferencePathMatcherByElement.resourceBundle.getString(ReferencePathMatcherByElement.MSG_PATTERN_KEY_ELEMENT_ARTIFACT_NO_MODULE), this, elementMatcher, artifactGroupId), 0);
+          }
+
+          arrayNodePathSpecificModule[index] = module.getNodePath();
+        }
+
+        indexLastSpecificModule = index;
+      }
+
+      this.arrayNodePathSpecificModule = arrayNodePathSpecificModule;
+      this.indexLastSpecificModule = indexLastSpecificModule;
     } catch (ParseException pe) {
       throw new RuntimeException(pe);
     }
   }
 
   /**
-   * Parses a ReferencePathMatcherByElement literal.
+   * Returns the ReferencePathMatcherByElement corresponding to a
+   * ReferencePathMatcherByElement literal, reusing a cached instance if the same
+   * literal was already parsed for the same {@link Model}.
+   * <p>
+   * Throws RuntimeException if parsing fails.
    *
    * @param stringReferencePathMatcherByElement ReferencePathMatcherByElement
    *   literal.
@@ -1010,144 +1560,87 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
    *   ReferencePathMatcherByElement can refer to {@link ArtifactGroupId}'s which
    *   must be translated to {@link NodePath}'s.
    * @return ReferencePathMatcherByElement.
-   * @throws ParseException If parsing fails.
-   */
-  public static ReferencePathMatcherByElement parse(String stringReferencePathMatcherByElement, Model model)
-  throws ParseException {
-    try {
-      return new ReferencePathMatcherByElement(stringReferencePathMatcherByElement, model);
-    } catch (RuntimeException re) {
-      if (re.getCause() instanceof ParseException) {
-        throw (ParseException)re.getCause();
-      } else {
-        throw re;
-      }
-    }
-  }
-
-  /**
-   * Factors out the initialization code for the pre-computed fields since it it
-   * used by both the parse and canMatchChildren methods.
-   *
-   * @throws ParseException If pre-computed fields cannot be computed because of
-   *   invalid data parsed.
    */
-  private void init()
-  throws ParseException {
-    ModuleMatcher moduleMatcher;
-    int index;
-
-    // Pre-compute indexFirstDoubleAsterisk, indexLastDoubleAsterisk and
-    // listElementMatcherGroup.
+  public static ReferencePathMatcherByElement valueOf(String stringReferencePathMatcherByElement, Model model) {
+    InternCache<String, WeakReference<ReferencePathMatcherByElement>> internCache;
+    WeakReference<ReferencePathMatcherByElement> weakReference;
+    ReferencePathMatcherByElement referencePathMatcherByElement;
 
-    for (index = 0; (index < this.listElementMatcher.size()) && !this.listElementMatcher.get(index).indDoubleAsterisk; index++);
+    synchronized (ReferencePathMatcherByElement.mapModelInternCache) {
+      ModelKey modelKey;
 
-    if (index != this.listElementMatcher.size()) {
-      this.indexFirstDoubleAsterisk = index;
-
-      // Here we iterate from the end. If we get here, we know for sure the
-      // ReferencePath is not fixed and therefore we do not expect the index to cross
-      // indexFirstDoubleAsterisk.
-      for (index = this.listElementMatcher.size() - 1; (index >= 0) && !this.listElementMatcher.get(index).indDoubleAsterisk; index--);
-
-      if (index < this.indexFirstDoubleAsterisk) {
-        throw new RuntimeException("Must not get here.");
+      while ((modelKey = (ModelKey)ReferencePathMatcherByElement.referenceQueueModel.poll()) != null) {
+        ReferencePathMatcherByElement.mapModelInternCache.remove(modelKey);
       }
 
-      this.indexLastDoubleAsterisk = index;
-    } else {
-      this.indexFirstDoubleAsterisk = this.listElementMatcher.size();
-    }
-
-    this.listElementMatcherGroup = new ArrayList<ElementMatcherGroup>();
-
-    // We build a List of ElementMatcherGroup. Each element in this List represents a
-    // distinct sequence of ElementMatcher's preceded by a "**" ElementMatcher and
-    // whose match position within the ReferencePath can be adjusted in order to
-    // obtain a match over the complete ReferenceGrathPath. We exclude the last "**"
-    // ElementMatcher since we know for sure it exists and that the last
-    // ElementMatcher group is surrounded by a "**" ElementMatcher and its position
-    // can be adjusted. The position of the ElementMatcher's after the last "**"
-    // ElementMatcher cannot be adjusted so these ElementMatcher's are not included in
-    // a ElementMatcherGroup.
-    for (index = this.indexFirstDoubleAsterisk; index < this.indexLastDoubleAsterisk; index++) {
-      ElementMatcherGroup elementMatcherGroup;
-
-      if (this.listElementMatcher.get(index).indDoubleAsterisk) {
-        elementMatcherGroup = new ElementMatcherGroup();
-
-        elementMatcherGroup.indexFirstElementMatcher = index + 1;
+      if (model == null) {
+        if (ReferencePathMatcherByElement.internCacheModelNull == null) {
+          ReferencePathMatcherByElement.internCacheModelNull = new InternCache<String, WeakReference<ReferencePathMatcherByElement>>(ReferencePathMatcherByElement.MAX_CACHED_INSTANCES);
+        }
 
-        this.listElementMatcherGroup.add(elementMatcherGroup);
+        internCache = ReferencePathMatcherByElement.internCacheModelNull;
       } else {
-        elementMatcherGroup = this.listElementMatcherGroup.get(this.listElementMatcherGroup.size() - 1);
-
-        elementMatcherGroup.nbElementMatchers++;
+        modelKey = new ModelKey(model, ReferencePathMatcherByElement.referenceQueueModel);
+        internCache = ReferencePathMatcherByElement.mapModelInternCache.get(modelKey);
 
-        for (ElementMatcherGroup elementMatcherGroup2: this.listElementMatcherGroup) {
-          elementMatcherGroup2.nbTotalElementMatchers++;
+        if (internCache == null) {
+          internCache = new InternCache<String, WeakReference<ReferencePathMatcherByElement>>(ReferencePathMatcherByElement.MAX_CACHED_INSTANCES);
+          ReferencePathMatcherByElement.mapModelInternCache.put(modelKey, internCache);
         }
       }
     }
 
-    // Pre-compute listModuleMatcher.
-
-    this.listModuleMatcher = new ArrayList<ModuleMatcher>();
-    moduleMatcher = null;
-
-    for (index = 0; index < this.listElementMatcher.size(); index++) {
-      ElementMatcher elementMatcher;
-
-      if (moduleMatcher == null) {
-        moduleMatcher = new ModuleMatcher();
-      }
-
-      elementMatcher = this.listElementMatcher.get(index);
-
-      if (elementMatcher.indDoubleAsterisk) {
-        moduleMatcher.maxPrecedingElements = -1;
-      } else if (elementMatcher.indAsterisk) {
-        moduleMatcher.minPrecedingElements++;
-      } else if (elementMatcher.indSpecificModule) {
-        // Only a ElementMatcher for a specific Module triggers the insertion of a
-        // ModuleMatcher in the List.
-
-        if (elementMatcher.nodePath != null) {
-          moduleMatcher.nodePath = elementMatcher.nodePath;
-        } else {
-          ArtifactGroupId artifactGroupId;
-          Module module;
+    weakReference = internCache.get(stringReferencePathMatcherByElement);
+    referencePathMatcherByElement = (weakReference == null) ? null : weakReference.get();
 
-          // If the specific Module is actually an artifact reference, it must be converted
-          // into a NodePath as it is cycles between Module's that are pertinent here
-          // (multiple artifacts can be produced by the same Module).
+    if (referencePathMatcherByElement == null) {
+      // Parsing is done outside of any lock. If another thread parses the same
+      // literal concurrently, one of the instances is retained. A collected
+      // instance is replaced.
+      ReferencePathMatcherByElement referencePathMatcherByElementExisting;
 
-          artifactGroupId = new ArtifactGroupId(elementMatcher.groupId, elementMatcher.artifactId);
-          module = this.model.findModuleByArtifactGroupId(artifactGroupId);
+      referencePathMatcherByElement = new ReferencePathMatcherByElement(stringReferencePathMatcherByElement, model);
 
-          if (module == null) {
-            throw new ParseException(MessageFormat.format(ReferencePathMatcherByElement.resourceBundle.getString(ReferencePathMatcherByElement.MSG_PATTERN_KEY_ELEMENT_ARTIFACT_NO_MODULE), this, elementMatcher, artifactGroupId), 0);
-          }
+      if (weakReference == null) {
+        weakReference = internCache.intern(stringReferencePathMatcherByElement, new WeakReference<ReferencePathMatcherByElement>(referencePathMatcherByElement));
+        referencePathMatcherByElementExisting = weakReference.get();
 
-          moduleMatcher.nodePath = module.getNodePath();
+        if (referencePathMatcherByElementExisting != null) {
+          referencePathMatcherByElement = referencePathMatcherByElementExisting;
         }
+      } else {
+        internCache.put(stringReferencePathMatcherByElement, new WeakReference<ReferencePathMatcherByElement>(referencePathMatcherByElement));
+      }
+    }
 
-        moduleMatcher.indexElementMatcher = index;
-
-        this.listModuleMatcher.add(moduleMatcher);
+    return referencePathMatcherByElement;
+  }
 
-        moduleMatcher = null;
+  /**
+   * Parses a ReferencePathMatcherByElement literal.
+   * <p>
+   * The returned instance may be shared with other callers (see
+   * {@link #valueOf}).
+   *
+   * @param stringReferencePathMatcherByElement ReferencePathMatcherByElement
+   *   literal.
+   * @param model Model. The {@link Model} is required since a
+   *   ReferencePathMatcherByElement can refer to {@link ArtifactGroupId}'s which
+   *   must be translated to {@link NodePath}'s.
+   * @return ReferencePathMatcherByElement.
+   * @throws ParseException If parsing fails.
+   */
+  public static ReferencePathMatcherByElement parse(String stringReferencePathMatcherByElement, Model model)
+  throws ParseException {
+    try {
+      return ReferencePathMatcherByElement.valueOf(stringReferencePathMatcherByElement, model);
+    } catch (RuntimeException re) {
+      if (re.getCause() instanceof ParseException) {
+        throw (ParseException)re.getCause();
       } else {
-        // This is for all other cases of ElementMatcher that use regexes or otherwise do
-        // not refer to a specific Module.
-        moduleMatcher.minPrecedingElements++;
+        throw re;
       }
     }
-
-    // It can happen that the ReferencePathMatcherByElement is not terminated by a
-    // ElementMatcher for a specific Module. In that case the last ModuleMatcher being
-    // built will not be added to the List of ModuleMatcher. This is OK as we are only
-    // interested in knowing the number of preceding elements.
   }
 
   /**
@@ -1177,16 +1670,14 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
    * ReferencePath are matched by all the ElementMatcher's, also taking into
    * consideration the "*" and "**" ElementMatcher's.
    *
+   * The ReferencePath is run through the automaton into which the
+   * ElementMatcher's are compiled (see {@link #step}).
+   *
    * @param referencePath ReferencePath.
    * @return true if the ReferencePath is matched by the ReferencePathMatcher.
    */
   @Override
   public boolean matches(ReferencePath referencePath) {
-    int indexAfterFixedPrefix;
-    int indexFixedSuffix;
-    int index;
-    int indexReferencePathElement;
-
     if (this.indFixedLength && (this.listElementMatcher.size() != referencePath.size())) {
       return false;
     }
@@ -1195,112 +1686,227 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
       return false;
     }
 
-    // this.indexFirstDoubleAsterisk refers to the end of the List of ElementMatcher's
-    // if the ReferencePathMatcherByElement is fixed.
-    for (indexAfterFixedPrefix = 0; indexAfterFixedPrefix < this.indexFirstDoubleAsterisk; indexAfterFixedPrefix++) {
-      if (!this.listElementMatcher.get(indexAfterFixedPrefix).matches(referencePath.get(indexAfterFixedPrefix))) {
-        return false;
-      }
-    }
+    return this.isAccepting(this.run(referencePath));
+  }
 
-    // If we get to the last ElementMatcher it means the ReferencePathMatcherByElement
-    // is fixed (no "**" ElementMatcher) and the ReferencePath contains the same
-    // number of elements. We therefore have a match.
-    if (indexAfterFixedPrefix == this.listElementMatcher.size()) {
-      return true;
-    }
+  /**
+   * Returns the initial state of the automaton into which the
+   * ReferencePathMatcherByElement is compiled, corresponding to the empty
+   * ReferencePath.
+   * <p>
+   * The state is opaque to the caller and immutable. It is meant to be extended
+   * with {@link #step} as a ReferencePath is extended during the traversal of a
+   * reference graph, so that each step costs a single pass over the
+   * ElementMatcher's regardless of the length of the ReferencePath.
+   *
+   * @return Initial state.
+   */
+  @Override
+  public Object initialState() {
+    return this.stateInitial;
+  }
+
+  /**
+   * Computes the state of the automaton after a {@link Reference} is appended to
+   * the ReferencePath corresponding to a given state.
+   * <p>
+   * The given state is not modified.
+   *
+   * @param state State returned by {@link #initialState} or by a previous call to
+   *   this method.
+   * @param reference Reference.
+   * @return New state.
+   */
+  @Override
+  public Object step(Object state, Reference reference) {
+    long[] arrayPositionBits;
+    long[] arrayPositionBitsNew;
+    int size;
+    boolean indEmpty;
+    ModuleVersion moduleVersion;
+
+    arrayPositionBits = ((State)state).arrayPositionBits;
+    arrayPositionBitsNew = new long[arrayPositionBits.length];
+    size = this.arrayElementMatcher.length;
+    indEmpty = true;
+
+    // The accepting position, if active, is not considered since it cannot consume
+    // a Reference.
+    for (int position = ReferencePathMatcherByElement.nextPosition(arrayPositionBits, 0); (position != -1) && (position < size); position = ReferencePathMatcherByElement.nextPosition(arrayPositionBits, position + 1)) {
+      ElementMatcher elementMatcher;
 
-    // If we get here, there is at least one "**" ElementMatcher and
-    // this.indexLastDoubleAsterisk is set.
+      elementMatcher = this.arrayElementMatcher[position];
 
-    // Here we use a 0-based index, but we iterate from the end. This is required
-    // since the number of ReferencePathMatcherByElement's is not necessarily the same
-    // as the number of ReferencePath elements to match.
-    for (index = 0; this.listElementMatcher.size() - index - 1 > this.indexLastDoubleAsterisk; index++) {
-      if (!this.listElementMatcher.get(this.listElementMatcher.size() - index - 1).matches(referencePath.get(referencePath.size() - index - 1))) {
-        return false;
+      if (elementMatcher.indDoubleAsterisk) {
+        arrayPositionBitsNew[position >>> 6] |= 1L << position;
+        indEmpty = false;
+      } else if (elementMatcher.matches(reference)) {
+        arrayPositionBitsNew[(position + 1) >>> 6] |= 1L << (position + 1);
+        indEmpty = false;
       }
     }
 
-    // If we get to indexFirstDoubleAsterisk it means there is only one "**"
-    // ElementMatcher. Since both the elements before and after the "**"
-    // ElementMatcher were matched, we have a match.
-    if ((this.listElementMatcher.size() - index - 1) == this.indexFirstDoubleAsterisk) {
-      return true;
+    if (indEmpty) {
+      return this.stateDead;
     }
 
-    indexFixedSuffix = referencePath.size() - index;
+    this.closePositions(arrayPositionBitsNew);
 
-    // We now need to match each fixed ElementMatcher between the first and last "**"
-    // to the ReferencePath elements between the prefix and the suffix.
+    moduleVersion = reference.getModuleVersion();
 
-    indexReferencePathElement = indexAfterFixedPrefix;
+    return new State(arrayPositionBitsNew, (moduleVersion != null) && (moduleVersion.getVersion() != null) && (moduleVersion.getVersion().getVersionType() == VersionType.STATIC));
+  }
 
-    for (ElementMatcherGroup elementMatcherGroup: this.listElementMatcherGroup) {
-      int indexElementMatcher;
+  /**
+   * Indicates if a state of the automaton corresponds to a ReferencePath that is
+   * matched.
+   *
+   * @param state State.
+   * @return See description.
+   */
+  @Override
+  public boolean isAccepting(Object state) {
+    int size;
 
-      indexElementMatcher = elementMatcherGroup.indexFirstElementMatcher;
+    size = this.arrayElementMatcher.length;
 
-      // Search for the first ReferencePath element which matches the current
-      // ElementMatcher. Those which do not match are simply dropped as they are
-      // implicitly matched by the "**" preceeding the current ElementMatcherGroup.
-      for (; indexReferencePathElement < indexFixedSuffix; indexReferencePathElement++) {
-        if (this.listElementMatcher.get(indexElementMatcher).matches(referencePath.get(indexReferencePathElement))) {
-          break;
-        }
-      }
+    return (((State)state).arrayPositionBits[size >>> 6] & (1L << size)) != 0;
+  }
 
-      // If we could not find the first ReferencePath element which matches the first
-      // ElementMatcher in the group, there is no match.
-      if (indexReferencePathElement == indexFixedSuffix) {
-        return false;
-      }
+  /**
+   * Indicates if children of the ReferencePath corresponding to a state of the
+   * automaton can potentially be matched.
+   * <p>
+   * This is the case if a position other than the accepting one is active. If the
+   * last Reference consumed refers to a static {@link Version}, positions that
+   * precede an ElementMatcher matching only dynamic Version's are not
+   * considered, since a static {@link ModuleVersion} cannot refer to dynamic
+   * Version's.
+   *
+   * @param state State.
+   * @return See description.
+   */
+  @Override
+  public boolean canContinue(Object state) {
+    State stateCast;
+    int position;
 
-      // If there is not enough ReferencePath elements to match all the fixed remaining
-      // ElementMatchers, there is no match.
-      if ((indexFixedSuffix - indexReferencePathElement) < elementMatcherGroup.nbTotalElementMatchers) {
-        return false;
+    stateCast = (State)state;
+
+    position = ReferencePathMatcherByElement.nextPosition(stateCast.arrayPositionBits, stateCast.indLeafStatic ? this.indexLastDynamicVersion + 1 : 0);
+
+    return (position != -1) && (position < this.arrayElementMatcher.length);
+  }
+
+  /**
+   * A ReferencePathMatcherByElement matches all children of the ReferencePath
+   * corresponding to a state of the automaton if the state is accepting and the
+   * last ElementMatcher is "**".
+   *
+   * @param state State.
+   * @return See description.
+   */
+  @Override
+  public boolean acceptsAllContinuations(Object state) {
+    return (   (this.arrayElementMatcher.length != 0)
+            && this.arrayElementMatcher[this.arrayElementMatcher.length - 1].indDoubleAsterisk
+            && this.isAccepting(state));
+  }
+
+  /**
+   * Runs a complete ReferencePath through the automaton.
+   *
+   * @param referencePath ReferencePath.
+   * @return State.
+   */
+  private State run(ReferencePath referencePath) {
+    Run run;
+
+    run = new Run();
+    referencePath.forEachReference(run);
+
+    return (State)run.state;
+  }
+
+  /**
+   * Activates the positions that follow active "**" ElementMatcher's, since these
+   * can match 0 Reference.
+   * <p>
+   * Positions are processed in increasing order so that consecutive "**"
+   * ElementMatcher's are handled in a single pass.
+   *
+   * @param arrayPositionBits Bit set of the active positions. Modified in place.
+   */
+  private void closePositions(long[] arrayPositionBits) {
+    int size;
+
+    size = this.arrayElementMatcher.length;
+
+    for (int position = ReferencePathMatcherByElement.nextPosition(arrayPositionBits, 0); (position != -1) && (position < size); position = ReferencePathMatcherByElement.nextPosition(arrayPositionBits, position + 1)) {
+      if (this.arrayElementMatcher[position].indDoubleAsterisk) {
+        arrayPositionBits[(position + 1) >>> 6] |= 1L << (position + 1);
       }
+    }
+  }
 
-      // Once we match the first ReferencePath element, all the others must match the
-      // ElementMatcher's within the ElementMatcherGroup.
-      for (indexReferencePathElement++, indexElementMatcher++; indexElementMatcher < elementMatcherGroup.nbElementMatchers; indexReferencePathElement++, indexElementMatcher++) {
-        if (!this.listElementMatcher.get(indexElementMatcher).matches(referencePath.get(indexReferencePathElement))) {
-          return false;
-        }
+  /**
+   * Returns the first active position within a bit set of positions, starting at
+   * a given position.
+   *
+   * @param arrayPositionBits Bit set of positions.
+   * @param positionStart Position at which to start.
+   * @return Active position. -1 if none.
+   */
+  private static int nextPosition(long[] arrayPositionBits, int positionStart) {
+    int indexWord;
+    long word;
+
+    indexWord = positionStart >>> 6;
+
+    if (indexWord >= arrayPositionBits.length) {
+      return -1;
+    }
+
+    // Shift count is implicitly taken modulo 64.
+    word = arrayPositionBits[indexWord] & (-1L << positionStart);
+
+    while (word == 0) {
+      if (++indexWord == arrayPositionBits.length) {
+        return -1;
       }
+
+      word = arrayPositionBits[indexWord];
     }
 
-    // If we get here, all the ElementMatcherGroup's where matched somewhere within
-    // the ReferencePath. We therefore have a match. There may be some remaining
-    // ReferencePath elements, but they are implicitly matched by the last "**".
-    return true;
+    return (indexWord << 6) + Long.numberOfTrailingZeros(word);
   }
 
   /**
    * Verifies if a ReferencePathMatcherByElement can potentially match children of a
    * ReferencePath.
    * <p>
-   * In many cases this is obvious. ReferencePathMatcherByElement X -&gt; Y will not
-   * match any children of ReferencePath A -&gt; B.
+   * The ReferencePath is run through the automaton (see {@link #step}) and
+   * children can be matched only if the resulting state has a live position (see
+   * {@link #canContinue}). For example ReferencePathMatcherByElement X -&gt; Y
+   * cannot match any children of ReferencePath A -&gt; B.
    * <p>
    * But the rule that forbids any Module cycle within a reference graph allows us
-   * to determine in certain cases that the children of a ReferencePath cannot be
-   * matched by a ReferencePathMatcherByElement. For example
+   * to determine in more cases that the children of a ReferencePath cannot be
+   * matched. A live position is not considered if an ElementMatcher for a specific
+   * Module at or after it refers to a Module that is already present in the
+   * ReferencePath, since ElementMatcher's for a specific Module cannot be skipped
+   * and matching it again would imply a cycle. For example
    * ReferencePathMatcherByElement ** -&gt; B -&gt; A cannot match children of
-   * ReferencePath A -&gt; B since this would imply a cycle A -&gt; B -&gt; A which
-   * is not permitted. There are many other more subtle cases that are covered by
-   * this method such as ReferencePathMatcherByElement A -&gt; ** -&gt; B -&gt; **
-   * -&gt; C that can match children of A -&gt; E, but not A -&gt; C.
+   * ReferencePath A -&gt; B, and ReferencePathMatcherByElement A -&gt; ** -&gt; B
+   * -&gt; ** -&gt; C can match children of A -&gt; E, but not of A -&gt; C.
    * <p>
    * This is used for optimizing the traversal of reference graphs (traversal
    * avoidance).
    * <p>
-   * Note that when regexes are used within a ElementMatcher for the Module, it is
-   * not always possible to determine if children of a ReferencePath can be matched
-   * or not. In that case, the method returns that children can be matched, forcing
-   * the caller to perform the traversal and apply the
-   * ReferencePathMatcherByElement's.
+   * Note that when regexes are used within a ElementMatcher, it is not always
+   * possible to determine if children of a ReferencePath can be matched or not. In
+   * that case, the method returns that children can be matched, forcing the caller
+   * to perform the traversal and apply the ReferencePathMatcherByElement's.
    *
    * @param referencePath ReferencePath.
    * @return true if the ReferencePathMatcher can match children of the
@@ -1308,187 +1914,49 @@ public class ReferencePathMatcherByElement implements ReferencePathMatcher {
    */
   @Override
   public boolean canMatchChildren(ReferencePath referencePath) {
-    ReferencePath referencePathCopy;
-    int indexModuleMatcher;
-    ModuleMatcher moduleMatcher;
-    int indexTrailingElementMatcher;
-    int indexElement;
-    int nbFollowingElements;
-    ReferencePathMatcherByElement referencePathMatcherByElementPrefix;
-    ElementMatcher elementMatcherDoubleAsterisk;
-
-    if (this.matchesAllChildren(referencePath)) {
-      return true;
-    }
-
-    referencePathCopy = new ReferencePath(referencePath);
-
-    // At the end of the loop below we want indexTrailingElementMatcher to refer to
-    // the ElementMatcher following the one corresponding to the last ModuleMatcher
-    // for which a specific Module was found in the ReferencePath. We start with 0
-    // since if no ModuleMatcher corresponds to a specific Module, that ElementMatcher
-    // is the first one.
-    indexTrailingElementMatcher = 0;
-
-    next_module_matcher:
-    for (indexModuleMatcher = 0; indexModuleMatcher < this.listModuleMatcher.size(); indexModuleMatcher++) {
-      moduleMatcher = this.listModuleMatcher.get(indexModuleMatcher);
-
-      for (indexElement = 0; indexElement < referencePathCopy.size(); indexElement++) {
-        // During the iteration among the elements in the ReferencePath, we ensure that
-        // the number of unmatched elements (for a specific Module) does not exceed the
-        // maximum number of preceding elements. If that becomes the case, no children can
-        // be matched.
-        if ((moduleMatcher.maxPrecedingElements != -1) && (indexElement > moduleMatcher.maxPrecedingElements)) {
-          return false;
-        }
-
-        if (referencePathCopy.get(indexElement).getModuleVersion().getNodePath().equals(moduleMatcher.nodePath)) {
-          // If a specific Module is present in ReferencePath, we check if the number of
-          // preceding elements in the ReferencePathMatcherByElement can match those in the
-          // ReferencePath. If not, the ReferencePathMatcher does not match the
-          // ReferencePath and will not match any of its children.
-          // If a specific Module is present in ReferencePath, we check if the
-          // ReferencePathMatcher can match at least the preceding elements in the
-          // ReferencePath. The maximum will have been checked above.
-          if (indexElement < moduleMatcher.minPrecedingElements) {
-            return false;
-          }
-
-          // We need to eliminate the elements in the ReferencePath up to and including the
-          // one that is matched by the specific Module in the
-          // ReferencePathMatcherByElement.
-          referencePathCopy.removeRootReferences(indexElement + 1);
+    State state;
+    SpecificModuleSearch specificModuleSearch;
+    int positionStart;
+    int position;
 
-          indexTrailingElementMatcher = moduleMatcher.indexElementMatcher + 1;
-
-          // When a specific Module is found in the ReferencePath, we move on to the next
-          // ModuleMatcher.
-          continue next_module_matcher;
-        }
-      }
+    state = this.run(referencePath);
 
-      // We also check for exceeding the maximum number of unmatched elements at the end
-      // when no more element is matched.
-      if ((moduleMatcher.maxPrecedingElements != -1) && (indexElement > moduleMatcher.maxPrecedingElements)) {
-        return false;
-      }
-
-      // If we get here it means the specific Module is not found in the ReferencePath.
-      // In that case we must exit the loop and go to the next step of the algorithm.
-      break;
-    }
-
-    // Here indexModuleMatcher refers to the first ModuleMatcher that did not match or
-    // to the end of the List of ModuleMatcher if they all matched.
-    // If there are remaining ModuleMatcher's we must ensure that no one refers to a
-    // specific Module that is present in the original ReferencePath. Otherwise (if
-    // these Modules were not eliminated from the working ReferencePath), no children
-    // can match as this would involve a cycle.
-    while (indexModuleMatcher < this.listModuleMatcher.size()) {
-      for (indexElement = 0; indexElement < referencePath.size(); indexElement++) {
-        if (referencePath.get(indexElement).getModuleVersion().getNodePath().equals(this.listModuleMatcher.get(indexModuleMatcher).nodePath)) {
-          return false;
-        }
-      }
-
-      indexModuleMatcher++;
-    }
-
-    // Here indexTrailingElementMatcher refers to the ElementMatcher following the
-    // last ModuleMatcher corresponding to a specific Module in the ReferencePath.
-    // We must ensure that these trailing ElementMatcher's are such that they can
-    // match deep enough to reach the children of the ReferencePath, starting at the
-    // element following the last one to be matched by that last ModuleMatcher. That
-    // element is the one in referencePathCopy.
-    // Note that indexTrailingElementMatcher can refer to the end of the List of
-    // ElementMatcher. In such a case, no iteration will be performed,
-    // nbFollowingElements will remain 0 and the method will return false (no children
-    // match possible).
-
-    nbFollowingElements = 0;
-
-    for (int index = indexTrailingElementMatcher; index < this.listElementMatcher.size(); index++) {
-      if (this.listElementMatcher.get(index).indDoubleAsterisk) {
-        nbFollowingElements = -1;
-        break;
-      } else {
-        nbFollowingElements++;
-      }
-    }
-
-    if ((nbFollowingElements != -1) && (nbFollowingElements <= referencePathCopy.size())) {
+    if (!this.canContinue(state)) {
       return false;
     }
 
-    // Now we know that the ReferencePathMatcherByElement can potentially match
-    // children of the ReferencePath: No cycle would be introduced and it is deep
-    // enough. But all the tests above have been done by matching the NodePath of the
-    // ElementMatcher's referring to specific Module's. Before concluding that the
-    // ReferencePathMatcherByElement can match children of the ReferencePath we at
-    // least verify that the current ReferencePath is matched by the ElementMatcher's
-    // up to the last ElementMatcher that referred to a specific Module. We also
-    // consider the following ElementMatcher's which match single Module's (are not
-    // "**" since if these are not matched, no children can match. We do this by
-    // invoking the matches method with a modified ReferencePathMatcherByElement that
-    // includes a "**" ElementMatcher after the last ElementMatcher for a single
-    // Module.
-    // The problem is that ReferencePathMatcherByElement implement value-based
-    // semantics (instances are immutable). But we are in this class so we allow
-    // ourselves to build a temporary ReferencePathMatcherByElement that suits our
-    // purpose.
-
-    while (   (indexTrailingElementMatcher < this.listElementMatcher.size())
-           && !this.listElementMatcher.get(indexTrailingElementMatcher).indDoubleAsterisk) {
-
-      indexTrailingElementMatcher++;
+    if (this.indexLastSpecificModule == -1) {
+      return true;
     }
 
-    referencePathMatcherByElementPrefix = new ReferencePathMatcherByElement();
-    referencePathMatcherByElementPrefix.model = this.model;
-    referencePathMatcherByElementPrefix.listElementMatcher = new ArrayList<ElementMatcher>(this.listElementMatcher.subList(0, indexTrailingElementMatcher));
-    elementMatcherDoubleAsterisk = new ElementMatcher();
-    elementMatcherDoubleAsterisk.indDoubleAsterisk = true;
-    referencePathMatcherByElementPrefix.listElementMatcher.add(elementMatcherDoubleAsterisk);
+    specificModuleSearch = new SpecificModuleSearch();
+    referencePath.forEachReference(specificModuleSearch);
 
-    // This is normally initialized by the public constructor, which we are not using
-    // here.
-    referencePathMatcherByElementPrefix.fixedLength = indexTrailingElementMatcher;
-
-    try {
-      referencePathMatcherByElementPrefix.init();
-    } catch (ParseException pe) {
-      // We do not expect to catch ParseException here since the data comes from the
-      // original ReferencePathMatcherByElement which has already been validated.
-      throw new RuntimeException(pe);
+    if (specificModuleSearch.indexElementMatcher == -1) {
+      return true;
     }
 
-    if (!referencePathMatcherByElementPrefix.matches(referencePath)) {
-      return false;
-    }
+    // Positions up to and including that of the last ElementMatcher for a specific
+    // Module present in the ReferencePath would require that Module to be matched
+    // again. Positions eliminated by canContinue because of static Version's are
+    // also not considered.
+    positionStart = specificModuleSearch.indexElementMatcher + 1;
 
-    // Finally, before returning that that children can be matched, we use the
-    // knowledge that a static ModuleVersion cannot refer to a dynamic ModuleVersion.
-    // Therefore if the ReferencePath ends with a static ModuleVersion and one
-    // remaining ElementMatcher's matches only dynamic Version'sm no children can be
-    // matched.
-    if (referencePath.getLeafModuleVersion().getVersion().getVersionType() == VersionType.STATIC) {
-      for (; indexTrailingElementMatcher < this.listElementMatcher.size(); indexTrailingElementMatcher++) {
-        if (this.listElementMatcher.get(indexTrailingElementMatcher).indDynamicVersion) {
-          return false;
-        }
-      }
+    if (state.indLeafStatic && (positionStart <= this.indexLastDynamicVersion)) {
+      positionStart = this.indexLastDynamicVersion + 1;
     }
 
-    return true;
+    position = ReferencePathMatcherByElement.nextPosition(state.arrayPositionBits, positionStart);
+
+    return (position != -1) && (position < this.arrayElementMatcher.length);
   }
 
   @Override
   public boolean matchesAllChildren(ReferencePath referencePath) {
     // The only case where we can safely conclude that all children are matched is when
     // the ReferencePathMatcherByElement matches and ends with "**".
-    return (   (this.listElementMatcher.size() != 0)
-            && this.listElementMatcher.get(this.listElementMatcher.size() - 1).indDoubleAsterisk
+    return (   (this.arrayElementMatcher.length != 0)
+            && this.arrayElementMatcher[this.arrayElementMatcher.length - 1].indDoubleAsterisk
             && this.matches(referencePath));
   }
 
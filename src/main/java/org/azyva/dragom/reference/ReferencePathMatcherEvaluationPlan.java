@@ -0,0 +1,571 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.azyva.dragom.reference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adaptive evaluation order of the ReferencePathMatcher's of a
+ * {@link ReferencePathMatcherAnd} or {@link ReferencePathMatcherOr}.
+ * <p>
+ * The children of a ReferencePathMatcherAnd (resp. ReferencePathMatcherOr) can be
+ * evaluated in any order and evaluation stops at the first one which does not
+ * match (resp. matches). The cost of evaluating a child is not uniform:
+ * ReferencePathMatcherByElement is a cheap automaton step, whereas
+ * {@link ReferencePathMatcherVersionAttribute} requires an SCM call. This class
+ * keeps, for each child, statistics about its cost (elapsed time) and its
+ * selectivity (how often it short-circuits the evaluation) and periodically
+ * reorders the children by increasing cost divided by probability of
+ * short-circuiting, which is the optimal order for independent children.
+ * <p>
+ * Only one evaluation out of {@link #SAMPLING_MASK} + 1 is measured, so that the
+ * overhead of System.nanoTime remains negligible for cheap children. Statistics
+ * are halved each time the children are reordered so that the order follows
+ * changes in the ReferencePath's submitted.
+ * <p>
+ * Statistics are updated without synchronization. Lost updates under concurrent
+ * evaluation only affect the quality of the order, never the result, since the
+ * order itself is always a complete permutation published atomically.
+ * <p>
+ * Statistics are kept separately for each kind of evaluation (matches,
+ * canMatchChildren and matchesAllChildren, the stateful equivalents sharing the
+ * statistics of their non-stateful counterpart) since their selectivity
+ * generally differ.
+ *
+ * @author David Raymond
+ */
+final class ReferencePathMatcherEvaluationPlan {
+  /**
+   * Evaluation of {@link ReferencePathMatcher#matches}.
+   */
+  static final int OPERATION_MATCHES = 0;
+
+  /**
+   * Evaluation of {@link ReferencePathMatcher#canMatchChildren}.
+   */
+  static final int OPERATION_CAN_MATCH_CHILDREN = 1;
+
+  /**
+   * Evaluation of {@link ReferencePathMatcher#matchesAllChildren}.
+   */
+  static final int OPERATION_MATCHES_ALL_CHILDREN = 2;
+
+  /**
+   * Evaluation of {@link ReferencePathMatcher#isAccepting}.
+   */
+  static final int OPERATION_IS_ACCEPTING = 3;
+
+  /**
+   * Evaluation of {@link ReferencePathMatcher#canContinue}.
+   */
+  static final int OPERATION_CAN_CONTINUE = 4;
+
+  /**
+   * Evaluation of {@link ReferencePathMatcher#acceptsAllContinuations}.
+   */
+  static final int OPERATION_ACCEPTS_ALL_CONTINUATIONS = 5;
+
+  /**
+   * Number of sets of statistics. The stateful operations share the statistics of
+   * their non-stateful counterpart.
+   */
+  private static final int NB_STATISTICS = 3;
+
+  /**
+   * Names of the sets of statistics, for {@link #appendPlan}.
+   */
+  private static final String[] ARRAY_STATISTICS_NAME = {"matches", "canMatchChildren", "matchesAllChildren"};
+
+  /**
+   * Mask applied to the evaluation counter to determine if an evaluation is
+   * measured.
+   */
+  private static final int SAMPLING_MASK = 15;
+
+  /**
+   * Number of measured evaluations after which the children are reordered.
+   */
+  private static final int NB_SAMPLES_REORDER = 256;
+
+  /**
+   * Statistics for one kind of evaluation.
+   */
+  private static final class Statistics {
+    /**
+     * Indexes of the children in evaluation order.
+     */
+    private volatile int[] arrayOrder;
+
+    /**
+     * Number of measured evaluations of each child.
+     */
+    private long[] arrayNbEvaluations;
+
+    /**
+     * Number of measured evaluations of each child which short-circuited the
+     * evaluation.
+     */
+    private long[] arrayNbShortCircuits;
+
+    /**
+     * Cumulative elapsed time of the measured evaluations of each child.
+     */
+    private long[] arrayNanos;
+
+    /**
+     * Evaluation counter used for sampling.
+     */
+    private int counter;
+
+    /**
+     * Number of measured evaluations since the last reorder.
+     */
+    private int nbSamples;
+
+    /**
+     * Constructor.
+     *
+     * @param nbChildren Number of children.
+     */
+    private Statistics(int nbChildren) {
+      int[] arrayOrder;
+
+      arrayOrder = new int[nbChildren];
+
+      for (int i = 0; i < nbChildren; i++) {
+        arrayOrder[i] = i;
+      }
+
+      this.arrayOrder = arrayOrder;
+      this.arrayNbEvaluations = new long[nbChildren];
+      this.arrayNbShortCircuits = new long[nbChildren];
+      this.arrayNanos = new long[nbChildren];
+    }
+
+    /**
+     * Returns the rank of a child. Children are evaluated by increasing rank.
+     * <p>
+     * The probability of short-circuiting is smoothed so that a child which never
+     * short-circuited still gets a finite rank and a child which was never
+     * evaluated (because it always came after one that short-circuited) gets a
+     * rank of 0 and is tried early at least once.
+     *
+     * @param index Index of the child.
+     * @return See description.
+     */
+    private double getRank(int index) {
+      long nbEvaluations;
+      double cost;
+      double probabilityShortCircuit;
+
+      nbEvaluations = this.arrayNbEvaluations[index];
+
+      if (nbEvaluations == 0) {
+        return 0.0;
+      }
+
+      cost = (double)this.arrayNanos[index] / nbEvaluations;
+      probabilityShortCircuit = (this.arrayNbShortCircuits[index] + 1.0) / (nbEvaluations + 2.0);
+
+      return cost / probabilityShortCircuit;
+    }
+
+    /**
+     * Reorders the children according to their rank and halves the statistics.
+     * <p>
+     * The sort is stable so that children having the same rank remain in
+     * declaration order.
+     */
+    private void reorder() {
+      int nbChildren;
+      double[] arrayRank;
+      int[] arrayOrder;
+
+      nbChildren = this.arrayNbEvaluations.length;
+      arrayRank = new double[nbChildren];
+      arrayOrder = this.arrayOrder.clone();
+
+      for (int i = 0; i < nbChildren; i++) {
+        arrayRank[i] = this.getRank(i);
+      }
+
+      // Insertion sort: the number of children is small and the order is generally
+      // almost sorted already.
+      for (int i = 1; i < nbChildren; i++) {
+        int index;
+        int j;
+
+        index = arrayOrder[i];
+
+        for (j = i; (j > 0) && (arrayRank[arrayOrder[j - 1]] > arrayRank[index]); j--) {
+          arrayOrder[j] = arrayOrder[j - 1];
+        }
+
+        arrayOrder[j] = index;
+      }
+
+      for (int i = 0; i < nbChildren; i++) {
+        this.arrayNbEvaluations[i] >>= 1;
+        this.arrayNbShortCircuits[i] >>= 1;
+        this.arrayNanos[i] >>= 1;
+      }
+
+      this.nbSamples = 0;
+      this.arrayOrder = arrayOrder;
+    }
+  }
+
+  /**
+   * Result of a child which short-circuits the evaluation. false for a
+   * ReferencePathMatcherAnd, true for a ReferencePathMatcherOr.
+   */
+  private boolean resultShortCircuit;
+
+  /**
+   * Statistics for each kind of evaluation. Replaced as a whole when the number of
+   * children changes.
+   */
+  private volatile Statistics[] arrayStatistics;
+
+  /**
+   * Constructor.
+   *
+   * @param resultShortCircuit Result of a child which short-circuits the
+   *   evaluation.
+   */
+  ReferencePathMatcherEvaluationPlan(boolean resultShortCircuit) {
+    this.resultShortCircuit = resultShortCircuit;
+    this.reset(0);
+  }
+
+  /**
+   * Discards the statistics and reverts to declaration order.
+   * <p>
+   * Must be called when the List of children is modified. Changes in the size of
+   * the List are also detected during evaluation, but not replacements.
+   *
+   * @param nbChildren Number of children.
+   */
+  void reset(int nbChildren) {
+    Statistics[] arrayStatistics;
+
+    arrayStatistics = new Statistics[ReferencePathMatcherEvaluationPlan.NB_STATISTICS];
+
+    for (int i = 0; i < arrayStatistics.length; i++) {
+      arrayStatistics[i] = new Statistics(nbChildren);
+    }
+
+    this.arrayStatistics = arrayStatistics;
+  }
+
+  /**
+   * Evaluates the children.
+   * <p>
+   * Returns the short-circuit result if any child returns it, and the opposite
+   * otherwise. As a special case, true is returned if there are no children, for
+   * both ReferencePathMatcherAnd and ReferencePathMatcherOr.
+   *
+   * @param operation Operation. One of the OPERATION_* constants.
+   * @param listReferencePathMatcher List of children.
+   * @param referencePath ReferencePath, for non-stateful operations.
+   * @param arrayState States of the children, for stateful operations.
+   * @return See description.
+   */
+  boolean evaluate(int operation, List<ReferencePathMatcher> listReferencePathMatcher, ReferencePath referencePath, Object[] arrayState) {
+    int nbChildren;
+    Statistics[] arrayStatistics;
+    Statistics statistics;
+    int[] arrayOrder;
+    boolean indSample;
+
+    nbChildren = listReferencePathMatcher.size();
+
+    if (nbChildren == 0) {
+      return true;
+    }
+
+    arrayStatistics = this.arrayStatistics;
+
+    if (arrayStatistics[0].arrayNbEvaluations.length != nbChildren) {
+      this.reset(nbChildren);
+      arrayStatistics = this.arrayStatistics;
+    }
+
+    statistics = arrayStatistics[operation % ReferencePathMatcherEvaluationPlan.NB_STATISTICS];
+    arrayOrder = statistics.arrayOrder;
+    indSample = (statistics.counter++ & ReferencePathMatcherEvaluationPlan.SAMPLING_MASK) == 0;
+
+    for (int index: arrayOrder) {
+      ReferencePathMatcher referencePathMatcher;
+      long start;
+      boolean result;
+
+      referencePathMatcher = listReferencePathMatcher.get(index);
+      start = indSample ? System.nanoTime() : 0;
+
+      switch (operation) {
+      case OPERATION_MATCHES:
+        result = referencePathMatcher.matches(referencePath);
+        break;
+      case OPERATION_CAN_MATCH_CHILDREN:
+        result = referencePathMatcher.canMatchChildren(referencePath);
+        break;
+      case OPERATION_MATCHES_ALL_CHILDREN:
+        result = referencePathMatcher.matchesAllChildren(referencePath);
+        break;
+      case OPERATION_IS_ACCEPTING:
+        result = referencePathMatcher.isAccepting(arrayState[index]);
+        break;
+      case OPERATION_CAN_CONTINUE:
+        result = referencePathMatcher.canContinue(arrayState[index]);
+        break;
+      case OPERATION_ACCEPTS_ALL_CONTINUATIONS:
+        result = referencePathMatcher.acceptsAllContinuations(arrayState[index]);
+        break;
+      default:
+        throw new RuntimeException("Invalid operation " + operation + '.');
+      }
+
+      if (indSample) {
+        statistics.arrayNanos[index] += System.nanoTime() - start;
+        statistics.arrayNbEvaluations[index]++;
+
+        if (result == this.resultShortCircuit) {
+          statistics.arrayNbShortCircuits[index]++;
+        }
+      }
+
+      if (result == this.resultShortCircuit) {
+        if (indSample) {
+          this.endSample(statistics);
+        }
+
+        return result;
+      }
+    }
+
+    if (indSample) {
+      this.endSample(statistics);
+    }
+
+    return !this.resultShortCircuit;
+  }
+
+  /**
+   * Called at the end of a measured evaluation to reorder the children when
+   * enough evaluations were measured.
+   *
+   * @param statistics Statistics.
+   */
+  private void endSample(Statistics statistics) {
+    if (++statistics.nbSamples >= ReferencePathMatcherEvaluationPlan.NB_SAMPLES_REORDER) {
+      statistics.reorder();
+    }
+  }
+
+  /**
+   * Appends a dump of the plan to a StringBuilder, for debugging.
+   * <p>
+   * The children are listed in the current evaluation order for matches, with
+   * their index in the List and their statistics. The current evaluation orders
+   * for the other kinds of evaluation follow. Children which are themselves
+   * ReferencePathMatcherAnd or ReferencePathMatcherOr are dumped recursively.
+   *
+   * @param stringBuilder StringBuilder.
+   * @param indent Indentation.
+   * @param name Name of the ReferencePathMatcher ("AND" or "OR").
+   * @param listReferencePathMatcher List of children.
+   */
+  void appendPlan(StringBuilder stringBuilder, String indent, String name, List<ReferencePathMatcher> listReferencePathMatcher) {
+    Statistics[] arrayStatistics;
+    Statistics statistics;
+    String indentChild;
+
+    arrayStatistics = this.arrayStatistics;
+
+    stringBuilder.append(indent).append(name).append('\n');
+
+    if (arrayStatistics[0].arrayNbEvaluations.length != listReferencePathMatcher.size()) {
+      stringBuilder.append(indent).append("  (no statistics since the List was modified)\n");
+      arrayStatistics = null;
+    }
+
+    indentChild = indent + "    ";
+
+    if (arrayStatistics == null) {
+      for (int i = 0; i < listReferencePathMatcher.size(); i++) {
+        stringBuilder.append(indent).append("  [").append(i).append("]\n");
+        ReferencePathMatcherEvaluationPlan.appendChild(stringBuilder, indentChild, listReferencePathMatcher.get(i));
+      }
+
+      return;
+    }
+
+    statistics = arrayStatistics[ReferencePathMatcherEvaluationPlan.OPERATION_MATCHES];
+
+    for (int index: statistics.arrayOrder) {
+      long nbEvaluations;
+
+      nbEvaluations = statistics.arrayNbEvaluations[index];
+
+      stringBuilder.append(indent).append("  [").append(index).append("] evaluations=").append(nbEvaluations);
+      stringBuilder.append(" short-circuits=").append(statistics.arrayNbShortCircuits[index]);
+      stringBuilder.append(" avg-nanos=").append((nbEvaluations == 0) ? 0 : statistics.arrayNanos[index] / nbEvaluations);
+      stringBuilder.append(" rank=").append(String.format("%.1f", statistics.getRank(index))).append('\n');
+      ReferencePathMatcherEvaluationPlan.appendChild(stringBuilder, indentChild, listReferencePathMatcher.get(index));
+    }
+
+    for (int i = 1; i < arrayStatistics.length; i++) {
+      stringBuilder.append(indent).append("  order for ").append(ReferencePathMatcherEvaluationPlan.ARRAY_STATISTICS_NAME[i]).append(':');
+
+      for (int index: arrayStatistics[i].arrayOrder) {
+        stringBuilder.append(' ').append(index);
+      }
+
+      stringBuilder.append('\n');
+    }
+  }
+
+  /**
+   * Appends a child to the dump of a plan.
+   *
+   * @param stringBuilder StringBuilder.
+   * @param indent Indentation.
+   * @param referencePathMatcher Child ReferencePathMatcher.
+   */
+  private static void appendChild(StringBuilder stringBuilder, String indent, ReferencePathMatcher referencePathMatcher) {
+    if (referencePathMatcher instanceof ReferencePathMatcherAnd) {
+      ((ReferencePathMatcherAnd)referencePathMatcher).appendPlan(stringBuilder, indent);
+    } else if (referencePathMatcher instanceof ReferencePathMatcherOr) {
+      ((ReferencePathMatcherOr)referencePathMatcher).appendPlan(stringBuilder, indent);
+    } else {
+      stringBuilder.append(indent).append(referencePathMatcher).append('\n');
+    }
+  }
+
+  /**
+   * Flattens and deduplicates a List of children, in place.
+   * <p>
+   * Children of the same class as the owner (ReferencePathMatcherAnd within a
+   * ReferencePathMatcherAnd or ReferencePathMatcherOr within a
+   * ReferencePathMatcherOr) are replaced by their own children, recursively.
+   * Children of the other class are replaced by an optimized copy or, if that
+   * copy has a single child, by that child. Children which are equal to a
+   * previous child are then removed.
+   * <p>
+   * Only the List passed to this method is modified. Children and their
+   * descendants are not, since they may be referenced elsewhere.
+   * <p>
+   * Because of the special case of the empty List, an empty
+   * ReferencePathMatcherAnd or ReferencePathMatcherOr matches everything. Within
+   * a ReferencePathMatcherAnd, an empty ReferencePathMatcherAnd is therefore
+   * neutral and is removed by the flattening. Within a ReferencePathMatcherOr, an
+   * empty ReferencePathMatcherOr makes the owner match everything, so the List is
+   * emptied. Empty children of the other class are kept as is.
+   *
+   * @param classOwner Class of the owner.
+   * @param listReferencePathMatcher List of children.
+   */
+  static void optimize(Class<? extends ReferencePathMatcher> classOwner, List<ReferencePathMatcher> listReferencePathMatcher) {
+    List<ReferencePathMatcher> listReferencePathMatcherFlat;
+
+    listReferencePathMatcherFlat = new ArrayList<ReferencePathMatcher>();
+
+    if (ReferencePathMatcherEvaluationPlan.flatten(classOwner, listReferencePathMatcher, listReferencePathMatcherFlat)) {
+      listReferencePathMatcher.clear();
+      return;
+    }
+
+    listReferencePathMatcher.clear();
+
+    for (ReferencePathMatcher referencePathMatcher: listReferencePathMatcherFlat) {
+      if (!listReferencePathMatcher.contains(referencePathMatcher)) {
+        listReferencePathMatcher.add(referencePathMatcher);
+      }
+    }
+  }
+
+  /**
+   * Helper method for {@link #optimize}.
+   *
+   * @param classOwner Class of the owner.
+   * @param listReferencePathMatcher List of children.
+   * @param listReferencePathMatcherFlat Flattened List to which children are
+   *   added.
+   * @return Indicates that an empty ReferencePathMatcherOr was found within a
+   *   ReferencePathMatcherOr owner, which therefore matches everything. In that
+   *   case listReferencePathMatcherFlat is not complete.
+   */
+  private static boolean flatten(Class<? extends ReferencePathMatcher> classOwner, List<ReferencePathMatcher> listReferencePathMatcher, List<ReferencePathMatcher> listReferencePathMatcherFlat) {
+    for (ReferencePathMatcher referencePathMatcher: listReferencePathMatcher) {
+      List<ReferencePathMatcher> listReferencePathMatcherChild;
+
+      if (referencePathMatcher.getClass() != classOwner) {
+        // Children of the other class are copied before being optimized since they
+        // may be referenced elsewhere.
+        if (referencePathMatcher.getClass() == ReferencePathMatcherAnd.class) {
+          ReferencePathMatcherAnd referencePathMatcherAndCopy;
+
+          referencePathMatcherAndCopy = new ReferencePathMatcherAnd();
+          referencePathMatcherAndCopy.getListReferencePathMatcher().addAll(((ReferencePathMatcherAnd)referencePathMatcher).getListReferencePathMatcher());
+          referencePathMatcherAndCopy.optimize();
+          referencePathMatcher = referencePathMatcherAndCopy;
+          listReferencePathMatcherChild = referencePathMatcherAndCopy.getListReferencePathMatcher();
+        } else if (referencePathMatcher.getClass() == ReferencePathMatcherOr.class) {
+          ReferencePathMatcherOr referencePathMatcherOrCopy;
+
+          referencePathMatcherOrCopy = new ReferencePathMatcherOr();
+          referencePathMatcherOrCopy.getListReferencePathMatcher().addAll(((ReferencePathMatcherOr)referencePathMatcher).getListReferencePathMatcher());
+          referencePathMatcherOrCopy.optimize();
+          referencePathMatcher = referencePathMatcherOrCopy;
+          listReferencePathMatcherChild = referencePathMatcherOrCopy.getListReferencePathMatcher();
+        } else {
+          listReferencePathMatcherChild = null;
+        }
+
+        // A single child of the other class is equivalent to its only child, which may
+        // itself be of the same class as the owner.
+        if ((listReferencePathMatcherChild != null) && (listReferencePathMatcherChild.size() == 1)) {
+          referencePathMatcher = listReferencePathMatcherChild.get(0);
+        }
+      }
+
+      if (referencePathMatcher.getClass() == classOwner) {
+        if (referencePathMatcher instanceof ReferencePathMatcherAnd) {
+          listReferencePathMatcherChild = ((ReferencePathMatcherAnd)referencePathMatcher).getListReferencePathMatcher();
+        } else {
+          listReferencePathMatcherChild = ((ReferencePathMatcherOr)referencePathMatcher).getListReferencePathMatcher();
+        }
+
+        if (listReferencePathMatcherChild.isEmpty() && (classOwner == ReferencePathMatcherOr.class)) {
+          return true;
+        }
+
+        if (ReferencePathMatcherEvaluationPlan.flatten(classOwner, listReferencePathMatcherChild, listReferencePathMatcherFlat)) {
+          return true;
+        }
+      } else {
+        listReferencePathMatcherFlat.add(referencePathMatcher);
+      }
+    }
+
+    return false;
+  }
+}
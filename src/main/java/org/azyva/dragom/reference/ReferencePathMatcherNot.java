@@ -85,4 +85,35 @@ public class ReferencePathMatcherNot implements ReferencePathMatcher {
   public boolean matchesAllChildren(ReferencePath referencePath) {
     return !this.referencePathMatcher.canMatchChildren(referencePath);
   }
+
+  /**
+   * The state of a ReferencePathMatcherNot is that of the inner
+   * ReferencePathMatcher.
+   *
+   * @return Initial state.
+   */
+  @Override
+  public Object initialState() {
+    return this.referencePathMatcher.initialState();
+  }
+
+  @Override
+  public Object step(Object state, Reference reference) {
+    return this.referencePathMatcher.step(state, reference);
+  }
+
+  @Override
+  public boolean isAccepting(Object state) {
+    return !this.referencePathMatcher.isAccepting(state);
+  }
+
+  @Override
+  public boolean canContinue(Object state) {
+    return !this.referencePathMatcher.acceptsAllContinuations(state);
+  }
+
+  @Override
+  public boolean acceptsAllContinuations(Object state) {
+    return !this.referencePathMatcher.canContinue(state);
+  }
 }
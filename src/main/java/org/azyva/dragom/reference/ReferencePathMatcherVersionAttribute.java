@@ -21,15 +21,23 @@ package org.azyva.dragom.reference;
 
 import java.util.Map;
 
+import org.azyva.dragom.execcontext.ExecContext;
 import org.azyva.dragom.model.Model;
 import org.azyva.dragom.model.Module;
 import org.azyva.dragom.model.ModuleVersion;
 import org.azyva.dragom.model.Version;
 import org.azyva.dragom.model.plugin.ScmPlugin;
+import org.azyva.dragom.model.plugin.ScmVersionAttrCache;
 
 /**
  * ReferencePathMatcher that matches ReferencePath's based on a {@link Version}
  * attribute defined on {@link Version} the leaf {@link Reference}.
+ * <p>
+ * When constructed with an {@link ExecContext} for which the
+ * {@link ScmVersionAttrCache} is enabled, the Version attributes are obtained
+ * through the ScmVersionAttrCache of the ExecContext, so that evaluating this
+ * ReferencePathMatcher over a large reference graph where leaf ModuleVersion's
+ * are shared makes at most one SCM round-trip per ModuleVersion.
  *
  * @author David Raymond
  */
@@ -49,8 +57,15 @@ public class ReferencePathMatcherVersionAttribute implements ReferencePathMatche
    */
   private Model model;
 
+  /**
+   * ScmVersionAttrCache. null if Version attributes are not cached.
+   */
+  private ScmVersionAttrCache scmVersionAttrCache;
+
   /**
    * Constructor.
+   * <p>
+   * Version attributes are obtained from the {@link ScmPlugin} at each evaluation.
    *
    * @param versionAttributeName Version attribute name.
    * @param versionAttributeValue Version attribute value.
@@ -62,18 +77,48 @@ public class ReferencePathMatcherVersionAttribute implements ReferencePathMatche
     this.model = model;
   }
 
+  /**
+   * Constructor.
+   * <p>
+   * Version attributes are obtained through the {@link ScmVersionAttrCache} of the
+   * ExecContext if it is enabled, and from the {@link ScmPlugin} at each
+   * evaluation otherwise.
+   *
+   * @param versionAttributeName Version attribute name.
+   * @param versionAttributeValue Version attribute value.
+   * @param execContext ExecContext.
+   */
+  public ReferencePathMatcherVersionAttribute(String versionAttributeName, String versionAttributeValue, ExecContext execContext) {
+    this.versionAttributeName = versionAttributeName;
+    this.versionAttributeValue = versionAttributeValue;
+    this.model = execContext.getModel();
+    this.scmVersionAttrCache = ScmVersionAttrCache.get(execContext);
+  }
+
   @Override
   public boolean matches(ReferencePath referencePath) {
-    ModuleVersion moduleVersion;
+    return this.matches(referencePath.getLeafModuleVersion());
+  }
+
+  /**
+   * Verifies if the {@link Version} attribute of a {@link ModuleVersion} matches.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return See description.
+   */
+  private boolean matches(ModuleVersion moduleVersion) {
     Module module;
     ScmPlugin scmPlugin;
     Map<String, String> mapVersionAttr;
     String versionAttributeValueFound;
 
-    moduleVersion = referencePath.getLeafModuleVersion();
-    module = this.model.getModule(moduleVersion.getNodePath());
-    scmPlugin = module.getNodePlugin(ScmPlugin.class, null);
-    mapVersionAttr = scmPlugin.getMapVersionAttr(moduleVersion.getVersion());
+    if (this.scmVersionAttrCache != null) {
+      mapVersionAttr = this.scmVersionAttrCache.getMapVersionAttr(this.model, moduleVersion);
+    } else {
+      module = this.model.getModule(moduleVersion.getNodePath());
+      scmPlugin = module.getNodePlugin(ScmPlugin.class, null);
+      mapVersionAttr = scmPlugin.getMapVersionAttr(moduleVersion.getVersion());
+    }
     versionAttributeValueFound = mapVersionAttr.get(this.versionAttributeName);
 
     if (versionAttributeValueFound == null) {
@@ -92,4 +137,84 @@ public class ReferencePathMatcherVersionAttribute implements ReferencePathMatche
   public boolean matchesAllChildren(ReferencePath referencePath) {
     return false;
   }
+
+  /**
+   * Only the leaf {@link Reference} is considered by this ReferencePathMatcher, so
+   * the state is simply the leaf Reference. null for the empty ReferencePath.
+   *
+   * @return Initial state.
+   */
+  @Override
+  public Object initialState() {
+    return null;
+  }
+
+  @Override
+  public Object step(Object state, Reference reference) {
+    return reference;
+  }
+
+  @Override
+  public boolean isAccepting(Object state) {
+    if (state == null) {
+      return false;
+    }
+
+    return this.matches(((Reference)state).getModuleVersion());
+  }
+
+  @Override
+  public boolean canContinue(Object state) {
+    return true;
+  }
+
+  @Override
+  public boolean acceptsAllContinuations(Object state) {
+    return false;
+  }
+
+  /**
+   * Two ReferencePathMatcherVersionAttribute's are equal if they match the same
+   * {@link Version} attribute name and value within the same {@link Model}, using
+   * the same ScmVersionAttrCache, if any. This allows
+   * {@link ReferencePathMatcherAnd#optimize} and
+   * {@link ReferencePathMatcherOr#optimize} to remove duplicates, which are costly
+   * since they require SCM calls.
+   *
+   * @param other Other Object.
+   * @return See description.
+   */
+  @Override
+  public boolean equals(Object other) {
+    ReferencePathMatcherVersionAttribute referencePathMatcherVersionAttributeOther;
+
+    if (this == other) {
+      return true;
+    }
+
+    if (!(other instanceof ReferencePathMatcherVersionAttribute)) {
+      return false;
+    }
+
+    referencePathMatcherVersionAttributeOther = (ReferencePathMatcherVersionAttribute)other;
+
+    return    this.versionAttributeName.equals(referencePathMatcherVersionAttributeOther.versionAttributeName)
+           && this.versionAttributeValue.equals(referencePathMatcherVersionAttributeOther.versionAttributeValue)
+           && (this.model == referencePathMatcherVersionAttributeOther.model)
+           && (this.scmVersionAttrCache == referencePathMatcherVersionAttributeOther.scmVersionAttrCache);
+  }
+
+  @Override
+  public int hashCode() {
+    return (this.versionAttributeName.hashCode() * 31) + this.versionAttributeValue.hashCode();
+  }
+
+  /**
+   * @return String of the form version-attribute:name=value, for
+   *   debugging.
+   */
+  @Override
+  public String toString() {
+    return "version-attribute:" + this.versionAttributeName + '=' + this.versionAttributeValue;
+  }
 }
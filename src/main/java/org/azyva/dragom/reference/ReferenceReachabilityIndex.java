@@ -0,0 +1,363 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.azyva.dragom.model.ModuleVersion;
+
+/**
+ * Transitive reachability index over a {@link ReferenceGraph}.
+ * <p>
+ * Answers questions such as "does ModuleVersion A reference ModuleVersion B,
+ * directly or indirectly" or "which ModuleVersion's are affected by a change to
+ * ModuleVersion B" without traversing the ReferenceGraph for each query.
+ * <p>
+ * When built, each ModuleVersion is assigned an ID in topological order and the
+ * transitive closure is computed in both directions as one BitSet per
+ * ModuleVersion, in a single pass over the ReferenceGraph in each direction.
+ * {@link #reaches} is then O(1) and the Sets returned by
+ * {@link #getSetReferenceTransitive} and {@link #getSetReferrerTransitive} are
+ * views over the BitSet's whose creation is O(1).
+ * <p>
+ * The size of the index is quadratic in the number of ModuleVersion's in the
+ * worst case (2 bits per pair of ModuleVersion's), which is acceptable for the
+ * ReferenceGraph's found in practice.
+ * <p>
+ * Since a ReferenceGraph must not contain cycles, there is no need to condense
+ * strongly connected components. If a cycle is found, an exception is thrown
+ * which reports it as found by {@link StronglyConnectedComponents}.
+ * <p>
+ * The index reflects the ReferenceGraph when it was built. It must be rebuilt if
+ * the ReferenceGraph is modified. Once built, it is immutable and thread-safe.
+ *
+ * @author David Raymond
+ */
+public final class ReferenceReachabilityIndex {
+  /**
+   * Map of {@link ModuleVersion}'s to their IDs.
+   */
+  private final Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+  /**
+   * {@link ModuleVersion}'s indexed by ID. IDs are in topological order: a
+   * ModuleVersion has a smaller ID than those it references.
+   */
+  private final ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * IDs of the {@link ModuleVersion}'s referenced directly or indirectly by each
+   * ModuleVersion, indexed by ID.
+   */
+  private final BitSet[] arrayBitSetIdReferenceTransitive;
+
+  /**
+   * IDs of the {@link ModuleVersion}'s which reference directly or indirectly each
+   * ModuleVersion, indexed by ID.
+   */
+  private final BitSet[] arrayBitSetIdReferrerTransitive;
+
+  /**
+   * Unmodifiable Set of {@link ModuleVersion}'s which is a view over a BitSet of
+   * IDs.
+   */
+  private final class BitSetModuleVersionSet extends AbstractSet<ModuleVersion> {
+    /**
+     * IDs of the ModuleVersion's.
+     */
+    private final BitSet bitSetId;
+
+    /**
+     * Number of ModuleVersion's. -1 if not computed yet.
+     */
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param bitSetId IDs of the ModuleVersion's.
+     */
+    BitSetModuleVersionSet(BitSet bitSetId) {
+      this.bitSetId = bitSetId;
+      this.size = -1;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+      Integer id;
+
+      id = ReferenceReachabilityIndex.this.mapIdModuleVersion.get(object);
+
+      return (id != null) && this.bitSetId.get(id);
+    }
+
+    @Override
+    public int size() {
+      if (this.size == -1) {
+        this.size = this.bitSetId.cardinality();
+      }
+
+      return this.size;
+    }
+
+    @Override
+    public Iterator<ModuleVersion> iterator() {
+      return new Iterator<ModuleVersion>() {
+        private int idNext = BitSetModuleVersionSet.this.bitSetId.nextSetBit(0);
+
+        @Override
+        public boolean hasNext() {
+          return this.idNext >= 0;
+        }
+
+        @Override
+        public ModuleVersion next() {
+          int id;
+
+          if (this.idNext < 0) {
+            throw new NoSuchElementException();
+          }
+
+          id = this.idNext;
+          this.idNext = BitSetModuleVersionSet.this.bitSetId.nextSetBit(id + 1);
+
+          return ReferenceReachabilityIndex.this.arrayModuleVersion[id];
+        }
+      };
+    }
+  }
+
+  /**
+   * Constructor.
+   * <p>
+   * Builds the index using the read methods of {@link ReferenceGraph}.
+   *
+   * @param referenceGraph ReferenceGraph.
+   */
+  public ReferenceReachabilityIndex(ReferenceGraph referenceGraph) {
+    List<ModuleVersion> listModuleVersion;
+    int nbModuleVersions;
+    Map<ModuleVersion, Integer> mapIdModuleVersionGraph;
+    int[][] arrayArrayIdReference;
+    int[] arrayNbReferrers;
+    int[] arrayIdTopological;
+    int[] arrayIdGraph;
+    int nbSorted;
+    Deque<Integer> dequeId;
+
+    listModuleVersion = referenceGraph.getListModuleVersion(null);
+    nbModuleVersions = listModuleVersion.size();
+    mapIdModuleVersionGraph = new HashMap<ModuleVersion, Integer>();
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      mapIdModuleVersionGraph.put(listModuleVersion.get(id), id);
+    }
+
+    arrayArrayIdReference = new int[nbModuleVersions][];
+    arrayNbReferrers = new int[nbModuleVersions];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      List<Reference> listReference;
+
+      listReference = referenceGraph.getListReference(listModuleVersion.get(id));
+      arrayArrayIdReference[id] = new int[listReference.size()];
+
+      for (int i = 0; i < listReference.size(); i++) {
+        int idTarget;
+
+        idTarget = mapIdModuleVersionGraph.get(listReference.get(i).getModuleVersion());
+        arrayArrayIdReference[id][i] = idTarget;
+        arrayNbReferrers[idTarget]++;
+      }
+    }
+
+    // Topological sort. arrayIdTopological maps the IDs in the ReferenceGraph order
+    // to the IDs in topological order and arrayIdGraph is the reverse mapping.
+
+    arrayIdTopological = new int[nbModuleVersions];
+    arrayIdGraph = new int[nbModuleVersions];
+    nbSorted = 0;
+    dequeId = new ArrayDeque<Integer>();
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      if (arrayNbReferrers[id] == 0) {
+        dequeId.add(id);
+      }
+    }
+
+    while (!dequeId.isEmpty()) {
+      int id;
+
+      id = dequeId.removeFirst();
+      arrayIdTopological[id] = nbSorted;
+      arrayIdGraph[nbSorted++] = id;
+
+      for (int idTarget: arrayArrayIdReference[id]) {
+        if (--arrayNbReferrers[idTarget] == 0) {
+          dequeId.add(idTarget);
+        }
+      }
+    }
+
+    if (nbSorted != nbModuleVersions) {
+      StronglyConnectedComponents.Cycle cycle;
+
+      // The ModuleVersion's which could not be sorted include those referenced by a
+      // cycle, which are not on a cycle themselves. The strongly connected components
+      // are computed in order to report an actual cycle. This is done only in this
+      // exceptional case.
+      cycle = new StronglyConnectedComponents(referenceGraph).getListCycle().get(0);
+
+      throw new RuntimeException("Cycle detected in ReferenceGraph involving ModuleVersion " + cycle.getListModuleVersion().get(0) + ": " + cycle + '.');
+    }
+
+    this.mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+    this.arrayModuleVersion = new ModuleVersion[nbModuleVersions];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      this.arrayModuleVersion[id] = listModuleVersion.get(arrayIdGraph[id]);
+      this.mapIdModuleVersion.put(this.arrayModuleVersion[id], id);
+    }
+
+    // Referenced ModuleVersion's, in reverse topological order so that those of the
+    // referenced ModuleVersion's are complete.
+
+    this.arrayBitSetIdReferenceTransitive = new BitSet[nbModuleVersions];
+
+    for (int id = nbModuleVersions - 1; id >= 0; id--) {
+      BitSet bitSetId;
+
+      bitSetId = new BitSet(nbModuleVersions);
+
+      for (int idTargetGraph: arrayArrayIdReference[arrayIdGraph[id]]) {
+        int idTarget;
+
+        idTarget = arrayIdTopological[idTargetGraph];
+
+        if (!bitSetId.get(idTarget)) {
+          bitSetId.set(idTarget);
+          bitSetId.or(this.arrayBitSetIdReferenceTransitive[idTarget]);
+        }
+      }
+
+      this.arrayBitSetIdReferenceTransitive[id] = bitSetId;
+    }
+
+    // Referrer ModuleVersion's, in topological order so that those of the referrer
+    // ModuleVersion's are complete.
+
+    this.arrayBitSetIdReferrerTransitive = new BitSet[nbModuleVersions];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      this.arrayBitSetIdReferrerTransitive[id] = new BitSet(id);
+    }
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      for (int idTargetGraph: arrayArrayIdReference[arrayIdGraph[id]]) {
+        BitSet bitSetIdReferrerTarget;
+
+        bitSetIdReferrerTarget = this.arrayBitSetIdReferrerTransitive[arrayIdTopological[idTargetGraph]];
+        bitSetIdReferrerTarget.set(id);
+        bitSetIdReferrerTarget.or(this.arrayBitSetIdReferrerTransitive[id]);
+      }
+    }
+  }
+
+  /**
+   * Returns the ID of a {@link ModuleVersion}, throwing an exception if it is not
+   * in the index.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return ID.
+   */
+  private int getExistingId(ModuleVersion moduleVersion) {
+    Integer id;
+
+    id = this.mapIdModuleVersion.get(moduleVersion);
+
+    if (id == null) {
+      throw new RuntimeException("ModuleVersion " + moduleVersion + " is not part of the ReferenceGraph.");
+    }
+
+    return id;
+  }
+
+  /**
+   * @return Number of {@link ModuleVersion}'s.
+   */
+  public int getNbModuleVersions() {
+    return this.arrayModuleVersion.length;
+  }
+
+  /**
+   * Indicates if a {@link ModuleVersion} references another, directly or
+   * indirectly.
+   *
+   * @param moduleVersionReferrer Referrer ModuleVersion.
+   * @param moduleVersionReferred Referred-to ModuleVersion.
+   * @return See description. false if both ModuleVersion's are the same.
+   */
+  public boolean reaches(ModuleVersion moduleVersionReferrer, ModuleVersion moduleVersionReferred) {
+    int idReferrer;
+    int idReferred;
+
+    idReferrer = this.getExistingId(moduleVersionReferrer);
+    idReferred = this.getExistingId(moduleVersionReferred);
+
+    // Since IDs are in topological order, a ModuleVersion can only reference
+    // ModuleVersion's with greater IDs.
+    return (idReferred > idReferrer) && this.arrayBitSetIdReferenceTransitive[idReferrer].get(idReferred);
+  }
+
+  /**
+   * Returns the {@link ModuleVersion}'s referenced by a ModuleVersion, directly or
+   * indirectly.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return Unmodifiable Set of ModuleVersion's, in topological order. Does not
+   *   include moduleVersion.
+   */
+  public Set<ModuleVersion> getSetReferenceTransitive(ModuleVersion moduleVersion) {
+    return new BitSetModuleVersionSet(this.arrayBitSetIdReferenceTransitive[this.getExistingId(moduleVersion)]);
+  }
+
+  /**
+   * Returns the {@link ModuleVersion}'s which reference a ModuleVersion, directly
+   * or indirectly.
+   * <p>
+   * These are the ModuleVersion's affected by a change to the ModuleVersion.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return Unmodifiable Set of ModuleVersion's, in topological order. Does not
+   *   include moduleVersion.
+   */
+  public Set<ModuleVersion> getSetReferrerTransitive(ModuleVersion moduleVersion) {
+    return new BitSetModuleVersionSet(this.arrayBitSetIdReferrerTransitive[this.getExistingId(moduleVersion)]);
+  }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.reference.ReferenceGraph.TraversalOrder;
+
+/**
+ * Schedules work over the {@link ModuleVersion}'s of a {@link ReferenceGraph} in
+ * topological waves.
+ * <p>
+ * A wave is a set of ModuleVersion's which can be processed concurrently because
+ * all the ModuleVersion's they depend on are in previous waves. Two orders are
+ * supported, expressed with {@link TraversalOrder}:
+ * <ul>
+ * <li>{@link TraversalOrder#ALL_PARENTS_FIRST}: a ModuleVersion depends on its
+ *     referrers. This is the order in which ModuleVersion's are visited by a
+ *     traversal using ALL_PARENTS_FIRST;</li>
+ * <li>{@link TraversalOrder#DEPTH_FIRST}: a ModuleVersion depends on its
+ *     references. This is the order required by builds and releases, where a
+ *     ModuleVersion can be processed only once all the ModuleVersion's it
+ *     references have been.</li>
+ * </ul>
+ * {@link TraversalOrder#PARENT_FIRST} is not supported as it does not define
+ * waves.
+ * <p>
+ * Only the ModuleVersion's reachable from the starting ModuleVersion (or from the
+ * root ModuleVersion's) are scheduled. The waves are computed when the
+ * ReferenceWaveScheduler is created and the ReferenceGraph is not accessed
+ * afterwards.
+ * <p>
+ * {@link #execute} runs each wave with bounded parallelism and
+ * {@link #computeCriticalPath} estimates the minimum duration of the whole work
+ * given per-ModuleVersion cost hints, whatever the parallelism.
+ *
+ * @author David Raymond
+ */
+public class ReferenceWaveScheduler {
+  /**
+   * Provides a cost hint for processing a {@link ModuleVersion}.
+   * <p>
+   * The unit is up to the caller (typically milliseconds, or a historical build
+   * duration). Costs must not be negative.
+   */
+  public static interface CostEstimator {
+    /**
+     * @param moduleVersion ModuleVersion.
+     * @return Estimated cost.
+     */
+    long estimateCost(ModuleVersion moduleVersion);
+  }
+
+  /**
+   * Processing of a {@link ModuleVersion} within a wave.
+   * <p>
+   * Called concurrently for the ModuleVersion's of a wave and must therefore be
+   * thread-safe.
+   */
+  public static interface ModuleVersionProcessor {
+    /**
+     * Processes a {@link ModuleVersion}.
+     * <p>
+     * Throwing a RuntimeException aborts the execution after the current wave.
+     *
+     * @param moduleVersion ModuleVersion.
+     */
+    void process(ModuleVersion moduleVersion);
+  }
+
+  /**
+   * Critical path, which is the sequence of dependent {@link ModuleVersion}'s with
+   * the highest total cost.
+   */
+  public static class CriticalPath {
+    /**
+     * List of ModuleVersion's, in processing order.
+     */
+    private List<ModuleVersion> listModuleVersion;
+
+    /**
+     * Total cost.
+     */
+    private long cost;
+
+    /**
+     * Constructor.
+     *
+     * @param listModuleVersion List of ModuleVersion's, in processing order.
+     * @param cost Total cost.
+     */
+    CriticalPath(List<ModuleVersion> listModuleVersion, long cost) {
+      this.listModuleVersion = listModuleVersion;
+      this.cost = cost;
+    }
+
+    /**
+     * @return List of {@link ModuleVersion}'s, in processing order.
+     */
+    public List<ModuleVersion> getListModuleVersion() {
+      return this.listModuleVersion;
+    }
+
+    /**
+     * @return Total cost, which is a lower bound for the duration of the whole work
+     *   regardless of the parallelism.
+     */
+    public long getCost() {
+      return this.cost;
+    }
+  }
+
+  /**
+   * {@link ModuleVersion}'s, indexed by dense ID.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * IDs of the {@link ModuleVersion}'s which depend on each ModuleVersion,
+   * indexed by ID.
+   */
+  private int[][] arrayArrayIdDependent;
+
+  /**
+   * IDs of the {@link ModuleVersion}'s on which each ModuleVersion depends,
+   * indexed by ID.
+   */
+  private int[][] arrayArrayIdDependency;
+
+  /**
+   * Waves of {@link ModuleVersion} IDs.
+   */
+  private List<int[]> listArrayIdWave;
+
+  /**
+   * Constructor.
+   *
+   * @param referenceGraph ReferenceGraph.
+   * @param moduleVersion ModuleVersion from which the ModuleVersion's to schedule
+   *   are reached. Can be null to indicate all the root ModuleVersion's.
+   * @param traversalOrder TraversalOrder. See the class description.
+   */
+  public ReferenceWaveScheduler(ReferenceGraph referenceGraph, ModuleVersion moduleVersion, TraversalOrder traversalOrder) {
+    List<ModuleVersion> listModuleVersionStart;
+    Map<ModuleVersion, Integer> mapIdModuleVersion;
+    List<ModuleVersion> listModuleVersion;
+    List<int[]> listArrayIdChild;
+    int[] arrayNbParents;
+    int[][] arrayArrayIdParent;
+    int[] arrayIndexParent;
+
+    if (traversalOrder == TraversalOrder.PARENT_FIRST) {
+      throw new RuntimeException("TraversalOrder.PARENT_FIRST does not define waves.");
+    }
+
+    if (moduleVersion == null) {
+      listModuleVersionStart = referenceGraph.getListModuleVersionRoot();
+    } else {
+      if (!referenceGraph.moduleVersionExists(moduleVersion)) {
+        throw new RuntimeException("ModuleVersion " + moduleVersion + " is not part of the ReferenceGraph.");
+      }
+
+      listModuleVersionStart = Collections.singletonList(moduleVersion);
+    }
+
+    // The reachable ModuleVersion's are collected breadth-first and assigned dense
+    // IDs, together with their children (referred-to ModuleVersion's).
+
+    mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+    listModuleVersion = new ArrayList<ModuleVersion>();
+    listArrayIdChild = new ArrayList<int[]>();
+
+    for (ModuleVersion moduleVersionStart: listModuleVersionStart) {
+      if (!mapIdModuleVersion.containsKey(moduleVersionStart)) {
+        mapIdModuleVersion.put(moduleVersionStart, listModuleVersion.size());
+        listModuleVersion.add(moduleVersionStart);
+      }
+    }
+
+    for (int id = 0; id < listModuleVersion.size(); id++) {
+      List<Reference> listReference;
+      int[] arrayIdChild;
+      int nbChildren;
+
+      listReference = referenceGraph.getListReference(listModuleVersion.get(id));
+      arrayIdChild = new int[listReference.size()];
+      nbChildren = 0;
+
+      for (Reference reference: listReference) {
+        Integer idChild;
+
+        idChild = mapIdModuleVersion.get(reference.getModuleVersion());
+
+        if (idChild == null) {
+          idChild = listModuleVersion.size();
+          mapIdModuleVersion.put(reference.getModuleVersion(), idChild);
+          listModuleVersion.add(reference.getModuleVersion());
+        }
+
+        // Multiple Reference's to the same ModuleVersion (e.g. for different
+        // artifacts) count as a single dependency.
+        if (!ReferenceWaveScheduler.contains(arrayIdChild, nbChildren, idChild)) {
+          arrayIdChild[nbChildren++] = idChild;
+        }
+      }
+
+      listArrayIdChild.add((nbChildren == arrayIdChild.length) ? arrayIdChild : Arrays.copyOf(arrayIdChild, nbChildren));
+    }
+
+    this.arrayModuleVersion = listModuleVersion.toArray(new ModuleVersion[listModuleVersion.size()]);
+
+    // Inverse edges.
+
+    arrayNbParents = new int[this.arrayModuleVersion.length];
+
+    for (int[] arrayIdChild: listArrayIdChild) {
+      for (int idChild: arrayIdChild) {
+        arrayNbParents[idChild]++;
+      }
+    }
+
+    arrayArrayIdParent = new int[this.arrayModuleVersion.length][];
+
+    for (int id = 0; id < this.arrayModuleVersion.length; id++) {
+      arrayArrayIdParent[id] = new int[arrayNbParents[id]];
+    }
+
+    arrayIndexParent = new int[this.arrayModuleVersion.length];
+
+    for (int id = 0; id < this.arrayModuleVersion.length; id++) {
+      for (int idChild: listArrayIdChild.get(id)) {
+        arrayArrayIdParent[idChild][arrayIndexParent[idChild]++] = id;
+      }
+    }
+
+    if (traversalOrder == TraversalOrder.ALL_PARENTS_FIRST) {
+      this.arrayArrayIdDependency = arrayArrayIdParent;
+      this.arrayArrayIdDependent = listArrayIdChild.toArray(new int[listArrayIdChild.size()][]);
+    } else {
+      this.arrayArrayIdDependency = listArrayIdChild.toArray(new int[listArrayIdChild.size()][]);
+      this.arrayArrayIdDependent = arrayArrayIdParent;
+    }
+
+    this.computeWaves();
+  }
+
+  /**
+   * @param arrayInt Array of ints.
+   * @param length Number of ints in the array to consider.
+   * @param value Value.
+   * @return Indicates if the value is within the first length ints of the array.
+   */
+  private static boolean contains(int[] arrayInt, int length, int value) {
+    for (int i = 0; i < length; i++) {
+      if (arrayInt[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Computes the waves using Kahn's algorithm, one level at a time.
+   */
+  private void computeWaves() {
+    int[] arrayNbPendingDependencies;
+    Deque<Integer> dequeIdReady;
+    int nbScheduled;
+
+    arrayNbPendingDependencies = new int[this.arrayModuleVersion.length];
+    dequeIdReady = new ArrayDeque<Integer>();
+
+    for (int id = 0; id < this.arrayModuleVersion.length; id++) {
+      arrayNbPendingDependencies[id] = this.arrayArrayIdDependency[id].length;
+
+      if (arrayNbPendingDependencies[id] == 0) {
+        dequeIdReady.add(id);
+      }
+    }
+
+    this.listArrayIdWave = new ArrayList<int[]>();
+    nbScheduled = 0;
+
+    while (!dequeIdReady.isEmpty()) {
+      int[] arrayIdWave;
+
+      arrayIdWave = new int[dequeIdReady.size()];
+
+      for (int i = 0; i < arrayIdWave.length; i++) {
+        arrayIdWave[i] = dequeIdReady.removeFirst();
+      }
+
+      for (int id: arrayIdWave) {
+        for (int idDependent: this.arrayArrayIdDependent[id]) {
+          if (--arrayNbPendingDependencies[idDependent] == 0) {
+            dequeIdReady.add(idDependent);
+          }
+        }
+      }
+
+      this.listArrayIdWave.add(arrayIdWave);
+      nbScheduled += arrayIdWave.length;
+    }
+
+    if (nbScheduled != this.arrayModuleVersion.length) {
+      throw new RuntimeException("The ReferenceGraph contains a cycle.");
+    }
+  }
+
+  /**
+   * @return Number of waves.
+   */
+  public int getNbWaves() {
+    return this.listArrayIdWave.size();
+  }
+
+  /**
+   * @return Number of {@link ModuleVersion}'s scheduled.
+   */
+  public int getNbModuleVersions() {
+    return this.arrayModuleVersion.length;
+  }
+
+  /**
+   * Returns the waves.
+   * <p>
+   * A new List is built each time.
+   *
+   * @return List of waves, each being a List of {@link ModuleVersion}'s.
+   */
+  public List<List<ModuleVersion>> getListWave() {
+    List<List<ModuleVersion>> listWave;
+
+    listWave = new ArrayList<List<ModuleVersion>>(this.listArrayIdWave.size());
+
+    for (int[] arrayIdWave: this.listArrayIdWave) {
+      listWave.add(this.toListModuleVersion(arrayIdWave));
+    }
+
+    return listWave;
+  }
+
+  /**
+   * @param arrayId Array of {@link ModuleVersion} IDs.
+   * @return List of ModuleVersion's.
+   */
+  private List<ModuleVersion> toListModuleVersion(int[] arrayId) {
+    List<ModuleVersion> listModuleVersion;
+
+    listModuleVersion = new ArrayList<ModuleVersion>(arrayId.length);
+
+    for (int id: arrayId) {
+      listModuleVersion.add(this.arrayModuleVersion[id]);
+    }
+
+    return listModuleVersion;
+  }
+
+  /**
+   * Computes for each {@link ModuleVersion} the highest cost of a sequence of
+   * dependent ModuleVersion's starting with it, including its own cost.
+   *
+   * @param arrayCost Cost of each ModuleVersion, indexed by ID.
+   * @param arrayIdNext Set to the ID of the next ModuleVersion in the sequence,
+   *   or -1 if none. Can be null.
+   * @return Highest costs, indexed by ID.
+   */
+  private long[] computeRemainingCosts(long[] arrayCost, int[] arrayIdNext) {
+    long[] arrayRemainingCost;
+
+    arrayRemainingCost = new long[this.arrayModuleVersion.length];
+
+    // Waves are processed in reverse order so that dependents are processed
+    // before the ModuleVersion's they depend on.
+    for (int indexWave = this.listArrayIdWave.size() - 1; indexWave >= 0; indexWave--) {
+      for (int id: this.listArrayIdWave.get(indexWave)) {
+        long maxRemainingCost;
+        int idNext;
+
+        maxRemainingCost = 0;
+        idNext = -1;
+
+        for (int idDependent: this.arrayArrayIdDependent[id]) {
+          if ((idNext == -1) || (arrayRemainingCost[idDependent] > maxRemainingCost)) {
+            maxRemainingCost = arrayRemainingCost[idDependent];
+            idNext = idDependent;
+          }
+        }
+
+        arrayRemainingCost[id] = arrayCost[id] + maxRemainingCost;
+
+        if (arrayIdNext != null) {
+          arrayIdNext[id] = idNext;
+        }
+      }
+    }
+
+    return arrayRemainingCost;
+  }
+
+  /**
+   * @param costEstimator CostEstimator.
+   * @return Cost of each {@link ModuleVersion}, indexed by ID.
+   */
+  private long[] estimateCosts(CostEstimator costEstimator) {
+    long[] arrayCost;
+
+    arrayCost = new long[this.arrayModuleVersion.length];
+
+    for (int id = 0; id < this.arrayModuleVersion.length; id++) {
+      arrayCost[id] = costEstimator.estimateCost(this.arrayModuleVersion[id]);
+
+      if (arrayCost[id] < 0) {
+        throw new RuntimeException("Cost " + arrayCost[id] + " estimated for ModuleVersion " + this.arrayModuleVersion[id] + " must not be negative.");
+      }
+    }
+
+    return arrayCost;
+  }
+
+  /**
+   * Computes the critical path.
+   *
+   * @param costEstimator CostEstimator.
+   * @return CriticalPath. The List of {@link ModuleVersion}'s is empty if there
+   *   are no ModuleVersion's.
+   */
+  public CriticalPath computeCriticalPath(CostEstimator costEstimator) {
+    long[] arrayCost;
+    int[] arrayIdNext;
+    long[] arrayRemainingCost;
+    int idFirst;
+    List<ModuleVersion> listModuleVersion;
+
+    arrayCost = this.estimateCosts(costEstimator);
+    arrayIdNext = new int[this.arrayModuleVersion.length];
+    arrayRemainingCost = this.computeRemainingCosts(arrayCost, arrayIdNext);
+    listModuleVersion = new ArrayList<ModuleVersion>();
+
+    if (this.listArrayIdWave.isEmpty()) {
+      return new CriticalPath(listModuleVersion, 0);
+    }
+
+    // The critical path necessarily starts in the first wave since every
+    // ModuleVersion that is not in the first wave depends on some other one.
+
+    idFirst = -1;
+
+    for (int id: this.listArrayIdWave.get(0)) {
+      if ((idFirst == -1) || (arrayRemainingCost[id] > arrayRemainingCost[idFirst])) {
+        idFirst = id;
+      }
+    }
+
+    for (int id = idFirst; id != -1; id = arrayIdNext[id]) {
+      listModuleVersion.add(this.arrayModuleVersion[id]);
+    }
+
+    return new CriticalPath(listModuleVersion, arrayRemainingCost[idFirst]);
+  }
+
+  /**
+   * Processes all the {@link ModuleVersion}'s, one wave at a time.
+   * <p>
+   * The ModuleVersion's of a wave are processed concurrently by at most
+   * maxParallelism threads and the next wave is started only when all the
+   * ModuleVersion's of the current one have been processed.
+   * <p>
+   * If a CostEstimator is specified, the ModuleVersion's within each wave are
+   * submitted in decreasing order of their remaining critical path cost, so that
+   * the long chains start first.
+   * <p>
+   * If the ModuleVersionProcessor throws an exception, the remaining waves are not
+   * processed and a RuntimeException is thrown, with the first exception as the
+   * cause, once the current wave is complete.
+   *
+   * @param moduleVersionProcessor ModuleVersionProcessor.
+   * @param maxParallelism Maximum number of ModuleVersion's processed
+   *   concurrently.
+   * @param costEstimator CostEstimator. Can be null.
+   */
+  public void execute(ModuleVersionProcessor moduleVersionProcessor, int maxParallelism, CostEstimator costEstimator) {
+    long[] arrayRemainingCost;
+    ExecutorService executorService;
+
+    if (maxParallelism < 1) {
+      throw new RuntimeException("The maximum parallelism " + maxParallelism + " must be at least 1.");
+    }
+
+    if (costEstimator != null) {
+      arrayRemainingCost = this.computeRemainingCosts(this.estimateCosts(costEstimator), null);
+    } else {
+      arrayRemainingCost = null;
+    }
+
+    executorService = Executors.newFixedThreadPool(maxParallelism);
+
+    try {
+      for (int[] arrayIdWave: this.listArrayIdWave) {
+        List<Integer> listId;
+        List<Future<?>> listFuture;
+        Throwable throwableFirst;
+
+        listId = new ArrayList<Integer>(arrayIdWave.length);
+
+        for (int id: arrayIdWave) {
+          listId.add(id);
+        }
+
+        if (arrayRemainingCost != null) {
+          Collections.sort(listId, (id1, id2) -> Long.compare(arrayRemainingCost[id2], arrayRemainingCost[id1]));
+        }
+
+        listFuture = new ArrayList<Future<?>>(listId.size());
+
+        for (int id: listId) {
+          ModuleVersion moduleVersion;
+
+          moduleVersion = this.arrayModuleVersion[id];
+          listFuture.add(executorService.submit(() -> moduleVersionProcessor.process(moduleVersion)));
+        }
+
+        throwableFirst = null;
+
+        for (Future<?> future: listFuture) {
+          try {
+            future.get();
+          } catch (ExecutionException ee) {
+            if (throwableFirst == null) {
+              throwableFirst = ee.getCause();
+            }
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+          }
+        }
+
+        if (throwableFirst != null) {
+          throw new RuntimeException(throwableFirst);
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+}
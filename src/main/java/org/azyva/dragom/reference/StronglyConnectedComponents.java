@@ -0,0 +1,580 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.reference.ReferenceGraph.Referrer;
+
+/**
+ * Strongly connected components of a {@link ReferenceGraph}.
+ * <p>
+ * A ReferenceGraph must not contain cycles. But when it is built from build
+ * scripts, cycles can occur and are otherwise only detected during traversals,
+ * which fail. This class computes the strongly connected components (SCC's) using
+ * an iterative version of Tarjan's algorithm, in time linear in the size of the
+ * ReferenceGraph, so that cycles can be reported with the {@link Reference}'s
+ * involved.
+ * <p>
+ * The SCC ID of each {@link ModuleVersion} is available through
+ * {@link #getComponentId}. SCC ID's are in topological order of the condensed
+ * graph: an SCC has a smaller ID than those it references. The condensed graph
+ * itself is available through {@link #getArrayComponentIdReferenced}.
+ * <p>
+ * An SCC is cyclic if it contains more than one ModuleVersion, or a single one
+ * which references itself. If there is no cyclic SCC ({@link #isAcyclic}), the
+ * ReferenceGraph can be traversed without cycle detection.
+ * <p>
+ * The information reflects the ReferenceGraph when it was built. Once built, it
+ * is immutable and thread-safe.
+ *
+ * @author David Raymond
+ */
+public final class StronglyConnectedComponents {
+  /**
+   * Cycle within a cyclic strongly connected component.
+   */
+  public static final class Cycle {
+    /**
+     * SCC ID.
+     */
+    private int componentId;
+
+    /**
+     * {@link ModuleVersion}'s of the SCC.
+     */
+    private List<ModuleVersion> listModuleVersion;
+
+    /**
+     * {@link Referrer}'s between the ModuleVersion's of the SCC.
+     */
+    private List<Referrer> listReferrerComponent;
+
+    /**
+     * Referrer's forming a shortest elementary cycle through the first
+     * ModuleVersion of the SCC.
+     */
+    private List<Referrer> listReferrerCycle;
+
+    /**
+     * Constructor.
+     *
+     * @param componentId SCC ID.
+     * @param listModuleVersion ModuleVersion's of the SCC.
+     * @param listReferrerComponent Referrer's between the ModuleVersion's of the
+     *   SCC.
+     * @param listReferrerCycle Referrer's forming an elementary cycle.
+     */
+    Cycle(int componentId, List<ModuleVersion> listModuleVersion, List<Referrer> listReferrerComponent, List<Referrer> listReferrerCycle) {
+      this.componentId = componentId;
+      this.listModuleVersion = listModuleVersion;
+      this.listReferrerComponent = listReferrerComponent;
+      this.listReferrerCycle = listReferrerCycle;
+    }
+
+    /**
+     * @return SCC ID.
+     */
+    public int getComponentId() {
+      return this.componentId;
+    }
+
+    /**
+     * @return Unmodifiable List of the {@link ModuleVersion}'s of the SCC.
+     */
+    public List<ModuleVersion> getListModuleVersion() {
+      return this.listModuleVersion;
+    }
+
+    /**
+     * @return Unmodifiable List of all the {@link Referrer}'s between the
+     *   {@link ModuleVersion}'s of the SCC. Each Referrer is the referrer
+     *   ModuleVersion and the Reference within it.
+     */
+    public List<Referrer> getListReferrerComponent() {
+      return this.listReferrerComponent;
+    }
+
+    /**
+     * Returns a shortest elementary cycle through the first {@link ModuleVersion}
+     * of the SCC (the first one in {@link #getListModuleVersion}).
+     * <p>
+     * It is not necessarily a shortest cycle within the whole SCC, as finding one
+     * would require a search from every ModuleVersion of the SCC. It is still
+     * elementary and therefore suitable for reporting the cycle.
+     * <p>
+     * The first {@link Referrer} is that of the first ModuleVersion of the SCC. The
+     * {@link Reference} of each Referrer refers to the ModuleVersion of the next
+     * one, and that of the last one to the ModuleVersion of the first one.
+     *
+     * @return Unmodifiable List of Referrer's.
+     */
+    public List<Referrer> getListReferrerCycle() {
+      return this.listReferrerCycle;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder stringBuilder;
+
+      stringBuilder = new StringBuilder();
+
+      for (Referrer referrer: this.listReferrerCycle) {
+        stringBuilder.append(referrer.getModuleVersion()).append(" -> ");
+      }
+
+      stringBuilder.append(this.listReferrerCycle.get(0).getModuleVersion());
+
+      return stringBuilder.toString();
+    }
+  }
+
+  /**
+   * Map of {@link ModuleVersion}'s to their IDs.
+   */
+  private Map<ModuleVersion, Integer> mapIdModuleVersion;
+
+  /**
+   * {@link ModuleVersion}'s indexed by ID.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * SCC ID of each {@link ModuleVersion}, indexed by ID.
+   */
+  private int[] arrayComponentId;
+
+  /**
+   * Number of SCC's.
+   */
+  private int nbComponents;
+
+  /**
+   * {@link ModuleVersion} IDs of each SCC, indexed by SCC ID.
+   */
+  private int[][] arrayArrayIdComponent;
+
+  /**
+   * SCC IDs referenced by each SCC in the condensed graph, indexed by SCC ID.
+   */
+  private int[][] arrayArrayComponentIdReferenced;
+
+  /**
+   * List of cycles, one for each cyclic SCC, in SCC ID order.
+   */
+  private List<Cycle> listCycle;
+
+  /**
+   * Constructor.
+   * <p>
+   * Computes the SCC's using the read methods of {@link ReferenceGraph}.
+   *
+   * @param referenceGraph ReferenceGraph.
+   */
+  public StronglyConnectedComponents(ReferenceGraph referenceGraph) {
+    List<ModuleVersion> listModuleVersion;
+    int nbModuleVersions;
+    Reference[][] arrayArrayReference;
+    int[][] arrayArrayIdReference;
+    int[] arrayComponentIdReversed;
+
+    listModuleVersion = referenceGraph.getListModuleVersion(null);
+    nbModuleVersions = listModuleVersion.size();
+    this.arrayModuleVersion = listModuleVersion.toArray(new ModuleVersion[nbModuleVersions]);
+    this.mapIdModuleVersion = new HashMap<ModuleVersion, Integer>();
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      this.mapIdModuleVersion.put(this.arrayModuleVersion[id], id);
+    }
+
+    arrayArrayReference = new Reference[nbModuleVersions][];
+    arrayArrayIdReference = new int[nbModuleVersions][];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      List<Reference> listReference;
+
+      listReference = referenceGraph.getListReference(this.arrayModuleVersion[id]);
+      arrayArrayReference[id] = listReference.toArray(new Reference[listReference.size()]);
+      arrayArrayIdReference[id] = new int[listReference.size()];
+
+      for (int i = 0; i < listReference.size(); i++) {
+        arrayArrayIdReference[id][i] = this.mapIdModuleVersion.get(listReference.get(i).getModuleVersion());
+      }
+    }
+
+    // Tarjan's algorithm yields the SCC's in reverse topological order.
+    arrayComponentIdReversed = this.computeComponents(arrayArrayIdReference);
+
+    this.arrayComponentId = new int[nbModuleVersions];
+
+    for (int id = 0; id < nbModuleVersions; id++) {
+      this.arrayComponentId[id] = this.nbComponents - 1 - arrayComponentIdReversed[id];
+    }
+
+    this.buildComponents(arrayArrayIdReference);
+    this.buildCycles(arrayArrayReference, arrayArrayIdReference);
+  }
+
+  /**
+   * Computes the SCC's using an iterative version of Tarjan's algorithm, so that
+   * deep ReferenceGraph's do not overflow the stack.
+   * <p>
+   * Sets nbComponents.
+   *
+   * @param arrayArrayIdReference IDs of the referenced ModuleVersion's of each
+   *   ModuleVersion, indexed by ID.
+   * @return SCC ID of each ModuleVersion, in reverse topological order, indexed by
+   *   ID.
+   */
+  private int[] computeComponents(int[][] arrayArrayIdReference) {
+    int nbModuleVersions;
+    int[] arrayComponentId;
+    int[] arrayIndexVisit;
+    int[] arrayLowLink;
+    int[] arrayIndexNextReference;
+    BitSet bitSetIdOnStack;
+    Deque<Integer> dequeIdStack;
+    Deque<Integer> dequeIdCall;
+    int indexVisit;
+
+    nbModuleVersions = arrayArrayIdReference.length;
+    arrayComponentId = new int[nbModuleVersions];
+    arrayIndexVisit = new int[nbModuleVersions];
+    arrayLowLink = new int[nbModuleVersions];
+    arrayIndexNextReference = new int[nbModuleVersions];
+    bitSetIdOnStack = new BitSet(nbModuleVersions);
+    dequeIdStack = new ArrayDeque<Integer>();
+    dequeIdCall = new ArrayDeque<Integer>();
+    indexVisit = 0;
+
+    // 0 in arrayIndexVisit means not visited yet, so visit indexes start at 1.
+    for (int idStart = 0; idStart < nbModuleVersions; idStart++) {
+      if (arrayIndexVisit[idStart] != 0) {
+        continue;
+      }
+
+      arrayIndexVisit[idStart] = arrayLowLink[idStart] = ++indexVisit;
+      dequeIdStack.push(idStart);
+      bitSetIdOnStack.set(idStart);
+      dequeIdCall.push(idStart);
+
+      while (!dequeIdCall.isEmpty()) {
+        int id;
+
+        id = dequeIdCall.peek();
+
+        if (arrayIndexNextReference[id] < arrayArrayIdReference[id].length) {
+          int idTarget;
+
+          idTarget = arrayArrayIdReference[id][arrayIndexNextReference[id]++];
+
+          if (arrayIndexVisit[idTarget] == 0) {
+            arrayIndexVisit[idTarget] = arrayLowLink[idTarget] = ++indexVisit;
+            dequeIdStack.push(idTarget);
+            bitSetIdOnStack.set(idTarget);
+            dequeIdCall.push(idTarget);
+          } else if (bitSetIdOnStack.get(idTarget)) {
+            arrayLowLink[id] = Math.min(arrayLowLink[id], arrayIndexVisit[idTarget]);
+          }
+        } else {
+          dequeIdCall.pop();
+
+          if (arrayLowLink[id] == arrayIndexVisit[id]) {
+            int idComponent;
+
+            do {
+              idComponent = dequeIdStack.pop();
+              bitSetIdOnStack.clear(idComponent);
+              arrayComponentId[idComponent] = this.nbComponents;
+            } while (idComponent != id);
+
+            this.nbComponents++;
+          }
+
+          if (!dequeIdCall.isEmpty()) {
+            int idCaller;
+
+            idCaller = dequeIdCall.peek();
+            arrayLowLink[idCaller] = Math.min(arrayLowLink[idCaller], arrayLowLink[id]);
+          }
+        }
+      }
+    }
+
+    return arrayComponentId;
+  }
+
+  /**
+   * Builds the members of each SCC and the condensed graph.
+   *
+   * @param arrayArrayIdReference IDs of the referenced ModuleVersion's of each
+   *   ModuleVersion, indexed by ID.
+   */
+  private void buildComponents(int[][] arrayArrayIdReference) {
+    int[] arrayNbIds;
+    BitSet bitSetComponentIdReferenced;
+
+    arrayNbIds = new int[this.nbComponents];
+
+    for (int componentId: this.arrayComponentId) {
+      arrayNbIds[componentId]++;
+    }
+
+    this.arrayArrayIdComponent = new int[this.nbComponents][];
+
+    for (int componentId = 0; componentId < this.nbComponents; componentId++) {
+      this.arrayArrayIdComponent[componentId] = new int[arrayNbIds[componentId]];
+      arrayNbIds[componentId] = 0;
+    }
+
+    for (int id = 0; id < this.arrayComponentId.length; id++) {
+      int componentId;
+
+      componentId = this.arrayComponentId[id];
+      this.arrayArrayIdComponent[componentId][arrayNbIds[componentId]++] = id;
+    }
+
+    this.arrayArrayComponentIdReferenced = new int[this.nbComponents][];
+    bitSetComponentIdReferenced = new BitSet(this.nbComponents);
+
+    for (int componentId = 0; componentId < this.nbComponents; componentId++) {
+      bitSetComponentIdReferenced.clear();
+
+      for (int id: this.arrayArrayIdComponent[componentId]) {
+        for (int idTarget: arrayArrayIdReference[id]) {
+          if (this.arrayComponentId[idTarget] != componentId) {
+            bitSetComponentIdReferenced.set(this.arrayComponentId[idTarget]);
+          }
+        }
+      }
+
+      this.arrayArrayComponentIdReferenced[componentId] = bitSetComponentIdReferenced.stream().toArray();
+    }
+  }
+
+  /**
+   * Builds the {@link Cycle}'s of the cyclic SCC's.
+   *
+   * @param arrayArrayReference Reference's of each ModuleVersion, indexed by ID.
+   * @param arrayArrayIdReference IDs of the referenced ModuleVersion's of each
+   *   ModuleVersion, indexed like arrayArrayReference.
+   */
+  private void buildCycles(Reference[][] arrayArrayReference, int[][] arrayArrayIdReference) {
+    List<Cycle> listCycle;
+
+    listCycle = new ArrayList<Cycle>();
+
+    for (int componentId = 0; componentId < this.nbComponents; componentId++) {
+      int[] arrayIdComponent;
+      List<ModuleVersion> listModuleVersion;
+      List<Referrer> listReferrerComponent;
+      int idStart;
+      Map<Integer, Integer> mapIndexReferenceParent;
+      Map<Integer, Integer> mapIdParent;
+      Deque<Integer> dequeId;
+      int idLast;
+      int indexReferenceLast;
+      List<Referrer> listReferrerCycle;
+
+      arrayIdComponent = this.arrayArrayIdComponent[componentId];
+      listReferrerComponent = new ArrayList<Referrer>();
+
+      for (int id: arrayIdComponent) {
+        for (int i = 0; i < arrayArrayIdReference[id].length; i++) {
+          if (this.arrayComponentId[arrayArrayIdReference[id][i]] == componentId) {
+            listReferrerComponent.add(new Referrer(this.arrayModuleVersion[id], arrayArrayReference[id][i]));
+          }
+        }
+      }
+
+      if (listReferrerComponent.isEmpty()) {
+        continue;
+      }
+
+      listModuleVersion = new ArrayList<ModuleVersion>(arrayIdComponent.length);
+
+      for (int id: arrayIdComponent) {
+        listModuleVersion.add(this.arrayModuleVersion[id]);
+      }
+
+      // Breadth-first search within the SCC from its first ModuleVersion until it is
+      // reached again, which yields a shortest cycle through it.
+
+      idStart = arrayIdComponent[0];
+      mapIndexReferenceParent = new HashMap<Integer, Integer>();
+      mapIdParent = new HashMap<Integer, Integer>();
+      dequeId = new ArrayDeque<Integer>();
+      dequeId.add(idStart);
+      idLast = -1;
+      indexReferenceLast = -1;
+
+      search:
+      while (!dequeId.isEmpty()) {
+        int id;
+
+        id = dequeId.removeFirst();
+
+        for (int i = 0; i < arrayArrayIdReference[id].length; i++) {
+          int idTarget;
+
+          idTarget = arrayArrayIdReference[id][i];
+
+          if (idTarget == idStart) {
+            idLast = id;
+            indexReferenceLast = i;
+            break search;
+          }
+
+          if ((this.arrayComponentId[idTarget] == componentId) && !mapIdParent.containsKey(idTarget)) {
+            mapIdParent.put(idTarget, id);
+            mapIndexReferenceParent.put(idTarget, i);
+            dequeId.add(idTarget);
+          }
+        }
+      }
+
+      listReferrerCycle = new ArrayList<Referrer>();
+      listReferrerCycle.add(new Referrer(this.arrayModuleVersion[idLast], arrayArrayReference[idLast][indexReferenceLast]));
+
+      for (int id = idLast; id != idStart; id = mapIdParent.get(id)) {
+        int idParent;
+
+        idParent = mapIdParent.get(id);
+        listReferrerCycle.add(new Referrer(this.arrayModuleVersion[idParent], arrayArrayReference[idParent][mapIndexReferenceParent.get(id)]));
+      }
+
+      Collections.reverse(listReferrerCycle);
+
+      listCycle.add(new Cycle(componentId, Collections.unmodifiableList(listModuleVersion), Collections.unmodifiableList(listReferrerComponent), Collections.unmodifiableList(listReferrerCycle)));
+    }
+
+    this.listCycle = Collections.unmodifiableList(listCycle);
+  }
+
+  /**
+   * Returns the ID of a {@link ModuleVersion}, throwing an exception if it is not
+   * known.
+   *
+   * @param moduleVersion ModuleVersion.
+   * @return ID.
+   */
+  private int getExistingId(ModuleVersion moduleVersion) {
+    Integer id;
+
+    id = this.mapIdModuleVersion.get(moduleVersion);
+
+    if (id == null) {
+      throw new RuntimeException("ModuleVersion " + moduleVersion + " is not part of the ReferenceGraph.");
+    }
+
+    return id;
+  }
+
+  /**
+   * @return Number of SCC's.
+   */
+  public int getNbComponents() {
+    return this.nbComponents;
+  }
+
+  /**
+   * @return Indicates if the ReferenceGraph does not contain any cycle.
+   */
+  public boolean isAcyclic() {
+    return this.listCycle.isEmpty();
+  }
+
+  /**
+   * @param moduleVersion ModuleVersion.
+   * @return SCC ID of the {@link ModuleVersion}.
+   */
+  public int getComponentId(ModuleVersion moduleVersion) {
+    return this.arrayComponentId[this.getExistingId(moduleVersion)];
+  }
+
+  /**
+   * @param moduleVersion ModuleVersion.
+   * @return Indicates if the {@link ModuleVersion} is part of a cycle.
+   */
+  public boolean isCyclic(ModuleVersion moduleVersion) {
+    return this.isComponentCyclic(this.getComponentId(moduleVersion));
+  }
+
+  /**
+   * @param componentId SCC ID.
+   * @return Indicates if the SCC is cyclic.
+   */
+  public boolean isComponentCyclic(int componentId) {
+    // Cycles are few, so that a binary search is not worth it.
+    for (Cycle cycle: this.listCycle) {
+      if (cycle.componentId == componentId) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @param componentId SCC ID.
+   * @return List of the {@link ModuleVersion}'s of the SCC.
+   */
+  public List<ModuleVersion> getListModuleVersion(int componentId) {
+    int[] arrayIdComponent;
+    List<ModuleVersion> listModuleVersion;
+
+    arrayIdComponent = this.arrayArrayIdComponent[componentId];
+    listModuleVersion = new ArrayList<ModuleVersion>(arrayIdComponent.length);
+
+    for (int id: arrayIdComponent) {
+      listModuleVersion.add(this.arrayModuleVersion[id]);
+    }
+
+    return listModuleVersion;
+  }
+
+  /**
+   * Returns the SCC's referenced by an SCC in the condensed graph.
+   * <p>
+   * The condensed graph is acyclic and its SCC IDs are in topological order.
+   *
+   * @param componentId SCC ID.
+   * @return Sorted SCC IDs. Must not be modified.
+   */
+  public int[] getArrayComponentIdReferenced(int componentId) {
+    return this.arrayArrayComponentIdReferenced[componentId];
+  }
+
+  /**
+   * @return Unmodifiable List of {@link Cycle}'s, one for each cyclic SCC, in SCC
+   *   ID order.
+   */
+  public List<Cycle> getListCycle() {
+    return this.listCycle;
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import java.util.EnumSet;
+
+import org.azyva.dragom.model.ModuleVersion;
+import org.azyva.dragom.reference.ReferenceGraph.BatchVisitor;
+import org.azyva.dragom.reference.ReferenceGraph.VisitAction;
+import org.azyva.dragom.reference.ReferenceGraph.VisitControl;
+
+/**
+ * Batch of visits passed to a {@link BatchVisitor} by
+ * {@link ReferenceGraph#traverseReferenceGraphBatch}.
+ * <p>
+ * Each visit is a record of primitive values stored in parallel arrays:
+ * <ul>
+ * <li>ID of the visited {@link ModuleVersion}, which can be resolved with
+ *     {@link #getModuleVersionById}. IDs are dense and stable during the
+ *     traversal;
+ * <li>Depth of the ModuleVersion, which is the size of its {@link ReferencePath}
+ *     minus 1 (0 for the ModuleVersion at which the traversal starts);
+ * <li>Bitmask of {@link VisitAction}'s, where the bit of a VisitAction is
+ *     1 &lt;&lt; its ordinal. See the MASK_ constants.
+ * </ul>
+ * A single VisitBatch is allocated for a traversal and reused for each call to
+ * the BatchVisitor, so that visits do not cause any allocation. The arrays must
+ * therefore not be kept nor modified by the BatchVisitor.
+ *
+ * @author David Raymond
+ */
+public final class VisitBatch {
+  /**
+   * Bit of {@link VisitAction#STEP_IN}.
+   */
+  public static final int MASK_STEP_IN = 1 << VisitAction.STEP_IN.ordinal();
+
+  /**
+   * Bit of {@link VisitAction#STEP_OUT}.
+   */
+  public static final int MASK_STEP_OUT = 1 << VisitAction.STEP_OUT.ordinal();
+
+  /**
+   * Bit of {@link VisitAction#VISIT}.
+   */
+  public static final int MASK_VISIT = 1 << VisitAction.VISIT.ordinal();
+
+  /**
+   * Bit of {@link VisitAction#REPEATED}.
+   */
+  public static final int MASK_REPEATED = 1 << VisitAction.REPEATED.ordinal();
+
+  /**
+   * Bit of {@link VisitAction#MATCHED}.
+   */
+  public static final int MASK_MATCHED = 1 << VisitAction.MATCHED.ordinal();
+
+  /**
+   * {@link ModuleVersion} IDs.
+   */
+  private int[] arrayModuleVersionId;
+
+  /**
+   * Depths.
+   */
+  private int[] arrayDepth;
+
+  /**
+   * {@link VisitAction} bitmasks.
+   */
+  private int[] arrayVisitActionMask;
+
+  /**
+   * Number of visits in the batch.
+   */
+  private int size;
+
+  /**
+   * {@link ModuleVersion}'s indexed by ID.
+   */
+  private ModuleVersion[] arrayModuleVersion;
+
+  /**
+   * Constructor.
+   *
+   * @param capacity Maximum number of visits in a batch.
+   */
+  VisitBatch(int capacity) {
+    if (capacity <= 0) {
+      throw new RuntimeException("Invalid batch capacity " + capacity + '.');
+    }
+
+    this.arrayModuleVersionId = new int[capacity];
+    this.arrayDepth = new int[capacity];
+    this.arrayVisitActionMask = new int[capacity];
+  }
+
+  /**
+   * Returns the bitmask corresponding to an EnumSet of {@link VisitAction}'s.
+   *
+   * @param enumSetVisitAction EnumSet of VisitAction's.
+   * @return Bitmask.
+   */
+  public static int getVisitActionMask(EnumSet<VisitAction> enumSetVisitAction) {
+    int visitActionMask;
+
+    // The constant EnumSet's are used for almost all visits and are tested first
+    // to avoid iterating.
+    if (enumSetVisitAction == VisitAction.ENUM_SET_STEP_IN) {
+      return VisitBatch.MASK_STEP_IN;
+    } else if (enumSetVisitAction == VisitAction.ENUM_SET_STEP_OUT) {
+      return VisitBatch.MASK_STEP_OUT;
+    } else if (enumSetVisitAction == VisitAction.ENUM_SET_VISIT) {
+      return VisitBatch.MASK_VISIT;
+    } else if (enumSetVisitAction == VisitAction.ENUM_SET_VISIT_MATCHED) {
+      return VisitBatch.MASK_VISIT | VisitBatch.MASK_MATCHED;
+    } else if (enumSetVisitAction == VisitAction.ENUM_SET_REPEATED_VISIT) {
+      return VisitBatch.MASK_VISIT | VisitBatch.MASK_REPEATED;
+    } else if (enumSetVisitAction == VisitAction.ENUM_SET_REPEATED_VISIT_MATCHED) {
+      return VisitBatch.MASK_VISIT | VisitBatch.MASK_REPEATED | VisitBatch.MASK_MATCHED;
+    }
+
+    visitActionMask = 0;
+
+    for (VisitAction visitAction: enumSetVisitAction) {
+      visitActionMask |= 1 << visitAction.ordinal();
+    }
+
+    return visitActionMask;
+  }
+
+  /**
+   * Indicates if a bitmask contains a {@link VisitAction}.
+   *
+   * @param visitActionMask Bitmask.
+   * @param visitAction VisitAction.
+   * @return See description.
+   */
+  public static boolean hasVisitAction(int visitActionMask, VisitAction visitAction) {
+    return (visitActionMask & (1 << visitAction.ordinal())) != 0;
+  }
+
+  /**
+   * @return Number of visits in the batch.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @param index Index of the visit.
+   * @return ID of the visited {@link ModuleVersion}.
+   */
+  public int getModuleVersionId(int index) {
+    return this.arrayModuleVersionId[index];
+  }
+
+  /**
+   * @param index Index of the visit.
+   * @return Depth of the visited {@link ModuleVersion}.
+   */
+  public int getDepth(int index) {
+    return this.arrayDepth[index];
+  }
+
+  /**
+   * @param index Index of the visit.
+   * @return Bitmask of {@link VisitAction}'s.
+   */
+  public int getVisitActionMask(int index) {
+    return this.arrayVisitActionMask[index];
+  }
+
+  /**
+   * @param index Index of the visit.
+   * @return Visited {@link ModuleVersion}.
+   */
+  public ModuleVersion getModuleVersion(int index) {
+    return this.arrayModuleVersion[this.arrayModuleVersionId[index]];
+  }
+
+  /**
+   * @param id ID of a {@link ModuleVersion} visited during the traversal.
+   * @return ModuleVersion.
+   */
+  public ModuleVersion getModuleVersionById(int id) {
+    return this.arrayModuleVersion[id];
+  }
+
+  /**
+   * Returns the array of {@link ModuleVersion} IDs for bulk processing. Only the
+   * first {@link #size} elements are valid.
+   *
+   * @return See description. Must not be modified.
+   */
+  public int[] getArrayModuleVersionId() {
+    return this.arrayModuleVersionId;
+  }
+
+  /**
+   * Returns the array of depths for bulk processing. Only the first {@link #size}
+   * elements are valid.
+   *
+   * @return See description. Must not be modified.
+   */
+  public int[] getArrayDepth() {
+    return this.arrayDepth;
+  }
+
+  /**
+   * Returns the array of {@link VisitAction} bitmasks for bulk processing. Only
+   * the first {@link #size} elements are valid.
+   *
+   * @return See description. Must not be modified.
+   */
+  public int[] getArrayVisitActionMask() {
+    return this.arrayVisitActionMask;
+  }
+
+  /**
+   * Sets the array used to resolve {@link ModuleVersion} IDs. It can be replaced
+   * when it grows during the traversal.
+   *
+   * @param arrayModuleVersion ModuleVersion's indexed by ID.
+   */
+  void setArrayModuleVersion(ModuleVersion[] arrayModuleVersion) {
+    this.arrayModuleVersion = arrayModuleVersion;
+  }
+
+  /**
+   * Adds a visit to the batch.
+   *
+   * @param moduleVersionId ID of the visited {@link ModuleVersion}.
+   * @param depth Depth.
+   * @param visitActionMask Bitmask of {@link VisitAction}'s.
+   * @return Indicates if the batch is full.
+   */
+  boolean add(int moduleVersionId, int depth, int visitActionMask) {
+    this.arrayModuleVersionId[this.size] = moduleVersionId;
+    this.arrayDepth[this.size] = depth;
+    this.arrayVisitActionMask[this.size] = visitActionMask;
+
+    return ++this.size == this.arrayModuleVersionId.length;
+  }
+
+  /**
+   * Passes the batch to a {@link BatchVisitor} if it is not empty, and empties it.
+   *
+   * @param batchVisitor BatchVisitor.
+   * @return Indicates if the traversal must be aborted.
+   */
+  boolean flush(BatchVisitor batchVisitor) {
+    VisitControl visitControl;
+
+    if (this.size == 0) {
+      return false;
+    }
+
+    visitControl = batchVisitor.visitBatch(this);
+    this.size = 0;
+
+    if ((visitControl != VisitControl.CONTINUE) && (visitControl != VisitControl.ABORT)) {
+      throw new RuntimeException("VisitControl." + visitControl + " is not valid for BatchVisitor.");
+    }
+
+    return visitControl == VisitControl.ABORT;
+  }
+}
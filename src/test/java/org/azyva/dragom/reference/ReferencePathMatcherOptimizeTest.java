@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 - 2017 AZYVA INC. INC.
+ *
+ * This file is part of Dragom.
+ *
+ * Dragom is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Dragom is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Dragom.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.azyva.dragom.reference;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ReferencePathMatcherAnd#optimize} and
+ * {@link ReferencePathMatcherOr#optimize}.
+ *
+ * @author David Raymond
+ */
+public class ReferencePathMatcherOptimizeTest {
+  /**
+   * An empty ReferencePathMatcherOr nested within a ReferencePathMatcherOr
+   * matches everything and must not be dropped.
+   */
+  @Test
+  public void testEmptyOrWithinOr() {
+    ReferencePathMatcherOr referencePathMatcherOr;
+    ReferencePath referencePath;
+
+    referencePathMatcherOr = new ReferencePathMatcherOr();
+    referencePathMatcherOr.addReferencePathMatcher(new ReferencePathMatcherNot(new ReferencePathMatcherAll()));
+    referencePathMatcherOr.addReferencePathMatcher(new ReferencePathMatcherOr());
+    referencePath = new ReferencePath();
+
+    assertTrue(referencePathMatcherOr.matches(referencePath));
+    referencePathMatcherOr.optimize();
+    assertTrue(referencePathMatcherOr.matches(referencePath));
+  }
+
+  /**
+   * Same as {@link #testEmptyOrWithinOr}, but with the ReferencePathMatcherOr
+   * itself nested within a ReferencePathMatcherAnd.
+   */
+  @Test
+  public void testEmptyOrWithinOrWithinAnd() {
+    ReferencePathMatcherOr referencePathMatcherOr;
+    ReferencePathMatcherAnd referencePathMatcherAnd;
+    ReferencePath referencePath;
+
+    referencePathMatcherOr = new ReferencePathMatcherOr();
+    referencePathMatcherOr.addReferencePathMatcher(new ReferencePathMatcherNot(new ReferencePathMatcherAll()));
+    referencePathMatcherOr.addReferencePathMatcher(new ReferencePathMatcherOr());
+    referencePathMatcherAnd = new ReferencePathMatcherAnd();
+    referencePathMatcherAnd.addReferencePathMatcher(referencePathMatcherOr);
+    referencePath = new ReferencePath();
+
+    assertTrue(referencePathMatcherAnd.matches(referencePath));
+    referencePathMatcherAnd.optimize();
+    assertTrue(referencePathMatcherAnd.matches(referencePath));
+  }
+
+  /**
+   * An empty ReferencePathMatcherAnd nested within a ReferencePathMatcherAnd is
+   * neutral and is removed.
+   */
+  @Test
+  public void testEmptyAndWithinAnd() {
+    ReferencePathMatcherAnd referencePathMatcherAnd;
+    ReferencePath referencePath;
+
+    referencePathMatcherAnd = new ReferencePathMatcherAnd();
+    referencePathMatcherAnd.addReferencePathMatcher(new ReferencePathMatcherNot(new ReferencePathMatcherAll()));
+    referencePathMatcherAnd.addReferencePathMatcher(new ReferencePathMatcherAnd());
+    referencePath = new ReferencePath();
+
+    assertFalse(referencePathMatcherAnd.matches(referencePath));
+    referencePathMatcherAnd.optimize();
+    assertFalse(referencePathMatcherAnd.matches(referencePath));
+    assertTrue(referencePathMatcherAnd.getListReferencePathMatcher().size() == 1);
+  }
+}